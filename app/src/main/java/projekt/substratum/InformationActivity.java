@@ -921,8 +921,7 @@ public class InformationActivity extends AppCompatActivity implements PullBackLa
                     Lunchbar.LENGTH_SHORT);
             currentShownLunchBar.show();
         }
-        Thread currentThread = Substratum.currentThread;
-        if ((currentThread == null || !currentThread.isAlive()) && Systems.isSamsung(mContext)) {
+        if (Systems.isSamsung(mContext)) {
             Substratum.startSamsungPackageMonitor(mContext);
         }
 
@@ -1252,10 +1251,7 @@ public class InformationActivity extends AppCompatActivity implements PullBackLa
         super.onDestroy();
 
         // Close the active Samsung package monitor if applicable
-        Thread currentThread = Substratum.currentThread;
-        if (currentThread != null) {
-            Substratum.stopSamsungPackageMonitor();
-        }
+        Substratum.stopSamsungPackageMonitor(mContext);
 
         // Close the active compiling notification if the app was closed from recents
         NotificationManager manager =
@@ -29,7 +29,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.media.AudioAttributes;
@@ -42,16 +41,14 @@ import android.util.Log;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.crash.FirebaseCrash;
 
-import java.util.List;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import cat.ereza.customactivityoncrash.config.CaocConfig;
 import projekt.substratum.activities.crash.SubstratumCrash;
 import projekt.substratum.common.Broadcasts;
 import projekt.substratum.common.Packages;
 import projekt.substratum.common.References;
+import projekt.substratum.common.SamsungPackageMonitor;
 import projekt.substratum.common.Systems;
 import projekt.substratum.services.binder.AndromedaBinderService;
 import projekt.substratum.services.binder.InterfacerBinderService;
@@ -67,11 +64,8 @@ public class Substratum extends Application {
 
     private static final String BINDER_TAG = "BinderService";
     private static final FinishReceiver finishReceiver = new FinishReceiver();
-    public static int initialPackageCount = 0;
-    public static Thread currentThread;
     private static Substratum substratum;
     private static boolean isWaiting;
-    private static Boolean shouldStopThread = false;
 
     /**
      * Get the current instance of the substratum application
@@ -130,11 +124,11 @@ public class Substratum extends Application {
 
     /**
      * Stop the ongoing package detection on Samsung
+     *
+     * @param context Context!
      */
-    public static void stopSamsungPackageMonitor() {
-        Log.d("Substratum",
-                "The overlay package refresher for Samsung devices is now stopping!");
-        shouldStopThread = true;
+    public static void stopSamsungPackageMonitor(Context context) {
+        SamsungPackageMonitor.stop(context);
     }
 
     /**
@@ -143,33 +137,7 @@ public class Substratum extends Application {
      * @param context Context!
      */
     public static void startSamsungPackageMonitor(Context context) {
-        Log.d("Substratum",
-                "The overlay package refresher for Samsung devices has been fully loaded.");
-        PackageManager pm = context.getPackageManager();
-        List<ApplicationInfo> currentApps = pm.getInstalledApplications(0);
-        initialPackageCount = currentApps.size();
-        Timer timer = new Timer();
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run() {
-                if (shouldStopThread || Substratum.getInstance() == null) {
-                    cancel();
-                    try {
-                        currentThread.interrupt();
-                    } catch (Exception ignored) {
-                    }
-                    currentThread = null;
-                }
-                List<ApplicationInfo> currentApps = pm.getInstalledApplications(0);
-                if (initialPackageCount != currentApps.size()) {
-                    initialPackageCount = currentApps.size();
-                    Broadcasts.sendOverlayRefreshMessage(context);
-                }
-            }
-        };
-        timer.scheduleAtFixedRate(timerTask, 0, 1000);
-        currentThread = new Thread(timerTask);
-        currentThread.start();
+        SamsungPackageMonitor.start(context);
     }
 
     @Override
@@ -19,10 +19,8 @@
 package projekt.substratum.adapters.fragments.manager;
 
 import android.content.Context;
-import android.graphics.drawable.Drawable;
 import android.support.v7.widget.CardView;
 import android.support.v7.widget.RecyclerView;
-import android.text.Html;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -33,10 +31,7 @@ import android.widget.TextView;
 import java.util.List;
 
 import projekt.substratum.R;
-import projekt.substratum.common.Packages;
-import projekt.substratum.common.References;
-
-import static android.text.Html.FROM_HTML_MODE_LEGACY;
+import projekt.substratum.util.helpers.IconCache;
 
 public class ManagerAdapter extends
         RecyclerView.Adapter<ManagerAdapter.ViewHolder> {
@@ -62,210 +57,73 @@ public class ManagerAdapter extends
             itemLayoutView = LayoutInflater.from(parent.getContext()).inflate(
                     R.layout.manager_row, parent, false);
         }
-        return new ViewHolder(itemLayoutView);
-    }
-
-    @Override
-    public void onBindViewHolder(ViewHolder viewHolder,
-                                 int position) {
-        Context context = overlayList.get(position).getContext();
-        String packageName = overlayList.get(position).getName();
-
-        String title = overlayList.get(position).getLabelName();
-
-        if ((title != null) && !title.isEmpty()) {
-            viewHolder.tvName.setText(title);
-        } else {
-            viewHolder.tvName.setText(R.string.reboot_awaiting_manager_title);
-        }
-
-        viewHolder.tvName.setTextColor(overlayList.get(position).getActivationValue());
-
-        if (overlayList.get(position).getType1a() == null) {
-            String metadata = Packages.getOverlayMetadata(
-                    context,
-                    packageName,
-                    References.metadataOverlayType1a);
-
-            if ((metadata != null) && !metadata.isEmpty()) {
-                metadata = metadata.replace("_", " ");
-                String textView = "<b>" + context.getString(R.string.manager_type1a) +
-                        "</b> " + metadata;
-                viewHolder.type1a.setVisibility(View.VISIBLE);
-                overlayList.get(position).setType1a(textView);
-                viewHolder.type1a.setText(Html.fromHtml(textView, FROM_HTML_MODE_LEGACY));
-            } else {
-                viewHolder.type1a.setVisibility(View.GONE);
-            }
-        } else {
-            viewHolder.type1a.setVisibility(View.VISIBLE);
-            viewHolder.type1a.setText(Html.fromHtml(overlayList.get(position).getType1a(),
-                    FROM_HTML_MODE_LEGACY));
-        }
-
-        if (overlayList.get(position).getType1b() == null) {
-            String metadata = Packages.getOverlayMetadata(
-                    context,
-                    packageName,
-                    References.metadataOverlayType1b);
-            if ((metadata != null) && !metadata.isEmpty()) {
-                metadata = metadata.replace("_", " ");
-                String textView = "<b>" + context.getString(R.string.manager_type1b) +
-                        "</b> " + metadata;
-                viewHolder.type1b.setVisibility(View.VISIBLE);
-                overlayList.get(position).setType1b(textView);
-                viewHolder.type1b.setText(Html.fromHtml(textView, FROM_HTML_MODE_LEGACY));
-            } else {
-                viewHolder.type1b.setVisibility(View.GONE);
-            }
-        } else {
-            viewHolder.type1b.setVisibility(View.VISIBLE);
-            viewHolder.type1b.setText(Html.fromHtml(overlayList.get(position).getType1b(),
-                    FROM_HTML_MODE_LEGACY));
-        }
-
-        if (overlayList.get(position).getType1c() == null) {
-            String metadata = Packages.getOverlayMetadata(
-                    context,
-                    packageName,
-                    References.metadataOverlayType1c);
-            if ((metadata != null) && !metadata.isEmpty()) {
-                metadata = metadata.replace("_", " ");
-                String textView = "<b>" + context.getString(R.string.manager_type1c) +
-                        "</b> " + metadata;
-                viewHolder.type1c.setVisibility(View.VISIBLE);
-                overlayList.get(position).setType1c(textView);
-                viewHolder.type1c.setText(Html.fromHtml(textView, FROM_HTML_MODE_LEGACY));
-            } else {
-                viewHolder.type1c.setVisibility(View.GONE);
-            }
-        } else {
-            viewHolder.type1c.setVisibility(View.VISIBLE);
-            viewHolder.type1c.setText(Html.fromHtml(overlayList.get(position).getType1c(),
-                    FROM_HTML_MODE_LEGACY));
-        }
-
-        if (overlayList.get(position).getType2() == null) {
-            String metadata = Packages.getOverlayMetadata(
-                    context,
-                    packageName,
-                    References.metadataOverlayType2);
-            if ((metadata != null) && !metadata.isEmpty()) {
-                metadata = metadata.replace("_", " ");
-                String textView = "<b>" + context.getString(R.string.manager_type2) +
-                        "</b> " + metadata;
-                viewHolder.type2.setVisibility(View.VISIBLE);
-                overlayList.get(position).setType2(textView);
-                viewHolder.type2.setText(Html.fromHtml(textView, FROM_HTML_MODE_LEGACY));
-            } else {
-                viewHolder.type2.setVisibility(View.GONE);
-            }
-        } else {
-            viewHolder.type2.setVisibility(View.VISIBLE);
-            viewHolder.type2.setText(Html.fromHtml(overlayList.get(position).getType2(),
-                    FROM_HTML_MODE_LEGACY));
-        }
-
-        if (overlayList.get(position).getType3() == null) {
-            String metadata = Packages.getOverlayMetadata(
-                    context,
-                    packageName,
-                    References.metadataOverlayType3);
-            if ((metadata != null) && !metadata.isEmpty()) {
-                metadata = metadata.replace("_", " ");
-                String textView = "<b>" + context.getString(R.string.manager_type3) +
-                        "</b> " + metadata;
-                viewHolder.type3.setVisibility(View.VISIBLE);
-                overlayList.get(position).setType3(textView);
-                viewHolder.type3.setText(Html.fromHtml(textView, FROM_HTML_MODE_LEGACY));
-            } else {
-                viewHolder.type3.setVisibility(View.GONE);
-            }
-        } else {
-            viewHolder.type3.setVisibility(View.VISIBLE);
-            viewHolder.type3.setText(Html.fromHtml(overlayList.get(position).getType3(),
-                    FROM_HTML_MODE_LEGACY));
-        }
-
-        if (overlayList.get(position).getType4() == null) {
-            String metadata = Packages.getOverlayMetadata(
-                    context,
-                    packageName,
-                    References.metadataOverlayType4);
-            if ((metadata != null) && !metadata.isEmpty()) {
-                metadata = metadata.replace("_", " ");
-                String textView = "<b>" + context.getString(R.string.manager_type4) +
-                        "</b> " + metadata;
-                viewHolder.type4.setVisibility(View.VISIBLE);
-                overlayList.get(position).setType4(textView);
-                viewHolder.type4.setText(Html.fromHtml(textView, FROM_HTML_MODE_LEGACY));
-            } else {
-                viewHolder.type4.setVisibility(View.GONE);
-            }
-        } else {
-            viewHolder.type4.setVisibility(View.VISIBLE);
-            viewHolder.type4.setText(Html.fromHtml(overlayList.get(position).getType4(),
-                    FROM_HTML_MODE_LEGACY));
-        }
-
-        String textView = "<b>" + context.getString(R.string.manager_version) +
-                "</b> " +
-                String.valueOf(
-                        Packages.getOverlaySubstratumVersion(
-                                context,
-                                overlayList.get(position)
-                                        .getName()));
-        viewHolder.version.setText(Html.fromHtml(textView, FROM_HTML_MODE_LEGACY));
-
-        if (overlayList.get(position).getThemeName().isEmpty()) {
-            viewHolder.tvDesc.setText(packageName);
-        } else {
-            viewHolder.tvDesc.setText(
-                    Html.fromHtml(overlayList.get(position).getThemeName(),
-                            FROM_HTML_MODE_LEGACY));
-        }
-
-        viewHolder.chkSelected.setChecked(overlayList.get(position).isSelected());
-        viewHolder.chkSelected.setTag(overlayList.get(position));
+        ViewHolder viewHolder = new ViewHolder(itemLayoutView);
+        // The row being shown is kept as the tag of the checkbox, so these are set only once
         viewHolder.chkSelected.setOnClickListener(view -> {
             CheckBox checkBox = (CheckBox) view;
             ManagerItem contact = (ManagerItem) checkBox.getTag();
-
             contact.setSelected(checkBox.isChecked());
-            overlayList.get(position).setSelected(checkBox.isChecked());
         });
         viewHolder.card.setOnClickListener(view -> {
             viewHolder.chkSelected.setChecked(!viewHolder.chkSelected.isChecked());
 
             CheckBox cb = viewHolder.chkSelected;
             ManagerItem contact = (ManagerItem) cb.getTag();
-
-            contact.setSelected(cb.isChecked());
             contact.setSelected(cb.isChecked());
         });
-        if (overlayList.get(position).getDrawable() == null) {
-            Drawable app_icon = Packages.getAppIcon(
-                    overlayList.get(position).getContext(),
-                    Packages.getOverlayParent(
-                            overlayList.get(position).getContext(),
-                            overlayList.get(position).getName()));
-            overlayList.get(position).setDrawable(app_icon);
-            viewHolder.appIcon.setImageDrawable(app_icon);
+        return viewHolder;
+    }
+
+    /**
+     * Show a variant of the overlay, hiding its view if the overlay was built without it
+     *
+     * @param view    View of the variant
+     * @param variant Formatted variant
+     */
+    private static void bindType(TextView view,
+                                 CharSequence variant) {
+        if (variant != null) {
+            view.setVisibility(View.VISIBLE);
+            view.setText(variant);
+        } else {
+            view.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder viewHolder,
+                                 int position) {
+        // Everything shown here has been resolved in the background by ManagerItem
+        ManagerItem managerItem = overlayList.get(position);
+        Context context = managerItem.getContext();
+
+        String title = managerItem.getLabelName();
+        if ((title != null) && !title.isEmpty()) {
+            viewHolder.tvName.setText(title);
         } else {
-            viewHolder.appIcon.setImageDrawable(overlayList.get(position).getDrawable());
+            viewHolder.tvName.setText(R.string.reboot_awaiting_manager_title);
         }
-        if (overlayList.get(position).getTargetDrawable() == null) {
-            Drawable app_icon = Packages.getAppIcon(
-                    overlayList.get(position).getContext(),
-                    Packages.getOverlayTarget(
-                            overlayList.get(position).getContext(),
-                            overlayList.get(position).getName()));
-            overlayList.get(position).setTargetDrawable(app_icon);
-            viewHolder.appIconTarget.setImageDrawable(app_icon);
+        viewHolder.tvName.setTextColor(managerItem.getActivationValue());
+
+        bindType(viewHolder.type1a, managerItem.getType1a());
+        bindType(viewHolder.type1b, managerItem.getType1b());
+        bindType(viewHolder.type1c, managerItem.getType1c());
+        bindType(viewHolder.type2, managerItem.getType2());
+        bindType(viewHolder.type3, managerItem.getType3());
+        bindType(viewHolder.type4, managerItem.getType4());
+        viewHolder.version.setText(managerItem.getVersion());
+
+        if (managerItem.getThemeName().isEmpty()) {
+            viewHolder.tvDesc.setText(managerItem.getName());
         } else {
-            viewHolder.appIconTarget.setImageDrawable(
-                    overlayList.get(position).getTargetDrawable());
+            viewHolder.tvDesc.setText(managerItem.getThemeText());
         }
+
+        viewHolder.chkSelected.setChecked(managerItem.isSelected());
+        viewHolder.chkSelected.setTag(managerItem);
+
+        IconCache.load(context, managerItem.getParentPackage(), viewHolder.appIcon);
+        IconCache.load(context, managerItem.getTargetPackage(), viewHolder.appIconTarget);
     }
 
     @Override
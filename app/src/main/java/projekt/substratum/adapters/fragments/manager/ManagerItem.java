@@ -19,7 +19,7 @@
 package projekt.substratum.adapters.fragments.manager;
 
 import android.content.Context;
-import android.graphics.drawable.Drawable;
+import android.text.Html;
 
 import java.io.Serializable;
 
@@ -28,6 +28,7 @@ import projekt.substratum.R;
 import projekt.substratum.common.Packages;
 import projekt.substratum.common.References;
 
+import static android.text.Html.FROM_HTML_MODE_LEGACY;
 import static projekt.substratum.common.Resources.LG_FRAMEWORK;
 import static projekt.substratum.common.Resources.SAMSUNG_FRAMEWORK;
 import static projekt.substratum.common.Resources.SETTINGS_ICONS;
@@ -36,22 +37,28 @@ import static projekt.substratum.common.Resources.SYSTEMUI_NAVBARS;
 import static projekt.substratum.common.Resources.SYSTEMUI_QSTILES;
 import static projekt.substratum.common.Resources.SYSTEMUI_STATUSBARS;
 
+/**
+ * A row of the manager, with everything the row shows resolved when it is created, so that
+ * binding it does not have to ask the PackageManager for anything
+ */
 public class ManagerItem implements Serializable {
 
-    private Context mContext;
-    private String name;
-    private String type1a;
-    private String type1b;
-    private String type1c;
-    private String type2;
-    private String type3;
-    private String type4;
+    private final Context mContext;
+    private final String name;
+    private final String parentPackage;
+    private final String targetPackage;
+    private final CharSequence type1a;
+    private final CharSequence type1b;
+    private final CharSequence type1c;
+    private final CharSequence type2;
+    private final CharSequence type3;
+    private final CharSequence type4;
+    private final CharSequence version;
+    private CharSequence themeText;
     private String themeName;
     private String labelName;
     private boolean isSelected;
     private int activationValue;
-    private Drawable mDrawable;
-    private Drawable mTargetDrawable;
 
     public ManagerItem(Context context,
                        String name,
@@ -60,25 +67,56 @@ public class ManagerItem implements Serializable {
         this.mContext = context;
         this.name = name;
         this.isSelected = false;
+        this.parentPackage = Packages.getOverlayParent(context, name);
+        this.targetPackage = Packages.getOverlayTarget(context, name);
 
         int version = Packages.getOverlaySubstratumVersion(
                 context,
                 this.name);
         Boolean newUpdate = (version != 0) && (version <= BuildConfig.VERSION_CODE);
-        String metadata = Packages.getOverlayMetadata(
-                context,
-                this.name,
-                References.metadataOverlayParent);
-        if ((metadata != null) && !metadata.isEmpty() && newUpdate) {
-            this.themeName = "<b>" + context.getString(R.string.manager_theme_name) + "</b> " +
-                    Packages.getPackageName(context, metadata);
+        if ((this.parentPackage != null) && !this.parentPackage.isEmpty() && newUpdate) {
+            this.setThemeName("<b>" + context.getString(R.string.manager_theme_name) + "</b> " +
+                    Packages.getPackageName(context, this.parentPackage));
         } else {
-            this.themeName = "";
+            this.setThemeName("");
         }
+        this.type1a = getTypeText(context, References.metadataOverlayType1a,
+                R.string.manager_type1a);
+        this.type1b = getTypeText(context, References.metadataOverlayType1b,
+                R.string.manager_type1b);
+        this.type1c = getTypeText(context, References.metadataOverlayType1c,
+                R.string.manager_type1c);
+        this.type2 = getTypeText(context, References.metadataOverlayType2,
+                R.string.manager_type2);
+        this.type3 = getTypeText(context, References.metadataOverlayType3,
+                R.string.manager_type3);
+        this.type4 = getTypeText(context, References.metadataOverlayType4,
+                R.string.manager_type4);
+        this.version = Html.fromHtml("<b>" + context.getString(R.string.manager_version) +
+                "</b> " + String.valueOf(version), FROM_HTML_MODE_LEGACY);
         this.updateEnabledOverlays(isActivated);
         this.setLabelName(context);
     }
 
+    /**
+     * Format a variant of the overlay the way the manager shows it
+     *
+     * @param context  Context
+     * @param metadata Metadata of the variant
+     * @param title    Title of the variant
+     * @return Returns the formatted variant, or null if the overlay was built without it
+     */
+    private CharSequence getTypeText(Context context,
+                                     String metadata,
+                                     int title) {
+        String variant = Packages.getOverlayMetadata(context, this.name, metadata);
+        if ((variant != null) && !variant.isEmpty()) {
+            return Html.fromHtml("<b>" + context.getString(title) + "</b> " +
+                    variant.replace("_", " "), FROM_HTML_MODE_LEGACY);
+        }
+        return null;
+    }
+
     int getActivationValue() {
         return this.activationValue;
     }
@@ -87,8 +125,12 @@ public class ManagerItem implements Serializable {
         return this.name;
     }
 
-    public void setName(String name) {
-        this.name = name;
+    String getParentPackage() {
+        return this.parentPackage;
+    }
+
+    String getTargetPackage() {
+        return this.targetPackage;
     }
 
     public boolean isSelected() {
@@ -109,63 +151,49 @@ public class ManagerItem implements Serializable {
                         this.mContext.getColor(R.color.overlay_not_enabled_list_entry));
     }
 
-    public String getType1a() {
+    CharSequence getType1a() {
         return this.type1a;
     }
 
-    public void setType1a(String name) {
-        this.type1a = name;
-    }
-
-    public String getType1b() {
+    CharSequence getType1b() {
         return this.type1b;
     }
 
-    public void setType1b(String name) {
-        this.type1b = name;
-    }
-
-    public String getType1c() {
+    CharSequence getType1c() {
         return this.type1c;
     }
 
-    public void setType1c(String name) {
-        this.type1c = name;
-    }
-
-    public String getType2() {
+    CharSequence getType2() {
         return this.type2;
     }
 
-    public void setType2(String name) {
-        this.type2 = name;
-    }
-
-    public String getType3() {
+    CharSequence getType3() {
         return this.type3;
     }
 
-    public void setType3(String name) {
-        this.type3 = name;
-    }
-
-    public String getType4() {
+    CharSequence getType4() {
         return this.type4;
     }
 
-    public void setType4(String name) {
-        this.type4 = name;
+    CharSequence getVersion() {
+        return this.version;
     }
 
     public String getThemeName() {
         if (this.themeName == null) {
-            this.themeName = this.mContext.getString(R.string.reboot_awaiting_manager_title);
+            this.setThemeName(this.mContext.getString(R.string.reboot_awaiting_manager_title));
         }
         return this.themeName;
     }
 
     public void setThemeName(String name) {
         this.themeName = name;
+        this.themeText = Html.fromHtml(name, FROM_HTML_MODE_LEGACY);
+    }
+
+    CharSequence getThemeText() {
+        if (this.themeName == null) this.getThemeName();
+        return this.themeText;
     }
 
     public String getLabelName() {
@@ -177,7 +205,6 @@ public class ManagerItem implements Serializable {
 
     private void setLabelName(Context context) {
         String packageName = this.name;
-        String targetPackage = Packages.getOverlayTarget(context, packageName);
         if (packageName.startsWith(SYSTEMUI_HEADERS)) {
             this.labelName = context.getString(R.string.systemui_headers);
         } else if (packageName.startsWith(SYSTEMUI_NAVBARS)) {
@@ -193,23 +220,7 @@ public class ManagerItem implements Serializable {
         } else if (packageName.startsWith(LG_FRAMEWORK)) {
             this.labelName = context.getString(R.string.lg_framework);
         } else {
-            this.labelName = Packages.getPackageName(context, targetPackage);
+            this.labelName = Packages.getPackageName(context, this.targetPackage);
         }
     }
-
-    public Drawable getDrawable() {
-        return this.mDrawable;
-    }
-
-    public void setDrawable(Drawable drawable) {
-        this.mDrawable = drawable;
-    }
-
-    Drawable getTargetDrawable() {
-        return this.mTargetDrawable;
-    }
-
-    void setTargetDrawable(Drawable drawable) {
-        this.mTargetDrawable = drawable;
-    }
 }
\ No newline at end of file
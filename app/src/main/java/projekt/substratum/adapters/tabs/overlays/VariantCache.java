@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.adapters.tabs.overlays;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import projekt.substratum.BuildConfig;
+
+import static projekt.substratum.common.References.SUBSTRATUM_BUILDER;
+
+/**
+ * Persistent cache of the variants parsed from a theme's overlays folder, so that reopening the
+ * same version of a theme does not have to list and decrypt its assets again
+ * <p>
+ * Every theme has its own binary file in the cache directory, which is only used when the theme,
+ * Substratum and the device language are the same as when it was written.
+ */
+public enum VariantCache {
+    ;
+
+    private static final String CACHE_DIR = "variant_cache";
+    private static final String CACHE_EXTENSION = ".bin";
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Load the cached variants of a theme
+     *
+     * @param context   Context
+     * @param theme_pid Package name of the theme
+     * @return Returns the cached variants, or null if they have to be parsed again
+     */
+    public static Snapshot load(Context context,
+                                String theme_pid) {
+        String key = getKey(context, theme_pid);
+        File file = getFile(context, theme_pid);
+        if ((key == null) || !file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in, key);
+        } catch (IOException e) {
+            Log.e(SUBSTRATUM_BUILDER, "Could not read the cached variants of " + theme_pid);
+        }
+        return null;
+    }
+
+    /**
+     * Persist the variants of a theme
+     *
+     * @param context   Context
+     * @param theme_pid Package name of the theme
+     * @param snapshot  Variants of the theme
+     */
+    public static void store(Context context,
+                             String theme_pid,
+                             Snapshot snapshot) {
+        String key = getKey(context, theme_pid);
+        if (key == null) return;
+        File file = getFile(context, theme_pid);
+        File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(SUBSTRATUM_BUILDER, "Could not create the variant cache folder...");
+            return;
+        }
+        File temporary = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            write(out, key, snapshot);
+        } catch (IOException e) {
+            Log.e(SUBSTRATUM_BUILDER, "Could not cache the variants of " + theme_pid);
+            if (!temporary.delete()) Log.e(SUBSTRATUM_BUILDER, "Could not delete " + temporary);
+            return;
+        }
+        if (!temporary.renameTo(file)) {
+            Log.e(SUBSTRATUM_BUILDER, "Could not move the variants of " + theme_pid + " in place");
+            if (!temporary.delete()) Log.e(SUBSTRATUM_BUILDER, "Could not delete " + temporary);
+        }
+    }
+
+    /**
+     * Read the variants of a theme
+     *
+     * @param in  Stream of the cache file
+     * @param key Key the variants have to be stored under
+     * @return Returns the variants, or null if they were stored under another key
+     * @throws IOException If the file could not be read
+     */
+    static Snapshot read(DataInputStream in,
+                         String key) throws IOException {
+        if (!key.equals(in.readUTF())) return null;
+        Snapshot snapshot = new Snapshot();
+        int folders = in.readInt();
+        for (int i = 0; i < folders; i++) {
+            snapshot.overlayFolders.add(in.readUTF());
+        }
+        snapshot.type3.addAll(readItems(in));
+        int overlays = in.readInt();
+        for (int i = 0; i < overlays; i++) {
+            String target = in.readUTF();
+            snapshot.variants.put(target, new Variants(
+                    readItems(in),
+                    readItems(in),
+                    readItems(in),
+                    readItems(in),
+                    readItems(in),
+                    in.readUTF(),
+                    in.readBoolean()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Write the variants of a theme
+     *
+     * @param out      Stream of the cache file
+     * @param key      Key to store the variants under
+     * @param snapshot Variants of the theme
+     * @throws IOException If the file could not be written
+     */
+    static void write(DataOutputStream out,
+                      String key,
+                      Snapshot snapshot) throws IOException {
+        out.writeUTF(key);
+        out.writeInt(snapshot.overlayFolders.size());
+        for (String folder : snapshot.overlayFolders) {
+            out.writeUTF(folder);
+        }
+        writeItems(out, snapshot.type3);
+        out.writeInt(snapshot.variants.size());
+        for (Map.Entry<String, Variants> entry : snapshot.variants.entrySet()) {
+            Variants variants = entry.getValue();
+            out.writeUTF(entry.getKey());
+            writeItems(out, variants.type1a);
+            writeItems(out, variants.type1b);
+            writeItems(out, variants.type1c);
+            writeItems(out, variants.type2);
+            writeItems(out, variants.type4);
+            out.writeUTF(variants.attention);
+            out.writeBoolean(variants.hasVariants);
+        }
+    }
+
+    /**
+     * Remove every cached variant of a theme
+     *
+     * @param context   Context
+     * @param theme_pid Package name of the theme
+     */
+    public static void clear(Context context,
+                             String theme_pid) {
+        File file = getFile(context, theme_pid);
+        if (file.exists() && !file.delete()) {
+            Log.e(SUBSTRATUM_BUILDER, "Could not delete " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Everything the cached variants depend on, a file with another key is stale
+     */
+    private static String getKey(Context context,
+                                 String theme_pid) {
+        try {
+            PackageInfo packageInfo = context.getPackageManager().getPackageInfo(theme_pid, 0);
+            // The spinner labels are formatted from our own strings, in the device's language
+            return FORMAT_VERSION + ":" +
+                    BuildConfig.VERSION_CODE + ':' +
+                    packageInfo.versionCode + ':' +
+                    packageInfo.lastUpdateTime + ':' +
+                    Locale.getDefault().toLanguageTag();
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static File getFile(Context context,
+                                String theme_pid) {
+        return new File(new File(context.getCacheDir(), CACHE_DIR),
+                theme_pid + CACHE_EXTENSION);
+    }
+
+    private static List<VariantItem> readItems(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<VariantItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // Variants that failed to parse are kept as null entries, just like the parser does
+            if (!in.readBoolean()) {
+                items.add(null);
+                continue;
+            }
+            String name = in.readUTF();
+            String hex = in.readBoolean() ? in.readUTF() : null;
+            items.add(new VariantItem(name, hex));
+        }
+        return items;
+    }
+
+    private static void writeItems(DataOutputStream out,
+                                   List<VariantItem> items) throws IOException {
+        out.writeInt(items.size());
+        for (VariantItem item : items) {
+            out.writeBoolean(item != null);
+            if (item == null) continue;
+            out.writeUTF(String.valueOf(item.getVariantName()));
+            out.writeBoolean(!item.isDefaultOption());
+            if (!item.isDefaultOption()) out.writeUTF(item.getVariantHex());
+        }
+    }
+
+    /**
+     * The overlay folders of a theme, its base variants and the variants parsed for each overlay
+     */
+    public static class Snapshot {
+        public final List<String> overlayFolders = new ArrayList<>();
+        public final List<VariantItem> type3 = new ArrayList<>();
+        public final Map<String, Variants> variants = new HashMap<>();
+    }
+
+    /**
+     * The variants of a single overlay
+     */
+    public static class Variants {
+        public final List<VariantItem> type1a;
+        public final List<VariantItem> type1b;
+        public final List<VariantItem> type1c;
+        public final List<VariantItem> type2;
+        public final List<VariantItem> type4;
+        public final String attention;
+        // Overlays that only carry a res folder have no variants to choose from
+        public final boolean hasVariants;
+
+        public Variants(List<VariantItem> type1a,
+                        List<VariantItem> type1b,
+                        List<VariantItem> type1c,
+                        List<VariantItem> type2,
+                        List<VariantItem> type4,
+                        String attention,
+                        boolean hasVariants) {
+            super();
+            this.type1a = type1a;
+            this.type1b = type1b;
+            this.type1c = type1c;
+            this.type2 = type2;
+            this.type4 = type4;
+            this.attention = attention;
+            this.hasVariants = hasVariants;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import android.util.Log;
 
 import projekt.substratum.services.crash.AppCrashReceiver;
 import projekt.substratum.services.packages.OverlayFound;
+import projekt.substratum.services.packages.OverlayStateReceiver;
 import projekt.substratum.services.packages.OverlayUpdater;
 import projekt.substratum.services.packages.PackageModificationDetector;
 import projekt.substratum.services.profiles.ScheduledProfileReceiver;
@@ -27,6 +28,7 @@ import static projekt.substratum.common.References.KEY_RETRIEVAL;
 import static projekt.substratum.common.References.MANAGER_REFRESH;
 import static projekt.substratum.common.References.PACKAGE_ADDED;
 import static projekt.substratum.common.References.PACKAGE_FULLY_REMOVED;
+import static projekt.substratum.common.References.STATUS_CHANGED;
 import static projekt.substratum.common.References.SUBSTRATUM_LOG;
 import static projekt.substratum.common.References.TEMPLATE_RECEIVE_KEYS;
 import static projekt.substratum.common.References.scheduledProfileReceiver;
@@ -139,6 +141,16 @@ public enum Broadcasts {
             IntentFilter intentPackageFullyRemoved = new IntentFilter(PACKAGE_FULLY_REMOVED);
             intentPackageFullyRemoved.addDataScheme("package");
 
+            // Keeps the cached overlay state fresh for every later reader, receivers registered
+            // here that read it on the same broadcast drop it themselves, as the order in which
+            // a normal broadcast reaches them is not guaranteed
+            context.getApplicationContext().registerReceiver(
+                    new OverlayStateReceiver(), intentPackageAdded);
+            context.getApplicationContext().registerReceiver(
+                    new OverlayStateReceiver(), intentPackageFullyRemoved);
+            context.getApplicationContext().registerReceiver(
+                    new OverlayStateReceiver(), new IntentFilter(STATUS_CHANGED));
+
             if (Systems.checkOMS(context)) {
                 IntentFilter intentAppCrashed = new IntentFilter(APP_CRASHED);
                 context.getApplicationContext().registerReceiver(
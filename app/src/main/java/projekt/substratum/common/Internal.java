@@ -122,6 +122,7 @@ public enum Internal {
     public static final String OVERLAY_DIR = "overlay";
     public static final String OVERLAY_STATE_FILE = "overlays.xml";
     public static final String OVERLAY_PROFILE_STATE_FILE = "overlay_state.xml";
+    public static final String OVERLAY_PROFILE_INDEX_FILE = "overlay_state.idx";
     public static final String SYSTEM_OVERLAY = "/system/overlay/";
     public static final String SYSTEM_VENDOR_OVERLAY = "/system/vendor/overlay/";
     public static final String PROFILE_AUDIO = "theme/audio";
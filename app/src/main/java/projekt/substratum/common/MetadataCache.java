@@ -0,0 +1,171 @@
+package projekt.substratum.common;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide cache of the Substratum meta-data of installed packages, so that looking up the
+ * parent, target or version of an overlay does not cost a PackageManager binder call every time
+ */
+enum MetadataCache {
+    ;
+
+    private static final String METADATA_PREFIX = "Substratum_";
+    private static final int MAX_ENTRIES = 512;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    // Access ordered, so the least recently used package is dropped once the cache is full
+    private static final Map<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    /**
+     * Obtain the cached meta-data of a package, loading it if it has not been seen yet or if its
+     * APK has been replaced since
+     *
+     * @param context      Context
+     * @param package_name Package name
+     * @return Returns the entry of the package, or null if it is not installed
+     */
+    static Entry get(Context context, String package_name) {
+        return get(package_name, name -> context.getPackageManager().getApplicationInfo(
+                name, PackageManager.GET_META_DATA));
+    }
+
+    /**
+     * Same as {@link #get(Context, String)}, with the PackageManager lookup handed in
+     *
+     * @param package_name Package name
+     * @param lookup       Loads the application info of a package along with its meta-data
+     * @return Returns the entry of the package, or null if it is not installed
+     */
+    static Entry get(String package_name, Lookup lookup) {
+        if (package_name == null) return null;
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(package_name);
+        }
+        // An update always writes a new APK, a stat is far cheaper than asking the PackageManager
+        if ((entry != null) && (new File(entry.sourceDir).lastModified() == entry.lastUpdate)) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        try {
+            entry = new Entry(lookup.get(package_name));
+        } catch (PackageManager.NameNotFoundException e) {
+            invalidate(package_name);
+            return null;
+        }
+        synchronized (entries) {
+            entries.put(package_name, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Drop a package from the cache
+     *
+     * @param package_name Package name
+     */
+    static void invalidate(String package_name) {
+        synchronized (entries) {
+            entries.remove(package_name);
+        }
+    }
+
+    static long getHits() {
+        return hits.get();
+    }
+
+    static long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Loads the application info of a package
+     */
+    interface Lookup {
+        ApplicationInfo get(String package_name) throws PackageManager.NameNotFoundException;
+    }
+
+    /**
+     * Substratum meta-data of a single package
+     */
+    static final class Entry {
+        final boolean hasMetadata;
+        private final ApplicationInfo appInfo;
+        private final String sourceDir;
+        private final long lastUpdate;
+        private final Map<String, Object> metadata = new HashMap<>();
+        private Locale labelLocale;
+        private String label;
+
+        private Entry(ApplicationInfo appInfo) {
+            super();
+            this.appInfo = appInfo;
+            this.sourceDir = appInfo.sourceDir;
+            this.lastUpdate = new File(appInfo.sourceDir).lastModified();
+            Bundle bundle = appInfo.metaData;
+            this.hasMetadata = bundle != null;
+            if (bundle != null) {
+                // Keep every Substratum field, the rest of the bundle is of no use to us
+                for (String key : bundle.keySet()) {
+                    if (key.startsWith(METADATA_PREFIX)) metadata.put(key, bundle.get(key));
+                }
+            }
+        }
+
+        /**
+         * Same as {@link Bundle#getString(String)}, null if missing or not a string
+         */
+        String getString(String key) {
+            Object value = metadata.get(key);
+            return (value instanceof String) ? (String) value : null;
+        }
+
+        /**
+         * Same as {@link Bundle#getBoolean(String)}, false if missing or not a boolean
+         */
+        boolean getBoolean(String key) {
+            Object value = metadata.get(key);
+            return (value instanceof Boolean) && (Boolean) value;
+        }
+
+        /**
+         * Same as {@link Bundle#getInt(String)}, 0 if missing or not an integer
+         */
+        int getInt(String key) {
+            Object value = metadata.get(key);
+            return (value instanceof Integer) ? (Integer) value : 0;
+        }
+
+        /**
+         * Obtain the application label, reloaded whenever the device's language changes
+         *
+         * @param context Context
+         * @return Returns the label of the package
+         */
+        synchronized String getLabel(Context context) {
+            Locale locale = Locale.getDefault();
+            if ((label == null) || !locale.equals(labelLocale)) {
+                label = String.valueOf(context.getPackageManager().getApplicationLabel(appInfo));
+                labelLocale = locale;
+            }
+            return label;
+        }
+    }
+}
@@ -17,22 +17,14 @@ import android.graphics.drawable.ShapeDrawable;
 import android.graphics.drawable.VectorDrawable;
 import android.os.Build;
 import android.preference.PreferenceManager;
+import android.support.v4.util.Pair;
 import android.util.Log;
 
-import org.apache.commons.io.IOUtils;
-
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import projekt.substratum.R;
 import projekt.substratum.common.analytics.PackageAnalytics;
@@ -43,7 +35,6 @@ import projekt.substratum.util.readers.ReadVariantPrioritizedColor;
 
 import static projekt.substratum.common.References.ENABLE_PACKAGE_LOGGING;
 import static projekt.substratum.common.References.INTERFACER_PACKAGE;
-import static projekt.substratum.common.References.SUBSTRATUM_LOG;
 import static projekt.substratum.common.References.SUBSTRATUM_PACKAGE;
 import static projekt.substratum.common.References.SUBSTRATUM_THEME;
 import static projekt.substratum.common.References.heroImageGridResourceName;
@@ -292,14 +283,9 @@ public enum Packages {
      */
     public static int getOverlaySubstratumVersion(Context context,
                                                   String package_name) {
-        try {
-            ApplicationInfo appInfo = context.getPackageManager().getApplicationInfo(
-                    package_name, PackageManager.GET_META_DATA);
-            if (appInfo.metaData != null) {
-                return appInfo.metaData.getInt(metadataOverlayVersion);
-            }
-        } catch (Exception e) {
-            // Suppress warning
+        MetadataCache.Entry entry = MetadataCache.get(context, package_name);
+        if ((entry != null) && entry.hasMetadata) {
+            return entry.getInt(metadataOverlayVersion);
         }
         return 0;
     }
@@ -313,15 +299,9 @@ public enum Packages {
      */
     public static Drawable getOverlayParentIcon(Context context,
                                                 String package_name) {
-        try {
-            ApplicationInfo appInfo = context.getPackageManager().getApplicationInfo(
-                    package_name, PackageManager.GET_META_DATA);
-            if ((appInfo.metaData != null) &&
-                    (appInfo.metaData.getString(metadataOverlayParent) != null)) {
-                return getAppIcon(context, appInfo.metaData.getString(metadataOverlayParent));
-            }
-        } catch (Exception e) {
-            // Suppress warning
+        String parent = getOverlayParent(context, package_name);
+        if (parent != null) {
+            return getAppIcon(context, parent);
         }
         return getAppIcon(context, package_name);
     }
@@ -516,32 +496,46 @@ public enum Packages {
             Context mContext,
             String package_name,
             String metadata) {
-        try {
-            ApplicationInfo appInfo = mContext.getPackageManager().getApplicationInfo(
-                    package_name, PackageManager.GET_META_DATA);
-            if (appInfo.metaData != null) {
-                if (metadata.equals(metadataSamsungSupport)) {
-                    try {
-                        boolean samsungSupport = appInfo.metaData.getBoolean(metadata);
-                        return String.valueOf(samsungSupport);
-                    } catch (Exception e) {
-                        return String.valueOf(true);
-                    }
-                } else {
-                    String returnMetadata = appInfo.metaData.getString(metadata);
-                    if (returnMetadata != null) {
-                        return returnMetadata;
-                    } else {
-                        throw new Exception();
-                    }
-                }
+        MetadataCache.Entry entry = MetadataCache.get(mContext, package_name);
+        if ((entry != null) && entry.hasMetadata) {
+            if (metadata.equals(metadataSamsungSupport)) {
+                return String.valueOf(entry.getBoolean(metadata));
             }
-        } catch (Exception e) {
-            // Suppress warning
+            return entry.getString(metadata);
         }
         return null;
     }
 
+    /**
+     * Drop the cached metadata of a package, called when it has been installed, updated or removed
+     *
+     * @param package_name Package name
+     */
+    public static void invalidateMetadata(String package_name) {
+        MetadataCache.invalidate(package_name);
+        Log.d(PACKAGE_TAG, "Dropped the cached metadata of [" + package_name + "], " +
+                getMetadataCacheHits() + " lookups have been served from the cache and " +
+                getMetadataCacheMisses() + " have asked the PackageManager so far.");
+    }
+
+    /**
+     * Obtain the amount of metadata lookups served from the cache
+     *
+     * @return Returns the amount of cache hits since the process started
+     */
+    public static long getMetadataCacheHits() {
+        return MetadataCache.getHits();
+    }
+
+    /**
+     * Obtain the amount of metadata lookups that had to ask the PackageManager
+     *
+     * @return Returns the amount of cache misses since the process started
+     */
+    public static long getMetadataCacheMisses() {
+        return MetadataCache.getMisses();
+    }
+
     /**
      * Obtain a resource pointer from any package installed on the device
      *
@@ -655,8 +649,7 @@ public enum Packages {
      */
     public static String getPackageName(Context mContext,
                                         String package_name) {
-        PackageManager pm = mContext.getPackageManager();
-        ApplicationInfo ai;
+        MetadataCache.Entry entry;
         try {
             switch (package_name) {
                 case SYSTEMUI_NAVBARS:
@@ -674,11 +667,11 @@ public enum Packages {
                 case LG_FRAMEWORK:
                     return mContext.getString(R.string.lg_framework);
             }
-            ai = pm.getApplicationInfo(package_name, 0);
+            entry = MetadataCache.get(mContext, package_name);
         } catch (Exception e) {
-            ai = null;
+            entry = null;
         }
-        return (String) ((ai != null) ? pm.getApplicationLabel(ai) : null);
+        return (entry != null) ? entry.getLabel(mContext) : null;
     }
 
     /**
@@ -861,8 +854,6 @@ public enum Packages {
                             appInfo.metaData.getString(metadataAuthor),
                             packageName
                     };
-                    // Take the other package's context
-                    Context other = context.createPackageContext(packageName, 0);
                     // Check if it is wallpaper mode, if it is, bail out early
                     if (home_type.equals(wallpaperFragment)) {
                         String wallpaperCheck = appInfo.metaData.getString
@@ -879,20 +870,9 @@ public enum Packages {
                                 PackageAnalytics.logPackageInfo(context, packageName);
                         } else {
                             // We now have to open a specific fragment
-                            try (ZipFile zf = new ZipFile(other.getApplicationInfo().sourceDir)) {
-                                for (Enumeration<? extends ZipEntry> e = zf.entries();
-                                     e.hasMoreElements(); ) {
-                                    ZipEntry ze = e.nextElement();
-                                    String name = ze.getName();
-                                    if (name.startsWith("assets/" + home_type + '/')) {
-                                        returnMap.put(
-                                                appInfo.metaData.getString(metadataName),
-                                                data);
-                                        break;
-                                    }
-                                }
-                            } catch (Exception e) {
-                                Log.e(SUBSTRATUM_LOG, "Unable to find package identifier");
+                            if (ThemeAssetIndex.getAssetFolders(context, appInfo)
+                                    .contains(home_type.toString())) {
+                                returnMap.put(appInfo.metaData.getString(metadataName), data);
                             }
                         }
                     }
@@ -915,40 +895,11 @@ public enum Packages {
      * @return String of overlay's resource
      */
     public static String getOverlayResource(InputStream overlay) {
-        byte[] byteArray;
-        try {
-            byteArray = IOUtils.toByteArray(overlay);
-        } catch (IOException e) {
-            Log.e(SUBSTRATUM_LOG, "Unable to clone InputStream");
-            return null;
-        }
-
-        String hex = null;
-        // We need to clone the InputStream so that we can ensure that the name and color are
-        // mutually exclusive
-        try (InputStream clone1 = new ByteArrayInputStream(byteArray);
-             InputStream clone2 = new ByteArrayInputStream(byteArray)) {
-            // Find the name of the top most color in the file first.
-            String resource_name = ReadVariantPrioritizedColor.read(clone1);
-
-            if (resource_name != null) {
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(clone2))) {
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        if (line.contains('"' + resource_name + '"')) {
-                            String[] split =
-                                    line.substring(line.lastIndexOf("\">") + 2).split("<");
-                            hex = split[0];
-                            if (hex.startsWith("?")) hex = "#00000000";
-                        }
-                    }
-                } catch (IOException ioe) {
-                    Log.e(SUBSTRATUM_LOG, "Unable to find " + resource_name + " in this overlay!");
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        // Name and value of the top most color in the file
+        Pair<String, String> color = ReadVariantPrioritizedColor.read(overlay);
+        if ((color == null) || (color.first == null)) return null;
+        String hex = color.second;
+        if (hex.startsWith("?")) hex = "#00000000";
         return hex;
     }
 
@@ -174,6 +174,7 @@ public enum References {
     public static final String LOGCHAR_DIR = Environment.getExternalStorageDirectory()
             .getAbsolutePath() + "/substratum" + File.separator + "LogCharReports";
     public static final String SUBSTRATUM_BUILDER_CACHE = "/SubstratumBuilder/";
+    public static final String SUBSTRATUM_BUILD_CACHE = EXTERNAL_STORAGE_CACHE + "BuildCache/";
     // These strings control the legacy overlay location
     public static final String DATA_RESOURCE_DIR = "/data/resource-cache/";
     public static final String PIXEL_NEXUS_DIR = "/system/overlay/";
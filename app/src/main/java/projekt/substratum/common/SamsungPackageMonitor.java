@@ -0,0 +1,128 @@
+package projekt.substratum.common;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static projekt.substratum.common.References.PACKAGE_ADDED;
+
+/**
+ * Keeps the overlay lists of Samsung devices up to date while Substratum is open, by following
+ * the package broadcasts instead of asking the PackageManager for every installed app each second
+ * <p>
+ * The installed packages are listed once when the monitor starts, every broadcast after that
+ * only adds or removes a single package from that set.
+ */
+public enum SamsungPackageMonitor {
+    ;
+
+    private static final String TAG = "SamsungPackageMonitor";
+    private static final Set<String> packages = new HashSet<>();
+    private static final AtomicLong wakeups = new AtomicLong();
+    private static final AtomicLong refreshes = new AtomicLong();
+    private static final AtomicLong cpuTimeNanos = new AtomicLong();
+    private static PackageReceiver receiver;
+
+    /**
+     * Start following package changes, does nothing if the monitor is already running
+     *
+     * @param context Context
+     */
+    public static synchronized void start(Context context) {
+        if (receiver != null) return;
+        Context appContext = context.getApplicationContext();
+        long start = Debug.threadCpuTimeNanos();
+        synchronized (packages) {
+            packages.clear();
+            for (ApplicationInfo appInfo :
+                    appContext.getPackageManager().getInstalledApplications(0)) {
+                packages.add(appInfo.packageName);
+            }
+        }
+        IntentFilter filter = new IntentFilter(PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        receiver = new PackageReceiver();
+        appContext.registerReceiver(receiver, filter);
+        cpuTimeNanos.addAndGet(Debug.threadCpuTimeNanos() - start);
+        Log.d(TAG, "The overlay package refresher for Samsung devices has been fully loaded.");
+    }
+
+    /**
+     * Stop following package changes
+     *
+     * @param context Context
+     */
+    public static synchronized void stop(Context context) {
+        if (receiver == null) return;
+        try {
+            context.getApplicationContext().unregisterReceiver(receiver);
+        } catch (IllegalArgumentException e) {
+            // Already unregistered
+        }
+        receiver = null;
+        synchronized (packages) {
+            packages.clear();
+        }
+        Log.d(TAG, "The overlay package refresher for Samsung devices is now stopping! " +
+                "Woke up " + wakeups.get() + " times, refreshed " + refreshes.get() +
+                " times, spent " + (cpuTimeNanos.get() / 1000000L) + " ms of CPU time.");
+    }
+
+    public static synchronized boolean isRunning() {
+        return receiver != null;
+    }
+
+    /**
+     * Number of times the monitor has been woken up by a package broadcast
+     */
+    public static long getWakeups() {
+        return wakeups.get();
+    }
+
+    /**
+     * Number of times a package change has caused the overlay lists to be refreshed
+     */
+    public static long getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * CPU time spent by the monitor on listing the packages and handling broadcasts
+     */
+    public static long getCpuTimeNanos() {
+        return cpuTimeNanos.get();
+    }
+
+    private static class PackageReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getData() == null) return;
+            long start = Debug.threadCpuTimeNanos();
+            wakeups.incrementAndGet();
+            // An update is removed and added again under the same name, the set stays the same
+            if (!intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+                String packageName = intent.getData().getEncodedSchemeSpecificPart();
+                boolean changed;
+                synchronized (packages) {
+                    changed = PACKAGE_ADDED.equals(intent.getAction()) ?
+                            packages.add(packageName) :
+                            packages.remove(packageName);
+                }
+                if (changed) {
+                    refreshes.incrementAndGet();
+                    Broadcasts.sendOverlayRefreshMessage(context);
+                }
+            }
+            cpuTimeNanos.addAndGet(Debug.threadCpuTimeNanos() - start);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package projekt.substratum.common;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static projekt.substratum.common.References.SUBSTRATUM_LOG;
+import static projekt.substratum.common.References.overlaysFragment;
+
+/**
+ * Persistent index of the asset folders and overlay targets every theme ships, so that filtering
+ * the themes by home type or by target does not have to open and walk every theme APK
+ * <p>
+ * Entries are tied to the modification time of the theme's APK, an update always writes a new APK
+ * so an updated theme is simply indexed again.
+ */
+public enum ThemeAssetIndex {
+    ;
+
+    private static final String INDEX_PREFERENCES = "theme_asset_index";
+    private static final String ASSETS = "assets/";
+    private static final String UPDATE_SUFFIX = "_update";
+    private static final String FOLDERS_SUFFIX = "_folders";
+    private static final String TARGETS_SUFFIX = "_targets";
+
+    /**
+     * Obtain the top level asset folders of a theme, such as overlays, bootanimation or fonts
+     *
+     * @param context Context
+     * @param appInfo Application info of the theme
+     * @return Returns the asset folders of the theme
+     */
+    public static Set<String> getAssetFolders(Context context,
+                                              ApplicationInfo appInfo) {
+        return getIndexed(context, appInfo, FOLDERS_SUFFIX);
+    }
+
+    /**
+     * Obtain the packages a theme ships overlays for
+     *
+     * @param context Context
+     * @param appInfo Application info of the theme
+     * @return Returns the overlay targets of the theme
+     */
+    public static Set<String> getOverlayTargets(Context context,
+                                                ApplicationInfo appInfo) {
+        return getIndexed(context, appInfo, TARGETS_SUFFIX);
+    }
+
+    /**
+     * Drop a theme from the index, called when it has been uninstalled
+     *
+     * @param context      Context
+     * @param package_name Package name of the theme
+     */
+    public static synchronized void remove(Context context,
+                                           String package_name) {
+        getPreferences(context).edit()
+                .remove(package_name + UPDATE_SUFFIX)
+                .remove(package_name + FOLDERS_SUFFIX)
+                .remove(package_name + TARGETS_SUFFIX)
+                .apply();
+    }
+
+    private static synchronized Set<String> getIndexed(Context context,
+                                                       ApplicationInfo appInfo,
+                                                       String suffix) {
+        String package_name = appInfo.packageName;
+        // A stat is far cheaper than asking the PackageManager for the lastUpdateTime
+        long lastUpdate = new File(appInfo.sourceDir).lastModified();
+        SharedPreferences prefs = getPreferences(context);
+        if (prefs.getLong(package_name + UPDATE_SUFFIX, 0L) != lastUpdate) {
+            Set<String> folders = new HashSet<>();
+            Set<String> targets = new HashSet<>();
+            if (!index(appInfo.sourceDir, folders, targets)) {
+                // Do not remember a theme that could not be read, it may work next time
+                return Collections.emptySet();
+            }
+            prefs.edit()
+                    .putLong(package_name + UPDATE_SUFFIX, lastUpdate)
+                    .putStringSet(package_name + FOLDERS_SUFFIX, folders)
+                    .putStringSet(package_name + TARGETS_SUFFIX, targets)
+                    .apply();
+            return (FOLDERS_SUFFIX.equals(suffix)) ? folders : targets;
+        }
+        return prefs.getStringSet(package_name + suffix, Collections.emptySet());
+    }
+
+    /**
+     * Walk the entries of a theme APK once and record what it ships
+     *
+     * @param apk     Path of the theme APK
+     * @param folders Set receiving the top level asset folders
+     * @param targets Set receiving the overlay targets
+     * @return True, if the APK could be read
+     */
+    static boolean index(String apk,
+                         Set<String> folders,
+                         Set<String> targets) {
+        String overlays = ASSETS + overlaysFragment + '/';
+        try (ZipFile zf = new ZipFile(apk)) {
+            for (Enumeration<? extends ZipEntry> e = zf.entries(); e.hasMoreElements(); ) {
+                String name = e.nextElement().getName();
+                if (!name.startsWith(ASSETS)) continue;
+                int folderEnd = name.indexOf('/', ASSETS.length());
+                // Only files inside of a folder count, loose files in assets/ are not a home type
+                if (folderEnd < 0) continue;
+                folders.add(name.substring(ASSETS.length(), folderEnd));
+                if (name.startsWith(overlays)) {
+                    int targetEnd = name.indexOf('/', overlays.length());
+                    if (targetEnd > overlays.length()) {
+                        targets.add(name.substring(overlays.length(), targetEnd));
+                    }
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(SUBSTRATUM_LOG, "Unable to index the assets of " + apk);
+        }
+        return false;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(INDEX_PREFERENCES, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.common.commands;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static projekt.substratum.common.Internal.ENCRYPTED_FILE_EXTENSION;
+import static projekt.substratum.common.commands.FileOperations.DA_LOG;
+
+/**
+ * Per-theme mirror of extracted (and decrypted) overlay assets
+ * <p>
+ * Every asset folder is extracted from the theme APK the first time it is needed for the
+ * installed version of the theme. Work areas are then assembled from hard links into the mirror,
+ * so compiling an overlay again does not copy a single byte out of the APK. aapt only ever reads
+ * the work area and new files are written next to the links, so the mirror is never modified
+ * through them.
+ */
+public enum AssetMirror {
+    ;
+
+    private static final String MIRROR_DIR = "asset_mirror";
+    // Only written once every file of a folder has been extracted, holding the amount of them
+    private static final String COMPLETE_SUFFIX = ".mirrored";
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Place an asset folder or file of a theme into a work area, same as
+     * {@link FileOperations#copyFileOrDir} with listDir as the remembered prefix
+     *
+     * @param context      Context
+     * @param theme_pid    Package name of the theme
+     * @param assetManager Asset manager of the theme
+     * @param listDir      Asset folder or file
+     * @param destination  Destination inside of the work area
+     * @param ciphers      Creates the cipher of every encrypted file, null if not encrypted
+     * @param stats        Stats to add the placed files to
+     * @return True, if the assets have been placed into the work area
+     */
+    public static boolean link(Context context,
+                               String theme_pid,
+                               AssetManager assetManager,
+                               String listDir,
+                               String destination,
+                               DirectAssets.CipherFactory ciphers,
+                               DirectAssets.Stats stats) {
+        File mirror = getMirror(context, theme_pid);
+        if (mirror == null) {
+            return FileOperations.copyFileOrDir(
+                    assetManager, listDir, destination, listDir, ciphers, stats);
+        }
+        String path = listDir.replaceAll("\\s+", "");
+        File source = stripEncryption(new File(mirror, path), ciphers);
+        File target = stripEncryption(new File(destination), ciphers);
+        File marker = new File(mirror, path + COMPLETE_SUFFIX);
+
+        Object lock = locks.computeIfAbsent(marker.getAbsolutePath(), k -> new Object());
+        synchronized (lock) {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                int expected = readMarker(marker);
+                if (expected < 0) {
+                    expected = extract(assetManager, listDir, new File(mirror, path), marker,
+                            ciphers);
+                    if (expected < 0) {
+                        // Never link a partial mirror, place what can be straight from the APK
+                        FileOperations.delete(context, source.getAbsolutePath());
+                        return FileOperations.copyFileOrDir(
+                                assetManager, listDir, destination, listDir, ciphers, stats);
+                    }
+                }
+                DirectAssets.Stats linked = new DirectAssets.Stats();
+                if (linkTree(source, target, linked) && (linked.getFiles() == expected)) {
+                    stats.add(linked);
+                    return true;
+                }
+                // Part of the mirror has been trimmed away with the cache, extract it again
+                Log.d(DA_LOG, "Mirror of " + listDir + " is incomplete, extracting again...");
+                FileOperations.delete(context, marker.getAbsolutePath());
+                FileOperations.delete(context, source.getAbsolutePath());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove the mirror of a theme, called when it has been uninstalled
+     *
+     * @param context   Context
+     * @param theme_pid Package name of the theme
+     */
+    public static void clear(Context context,
+                             String theme_pid) {
+        File mirrors = new File(new File(context.getCacheDir(), MIRROR_DIR), theme_pid);
+        if (mirrors.exists()) FileOperations.delete(context, mirrors.getAbsolutePath());
+    }
+
+    /**
+     * Obtain the mirror of the installed version of a theme, dropping those of older versions
+     *
+     * @return Returns the mirror's folder, or null if the theme is not installed
+     */
+    private static File getMirror(Context context,
+                                  String theme_pid) {
+        PackageInfo packageInfo;
+        try {
+            packageInfo = context.getPackageManager().getPackageInfo(theme_pid, 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+        // Versioned folders are filtered against the running system while extracting
+        String version = packageInfo.versionCode + "_" + packageInfo.lastUpdateTime + '_' +
+                Build.VERSION.SDK_INT;
+        File mirrors = new File(new File(context.getCacheDir(), MIRROR_DIR), theme_pid);
+        synchronized (AssetMirror.class) {
+            File[] stale = mirrors.listFiles(file -> !version.equals(file.getName()));
+            if (stale != null) {
+                for (File file : stale) FileOperations.delete(context, file.getAbsolutePath());
+            }
+            File mirror = new File(mirrors, version);
+            if (!mirror.exists() && !mirror.mkdirs()) {
+                Log.e(DA_LOG, "Could not create the asset mirror of " + theme_pid);
+                return null;
+            }
+            return mirror;
+        }
+    }
+
+    /**
+     * Extract an asset folder or file into the mirror, decrypting it on the way
+     *
+     * @param destination Mirrored path of listDir, the encryption extension is stripped from the
+     *                    extracted files by {@link DirectAssets}
+     * @return Returns the amount of files extracted, or -1 if not every file could be
+     */
+    private static int extract(AssetManager assetManager,
+                               String listDir,
+                               File destination,
+                               File marker,
+                               DirectAssets.CipherFactory ciphers) {
+        File parent = destination.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) return -1;
+        DirectAssets.Stats extracted = new DirectAssets.Stats();
+        if (!DirectAssets.extract(assetManager, listDir, destination.getAbsolutePath(), listDir,
+                ciphers, extracted)) {
+            return -1;
+        }
+        if (!extracted.getFailed().isEmpty()) {
+            Log.e(DA_LOG, "Could not mirror " + extracted.getFailed().size() + " files of " +
+                    listDir + ", such as " + extracted.getFailed().get(0));
+            return -1;
+        }
+        try {
+            FileUtils.writeStringToFile(marker,
+                    String.valueOf(extracted.getFiles()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.e(DA_LOG, "Could not complete the mirror of " + listDir);
+            return -1;
+        }
+        return extracted.getFiles();
+    }
+
+    private static int readMarker(File marker) {
+        if (!marker.isFile()) return -1;
+        try {
+            return Integer.parseInt(
+                    FileUtils.readFileToString(marker, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Recreate a mirrored tree as hard links, replacing files that are already in place
+     *
+     * @return False, if a file could neither be linked nor copied
+     */
+    private static boolean linkTree(File source,
+                                    File target,
+                                    DirectAssets.Stats stats) {
+        if (source.isDirectory()) {
+            if (!target.exists() && !target.mkdirs()) return false;
+            File[] children = source.listFiles();
+            if (children == null) return false;
+            for (File child : children) {
+                if (!linkTree(child, new File(target, child.getName()), stats)) return false;
+            }
+            return true;
+        }
+        if (!source.isFile()) return false;
+        if (target.exists() && !target.delete()) return false;
+        try {
+            Os.link(source.getAbsolutePath(), target.getAbsolutePath());
+        } catch (ErrnoException e) {
+            // Work areas outside of the cache partition cannot link, copy those instead
+            try {
+                FileUtils.copyFile(source, target);
+            } catch (IOException ioe) {
+                Log.e(DA_LOG, "Could not place " + target.getAbsolutePath());
+                return false;
+            }
+        }
+        stats.add(source.length());
+        return true;
+    }
+
+    private static File stripEncryption(File file,
+                                        DirectAssets.CipherFactory ciphers) {
+        String path = file.getAbsolutePath();
+        return ((ciphers != null) && path.endsWith(ENCRYPTED_FILE_EXTENSION)) ?
+                new File(path.substring(0, path.length() - ENCRYPTED_FILE_EXTENSION.length())) :
+                file;
+    }
+}
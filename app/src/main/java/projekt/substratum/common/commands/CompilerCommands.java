@@ -269,24 +269,4 @@ public enum CompilerCommands {
         return sb.toString();
     }
 
-    /**
-     * Create the ZipAlign shell commands
-     *
-     * @param context     Context
-     * @param source      Source
-     * @param destination Destination
-     * @return Returns a string that is executable by the application
-     */
-    public static String createZipAlignShellCommands(Context context,
-                                                     String source,
-                                                     String destination) {
-        // Initialize the ZipAlign command
-        String ret = context.getFilesDir().getAbsolutePath() + "/zipalign 4 ";
-        // Supply the source
-        ret += source + ' ';
-        // Supply the destination
-        ret += destination;
-
-        return ret;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.common.commands;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+
+import static projekt.substratum.common.Internal.BYTE_ACCESS_RATE;
+import static projekt.substratum.common.Internal.ENCRYPTED_FILE_EXTENSION;
+import static projekt.substratum.common.References.ENABLE_DIRECT_ASSETS_LOGGING;
+import static projekt.substratum.common.commands.FileOperations.DA_LOG;
+
+/**
+ * Extraction engine behind {@link FileOperations#copyFileOrDir}
+ * <p>
+ * The asset subtree is listed once up front, then the files are copied on a bounded pool.
+ * Unencrypted assets that are stored uncompressed in the APK are transferred channel to channel,
+ * everything else is streamed. Ciphers cannot be shared between threads, so encrypted assets are
+ * only decrypted on the pool when the caller hands over a {@link CipherFactory}, each file then
+ * gets its own Cipher. A single Cipher keeps them on the calling thread.
+ */
+public enum DirectAssets {
+    ;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // Shared by every extraction, the tasks never wait on anything so callers cannot starve it
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Extract a file or a folder from the assets of a theme, decrypting on the calling thread
+     *
+     * @param assetManager Take the asset manager context from the theme package
+     * @param listDir      The expected list directory inside the assets folder
+     * @param destination  Output directory on where we should be caching
+     * @param remember     Prefix of listDir to be stripped from the extracted paths
+     * @param cipher       Encryption key
+     * @param stats        Stats to add the extracted files to
+     * @return True, if the assets have been listed, even if single files failed to copy, those
+     * are reported through {@link Stats#getFailed()}
+     */
+    static boolean extract(AssetManager assetManager,
+                           String listDir,
+                           String destination,
+                           String remember,
+                           Cipher cipher,
+                           Stats stats) {
+        return extract(assetManager, listDir, destination, remember,
+                (cipher != null) ? () -> cipher : null, false, stats);
+    }
+
+    /**
+     * Extract a file or a folder from the assets of a theme, decrypting on the pool
+     *
+     * @param assetManager Take the asset manager context from the theme package
+     * @param listDir      The expected list directory inside the assets folder
+     * @param destination  Output directory on where we should be caching
+     * @param remember     Prefix of listDir to be stripped from the extracted paths
+     * @param ciphers      Creates the Cipher of every encrypted file, null if not encrypted
+     * @param stats        Stats to add the extracted files to
+     * @return True, if the assets have been listed, even if single files failed to copy, those
+     * are reported through {@link Stats#getFailed()}
+     */
+    static boolean extract(AssetManager assetManager,
+                           String listDir,
+                           String destination,
+                           String remember,
+                           CipherFactory ciphers,
+                           Stats stats) {
+        return extract(assetManager, listDir, destination, remember, ciphers, true, stats);
+    }
+
+    private static boolean extract(AssetManager assetManager,
+                                   String listDir,
+                                   String destination,
+                                   String remember,
+                                   CipherFactory ciphers,
+                                   boolean decryptOnPool,
+                                   Stats stats) {
+        List<String> files = new ArrayList<>();
+        try {
+            if (!enumerate(assetManager, listDir, destination, remember, files)) return false;
+        } catch (IOException ex) {
+            if (ENABLE_DIRECT_ASSETS_LOGGING)
+                Log.e(DA_LOG, "An IOException has been reached: " + ex.getMessage());
+            return false;
+        }
+
+        String strippedRemember = WHITESPACE.matcher(remember).replaceAll("");
+        List<Future<Boolean>> copies = new ArrayList<>();
+        List<String> pooled = new ArrayList<>();
+        List<String> encrypted = new ArrayList<>();
+        for (String file : files) {
+            if (!decryptOnPool && file.endsWith(ENCRYPTED_FILE_EXTENSION)) {
+                encrypted.add(file);
+            } else {
+                pooled.add(file);
+                copies.add(pool.submit(() ->
+                        copyFile(assetManager, file, destination, strippedRemember, ciphers,
+                                stats)));
+            }
+        }
+        for (String file : encrypted) {
+            copyFile(assetManager, file, destination, strippedRemember, ciphers, stats);
+        }
+        for (int i = 0; i < copies.size(); i++) {
+            try {
+                copies.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                stats.fail(pooled.get(i));
+            }
+        }
+        if (ENABLE_DIRECT_ASSETS_LOGGING)
+            Log.d(DA_LOG, "Extracted " + stats.getFiles() + " files (" + stats.getBytes() +
+                    " bytes) so far from " + listDir);
+        return true;
+    }
+
+    /**
+     * Walk the asset subtree once, creating the folders on the way and collecting the files
+     *
+     * @return False, if the root has been skipped for the running system version
+     */
+    private static boolean enumerate(AssetManager assetManager,
+                                     String listDir,
+                                     String destination,
+                                     String remember,
+                                     List<String> files) throws IOException {
+        if (!isSupportedVersion(listDir)) return false;
+        String[] assets = assetManager.list(listDir);
+        if (assets.length == 0) {
+            // When asset[] is empty, it is not iterable, hence it is a file
+            files.add(listDir);
+            return true;
+        }
+        // This will be a folder if the size is greater than 0
+        File dir = new File(WHITESPACE.matcher(
+                destination + '/' + listDir.substring(remember.length())).replaceAll(""));
+        if (!dir.exists()) {
+            Log.d(DA_LOG, "Attempting to copy: " + dir.getAbsolutePath() + '/');
+            Log.d(DA_LOG, "File operation status: " +
+                    ((dir.mkdir()) ? "Success!" : "Failed"));
+        }
+        for (String asset : assets) {
+            enumerate(assetManager, listDir + '/' + asset, destination, remember, files);
+        }
+        return true;
+    }
+
+    /**
+     * Folders named "-vXX" are only extracted on API level XX and up
+     *
+     * @param listDir Asset path
+     * @return True, if the path should be extracted on the running system
+     */
+    private static boolean isSupportedVersion(String listDir) {
+        String ending = listDir.substring(listDir.length() - 4);
+        if (ending.startsWith("-v")) {
+            // At this point, we can be safe to assume that it is going to be "-vXX" format
+            // rather than the sheer amount of possibilities of having API 9 and below
+            int parsedVer;
+            try {
+                parsedVer = Integer.parseInt(ending.substring(2));
+            } catch (NumberFormatException e) {
+                return true;
+            }
+            if (Build.VERSION.SDK_INT < parsedVer) {
+                if (ENABLE_DIRECT_ASSETS_LOGGING)
+                    Log.d(DA_LOG,
+                            "Folder does not need to be copied on non-matching system version: " +
+                                    Build.VERSION.SDK_INT + " is smaller than " + parsedVer + ".");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy a single asset, a file that could not be copied is added to the failures of the stats
+     *
+     * @return Returns a boolean informing whether the file has been successfully copied
+     */
+    private static boolean copyFile(AssetManager assetManager,
+                                    String filename,
+                                    String destination,
+                                    String strippedRemember,
+                                    CipherFactory ciphers,
+                                    Stats stats) {
+        boolean encrypted = filename.endsWith(ENCRYPTED_FILE_EXTENSION);
+        if (encrypted && (ciphers == null)) {
+            stats.fail(filename);
+            return false;
+        }
+        String destinationFile = destination + WHITESPACE.matcher(filename).replaceAll("")
+                .substring(strippedRemember.length());
+        if (ciphers != null) {
+            destinationFile = destinationFile.substring(0, destinationFile.length() - 4);
+        }
+        try {
+            long bytes = encrypted ?
+                    streamFile(new CipherInputStream(assetManager.open(filename),
+                            ciphers.newCipher()), destinationFile) :
+                    transferFile(assetManager, filename, destinationFile);
+            stats.add(bytes);
+            return true;
+        } catch (IOException | GeneralSecurityException e) {
+            e.printStackTrace();
+            if (ENABLE_DIRECT_ASSETS_LOGGING)
+                Log.e(DA_LOG, "An exception has been reached: " + e.getMessage());
+        }
+        stats.fail(filename);
+        return false;
+    }
+
+    /**
+     * Copy an unencrypted asset without going through a Java buffer where possible
+     *
+     * @return Returns the amount of bytes copied
+     */
+    private static long transferFile(AssetManager assetManager,
+                                     String filename,
+                                     String destinationFile) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assetManager.openFd(filename);
+        } catch (FileNotFoundException e) {
+            // Compressed assets cannot be mapped, they have to be inflated through a stream
+            return streamFile(assetManager.open(filename), destinationFile);
+        }
+        try (AssetFileDescriptor fd = descriptor;
+             FileChannel in = new FileInputStream(fd.getFileDescriptor()).getChannel();
+             FileChannel out = new FileOutputStream(destinationFile).getChannel()) {
+            long start = fd.getStartOffset();
+            long length = fd.getLength();
+            long copied = 0L;
+            while (copied < length) {
+                long transferred = in.transferTo(start + copied, length - copied, out);
+                if (transferred <= 0L) break;
+                copied += transferred;
+            }
+            return copied;
+        }
+    }
+
+    /**
+     * Copy a stream to a file and close it
+     *
+     * @return Returns the amount of bytes copied
+     */
+    private static long streamFile(InputStream inputStream,
+                                   String destinationFile) throws IOException {
+        try (InputStream in = inputStream;
+             OutputStream out = new FileOutputStream(destinationFile)) {
+            byte[] buffer = new byte[BYTE_ACCESS_RATE];
+            long copied = 0L;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                copied += read;
+            }
+            return copied;
+        }
+    }
+
+    /**
+     * Creates the Cipher used to decrypt a single asset, called from the pool's threads
+     */
+    public interface CipherFactory {
+        Cipher newCipher() throws GeneralSecurityException;
+    }
+
+    /**
+     * Amount of files and bytes extracted, along with the assets that could not be, may be shared
+     * by several extractions of one overlay
+     */
+    public static final class Stats {
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+
+        public Stats() {
+            super();
+        }
+
+        void add(long size) {
+            files.incrementAndGet();
+            bytes.addAndGet(size);
+        }
+
+        void add(Stats stats) {
+            files.addAndGet(stats.getFiles());
+            bytes.addAndGet(stats.getBytes());
+            failed.addAll(stats.getFailed());
+        }
+
+        void fail(String asset) {
+            failed.add(asset);
+        }
+
+        public int getFiles() {
+            return files.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * Obtain the assets that have been listed, but could not be extracted
+         *
+         * @return Returns the asset paths of the failed files
+         */
+        public List<String> getFailed() {
+            synchronized (failed) {
+                return new ArrayList<>(failed);
+            }
+        }
+    }
+}
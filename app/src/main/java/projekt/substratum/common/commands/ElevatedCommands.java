@@ -43,11 +43,24 @@ public enum ElevatedCommands {
      * @param command Command to be run
      */
     public static void runThreadedCommand(String command) {
+        runThreadedCommand(command, null);
+    }
+
+    /**
+     * Run a command to be executed and held in another thread, then notify the caller from that
+     * thread once the command has finished, whether or not it succeeded
+     *
+     * @param command    Command to be run
+     * @param onFinished Callback to run after the command, may be null
+     */
+    public static void runThreadedCommand(String command, Runnable onFinished) {
         new Thread(() -> {
             try {
                 Root.runCommand(command);
             } catch (Exception e) {
                 // Consume window refresh
+            } finally {
+                if (onFinished != null) onFinished.run();
             }
         }).start();
     }
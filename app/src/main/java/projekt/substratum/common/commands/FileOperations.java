@@ -20,7 +20,6 @@ package projekt.substratum.common.commands;
 
 import android.content.Context;
 import android.content.res.AssetManager;
-import android.os.Build;
 import android.os.Environment;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -37,6 +36,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
@@ -60,6 +61,15 @@ public enum FileOperations {
     private static final String CREATE_LOG = "SubstratumCreate";
     private static final String DELETE_LOG = "SubstratumDelete";
     private static final String MOVE_LOG = "SubstratumMove";
+    private static final String MOUNT_LOG = "SubstratumMount";
+    private static final String SYSTEM_PARTITION = "/system";
+    private static final String DATA_PARTITION = "/data";
+    private static final String VENDOR_PARTITION = "/vendor";
+    private static final Object mountLock = new Object();
+    // Open RW sections and the last known mount state of every partition we have remounted
+    private static final Map<String, Integer> rwSections = new HashMap<>();
+    private static final Map<String, Boolean> rwMounted = new HashMap<>();
+    private static volatile Boolean toolboxMount;
 
     /**
      * Adjust the content provider settings
@@ -84,6 +94,17 @@ public enum FileOperations {
         Root.runCommand("chcon -R u:object_r:system_file:s0 " + foldername);
     }
 
+    /**
+     * Queue setting the SEContext for a folder
+     *
+     * @param batch      Batch to queue the command on
+     * @param foldername Folder name
+     */
+    public static void setContext(final Root.Batch batch,
+                                  final String foldername) {
+        batch.add("chcon -R u:object_r:system_file:s0 " + foldername);
+    }
+
     /**
      * Set permissions for a given folder
      *
@@ -95,6 +116,19 @@ public enum FileOperations {
         Root.runCommand("chmod " + permission + ' ' + foldername);
     }
 
+    /**
+     * Queue setting permissions for a given folder
+     *
+     * @param batch      Batch to queue the command on
+     * @param permission Permission
+     * @param foldername Folder name
+     */
+    public static void setPermissions(final Root.Batch batch,
+                                      final int permission,
+                                      final String foldername) {
+        batch.add("chmod " + permission + ' ' + foldername);
+    }
+
     /**
      * Set permissions recursively
      *
@@ -106,6 +140,19 @@ public enum FileOperations {
         Root.runCommand("chmod -R " + permission + ' ' + foldername);
     }
 
+    /**
+     * Queue setting permissions recursively
+     *
+     * @param batch      Batch to queue the command on
+     * @param permission Permission
+     * @param foldername Folder name
+     */
+    public static void setPermissionsRecursively(final Root.Batch batch,
+                                                 final int permission,
+                                                 final String foldername) {
+        batch.add("chmod -R " + permission + ' ' + foldername);
+    }
+
     /**
      * Set build.prop prop
      *
@@ -118,6 +165,20 @@ public enum FileOperations {
         Root.runCommand("setprop " + propName + ' ' + propValue);
     }
 
+    /**
+     * Queue setting a build.prop prop
+     *
+     * @param batch     Batch to queue the command on
+     * @param propName  Prop name
+     * @param propValue Prop value
+     */
+    @SuppressWarnings("SameParameterValue")
+    public static void setProp(final Root.Batch batch,
+                               final String propName,
+                               final String propValue) {
+        batch.add("setprop " + propName + ' ' + propValue);
+    }
+
     /**
      * Generate a symlink between two objects
      *
@@ -130,25 +191,49 @@ public enum FileOperations {
     }
 
     /**
-     * Check whether system is using toybox or busybox
+     * Queue generating a symlink between two objects
+     *
+     * @param batch       Batch to queue the command on
+     * @param source      Source
+     * @param destination Destination
+     */
+    public static void symlink(final Root.Batch batch,
+                               final String source,
+                               final String destination) {
+        batch.add("ln -s " + source + ' ' + destination);
+    }
+
+    /**
+     * Check whether system is using toybox or busybox, the style is only detected once
      *
      * @param mountType Specified mount type
      * @return Return string of commands to mount
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     private static String checkBox(final String mountType) {
+        if (toolboxMount == null) {
+            toolboxMount = isToolboxMount();
+        }
+        return toolboxMount ? ("remount," + mountType) : (mountType + ",remount");
+    }
+
+    /**
+     * Check whether the mount binary is provided by toolbox instead of toybox
+     *
+     * @return True, if toolbox mount arguments have to be used
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    private static boolean isToolboxMount() {
         Process process = null;
         // default style is "toybox" style, because aosp has toybox not toolbox
-        String result = mountType + ",remount";
+        boolean toolbox = false;
         try {
             final Runtime rt = Runtime.getRuntime();
             process = rt.exec(new String[]{"readlink", "/system/bin/mount"});
             try (BufferedReader stdInput = new BufferedReader(new
                     InputStreamReader(process.getInputStream()))) {
                 // if it has toolbox instead of toybox, handle
-                if ("toolbox".equals(stdInput.readLine())) {
-                    result = "remount," + mountType;
-                }
+                toolbox = "toolbox".equals(stdInput.readLine());
             }
         } catch (final Exception e) {
             e.printStackTrace();
@@ -157,49 +242,200 @@ public enum FileOperations {
                 process.destroy();
             }
         }
-        return result;
+        return toolbox;
+    }
+
+    /**
+     * Open a RW section on a partition
+     * <p>
+     * RW sections nest, the partition is only remounted when the outermost section is opened.
+     *
+     * @param partition Partition to be mounted
+     * @return Returns the command to remount the partition, or null if it is already RW
+     */
+    private static String openRWSection(final String partition) {
+        synchronized (mountLock) {
+            final Integer sections = rwSections.get(partition);
+            final int open = (sections != null) ? sections : 0;
+            rwSections.put(partition, open + 1);
+            if ((open > 0) && Boolean.TRUE.equals(rwMounted.get(partition))) {
+                Log.d(MOUNT_LOG, partition + " is already mounted RW, skipping remount...");
+                return null;
+            }
+            rwMounted.put(partition, true);
+            return "mount -o " + checkBox("rw") + ' ' + partition;
+        }
     }
 
     /**
-     * Mount system RW
+     * Close a RW section on a partition
+     * <p>
+     * The partition only goes back to RO once every section has been closed, and is left alone
+     * if it has already been mounted RO by us. Closing a section that was never opened does
+     * nothing, or it would pull the partition RO from under a section that is still open.
+     *
+     * @param partition Partition to be mounted
+     * @return Returns the command to remount the partition, or null if there is nothing to do
+     */
+    private static String closeRWSection(final String partition) {
+        synchronized (mountLock) {
+            final Integer sections = rwSections.get(partition);
+            if (sections == null) {
+                Log.w(MOUNT_LOG, "No RW section is open on " + partition + ", ignoring close...");
+                return null;
+            }
+            if (sections > 1) {
+                rwSections.put(partition, sections - 1);
+                Log.d(MOUNT_LOG, partition + " is still in use, keeping it RW...");
+                return null;
+            }
+            rwSections.remove(partition);
+            if (Boolean.FALSE.equals(rwMounted.get(partition))) {
+                return null;
+            }
+            rwMounted.put(partition, false);
+            return "mount -o " + checkBox("ro") + ' ' + partition;
+        }
+    }
+
+    /**
+     * Remount a partition, while keeping track of its state
+     *
+     * @param partition Partition to be mounted
+     * @param rw        True to open a RW section, false to close one
+     */
+    private static void remount(final String partition,
+                                final boolean rw) {
+        final String command = rw ? openRWSection(partition) : closeRWSection(partition);
+        if (command != null) Root.runCommand(command);
+    }
+
+    /**
+     * Queue remounting a partition, while keeping track of its state
+     * <p>
+     * The section is only opened or closed once the batch runs, so a batch that never runs
+     * leaves the tracked state alone.
+     *
+     * @param batch     Batch to queue the command on
+     * @param partition Partition to be mounted
+     * @param rw        True to open a RW section, false to close one
+     */
+    private static void remount(final Root.Batch batch,
+                                final String partition,
+                                final boolean rw) {
+        batch.add(() -> rw ? openRWSection(partition) : closeRWSection(partition),
+                result -> {
+                    if (!result.succeeded()) forgetMountState(partition);
+                });
+    }
+
+    /**
+     * Forget the mount state of a partition after a remount has failed, so that the next section
+     * remounts it instead of trusting a state it may not be in
+     *
+     * @param partition Partition that failed to be mounted
+     */
+    private static void forgetMountState(final String partition) {
+        synchronized (mountLock) {
+            Log.e(MOUNT_LOG, "Could not remount " + partition + ", its state is now unknown");
+            rwMounted.remove(partition);
+        }
+    }
+
+    /**
+     * Mount system RW, must be paired with {@link #mountRO()}
      */
     public static void mountRW() {
-        Root.runCommand("mount -o " + checkBox("rw") + " /system");
+        remount(SYSTEM_PARTITION, true);
+    }
+
+    /**
+     * Queue mounting system RW
+     *
+     * @param batch Batch to queue the command on
+     */
+    public static void mountRW(final Root.Batch batch) {
+        remount(batch, SYSTEM_PARTITION, true);
     }
 
     /**
-     * Mount data RW
+     * Mount data RW, must be paired with {@link #mountROData()}
      */
     public static void mountRWData() {
-        Root.runCommand("mount -o " + checkBox("rw") + " /data");
+        remount(DATA_PARTITION, true);
+    }
+
+    /**
+     * Queue mounting data RW
+     *
+     * @param batch Batch to queue the command on
+     */
+    public static void mountRWData(final Root.Batch batch) {
+        remount(batch, DATA_PARTITION, true);
     }
 
     /**
-     * Mount vendor RW
+     * Mount vendor RW, must be paired with {@link #mountROVendor()}
      */
     public static void mountRWVendor() {
-        Root.runCommand("mount -o " + checkBox("rw") + " /vendor");
+        remount(VENDOR_PARTITION, true);
+    }
+
+    /**
+     * Queue mounting vendor RW
+     *
+     * @param batch Batch to queue the command on
+     */
+    public static void mountRWVendor(final Root.Batch batch) {
+        remount(batch, VENDOR_PARTITION, true);
     }
 
     /**
      * Mount system RO
      */
     public static void mountRO() {
-        Root.runCommand("mount -o " + checkBox("ro") + " /system");
+        remount(SYSTEM_PARTITION, false);
+    }
+
+    /**
+     * Queue mounting system RO
+     *
+     * @param batch Batch to queue the command on
+     */
+    public static void mountRO(final Root.Batch batch) {
+        remount(batch, SYSTEM_PARTITION, false);
     }
 
     /**
      * Mount data RO
      */
     public static void mountROData() {
-        Root.runCommand("mount -o " + checkBox("ro") + " /data");
+        remount(DATA_PARTITION, false);
+    }
+
+    /**
+     * Queue mounting data RO
+     *
+     * @param batch Batch to queue the command on
+     */
+    public static void mountROData(final Root.Batch batch) {
+        remount(batch, DATA_PARTITION, false);
     }
 
     /**
      * Mount vendor RO
      */
     public static void mountROVendor() {
-        Root.runCommand("mount -o " + checkBox("ro") + " /vendor");
+        remount(VENDOR_PARTITION, false);
+    }
+
+    /**
+     * Queue mounting vendor RO
+     *
+     * @param batch Batch to queue the command on
+     */
+    public static void mountROVendor(final Root.Batch batch) {
+        remount(batch, VENDOR_PARTITION, false);
     }
 
     /**
@@ -244,6 +480,17 @@ public enum FileOperations {
         }
     }
 
+    /**
+     * Queue creating a new folder, including its missing parents
+     *
+     * @param batch      Batch to queue the command on
+     * @param foldername Folder name
+     */
+    public static void createNewFolder(final Root.Batch batch,
+                                       final String foldername) {
+        batch.add("mkdir -p " + foldername);
+    }
+
     /**
      * Copy a file
      *
@@ -529,6 +776,19 @@ public enum FileOperations {
         Log.d(MOVE_LOG, "Operation " + (out.exists() ? "succeeded" : "failed"));
     }
 
+    /**
+     * Queue moving a file or directory as root
+     *
+     * @param batch       Batch to queue the command on
+     * @param source      Source
+     * @param destination Destination
+     */
+    public static void move(final Root.Batch batch,
+                            final String source,
+                            final String destination) {
+        batch.add("mv -f " + source + ' ' + destination);
+    }
+
     /**
      * Obtain a file's size
      *
@@ -580,127 +840,61 @@ public enum FileOperations {
                                         final String destination,
                                         final String remember,
                                         final Cipher cipher) {
+        return copyFileOrDir(assetManager, listDir, destination, remember, cipher,
+                new DirectAssets.Stats());
+    }
+
+    /**
+     * DirectAssets Mode Functions, counting what has been extracted
+     *
+     * @param assetManager Take the asset manager context from the theme package
+     * @param listDir      The expected list directory inside the assets folder
+     * @param destination  Output directory on where we should be caching
+     * @param remember     Should be the same as listDir, so we strip out the unnecessary prefix
+     *                     so it only extracts to a specified folder without the asset manager's
+     *                     list structure.
+     * @param cipher       Encryption key
+     * @param stats        Stats to add the amount of extracted files and bytes to
+     */
+    public static boolean copyFileOrDir(final AssetManager assetManager,
+                                        final String listDir,
+                                        final String destination,
+                                        final String remember,
+                                        final Cipher cipher,
+                                        final DirectAssets.Stats stats) {
         if (ENABLE_DIRECT_ASSETS_LOGGING) {
             Log.d(DA_LOG, "DirectAssets copy function is now running...");
             Log.d(DA_LOG, "Source: " + listDir);
             Log.d(DA_LOG, "Destination: " + destination);
         }
-        // Create a filter that is meant to detect build states of the folder
-        String ending = listDir.substring(listDir.length() - 4);
-        if (ending.contains("-v") && ending.startsWith("-v")) {
-            // At this point, we can be safe to assume that it is going to be "-vXX" format
-            // rather than the sheer amount of possibilities of having API 9 and below
-            String parsedVersion =
-                    Character.toString(ending.charAt(2)) + Character.toString(ending.charAt(3));
-            if (ENABLE_DIRECT_ASSETS_LOGGING)
-                Log.d(DA_LOG, "Folder with versioning found: " + parsedVersion);
-            Integer parsedVer = Integer.parseInt(parsedVersion);
-            if (Build.VERSION.SDK_INT < parsedVer) {
-                if (ENABLE_DIRECT_ASSETS_LOGGING)
-                    Log.d(DA_LOG,
-                            "Folder does not need to be copied on non-matching system version: " +
-                                    Build.VERSION.SDK_INT + " is smaller than " + parsedVer + ".");
-                return false;
-            } else {
-                if (ENABLE_DIRECT_ASSETS_LOGGING)
-                    Log.d(DA_LOG,
-                            "Folder will be copied on matching system version: " +
-                                    Build.VERSION.SDK_INT + " (current) is greater or equals to " +
-                                    parsedVer + ".");
-            }
-        }
-        try {
-            final String[] assets = assetManager.list(listDir);
-            if (assets.length == 0) {
-                // When asset[] is empty, it is not iterable, hence it is a file
-                if (ENABLE_DIRECT_ASSETS_LOGGING)
-                    Log.d(DA_LOG, "This is a file object, directly copying...");
-                if (ENABLE_DIRECT_ASSETS_LOGGING) Log.d(DA_LOG, listDir);
-                final boolean copied = copyFile(assetManager, listDir, destination, remember,
-                        cipher);
-                if (ENABLE_DIRECT_ASSETS_LOGGING) Log.d(DA_LOG, "File operation status: " +
-                        ((copied) ? "Success!" : "Failed"));
-            } else {
-                // This will be a folder if the size is greater than 0
-                final String fullPath = (destination + '/' + listDir.substring(remember.length()))
-                        .replaceAll("\\s+", "");
-                final File dir = new File(fullPath);
-                if (!dir.exists()) {
-                    Log.d(DA_LOG, "Attempting to copy: " + dir.getAbsolutePath() + '/');
-                    Log.d(DA_LOG, "File operation status: " +
-                            ((dir.mkdir()) ? "Success!" : "Failed"));
-                }
-                for (final String asset : assets) {
-                    copyFileOrDir(assetManager, listDir + '/' + asset, destination, remember,
-                            cipher);
-                }
-            }
-            return true;
-        } catch (final IOException ex) {
-            if (ENABLE_DIRECT_ASSETS_LOGGING)
-                Log.e(DA_LOG, "An IOException has been reached: " + ex.getMessage());
-        }
-        return false;
+        return DirectAssets.extract(assetManager, listDir, destination, remember, cipher, stats);
     }
 
     /**
-     * Copy a file, meat of {@link #copyFileOrDir(AssetManager, String, String, String, Cipher)}
+     * DirectAssets Mode Functions, decrypting every file with its own cipher so that encrypted
+     * assets are extracted in parallel too
      *
      * @param assetManager Take the asset manager context from the theme package
-     * @param filename     File's name
+     * @param listDir      The expected list directory inside the assets folder
      * @param destination  Output directory on where we should be caching
-     * @param remember     Remember the folder structure
-     * @param cipher       Encryption key
-     * @return Returns a boolean informing whether the file has been successfully copied
+     * @param remember     Should be the same as listDir, so we strip out the unnecessary prefix
+     *                     so it only extracts to a specified folder without the asset manager's
+     *                     list structure.
+     * @param ciphers      Creates the cipher of every encrypted file, null if not encrypted
+     * @param stats        Stats to add the amount of extracted files and bytes to
      */
-    @RestrictTo(RestrictTo.Scope.LIBRARY)
-    private static boolean copyFile(final AssetManager assetManager,
-                                    final String filename,
-                                    final String destination,
-                                    final String remember,
-                                    final Cipher cipher) {
-        InputStream inputStream = null;
-        OutputStream outputStream = null;
-        try {
-            inputStream = assetManager.open(filename);
-            if ((cipher != null) && filename.endsWith(ENCRYPTED_FILE_EXTENSION)) {
-                inputStream = new CipherInputStream(inputStream, cipher);
-            } else if ((cipher == null) && filename.endsWith(ENCRYPTED_FILE_EXTENSION)) {
-                return false;
-            }
-            final String destinationFile = destination + filename.replaceAll("\\s+", "")
-                    .substring(remember.replaceAll("\\s+", "").length());
-            outputStream = new FileOutputStream(
-                    ((cipher != null) ?
-                            destinationFile.substring(0, destinationFile.length() - 4) :
-                            destinationFile));
-
-            final byte[] buffer = new byte[BYTE_ACCESS_RATE];
-            int read;
-            while ((read = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, read);
-            }
-
-            return true;
-        } catch (final Exception e) {
-            e.printStackTrace();
-            if (ENABLE_DIRECT_ASSETS_LOGGING)
-                Log.e(DA_LOG, "An exception has been reached: " + e.getMessage());
-        } finally {
-            try {
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-
-                if (outputStream != null) {
-                    outputStream.flush();
-                    outputStream.close();
-                }
-            } catch (final IOException e) {
-                // Suppress warning
-            }
+    public static boolean copyFileOrDir(final AssetManager assetManager,
+                                        final String listDir,
+                                        final String destination,
+                                        final String remember,
+                                        final DirectAssets.CipherFactory ciphers,
+                                        final DirectAssets.Stats stats) {
+        if (ENABLE_DIRECT_ASSETS_LOGGING) {
+            Log.d(DA_LOG, "DirectAssets copy function is now running...");
+            Log.d(DA_LOG, "Source: " + listDir);
+            Log.d(DA_LOG, "Destination: " + destination);
         }
-        return false;
+        return DirectAssets.extract(assetManager, listDir, destination, remember, ciphers, stats);
     }
 
     /**
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.common.platform;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static projekt.substratum.common.Packages.getOverlayParent;
+
+/**
+ * The state of every overlay on the device at one point in time, indexed so that
+ * {@link ThemeManager} can answer its queries without asking the overlay backend again
+ */
+final class OverlaySnapshot {
+
+    private final List<String> all = new ArrayList<>();
+    private final List<String> enabled = new ArrayList<>();
+    private final List<String> disabled = new ArrayList<>();
+    private final List<String> missingTarget = new ArrayList<>();
+    private final List<String> multipleEnabledTargets = new ArrayList<>();
+    private final Set<String> allSet = new HashSet<>();
+    private final Set<String> enabledSet = new HashSet<>();
+    // Overlays are named after their target, so they are indexed by every package name prefix
+    private final Map<String, List<String>> allByTarget = new HashMap<>();
+    private final Map<String, List<String>> enabledByTarget = new HashMap<>();
+    private final Map<String, List<String>> disabledByTarget = new HashMap<>();
+    // Looking up the parent theme costs a trip to the PackageManager, only do so when asked
+    private volatile Map<String, List<String>> allByParent;
+    // Snapshots of a failed or cheap lookup are not worth keeping around
+    boolean cacheable = true;
+
+    OverlaySnapshot() {
+        super();
+    }
+
+    /**
+     * Index a package under every prefix of its name, up to and including the full name
+     *
+     * @param index       Index to be added to
+     * @param packageName Package name
+     */
+    private static void indexByTarget(Map<String, List<String>> index, String packageName) {
+        int dot = packageName.indexOf('.');
+        while (dot > -1) {
+            index.computeIfAbsent(packageName.substring(0, dot), k -> new ArrayList<>())
+                    .add(packageName);
+            dot = packageName.indexOf('.', dot + 1);
+        }
+        index.computeIfAbsent(packageName, k -> new ArrayList<>()).add(packageName);
+    }
+
+    private static List<String> lookup(Map<String, List<String>> index, String key) {
+        List<String> list = index.get(key);
+        return (list != null) ? list : Collections.emptyList();
+    }
+
+    void addOverlay(String packageName) {
+        all.add(packageName);
+        allSet.add(packageName);
+        indexByTarget(allByTarget, packageName);
+    }
+
+    void addEnabled(String packageName) {
+        enabled.add(packageName);
+        enabledSet.add(packageName);
+        indexByTarget(enabledByTarget, packageName);
+    }
+
+    void addDisabled(String packageName) {
+        disabled.add(packageName);
+        indexByTarget(disabledByTarget, packageName);
+    }
+
+    void addMissingTarget(String packageName) {
+        missingTarget.add(packageName);
+    }
+
+    void addMultipleEnabledTarget(String target) {
+        multipleEnabledTargets.add(target);
+    }
+
+    /**
+     * List overlays in a given state
+     *
+     * @param state One of the STATE_ values of {@link ThemeManager}
+     * @return Returns the overlays in that state, in the order the backend listed them
+     */
+    List<String> list(int state) {
+        if (state == ThemeManager.STATE_ENABLED) return enabled;
+        if (state == ThemeManager.STATE_DISABLED) return disabled;
+        if (state == ThemeManager.STATE_MISSING_TARGET) return missingTarget;
+        if (state == ThemeManager.STATE_LIST_ALL_OVERLAYS) return all;
+        return Collections.emptyList();
+    }
+
+    List<String> listMultipleEnabledTargets() {
+        return multipleEnabledTargets;
+    }
+
+    boolean isOverlay(String packageName) {
+        return allSet.contains(packageName);
+    }
+
+    boolean isEnabled(String packageName) {
+        return enabledSet.contains(packageName);
+    }
+
+    List<String> listForTarget(String target) {
+        return lookup(allByTarget, target);
+    }
+
+    List<String> listEnabledForTarget(String target) {
+        return lookup(enabledByTarget, target);
+    }
+
+    List<String> listDisabledForTarget(String target) {
+        return lookup(disabledByTarget, target);
+    }
+
+    /**
+     * List overlays by their parent theme
+     *
+     * @param context Context
+     * @param theme   Package name of the theme
+     * @return Returns the overlays that have been built from the theme
+     */
+    List<String> listByParent(Context context, String theme) {
+        Map<String, List<String>> index = allByParent;
+        if (index == null) {
+            index = new HashMap<>();
+            for (String overlay : all) {
+                String parent = getOverlayParent(context, overlay);
+                if (parent != null) {
+                    index.computeIfAbsent(parent, k -> new ArrayList<>()).add(overlay);
+                }
+            }
+            allByParent = index;
+        }
+        return lookup(index, theme);
+    }
+}
@@ -102,10 +102,11 @@ public enum ThemeManager {
     };
     // Non-Interfacer (NI) values
     private static final Integer NI_restartSystemUIDelay = 2000;
-    private static final int EXPORT_RETURN_ALL_OVERLAYS = 0;
-    private static final int EXPORT_RETURN_MULTIPLE_TARGETS_ENABLED = 1;
-    private static final int EXPORT_RETURN_DEFAULT = 2;
-    private static final int STATE_LIST_ALL_OVERLAYS = 13579;
+    static final int STATE_LIST_ALL_OVERLAYS = 13579;
+    private static final Object snapshotLock = new Object();
+    // Overlay state is cached until a package or overlay change invalidates it
+    private static volatile OverlaySnapshot overlaySnapshot;
+    private static long snapshotGeneration;
 
     /**
      * Blacklisted applications to hide on specific devices, for example Samsung devices
@@ -186,7 +187,8 @@ public enum ThemeManager {
             for (int i = 1; i < overlays.size(); i++) {
                 commands.append(';' + enableOverlay + ' ').append(overlays.get(i));
             }
-            ElevatedCommands.runThreadedCommand(commands.toString());
+            ElevatedCommands.runThreadedCommand(commands.toString(),
+                    ThemeManager::invalidateOverlayState);
             try {
                 Thread.sleep(NI_restartSystemUIDelay);
                 if (shouldRestartUI(context, overlays)) {
@@ -200,6 +202,7 @@ public enum ThemeManager {
                 e.printStackTrace();
             }
         }
+        invalidateOverlayState();
     }
 
     /**
@@ -236,7 +239,8 @@ public enum ThemeManager {
             for (int i = 1; i < overlays.size(); i++) {
                 commands.append(';' + disableOverlay + ' ').append(overlays.get(i));
             }
-            ElevatedCommands.runThreadedCommand(commands.toString());
+            ElevatedCommands.runThreadedCommand(commands.toString(),
+                    ThemeManager::invalidateOverlayState);
             try {
                 Thread.sleep(NI_restartSystemUIDelay);
                 if (shouldRestartUI(context, overlays)) {
@@ -250,6 +254,7 @@ public enum ThemeManager {
                 e.printStackTrace();
             }
         }
+        invalidateOverlayState();
     }
 
     /**
@@ -282,7 +287,8 @@ public enum ThemeManager {
                 commands.append((commands.length() == 0) ? "" : " && ").append(setPriority)
                         .append(' ').append(packageName).append(' ').append(parentName);
             }
-            ElevatedCommands.runThreadedCommand(commands.toString());
+            ElevatedCommands.runThreadedCommand(commands.toString(),
+                    ThemeManager::invalidateOverlayState);
             if (shouldRestartUI(context, overlays)) {
                 if (optInFromUIRestart(context)) {
                     restartSystemUI(context);
@@ -291,6 +297,7 @@ public enum ThemeManager {
                 }
             }
         }
+        invalidateOverlayState();
     }
 
     /**
@@ -343,7 +350,7 @@ public enum ThemeManager {
      * @return Returns a list of overlays
      */
     public static List<String> listAllOverlays(Context context) {
-        return listOverlays(context, STATE_LIST_ALL_OVERLAYS, EXPORT_RETURN_DEFAULT);
+        return new ArrayList<>(getOverlaySnapshot(context).list(STATE_LIST_ALL_OVERLAYS));
     }
 
     /**
@@ -354,7 +361,7 @@ public enum ThemeManager {
      * @return Returns a list of overlays
      */
     public static List<String> listOverlays(Context context, int state) {
-        return listOverlays(context, state, EXPORT_RETURN_DEFAULT);
+        return new ArrayList<>(getOverlaySnapshot(context).list(state));
     }
 
     /**
@@ -364,26 +371,57 @@ public enum ThemeManager {
      * @return Returns a list of target packages with multiple overlays enabled
      */
     public static List<String> listTargetWithMultipleOverlaysEnabled(Context context) {
-        return listOverlays(context, STATE_ENABLED,
-                EXPORT_RETURN_MULTIPLE_TARGETS_ENABLED);
+        return new ArrayList<>(getOverlaySnapshot(context).listMultipleEnabledTargets());
     }
 
     /**
-     * List overlays, beef of {@link #listOverlays(Context, int),
-     * {@link #listAllOverlays(Context)} and
-     * {@link #listTargetWithMultipleOverlaysEnabled(Context)}}
+     * Drop the cached state of the overlays, the next query will ask the overlay backend again
+     * <p>
+     * Called whenever a package has been added or removed, or the overlay state has changed. Root
+     * commands run on their own thread, so they call this again once they have finished, a
+     * snapshot taken while they were still running would otherwise stay cached.
+     */
+    public static void invalidateOverlayState() {
+        synchronized (snapshotLock) {
+            overlaySnapshot = null;
+            snapshotGeneration++;
+        }
+    }
+
+    /**
+     * Obtain the current state of the overlays, only building a new snapshot if the last one has
+     * been invalidated
      *
-     * @param context        Context
-     * @param overlayState   Overlay state
-     * @param secondaryState Secondary state to have a more refined filter
-     * @return Returns a list of overlays
+     * @param context Context
+     * @return Returns the snapshot of the overlays
+     */
+    private static OverlaySnapshot getOverlaySnapshot(Context context) {
+        OverlaySnapshot snapshot = overlaySnapshot;
+        if (snapshot != null) return snapshot;
+        long generation;
+        synchronized (snapshotLock) {
+            if (overlaySnapshot != null) return overlaySnapshot;
+            generation = snapshotGeneration;
+        }
+        snapshot = loadOverlaySnapshot(context);
+        synchronized (snapshotLock) {
+            // Anything that has changed while we were loading makes this snapshot stale already
+            if (snapshot.cacheable && (generation == snapshotGeneration)) {
+                overlaySnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * List overlays, beef of {@link #getOverlaySnapshot(Context)}
+     *
+     * @param context Context
+     * @return Returns a new snapshot of all overlays on the device
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
-    @SuppressWarnings("unchecked")
-    private static List<String> listOverlays(Context context,
-                                             int overlayState,
-                                             int secondaryState) {
-        List<String> list = new ArrayList<>();
+    private static OverlaySnapshot loadOverlaySnapshot(Context context) {
+        OverlaySnapshot snapshot = new OverlaySnapshot();
         try {
             // Throw certain exceptions intentionally when unsupported device found
             if (Systems.isSamsungDevice(context)) throw new Exception();
@@ -404,65 +442,33 @@ public enum ThemeManager {
                 allOverlays = OverlayManagerService.getAllOverlays();
             }
             if (allOverlays != null) {
-                switch (secondaryState) {
-                    case EXPORT_RETURN_ALL_OVERLAYS:
-                        for (Map.Entry<String, List<OverlayInfo>> stringListEntry :
-                                allOverlays.entrySet()) {
-                            for (OverlayInfo oi : stringListEntry.getValue()) {
-                                if (oi.isApproved()) {
-                                    list.add(oi.packageName);
-                                }
-                            }
+                for (Map.Entry<String, List<OverlayInfo>>
+                        stringListEntry : allOverlays.entrySet()) {
+                    List<OverlayInfo> targetOverlays = stringListEntry.getValue();
+                    int count = 0;
+                    for (OverlayInfo oi : targetOverlays) {
+                        snapshot.addOverlay(oi.packageName);
+                        if (oi.isEnabled()) {
+                            snapshot.addEnabled(oi.packageName);
+                            count++;
+                        } else {
+                            snapshot.addDisabled(oi.packageName);
                         }
-                        break;
-                    case EXPORT_RETURN_MULTIPLE_TARGETS_ENABLED:
-                        for (Map.Entry<String, List<OverlayInfo>>
-                                stringListEntry : allOverlays.entrySet()) {
-                            List<OverlayInfo> targetOverlays = stringListEntry.getValue();
-                            int targetOverlaysSize = targetOverlays.size();
-                            int count = 0;
-                            for (OverlayInfo oi : targetOverlays) {
-                                if (oi.isEnabled()) count++;
-                            }
-                            if ((targetOverlaysSize > 1) && (count > 1))
-                                list.add(stringListEntry.getKey());
+                        if (oi.state == STATE_MISSING_TARGET) {
+                            snapshot.addMissingTarget(oi.packageName);
                         }
-                        break;
-                    case EXPORT_RETURN_DEFAULT:
-                        for (Map.Entry<String, List<OverlayInfo>>
-                                stringListEntry : allOverlays.entrySet()) {
-                            for (OverlayInfo oi : stringListEntry.getValue()) {
-                                if ((overlayState == STATE_ENABLED) && oi.isEnabled()) {
-                                    list.add(oi.packageName);
-                                } else if ((overlayState == STATE_DISABLED) && !oi.isEnabled()) {
-                                    list.add(oi.packageName);
-                                } else if (overlayState == STATE_MISSING_TARGET) {
-                                    if (oi.state == STATE_MISSING_TARGET) {
-                                        list.add(oi.packageName);
-                                    }
-                                } else if (overlayState == STATE_LIST_ALL_OVERLAYS) {
-                                    list.add(oi.packageName);
-                                }
-                            }
-                        }
-                        break;
+                    }
+                    if ((targetOverlays.size() > 1) && (count > 1))
+                        snapshot.addMultipleEnabledTarget(stringListEntry.getKey());
                 }
             } else {
                 Log.e("ThemeManager",
                         "Could not queue all overlays from the Overlay Manager Service...");
+                snapshot.cacheable = false;
             }
         } catch (Exception e) {
             // At this point, we probably ran into a legacy command or stock OMS
             if (Systems.checkOMS(context) || Systems.checkOreo()) {
-                String prefix;
-                if (overlayState == STATE_ENABLED) {
-                    prefix = "[x]";
-                } else if (overlayState == STATE_DISABLED) {
-                    prefix = "[ ]";
-                } else {
-                    prefix = "---";
-                }
-
                 String[] arrList = null;
 
                 // This is a check for Oreo and Andromeda's integration
@@ -526,106 +532,91 @@ public enum ThemeManager {
                     } catch (NullPointerException ignored) {
                     }
                 }
-                switch (secondaryState) {
-                    case EXPORT_RETURN_MULTIPLE_TARGETS_ENABLED:
-                        if (arrList != null) {
-                            String currentApp = "";
-                            int counter = 0;
-                            for (String line : arrList) {
-                                if (line.startsWith(prefix)) {
-                                    if ((getOverlayParent(context, line.substring(4)) != null) &&
-                                            isPackageInstalled(context, line.substring(4))) {
-                                        counter++;
-                                    }
-                                } else if (!line.startsWith("[")) {
-                                    if (counter > 1) list.add(currentApp);
-                                    counter = 0;
-                                    currentApp = line;
-                                }
+
+                if (arrList != null) {
+                    String enabledPrefix = "[x]";
+                    String disabledPrefix = "[ ]";
+                    String missingPrefix = "---";
+                    String currentApp = "";
+                    int counter = 0;
+                    for (String line : arrList) {
+                        boolean enabled = line.startsWith(enabledPrefix);
+                        boolean missing = line.startsWith(missingPrefix);
+                        if (enabled || missing || line.startsWith(disabledPrefix)) {
+                            String packageName = line.substring(4);
+                            if ((getOverlayParent(context, packageName) == null) ||
+                                    !isPackageInstalled(context, packageName)) {
+                                continue;
                             }
-                            if (counter > 1) list.add(currentApp);
-                        } else if (checkAndromeda(context)) {
-                            if (Looper.myLooper() == Looper.getMainLooper()) {
-                                Toast.makeText(context,
-                                        context.getString(R.string.toast_andromeda_timed_out),
-                                        Toast.LENGTH_LONG).show();
+                            if (enabled) counter++;
+                            try {
+                                String sourceDir = context.getPackageManager()
+                                        .getApplicationInfo(packageName, 0).sourceDir;
+                                if (sourceDir.startsWith("/vendor/overlay/")) continue;
+                            } catch (Exception e2) {
+                                continue;
                             }
-                        }
-                        break;
-                    case EXPORT_RETURN_ALL_OVERLAYS:
-                    case EXPORT_RETURN_DEFAULT:
-                        if (arrList != null) {
-                            String enabledPrefix = "[x]";
-                            String disabledPrefix = "[ ]";
-                            for (String line : arrList) {
-                                boolean checker;
-                                switch (overlayState) {
-                                    case STATE_LIST_ALL_OVERLAYS:
-                                        checker = line.startsWith(enabledPrefix) ||
-                                                line.startsWith(disabledPrefix);
-                                        break;
-                                    default:
-                                        checker = line.startsWith(prefix);
+                            if (missing) {
+                                snapshot.addMissingTarget(packageName);
+                            } else {
+                                snapshot.addOverlay(packageName);
+                                if (enabled) {
+                                    snapshot.addEnabled(packageName);
+                                } else {
+                                    snapshot.addDisabled(packageName);
                                 }
-                                if (checker) {
-                                    if ((getOverlayParent(context, line.substring(4)) != null) &&
-                                            isPackageInstalled(context, line.substring(4))) {
-                                        try {
-                                            String packageName = line.substring(4);
-                                            String sourceDir = context.getPackageManager()
-                                                    .getApplicationInfo(packageName, 0).sourceDir;
-                                            if (!sourceDir.startsWith("/vendor/overlay/")) {
-                                                list.add(packageName);
-                                            }
-                                        } catch (Exception e2) {
-                                            // Suppress warning
-                                        }
-                                    }
-                                }
-                            }
-                        } else if (checkAndromeda(context)) {
-                            if (Looper.myLooper() == Looper.getMainLooper()) {
-                                Toast.makeText(context,
-                                        context.getString(R.string.toast_andromeda_timed_out),
-                                        Toast.LENGTH_LONG).show();
                             }
+                        } else if (!line.startsWith("[")) {
+                            if (counter > 1) snapshot.addMultipleEnabledTarget(currentApp);
+                            counter = 0;
+                            currentApp = line;
                         }
-                        break;
+                    }
+                    if (counter > 1) snapshot.addMultipleEnabledTarget(currentApp);
+                } else {
+                    snapshot.cacheable = false;
+                    if (checkAndromeda(context) && (Looper.myLooper() == Looper.getMainLooper())) {
+                        Toast.makeText(context,
+                                context.getString(R.string.toast_andromeda_timed_out),
+                                Toast.LENGTH_LONG).show();
+                    }
                 }
             } else {
                 // We now know this is not OMS, so fallback for Samsung and Legacy
-                if ((overlayState == STATE_LIST_ALL_OVERLAYS) || (overlayState == STATE_ENABLED)) {
-                    if (Systems.isSamsungDevice(context)) {
-                        PackageManager pm = context.getPackageManager();
-                        List<ApplicationInfo> packages =
-                                pm.getInstalledApplications(PackageManager.GET_META_DATA);
-                        list.clear();
-                        for (ApplicationInfo packageInfo : packages) {
-                            if (Packages.getOverlayMetadata(
-                                    context,
-                                    packageInfo.packageName,
-                                    References.metadataOverlayParent) != null) {
-                                list.add(packageInfo.packageName);
-                            }
+                List<String> list = new ArrayList<>();
+                if (Systems.isSamsungDevice(context)) {
+                    PackageManager pm = context.getPackageManager();
+                    List<ApplicationInfo> packages =
+                            pm.getInstalledApplications(PackageManager.GET_META_DATA);
+                    for (ApplicationInfo packageInfo : packages) {
+                        if (Packages.getOverlayMetadata(
+                                context,
+                                packageInfo.packageName,
+                                References.metadataOverlayParent) != null) {
+                            list.add(packageInfo.packageName);
                         }
-                    } else {
-                        File legacyCheck = new File(LEGACY_NEXUS_DIR);
-                        if (legacyCheck.exists() && legacyCheck.isDirectory()) {
-                            list.clear();
-                            String[] lister = legacyCheck.list();
-                            for (String aLister : lister) {
-                                if (aLister.endsWith(".apk")) {
-                                    list.add(aLister.substring(0, aLister.length() - 4));
-                                }
+                    }
+                } else {
+                    // Legacy overlays are pushed without any broadcast, and listing them is cheap
+                    snapshot.cacheable = false;
+                    File legacyCheck = new File(LEGACY_NEXUS_DIR);
+                    if (legacyCheck.exists() && legacyCheck.isDirectory()) {
+                        String[] lister = legacyCheck.list();
+                        for (String aLister : lister) {
+                            if (aLister.endsWith(".apk")) {
+                                list.add(aLister.substring(0, aLister.length() - 4));
                             }
                         }
                     }
-                } else {
-                    list.clear();
+                }
+                // Everything that is installed is enabled here
+                for (String overlay : list) {
+                    snapshot.addOverlay(overlay);
+                    snapshot.addEnabled(overlay);
                 }
             }
         }
-        return list;
+        return snapshot;
     }
 
     /**
@@ -637,13 +628,7 @@ public enum ThemeManager {
      */
     public static boolean isOverlay(Context context,
                                     String package_name) {
-        List<String> overlays = listAllOverlays(context);
-        for (int i = 0; i < overlays.size(); i++) {
-            if (overlays.get(i).equals(package_name)) {
-                return true;
-            }
-        }
-        return false;
+        return getOverlaySnapshot(context).isOverlay(package_name);
     }
 
     /**
@@ -655,14 +640,7 @@ public enum ThemeManager {
      */
     public static List<String> listOverlaysByTheme(Context context,
                                                    String package_name) {
-        List<String> list = new ArrayList<>();
-        List<String> overlays = listAllOverlays(context);
-        for (int i = 0; i < overlays.size(); i++) {
-            if (getOverlayParent(context, overlays.get(i)).equals(package_name)) {
-                list.add(overlays.get(i));
-            }
-        }
-        return list;
+        return new ArrayList<>(getOverlaySnapshot(context).listByParent(context, package_name));
     }
 
     /**
@@ -674,11 +652,7 @@ public enum ThemeManager {
      */
     public static List<String> listOverlaysForTarget(Context context,
                                                      String target) {
-        List<String> list = new ArrayList<>();
-        List<String> overlays = listAllOverlays(context);
-        list.addAll(overlays.stream().filter(o -> o.startsWith(target))
-                .collect(Collectors.toList()));
-        return list;
+        return new ArrayList<>(getOverlaySnapshot(context).listForTarget(target));
     }
 
     /**
@@ -690,11 +664,7 @@ public enum ThemeManager {
      */
     public static List<String> listEnabledOverlaysForTarget(Context context,
                                                             String target) {
-        List<String> list = new ArrayList<>();
-        List<String> overlays = listOverlays(context, STATE_ENABLED);
-        list.addAll(overlays.stream().filter(o -> o.startsWith(target))
-                .collect(Collectors.toList()));
-        return list;
+        return new ArrayList<>(getOverlaySnapshot(context).listEnabledForTarget(target));
     }
 
     /**
@@ -706,11 +676,7 @@ public enum ThemeManager {
      */
     public static List<String> listDisabledOverlaysForTarget(Context context,
                                                              String target) {
-        List<String> list = new ArrayList<>();
-        List<String> overlays = listOverlays(context, STATE_DISABLED);
-        list.addAll(overlays.stream().filter(o -> o.startsWith(target))
-                .collect(Collectors.toList()));
-        return list;
+        return new ArrayList<>(getOverlaySnapshot(context).listDisabledForTarget(target));
     }
 
     /**
@@ -721,11 +687,7 @@ public enum ThemeManager {
      * @return True, if overlay is enabled
      */
     public static boolean isOverlayEnabled(Context context, String overlayName) {
-        List<String> enabledOverlays = ThemeManager.listOverlays(context, STATE_ENABLED);
-        for (String o : enabledOverlays) {
-            if (o.equals(overlayName)) return true;
-        }
-        return false;
+        return getOverlaySnapshot(context).isEnabled(overlayName);
     }
 
     /*
@@ -764,8 +726,10 @@ public enum ThemeManager {
                 );
             }
         } else {
-            ElevatedCommands.runThreadedCommand("pm install -r " + overlay);
+            ElevatedCommands.runThreadedCommand("pm install -r " + overlay,
+                    ThemeManager::invalidateOverlayState);
         }
+        invalidateOverlayState();
     }
 
     /**
@@ -818,8 +782,10 @@ public enum ThemeManager {
                         .append("pm uninstall ")
                         .append(packageName);
             }
-            ElevatedCommands.runThreadedCommand(command.toString());
+            ElevatedCommands.runThreadedCommand(command.toString(),
+                    ThemeManager::invalidateOverlayState);
         }
+        invalidateOverlayState();
     }
 
     /**
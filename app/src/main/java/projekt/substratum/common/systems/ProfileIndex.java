@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.common.systems;
+
+import android.util.Log;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static projekt.substratum.common.Internal.OVERLAY_PROFILE_INDEX_FILE;
+import static projekt.substratum.common.Internal.OVERLAY_PROFILE_STATE_FILE;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_DISABLED;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_ENABLED;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_ITEM;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_PACKAGE_NAME;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_PARENT;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_TARGET;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_TYPE1A;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_TYPE1B;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_TYPE1C;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_TYPE2;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_TYPE3;
+import static projekt.substratum.common.systems.ProfileManager.METADATA_PROFILE_TYPE4;
+
+/**
+ * Compact binary companion of a profile's overlay_state.xml, so that reading a profile does not
+ * have to parse the whole XML file every time
+ * <p>
+ * The header lists the themes and targets of the profile, and for every target the offsets of
+ * its overlays in each state, a lookup for a single target only decodes the overlays it needs.
+ * The XML file stays the source of truth: the index remembers the size and modification time of
+ * the XML it was built from, and is built again as soon as those no longer match.
+ */
+enum ProfileIndex {
+    ;
+
+    static final int ENABLED = 0;
+    static final int DISABLED = 1;
+    private static final String TAG = "ProfileIndex";
+    private static final int MAGIC = 0x53505846; // SPXF
+    private static final int FORMAT_VERSION = 1;
+    private static final int STATES = 2;
+
+    /**
+     * Write the index of a profile whose XML has just been written
+     *
+     * @param profileDir Folder of the profile
+     * @param states     Overlays of the profile, indexed by ENABLED and DISABLED
+     */
+    static void write(File profileDir,
+                      List<Map<String, ProfileItem>> states) {
+        File xml = new File(profileDir, OVERLAY_PROFILE_STATE_FILE);
+        try {
+            store(profileDir, encode(xml.lastModified(), xml.length(), states));
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to index " + xml.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open the index of a profile, importing it from overlay_state.xml if it is missing or stale
+     *
+     * @param profileDir Folder of the profile
+     * @return Returns the index, or null if the profile has no readable overlay state
+     */
+    static Reader open(File profileDir) {
+        File xml = new File(profileDir, OVERLAY_PROFILE_STATE_FILE);
+        if (!xml.exists()) return null;
+        File index = new File(profileDir, OVERLAY_PROFILE_INDEX_FILE);
+        if (index.exists()) {
+            try {
+                Reader reader = new Reader(readFully(index));
+                if ((reader.xmlLastModified == xml.lastModified()) &&
+                        (reader.xmlLength == xml.length())) {
+                    return reader;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Discarding unreadable profile index: " + e.getMessage());
+            }
+        }
+        List<Map<String, ProfileItem>> states = importXml(xml);
+        if (states == null) return null;
+        try {
+            byte[] data = encode(xml.lastModified(), xml.length(), states);
+            store(profileDir, data);
+            return new Reader(data);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to index " + xml.getAbsolutePath() + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Replace the index file of a profile, a failure only means the XML is imported again later
+     *
+     * @param profileDir Folder of the profile
+     * @param data       Encoded index
+     */
+    private static void store(File profileDir,
+                              byte[] data) {
+        File index = new File(profileDir, OVERLAY_PROFILE_INDEX_FILE);
+        File temp = new File(profileDir, OVERLAY_PROFILE_INDEX_FILE + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(data);
+            }
+            if (!temp.renameTo(index)) {
+                throw new IOException("Unable to replace " + index.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write the profile index: " + e.getMessage());
+            if (temp.exists() && !temp.delete()) {
+                Log.e(TAG, "Unable to clean up " + temp.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Parse an overlay_state.xml file, used for profiles that have no index yet
+     *
+     * @param xml The overlay state file
+     * @return Returns the overlays of the profile, or null if the file could not be read
+     */
+    private static List<Map<String, ProfileItem>> importXml(File xml) {
+        try (InputStream input = new FileInputStream(xml)) {
+            return importXml(input, Xml.newPullParser());
+        } catch (IOException | XmlPullParserException e) {
+            Log.e(TAG, "Unable to import " + xml.getAbsolutePath() + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Parse the overlays of an overlay state file
+     *
+     * @param input  Overlay state file
+     * @param parser Pull parser to read it with
+     * @return Returns the overlays of the profile, indexed by ENABLED and DISABLED
+     */
+    static List<Map<String, ProfileItem>> importXml(InputStream input,
+                                                    XmlPullParser parser)
+            throws IOException, XmlPullParserException {
+        List<Map<String, ProfileItem>> states = newStates();
+        parser.setInput(input, null);
+        Map<String, ProfileItem> current = null;
+        int event = parser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.START_TAG) {
+                String tag = parser.getName();
+                if (METADATA_PROFILE_ENABLED.equals(tag)) {
+                    current = states.get(ENABLED);
+                } else if (METADATA_PROFILE_DISABLED.equals(tag)) {
+                    current = states.get(DISABLED);
+                } else if ((current != null) && METADATA_PROFILE_ITEM.equals(tag)) {
+                    ProfileItem item =
+                            new ProfileItem(attribute(parser, METADATA_PROFILE_PACKAGE_NAME));
+                    item.setTargetPackage(attribute(parser, METADATA_PROFILE_TARGET));
+                    item.setParentTheme(attribute(parser, METADATA_PROFILE_PARENT));
+                    item.setType1a(attribute(parser, METADATA_PROFILE_TYPE1A));
+                    item.setType1b(attribute(parser, METADATA_PROFILE_TYPE1B));
+                    item.setType1c(attribute(parser, METADATA_PROFILE_TYPE1C));
+                    item.setType2(attribute(parser, METADATA_PROFILE_TYPE2));
+                    item.setType3(attribute(parser, METADATA_PROFILE_TYPE3));
+                    item.setType4(attribute(parser, METADATA_PROFILE_TYPE4));
+                    current.put(item.getPackageName(), item);
+                }
+            } else if (event == XmlPullParser.END_TAG) {
+                String tag = parser.getName();
+                if (METADATA_PROFILE_ENABLED.equals(tag) ||
+                        METADATA_PROFILE_DISABLED.equals(tag)) {
+                    current = null;
+                }
+            }
+            event = parser.next();
+        }
+        return states;
+    }
+
+    /**
+     * Same as the DOM readers this replaced, a missing attribute reads as an empty string
+     */
+    private static String attribute(XmlPullParser parser, String name) {
+        String value = parser.getAttributeValue(null, name);
+        return (value != null) ? value : "";
+    }
+
+    static List<Map<String, ProfileItem>> newStates() {
+        List<Map<String, ProfileItem>> states = new ArrayList<>(STATES);
+        for (int i = 0; i < STATES; i++) states.add(new LinkedHashMap<>());
+        return states;
+    }
+
+    /**
+     * Layout, all strings are modified UTF-8 as written by {@link DataOutputStream#writeUTF}:
+     * <pre>
+     * int magic, int version, long xml last modified, long xml length
+     * int themes, then each theme name
+     * int targets, then each target name and per state: int count, count * int record offset
+     * per state: int record count
+     * records of the enabled overlays, then of the disabled ones, in the order of the XML:
+     *   package name, int target index, int theme index (-1 if none), type1a, 1b, 1c, 2, 3, 4
+     * </pre>
+     * Record offsets are relative to the first record.
+     */
+    static byte[] encode(long xmlLastModified,
+                         long xmlLength,
+                         List<Map<String, ProfileItem>> states) throws IOException {
+        Map<String, Integer> themes = new LinkedHashMap<>();
+        Map<String, Integer> targets = new LinkedHashMap<>();
+        List<List<List<Integer>>> offsets = new ArrayList<>();
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        for (int state = 0; state < STATES; state++) {
+            for (ProfileItem item : states.get(state).values()) {
+                String target = nonNull(item.getTargetPackage());
+                Integer targetIndex = targets.get(target);
+                if (targetIndex == null) {
+                    targetIndex = targets.size();
+                    targets.put(target, targetIndex);
+                    List<List<Integer>> perState = new ArrayList<>(STATES);
+                    for (int i = 0; i < STATES; i++) perState.add(new ArrayList<>());
+                    offsets.add(perState);
+                }
+                int themeIndex = -1;
+                String parent = item.getParentTheme();
+                if ((parent != null) && !parent.isEmpty()) {
+                    Integer known = themes.get(parent);
+                    if (known == null) {
+                        known = themes.size();
+                        themes.put(parent, known);
+                    }
+                    themeIndex = known;
+                }
+                offsets.get(targetIndex).get(state).add(records.size());
+                records.writeUTF(item.getPackageName());
+                records.writeInt(targetIndex);
+                records.writeInt(themeIndex);
+                records.writeUTF(nonNull(item.getType1a()));
+                records.writeUTF(nonNull(item.getType1b()));
+                records.writeUTF(nonNull(item.getType1c()));
+                records.writeUTF(nonNull(item.getType2()));
+                records.writeUTF(nonNull(item.getType3()));
+                records.writeUTF(nonNull(item.getType4()));
+            }
+        }
+        records.flush();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(recordBytes.size() + 4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(xmlLastModified);
+        out.writeLong(xmlLength);
+        out.writeInt(themes.size());
+        for (String theme : themes.keySet()) out.writeUTF(theme);
+        out.writeInt(targets.size());
+        int t = 0;
+        for (String target : targets.keySet()) {
+            out.writeUTF(target);
+            for (List<Integer> stateOffsets : offsets.get(t++)) {
+                out.writeInt(stateOffsets.size());
+                for (int offset : stateOffsets) out.writeInt(offset);
+            }
+        }
+        for (int state = 0; state < STATES; state++) out.writeInt(states.get(state).size());
+        recordBytes.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static String nonNull(String value) {
+        return (value != null) ? value : "";
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * A loaded index, only the header is decoded up front
+     */
+    static final class Reader {
+        private final byte[] data;
+        private final long xmlLastModified;
+        private final long xmlLength;
+        private final List<String> themes = new ArrayList<>();
+        private final List<String> targets = new ArrayList<>();
+        private final Map<String, int[][]> offsets = new HashMap<>();
+        private final int[] counts = new int[STATES];
+        private final int recordsStart;
+
+        Reader(byte[] data) throws IOException {
+            super();
+            this.data = data;
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if ((in.readInt() != MAGIC) || (in.readInt() != FORMAT_VERSION)) {
+                throw new IOException("Unknown profile index format");
+            }
+            xmlLastModified = in.readLong();
+            xmlLength = in.readLong();
+            int themeCount = in.readInt();
+            for (int i = 0; i < themeCount; i++) themes.add(in.readUTF());
+            int targetCount = in.readInt();
+            for (int i = 0; i < targetCount; i++) {
+                String target = in.readUTF();
+                int[][] perState = new int[STATES][];
+                for (int state = 0; state < STATES; state++) {
+                    int[] stateOffsets = new int[in.readInt()];
+                    for (int j = 0; j < stateOffsets.length; j++) stateOffsets[j] = in.readInt();
+                    perState[state] = stateOffsets;
+                }
+                targets.add(target);
+                offsets.put(target, perState);
+            }
+            for (int state = 0; state < STATES; state++) counts[state] = in.readInt();
+            recordsStart = data.length - in.available();
+        }
+
+        List<String> getTargets() {
+            return Collections.unmodifiableList(targets);
+        }
+
+        /**
+         * Decode every overlay of a state, in the order they were saved
+         *
+         * @param state ENABLED or DISABLED
+         * @return Returns the overlays mapped by their package name
+         */
+        Map<String, ProfileItem> read(int state) throws IOException {
+            Map<String, ProfileItem> items = new LinkedHashMap<>();
+            // The enabled records come first, so the disabled ones start right after them
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    data, recordsStart, data.length - recordsStart));
+            for (int skip = 0; skip < state; skip++) {
+                for (int i = 0; i < counts[skip]; i++) readItem(in);
+            }
+            for (int i = 0; i < counts[state]; i++) {
+                ProfileItem item = readItem(in);
+                items.put(item.getPackageName(), item);
+            }
+            return items;
+        }
+
+        /**
+         * Decode only the overlays of a single target
+         *
+         * @param state  ENABLED or DISABLED
+         * @param target Target package
+         * @return Returns the overlays mapped by their package name
+         */
+        Map<String, ProfileItem> read(int state, String target) throws IOException {
+            Map<String, ProfileItem> items = new LinkedHashMap<>();
+            int[][] perState = offsets.get(target);
+            if (perState == null) return items;
+            for (int offset : perState[state]) {
+                ProfileItem item = readItem(new DataInputStream(new ByteArrayInputStream(
+                        data, recordsStart + offset, data.length - recordsStart - offset)));
+                items.put(item.getPackageName(), item);
+            }
+            return items;
+        }
+
+        private ProfileItem readItem(DataInputStream in) throws IOException {
+            ProfileItem item = new ProfileItem(in.readUTF());
+            item.setTargetPackage(targets.get(in.readInt()));
+            int themeIndex = in.readInt();
+            item.setParentTheme((themeIndex >= 0) ? themes.get(themeIndex) : "");
+            item.setType1a(in.readUTF());
+            item.setType1b(in.readUTF());
+            item.setType1c(in.readUTF());
+            item.setType2(in.readUTF());
+            item.setType3(in.readUTF());
+            item.setType4(in.readUTF());
+            return item;
+        }
+    }
+}
@@ -27,26 +27,18 @@ import android.os.Environment;
 import android.preference.PreferenceManager;
 import android.util.Xml;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 import org.xmlpull.v1.XmlSerializer;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.function.Predicate;
 
 import projekt.substratum.common.Packages;
 import projekt.substratum.common.platform.ThemeManager;
@@ -80,19 +72,19 @@ public enum ProfileManager {
     public static final String DAY_PROFILE_HOUR = "day_profile_hour";
     public static final String DAY_PROFILE_MINUTE = "day_profile_minute";
     // Profile state list tags
-    private static final String METADATA_PROFILE_ENABLED = "enabled";
-    private static final String METADATA_PROFILE_DISABLED = "disabled";
-    private static final String METADATA_PROFILE_OVERLAYS = "overlays";
-    private static final String METADATA_PROFILE_ITEM = "item";
-    private static final String METADATA_PROFILE_PACKAGE_NAME = "packageName";
-    private static final String METADATA_PROFILE_TARGET = "target";
-    private static final String METADATA_PROFILE_PARENT = "parent";
-    private static final String METADATA_PROFILE_TYPE1A = "type1a";
-    private static final String METADATA_PROFILE_TYPE1B = "type1b";
-    private static final String METADATA_PROFILE_TYPE1C = "type1c";
-    private static final String METADATA_PROFILE_TYPE2 = "type2";
-    private static final String METADATA_PROFILE_TYPE3 = "type3";
-    private static final String METADATA_PROFILE_TYPE4 = "type4";
+    static final String METADATA_PROFILE_ENABLED = "enabled";
+    static final String METADATA_PROFILE_DISABLED = "disabled";
+    static final String METADATA_PROFILE_OVERLAYS = "overlays";
+    static final String METADATA_PROFILE_ITEM = "item";
+    static final String METADATA_PROFILE_PACKAGE_NAME = "packageName";
+    static final String METADATA_PROFILE_TARGET = "target";
+    static final String METADATA_PROFILE_PARENT = "parent";
+    static final String METADATA_PROFILE_TYPE1A = "type1a";
+    static final String METADATA_PROFILE_TYPE1B = "type1b";
+    static final String METADATA_PROFILE_TYPE1C = "type1c";
+    static final String METADATA_PROFILE_TYPE2 = "type2";
+    static final String METADATA_PROFILE_TYPE3 = "type3";
+    static final String METADATA_PROFILE_TYPE4 = "type4";
     private static final String DAY = "day";
 
     /**
@@ -277,246 +269,211 @@ public enum ProfileManager {
      * @param context     Context
      * @param profileName Profile name
      */
-    @SuppressWarnings("RedundantCast")
     public static void writeProfileState(Context context,
                                          String profileName) {
+        List<Map<String, ProfileItem>> states = ProfileIndex.newStates();
+        for (String packageName : ThemeManager.listOverlays(context, STATE_ENABLED)) {
+            states.get(ProfileIndex.ENABLED).put(packageName, createItem(context, packageName));
+        }
+        for (String packageName : ThemeManager.listOverlays(context, STATE_DISABLED)) {
+            states.get(ProfileIndex.DISABLED).put(packageName, createItem(context, packageName));
+        }
+        File profileDir = getProfileDirectory(profileName);
         try {
             try (FileOutputStream outputStream = new FileOutputStream(
-                    Environment.getExternalStorageDirectory().getAbsolutePath() +
-                            PROFILE_DIRECTORY + profileName + "/" + OVERLAY_PROFILE_STATE_FILE)) {
+                    new File(profileDir, OVERLAY_PROFILE_STATE_FILE))) {
                 XmlSerializer xmlSerializer = Xml.newSerializer();
                 xmlSerializer.setOutput(outputStream, XML_UTF);
                 xmlSerializer.setFeature(XML_SERIALIZER, true);
                 xmlSerializer.startDocument(null, true);
                 xmlSerializer.startTag(null, METADATA_PROFILE_OVERLAYS);
-
-                // Write enabled overlays
-                List<String> enabled = ThemeManager.listOverlays(context, STATE_ENABLED);
-                if (!enabled.isEmpty()) {
-                    xmlSerializer.startTag(null, METADATA_PROFILE_ENABLED);
-                    for (String packageName : enabled) {
-                        String target = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayTarget);
-                        String parent = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayParent);
-                        String type1a = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType1a);
-                        String type1b = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType1b);
-                        String type1c = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType1c);
-                        String type2 = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType2);
-                        String type3 = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType3);
-                        String type4 = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType4);
-
-                        xmlSerializer.startTag(null, METADATA_PROFILE_ITEM)
-                                .attribute(null, METADATA_PROFILE_PACKAGE_NAME,
-                                        String.valueOf((Object) packageName))
-                                .attribute(null, METADATA_PROFILE_TARGET,
-                                        String.valueOf((Object) target))
-                                .attribute(null, METADATA_PROFILE_PARENT,
-                                        String.valueOf((Object) parent))
-                                .attribute(null, METADATA_PROFILE_TYPE1A,
-                                        String.valueOf((Object) type1a))
-                                .attribute(null, METADATA_PROFILE_TYPE1B,
-                                        String.valueOf((Object) type1b))
-                                .attribute(null, METADATA_PROFILE_TYPE1C,
-                                        String.valueOf((Object) type1c))
-                                .attribute(null, METADATA_PROFILE_TYPE2,
-                                        String.valueOf((Object) type2))
-                                .attribute(null, METADATA_PROFILE_TYPE3,
-                                        String.valueOf((Object) type3))
-                                .attribute(null, METADATA_PROFILE_TYPE4,
-                                        String.valueOf((Object) type4))
-                                .endTag(null, METADATA_PROFILE_ITEM);
-                    }
-                    xmlSerializer.endTag(null, METADATA_PROFILE_ENABLED);
-                }
-
-                // Write disabled overlays
-                List<String> disabled = ThemeManager.listOverlays(context, STATE_DISABLED);
-                if (!disabled.isEmpty()) {
-                    xmlSerializer.startTag(null, METADATA_PROFILE_DISABLED);
-                    for (String packageName : disabled) {
-                        String target = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayTarget);
-                        String parent = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayParent);
-                        String type1a = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType1a);
-                        String type1b = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType1b);
-                        String type1c = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType1c);
-                        String type2 = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType2);
-                        String type3 = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType3);
-                        String type4 = Packages.getOverlayMetadata(
-                                context, packageName, metadataOverlayType4);
-
-                        xmlSerializer.startTag(null, METADATA_PROFILE_ITEM)
-                                .attribute(null, METADATA_PROFILE_PACKAGE_NAME,
-                                        String.valueOf((Object) packageName))
-                                .attribute(null, METADATA_PROFILE_TARGET,
-                                        String.valueOf((Object) target))
-                                .attribute(null, METADATA_PROFILE_PARENT,
-                                        String.valueOf((Object) parent))
-                                .attribute(null, METADATA_PROFILE_TYPE1A,
-                                        String.valueOf((Object) type1a))
-                                .attribute(null, METADATA_PROFILE_TYPE1B,
-                                        String.valueOf((Object) type1b))
-                                .attribute(null, METADATA_PROFILE_TYPE1C,
-                                        String.valueOf((Object) type1c))
-                                .attribute(null, METADATA_PROFILE_TYPE2,
-                                        String.valueOf((Object) type2))
-                                .attribute(null, METADATA_PROFILE_TYPE3,
-                                        String.valueOf((Object) type3))
-                                .attribute(null, METADATA_PROFILE_TYPE4,
-                                        String.valueOf((Object) type4))
-                                .endTag(null, METADATA_PROFILE_ITEM);
-                    }
-                    xmlSerializer.endTag(null, METADATA_PROFILE_DISABLED);
-                }
-
+                writeItems(xmlSerializer, METADATA_PROFILE_ENABLED,
+                        states.get(ProfileIndex.ENABLED));
+                writeItems(xmlSerializer, METADATA_PROFILE_DISABLED,
+                        states.get(ProfileIndex.DISABLED));
                 xmlSerializer.endTag(null, METADATA_PROFILE_OVERLAYS);
                 xmlSerializer.endDocument();
                 xmlSerializer.flush();
             }
+            // Index the state we already have at hand, saves importing the XML on the first read
+            ProfileIndex.write(profileDir, states);
         } catch (IOException ioe) {
             // Suppress exception
         }
     }
 
     /**
-     * Read profile state
+     * Collect the meta-data of an overlay to be saved into a profile
+     *
+     * @param context     Context
+     * @param packageName Overlay package
+     * @return Returns the profile item, missing values are saved as "null" like they always were
+     */
+    @SuppressWarnings("RedundantCast")
+    private static ProfileItem createItem(Context context,
+                                          String packageName) {
+        ProfileItem item = new ProfileItem(packageName);
+        item.setTargetPackage(String.valueOf((Object) Packages.getOverlayMetadata(
+                context, packageName, metadataOverlayTarget)));
+        item.setParentTheme(String.valueOf((Object) Packages.getOverlayMetadata(
+                context, packageName, metadataOverlayParent)));
+        item.setType1a(String.valueOf((Object) Packages.getOverlayMetadata(
+                context, packageName, metadataOverlayType1a)));
+        item.setType1b(String.valueOf((Object) Packages.getOverlayMetadata(
+                context, packageName, metadataOverlayType1b)));
+        item.setType1c(String.valueOf((Object) Packages.getOverlayMetadata(
+                context, packageName, metadataOverlayType1c)));
+        item.setType2(String.valueOf((Object) Packages.getOverlayMetadata(
+                context, packageName, metadataOverlayType2)));
+        item.setType3(String.valueOf((Object) Packages.getOverlayMetadata(
+                context, packageName, metadataOverlayType3)));
+        item.setType4(String.valueOf((Object) Packages.getOverlayMetadata(
+                context, packageName, metadataOverlayType4)));
+        return item;
+    }
+
+    /**
+     * Write the overlays of one state into the profile's XML
+     *
+     * @param xmlSerializer Serializer of the overlay state file
+     * @param tag           Tag of the state
+     * @param items         Overlays in that state
+     */
+    private static void writeItems(XmlSerializer xmlSerializer,
+                                   String tag,
+                                   Map<String, ProfileItem> items) throws IOException {
+        if (items.isEmpty()) return;
+        xmlSerializer.startTag(null, tag);
+        for (ProfileItem item : items.values()) {
+            xmlSerializer.startTag(null, METADATA_PROFILE_ITEM)
+                    .attribute(null, METADATA_PROFILE_PACKAGE_NAME, item.getPackageName())
+                    .attribute(null, METADATA_PROFILE_TARGET, item.getTargetPackage())
+                    .attribute(null, METADATA_PROFILE_PARENT, item.getParentTheme())
+                    .attribute(null, METADATA_PROFILE_TYPE1A, item.getType1a())
+                    .attribute(null, METADATA_PROFILE_TYPE1B, item.getType1b())
+                    .attribute(null, METADATA_PROFILE_TYPE1C, item.getType1c())
+                    .attribute(null, METADATA_PROFILE_TYPE2, item.getType2())
+                    .attribute(null, METADATA_PROFILE_TYPE3, item.getType3())
+                    .attribute(null, METADATA_PROFILE_TYPE4, item.getType4())
+                    .endTag(null, METADATA_PROFILE_ITEM);
+        }
+        xmlSerializer.endTag(null, tag);
+    }
+
+    private static File getProfileDirectory(String profileName) {
+        return new File(Environment.getExternalStorageDirectory().getAbsolutePath() +
+                PROFILE_DIRECTORY + profileName);
+    }
+
+    /**
+     * Read one state of a profile through its index
      *
      * @param profileName  Profile name
      * @param overlayState Overlay state
-     * @return Returns a map of states on a profile
+     * @return Returns the overlays mapped by their package name, empty if there are none
      */
-    public static Map<String, ProfileItem> readProfileState(String profileName,
-                                                            Integer overlayState) {
-        Map<String, ProfileItem> map = new HashMap<>();
-        try (InputStream input = new FileInputStream(Environment.getExternalStorageDirectory()
-                .getAbsolutePath() + PROFILE_DIRECTORY + profileName + "/" +
-                OVERLAY_PROFILE_STATE_FILE)) {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(input);
-            doc.getDocumentElement().normalize();
-
-            Node items = doc.getElementsByTagName(
-                    (overlayState == STATE_ENABLED) ?
-                            METADATA_PROFILE_ENABLED : METADATA_PROFILE_DISABLED)
-                    .item(0);
-
-            if (items != null) {
-                NodeList childNodes = items.getChildNodes();
-                int listLength = childNodes.getLength();
-                for (int i = 0; i < listLength; i++) {
-                    if ((int) childNodes.item(i).getNodeType() == (int) Node.ELEMENT_NODE) {
-                        Element e = (Element) childNodes.item(i);
-                        ProfileItem item =
-                                new ProfileItem(e.getAttribute(METADATA_PROFILE_PACKAGE_NAME));
-                        item.setParentTheme(e.getAttribute(METADATA_PROFILE_PARENT));
-                        item.setTargetPackage(e.getAttribute(METADATA_PROFILE_TARGET));
-                        item.setType1a(e.getAttribute(METADATA_PROFILE_TYPE1A));
-                        item.setType1b(e.getAttribute(METADATA_PROFILE_TYPE1B));
-                        item.setType1c(e.getAttribute(METADATA_PROFILE_TYPE1C));
-                        item.setType2(e.getAttribute(METADATA_PROFILE_TYPE2));
-                        item.setType3(e.getAttribute(METADATA_PROFILE_TYPE3));
-                        item.setType4(e.getAttribute(METADATA_PROFILE_TYPE4));
-                        map.put(e.getAttribute(METADATA_PROFILE_PACKAGE_NAME), item);
-                    }
-                }
+    private static Map<String, ProfileItem> readIndexed(String profileName,
+                                                        Integer overlayState) {
+        ProfileIndex.Reader index = ProfileIndex.open(getProfileDirectory(profileName));
+        if (index != null) {
+            try {
+                return index.read(toIndexState(overlayState));
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        } catch (IOException | ParserConfigurationException | SAXException e) {
-            e.printStackTrace();
         }
-        return map;
+        return new LinkedHashMap<>();
+    }
+
+    private static int toIndexState(Integer overlayState) {
+        return (overlayState == STATE_ENABLED) ? ProfileIndex.ENABLED : ProfileIndex.DISABLED;
     }
 
     /**
-     * Read profile state package
+     * Read profile state
      *
      * @param profileName  Profile name
      * @param overlayState Overlay state
-     * @return Returns a profile's state package
+     * @return Returns a map of states on a profile
      */
-    public static List<String> readProfileStatePackage(String profileName,
-                                                       Integer overlayState) {
-        List<String> list = new ArrayList<>();
-        try (InputStream input = new FileInputStream(Environment.getExternalStorageDirectory()
-                .getAbsolutePath() + PROFILE_DIRECTORY + profileName + "/" +
-                OVERLAY_PROFILE_STATE_FILE)) {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(input);
-            doc.getDocumentElement().normalize();
-
-            Node items = doc.getElementsByTagName(
-                    (overlayState == STATE_ENABLED) ?
-                            METADATA_PROFILE_ENABLED : METADATA_PROFILE_DISABLED).item(0);
-
-            if (items != null) {
-                NodeList childNodes = items.getChildNodes();
-                int listLength = childNodes.getLength();
-                for (int i = 0; i < listLength; i++) {
-                    if ((int) childNodes.item(i).getNodeType() == (int) Node.ELEMENT_NODE) {
-                        Element element = (Element) childNodes.item(i);
-                        list.add(element.getAttribute(METADATA_PROFILE_PACKAGE_NAME));
-                    }
-                }
-            }
-        } catch (IOException | ParserConfigurationException | SAXException e) {
-            e.printStackTrace();
-        }
-        return list;
+    public static Map<String, ProfileItem> readProfileState(String profileName,
+                                                            Integer overlayState) {
+        return readIndexed(profileName, overlayState);
     }
 
     /**
-     * Read profile state package with target package
+     * Read profile state package with target package, the overlays of targets that are not
+     * accepted are skipped in the index without being decoded
      *
      * @param profileName  Profile name
      * @param overlayState Overlay state
-     * @return Returns a profile's state package with target package
+     * @param targetFilter Decides which targets to read, e.g. only the installed ones
+     * @return Returns a profile's state package with target package, grouped by target
      */
     public static List<List<String>> readProfileStatePackageWithTargetPackage(
             String profileName,
-            Integer overlayState) {
+            Integer overlayState,
+            Predicate<String> targetFilter) {
         List<List<String>> list = new ArrayList<>();
-        try (InputStream input = new FileInputStream(Environment.getExternalStorageDirectory()
-                .getAbsolutePath() +
-                PROFILE_DIRECTORY + profileName + "/" + OVERLAY_PROFILE_STATE_FILE)) {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(input);
-            doc.getDocumentElement().normalize();
-
-            Node items = doc.getElementsByTagName(
-                    (overlayState == STATE_ENABLED) ?
-                            METADATA_PROFILE_ENABLED : METADATA_PROFILE_DISABLED).item(0);
-
-            if (items != null) {
-                NodeList childNodes = items.getChildNodes();
-                int listLength = childNodes.getLength();
-                for (int i = 0; i < listLength; i++) {
-                    if ((int) childNodes.item(i).getNodeType() == (int) Node.ELEMENT_NODE) {
-                        Element element = (Element) childNodes.item(i);
-                        List<String> overlay = new ArrayList<>();
-                        overlay.add(element.getAttribute(METADATA_PROFILE_PACKAGE_NAME));
-                        overlay.add(element.getAttribute(METADATA_PROFILE_TARGET));
-                        list.add(overlay);
-                    }
+        ProfileIndex.Reader index = ProfileIndex.open(getProfileDirectory(profileName));
+        if (index == null) return list;
+        int state = toIndexState(overlayState);
+        try {
+            for (String target : index.getTargets()) {
+                if (!targetFilter.test(target)) continue;
+                for (ProfileItem item : index.read(state, target).values()) {
+                    List<String> overlay = new ArrayList<>();
+                    overlay.add(item.getPackageName());
+                    overlay.add(item.getTargetPackage());
+                    list.add(overlay);
                 }
             }
-        } catch (IOException | ParserConfigurationException | SAXException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return list;
     }
-}
\ No newline at end of file
+
+    /**
+     * Read both overlay lists of a profile with a single look at its index
+     *
+     * @param profileName Profile name
+     * @return Returns the overlays of the profile, empty if the state file could not be read
+     */
+    public static ProfileState readProfile(String profileName) {
+        ProfileState state = new ProfileState();
+        ProfileIndex.Reader index = ProfileIndex.open(getProfileDirectory(profileName));
+        if (index != null) {
+            try {
+                for (ProfileItem item : index.read(ProfileIndex.ENABLED).values()) {
+                    state.enabled.put(item.getPackageName(), item.getTargetPackage());
+                }
+                for (ProfileItem item : index.read(ProfileIndex.DISABLED).values()) {
+                    state.disabled.put(item.getPackageName(), item.getTargetPackage());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return state;
+    }
+    /**
+     * Overlays saved in a profile, mapped to their target package in the order they were saved
+     */
+    public static final class ProfileState {
+        private final Map<String, String> enabled = new LinkedHashMap<>();
+        private final Map<String, String> disabled = new LinkedHashMap<>();
+
+        ProfileState() {
+            super();
+        }
+
+        public Map<String, String> getEnabled() {
+            return Collections.unmodifiableMap(enabled);
+        }
+
+        public Map<String, String> getDisabled() {
+            return Collections.unmodifiableMap(disabled);
+        }
+    }
+}
@@ -57,11 +57,14 @@ import com.gordonwong.materialsheetfab.MaterialSheetFab;
 import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
@@ -92,7 +95,6 @@ import static projekt.substratum.common.References.VENDOR_DIR;
 import static projekt.substratum.common.Systems.checkOMS;
 import static projekt.substratum.common.platform.ThemeManager.STATE_DISABLED;
 import static projekt.substratum.common.platform.ThemeManager.STATE_ENABLED;
-import static projekt.substratum.common.platform.ThemeManager.isOverlayEnabled;
 import static projekt.substratum.util.files.MapUtils.sortMapByValues;
 
 public class ManagerFragment extends Fragment implements SearchView.OnQueryTextListener {
@@ -475,6 +477,89 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
         return new ArrayList<>(ThemeManager.listOverlays(context, STATE_ENABLED));
     }
 
+    /**
+     * Deselect every overlay and refresh its enabled state, once OMS has written the changes
+     */
+    private void refreshEnabledOverlays() {
+        Set<String> updated = new HashSet<>(updateEnabledOverlays());
+        for (ManagerItem currentOverlay : overlayList) {
+            currentOverlay.setSelected(false);
+            currentOverlay.updateEnabledOverlays(updated.contains(currentOverlay.getName()));
+        }
+        loadingBar.setVisibility(View.GONE);
+        mAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Check whether the themes of the selected overlays are still installed
+     *
+     * @param context  Context
+     * @param overlays Selected overlays
+     * @return True, if every selected overlay still has its theme installed
+     */
+    private static boolean areParentsInstalled(Context context, List<ManagerItem> overlays) {
+        // Most selected overlays share a handful of themes, only ask once per theme
+        Map<String, Boolean> installed = new HashMap<>();
+        for (ManagerItem managerItem : overlays) {
+            String parent = getOverlayParent(context, managerItem.getName());
+            Boolean isInstalled = installed.get(parent);
+            if (isInstalled == null) {
+                isInstalled = isPackageInstalled(context, parent);
+                installed.put(parent, isInstalled);
+            }
+            if (!isInstalled) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Obtain the selected overlays of the manager's list
+     *
+     * @return Returns the selected overlays, in the order they are listed
+     */
+    private List<ManagerItem> getSelectedOverlays() {
+        List<ManagerItem> selected = new ArrayList<>();
+        for (ManagerItem managerItem : overlayList) {
+            if (managerItem.isSelected()) selected.add(managerItem);
+        }
+        return selected;
+    }
+
+    /**
+     * Names of the given overlays
+     *
+     * @param overlays Overlays of the list
+     * @return Returns their package names, in order
+     */
+    private static List<String> namesOf(List<ManagerItem> overlays) {
+        List<String> names = new ArrayList<>(overlays.size());
+        for (ManagerItem managerItem : overlays) names.add(managerItem.getName());
+        return names;
+    }
+
+    /**
+     * Split the selected overlays on whether the overlay backend lists them in a state, the
+     * listing is asked for once per action and turned into a set, not searched per overlay
+     *
+     * @param listed   Overlays the backend lists in the state
+     * @param selected Package names of the selected overlays
+     * @param matching Receives the selected overlays that are listed, in order
+     * @param other    Receives the rest of them in order, may be null
+     */
+    static void splitByState(Collection<String> listed,
+                             List<String> selected,
+                             List<String> matching,
+                             List<String> other) {
+        Set<String> state = new HashSet<>(listed);
+        for (String overlay : selected) {
+            if (state.contains(overlay)) {
+                matching.add(overlay);
+            } else if (other != null) {
+                other.add(overlay);
+            }
+        }
+    }
+
     /**
      * When the search bar text was changed, and then the user presses enter
      *
@@ -548,8 +633,10 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
                     if (Systems.checkOMS(fragment.context)) {
                         fragment.activated_overlays = new ArrayList<>(
                                 ThemeManager.listOverlays(fragment.context, STATE_ENABLED));
-                        List<String> disabled_overlays = new ArrayList<>(
+                        Set<String> disabled_overlays = new HashSet<>(
                                 ThemeManager.listOverlays(fragment.context, STATE_DISABLED));
+                        Set<String> enabled_overlays = new HashSet<>(
+                                fragment.activated_overlays);
                         List<String> all_overlays = new ArrayList<>(
                                 fragment.activated_overlays);
                         all_overlays.addAll(disabled_overlays);
@@ -613,7 +700,7 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
                                             entry.first,
                                             false);
                                     fragment.overlaysList.add(st);
-                                } else if (fragment.activated_overlays.contains(entry.first)) {
+                                } else if (enabled_overlays.contains(entry.first)) {
                                     ManagerItem st = new ManagerItem(
                                             context,
                                             entry.first,
@@ -768,23 +855,11 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
             if (fragment != null) {
                 Context context = fragment.context;
                 fragment.overlayList = fragment.mAdapter.getOverlayManagerList();
-                boolean has_failed = false;
-                int len = fragment.overlayList.size();
+                List<ManagerItem> selected = fragment.getSelectedOverlays();
+                boolean has_failed = !areParentsInstalled(context, selected);
                 ArrayList<String> data = new ArrayList<>();
-                for (int i = 0; i < len; i++) {
-                    ManagerItem managerItem = fragment.overlayList.get(i);
-                    if (managerItem.isSelected()) {
-                        if (isPackageInstalled(context,
-                                getOverlayParent(context, managerItem.getName()))) {
-                            if (ThemeManager.listOverlays(fragment.context, STATE_DISABLED)
-                                    .contains(managerItem.getName())) {
-                                data.add(managerItem.getName());
-                            }
-                        } else {
-                            has_failed = true;
-                        }
-                    }
-                }
+                splitByState(ThemeManager.listOverlays(context, STATE_DISABLED),
+                        namesOf(selected), data, null);
                 if (!data.isEmpty() && !has_failed) {
                     // The magic goes here
                     if (!data.isEmpty()) ThemeManager.enableOverlay(context, data);
@@ -797,15 +872,7 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
                             // OMS may not have written all the changes so quickly just yet
                             // so we may need to have a small delay
                             try {
-                                List<String> updated = fragment.updateEnabledOverlays();
-                                for (int i = 0; i < fragment.overlayList.size(); i++) {
-                                    ManagerItem currentOverlay = fragment.overlayList.get(i);
-                                    currentOverlay.setSelected(false);
-                                    currentOverlay.updateEnabledOverlays(updated.contains(
-                                            currentOverlay.getName()));
-                                    fragment.loadingBar.setVisibility(View.GONE);
-                                    fragment.mAdapter.notifyDataSetChanged();
-                                }
+                                fragment.refreshEnabledOverlays();
                             } catch (Exception e) {
                                 // Consume window refresh
                             }
@@ -847,19 +914,11 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
 
                 if (Systems.checkOMS(context) && !Systems.isSamsungDevice(context)) {
                     fragment.overlayList = fragment.mAdapter.getOverlayManagerList();
-                    int len = fragment.overlayList.size();
+                    List<ManagerItem> selected = fragment.getSelectedOverlays();
                     ArrayList<String> data = new ArrayList<>();
-                    for (int i = 0; i < len; i++) {
-                        ManagerItem managerItem = fragment.overlayList.get(i);
-                        if (managerItem.isSelected() &&
-                                isOverlayEnabled(context, managerItem.getName())) {
-                            data.add(managerItem.getName());
-                            managerItem.setSelected(false);
-                        } else if (managerItem.isSelected() &&
-                                !isOverlayEnabled(context, managerItem.getName())) {
-                            managerItem.setSelected(false);
-                        }
-                    }
+                    splitByState(ThemeManager.listOverlays(context, STATE_ENABLED),
+                            namesOf(selected), data, null);
+                    for (ManagerItem managerItem : selected) managerItem.setSelected(false);
 
                     if (!data.isEmpty()) {
                         // The magic goes here
@@ -873,16 +932,7 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
                                 // OMS may not have written all the changes so quickly just yet
                                 // so we may need to have a small delay
                                 try {
-                                    List<String> updated = fragment.updateEnabledOverlays();
-                                    for (int i = 0; i < fragment.overlayList.size(); i++) {
-                                        ManagerItem currentOverlay = fragment.overlayList
-                                                .get(i);
-                                        currentOverlay.setSelected(false);
-                                        currentOverlay.updateEnabledOverlays(updated.contains(
-                                                currentOverlay.getName()));
-                                        fragment.loadingBar.setVisibility(View.GONE);
-                                        fragment.mAdapter.notifyDataSetChanged();
-                                    }
+                                    fragment.refreshEnabledOverlays();
                                 } catch (Exception e) {
                                     // Consume window refresh
                                 }
@@ -1085,26 +1135,13 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
             if (fragment != null) {
                 Context context = fragment.context;
                 fragment.overlayList = fragment.mAdapter.getOverlayManagerList();
-                boolean has_failed = false;
-                int len = fragment.overlayList.size();
+                List<ManagerItem> selected = fragment.getSelectedOverlays();
+                boolean has_failed = !areParentsInstalled(context, selected);
+                // Disabled overlays get enabled, everything else gets disabled
                 ArrayList<String> disabled = new ArrayList<>();
                 ArrayList<String> enabled = new ArrayList<>();
-                for (int i = 0; i < len; i++) {
-                    ManagerItem managerItem = fragment.overlayList.get(i);
-                    if (managerItem.isSelected()) {
-                        if (isPackageInstalled(context,
-                                getOverlayParent(context, managerItem.getName()))) {
-                            if (ThemeManager.listOverlays(fragment.context, STATE_DISABLED)
-                                    .contains(managerItem.getName())) {
-                                enabled.add(managerItem.getName());
-                            } else {
-                                disabled.add(managerItem.getName());
-                            }
-                        } else {
-                            has_failed = true;
-                        }
-                    }
-                }
+                splitByState(ThemeManager.listOverlays(context, STATE_DISABLED),
+                        namesOf(selected), enabled, disabled);
                 if ((!enabled.isEmpty() || !disabled.isEmpty()) && !has_failed) {
                     // The magic goes here
                     if (!enabled.isEmpty()) ThemeManager.enableOverlay(context, enabled);
@@ -1117,15 +1154,7 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
                             // OMS may not have written all the changes so quickly just yet
                             // so we may need to have a small delay
                             try {
-                                List<String> updated = fragment.updateEnabledOverlays();
-                                for (int i = 0; i < fragment.overlayList.size(); i++) {
-                                    ManagerItem currentOverlay = fragment.overlayList.get(i);
-                                    currentOverlay.setSelected(false);
-                                    currentOverlay.updateEnabledOverlays(updated.contains(
-                                            currentOverlay.getName()));
-                                    fragment.loadingBar.setVisibility(View.GONE);
-                                    fragment.mAdapter.notifyDataSetChanged();
-                                }
+                                fragment.refreshEnabledOverlays();
                             } catch (Exception e) {
                                 // Consume window refresh
                             }
@@ -1167,40 +1196,28 @@ public class ManagerFragment extends Fragment implements SearchView.OnQueryTextL
                 Context context = fragment.context;
 
                 fragment.overlayList = fragment.mAdapter.getOverlayManagerList();
-                int len = fragment.overlayList.size();
+                boolean isSamsung = Systems.isSamsungDevice(context);
                 ArrayList<String> data = new ArrayList<>();
-                for (int i = 0; i < len; i++) {
-                    ManagerItem overlay1 = fragment.overlayList.get(i);
-                    if (overlay1.isSelected()) {
-                        data.add(overlay1.getName());
-                        if (Systems.isSamsungDevice(context))
-                            MainActivity.queuedUninstall.add(overlay1.getName());
-                    }
+                for (ManagerItem overlay1 : fragment.getSelectedOverlays()) {
+                    data.add(overlay1.getName());
+                    if (isSamsung) MainActivity.queuedUninstall.add(overlay1.getName());
                 }
 
                 // The magic goes here
                 if (!data.isEmpty()) {
-                    if (!Systems.isSamsungDevice(context)) {
+                    if (!isSamsung) {
                         ThemeManager.uninstallOverlay(context, data);
                     }
                     if (Systems.checkSubstratumService(context) &&
                             !Systems.checkThemeInterfacer(context) &&
                             Packages.needsRecreate(context, data) &&
-                            !Systems.isSamsungDevice(context)) {
+                            !isSamsung) {
                         Handler handler = new Handler(Looper.getMainLooper());
                         handler.postDelayed(() -> {
                             // OMS may not have written all the changes so quickly just yet
                             // so we may need to have a small delay
                             try {
-                                List<String> updated = fragment.updateEnabledOverlays();
-                                for (int i = 0; i < fragment.overlayList.size(); i++) {
-                                    ManagerItem currentOverlay = fragment.overlayList.get(i);
-                                    currentOverlay.setSelected(false);
-                                    currentOverlay.updateEnabledOverlays(updated.contains(
-                                            currentOverlay.getName()));
-                                    fragment.loadingBar.setVisibility(View.GONE);
-                                    fragment.mAdapter.notifyDataSetChanged();
-                                }
+                                fragment.refreshEnabledOverlays();
                             } catch (Exception e) {
                                 // Consume window refresh
                             }
@@ -981,22 +981,21 @@ public class ProfileFragment extends Fragment {
                                     + PROFILE_DIRECTORY + profile_name + "/overlay_state.xml");
 
                     if (overlays.exists()) {
+                        // Overlays of targets that are not installed are not even decoded
                         List<List<String>> profile =
                                 ProfileManager.readProfileStatePackageWithTargetPackage(
-                                        profile_name, STATE_ENABLED);
+                                        profile_name, STATE_ENABLED,
+                                        target -> Packages.isPackageInstalled(
+                                                profileFragment.mContext, target));
                         system = ThemeManager.listAllOverlays(profileFragment.mContext);
 
                         // Now process the overlays to be enabled
                         for (int i = 0, size = profile.size(); i < size; i++) {
                             String packageName = profile.get(i).get(0);
-                            String targetPackage = profile.get(i).get(1);
-                            if (Packages.isPackageInstalled(profileFragment.mContext,
-                                    targetPackage)) {
-                                if (system.contains(packageName)) {
-                                    to_be_run.add(packageName);
-                                } else {
-                                    profileFragment.cannot_run_overlays.add(profile.get(i));
-                                }
+                            if (system.contains(packageName)) {
+                                to_be_run.add(packageName);
+                            } else {
+                                profileFragment.cannot_run_overlays.add(profile.get(i));
                             }
                         }
 
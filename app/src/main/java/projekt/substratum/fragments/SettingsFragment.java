@@ -52,7 +52,9 @@ import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import projekt.substratum.BuildConfig;
 import projekt.substratum.LauncherActivity;
@@ -1124,18 +1126,15 @@ public class SettingsFragment extends PreferenceFragmentCompat {
             SettingsFragment settingsFragment = ref.get();
             ArrayList<String> packages = new ArrayList<>();
             if (settingsFragment != null) {
-                FileDownloader.init(
-                        settingsFragment.mContext,
+                Map<String, String> lists = new LinkedHashMap<>();
+                lists.put("repository_names.xml",
                         settingsFragment.getString(Systems.checkOreo() ?
-                                R.string.validator_o_url : R.string.validator_n_url),
-                        "repository_names.xml", VALIDATOR_CACHE);
-
-                FileDownloader.init(
-                        settingsFragment.mContext,
+                                R.string.validator_o_url : R.string.validator_n_url));
+                lists.put("resource_whitelist.xml",
                         settingsFragment.getString(Systems.checkOreo() ?
                                 R.string.validator_o_whitelist_url :
-                                R.string.validator_n_whitelist_url),
-                        "resource_whitelist.xml", VALIDATOR_CACHE);
+                                R.string.validator_n_whitelist_url));
+                FileDownloader.initAll(settingsFragment.mContext, lists, VALIDATOR_CACHE);
 
                 List<Repository> repositories =
                         ReadRepositoriesFile.read(
@@ -1147,6 +1146,32 @@ public class SettingsFragment extends PreferenceFragmentCompat {
                                 settingsFragment.mContext.getCacheDir().getAbsolutePath() +
                                         VALIDATOR_CACHE_DIR + "resource_whitelist.xml");
 
+                // Fetch the resource lists of every installed package at once, saved under the
+                // repository's own name as a package and its .common entry have lists of their own
+                Map<String, String> resources = new LinkedHashMap<>();
+                for (Repository repository : repositories) {
+                    String packageName = repository.getPackageName();
+                    String tempPackageName = (packageName.endsWith(".common") ?
+                            packageName.substring(0, packageName.length() - 7) :
+                            packageName);
+                    if (!Packages.isPackageInstalled(settingsFragment.mContext, tempPackageName)) {
+                        continue;
+                    }
+                    if (repository.getBools() != null) {
+                        resources.put(packageName + ".bools.xml", repository.getBools());
+                    }
+                    if (repository.getColors() != null) {
+                        resources.put(packageName + ".colors.xml", repository.getColors());
+                    }
+                    if (repository.getDimens() != null) {
+                        resources.put(packageName + ".dimens.xml", repository.getDimens());
+                    }
+                    if (repository.getStyles() != null) {
+                        resources.put(packageName + ".styles.xml", repository.getStyles());
+                    }
+                }
+                FileDownloader.initAll(settingsFragment.mContext, resources, VALIDATOR_CACHE);
+
                 settingsFragment.errors = new ArrayList<>();
                 for (int i = 0; i < repositories.size(); i++) {
                     Repository repository = repositories.get(i);
@@ -1164,13 +1189,11 @@ public class SettingsFragment extends PreferenceFragmentCompat {
 
                         // Check if there's a bools commit check
                         if (repository.getBools() != null) {
-                            FileDownloader.init(settingsFragment.mContext, repository.getBools(),
-                                    tempPackageName + ".bools.xml", VALIDATOR_CACHE);
                             List<String> bools =
                                     ReadResourcesFile.read(
                                             settingsFragment.mContext.
                                                     getCacheDir().getAbsolutePath() +
-                                                    VALIDATOR_CACHE_DIR + tempPackageName +
+                                                    VALIDATOR_CACHE_DIR + packageName +
                                                     ".bools.xml",
                                             "bool");
                             for (int j = 0; j < bools.size(); j++) {
@@ -1215,12 +1238,10 @@ public class SettingsFragment extends PreferenceFragmentCompat {
                         }
                         // Then go through the entire list of colors
                         if (repository.getColors() != null) {
-                            FileDownloader.init(settingsFragment.mContext, repository.getColors(),
-                                    tempPackageName + ".colors.xml", VALIDATOR_CACHE);
                             List<String> colors = ReadResourcesFile.read(
                                     settingsFragment.mContext
                                             .getCacheDir().getAbsolutePath() +
-                                            VALIDATOR_CACHE_DIR + tempPackageName + ".colors.xml",
+                                            VALIDATOR_CACHE_DIR + packageName + ".colors.xml",
                                     "color");
                             for (int j = 0; j < colors.size(); j++) {
                                 boolean validated = Packages.validateResource(
@@ -1264,11 +1285,9 @@ public class SettingsFragment extends PreferenceFragmentCompat {
                         }
                         // Next, dimensions may need to be exposed
                         if (repository.getDimens() != null) {
-                            FileDownloader.init(settingsFragment.mContext, repository.getDimens(),
-                                    tempPackageName + ".dimens.xml", VALIDATOR_CACHE);
                             List<String> dimens = ReadResourcesFile.read(
                                     settingsFragment.mContext.getCacheDir().getAbsolutePath() +
-                                            VALIDATOR_CACHE_DIR + tempPackageName +
+                                            VALIDATOR_CACHE_DIR + packageName +
                                             ".dimens.xml", "dimen");
                             for (int j = 0; j < dimens.size(); j++) {
                                 boolean validated = Packages.validateResource(
@@ -1313,12 +1332,10 @@ public class SettingsFragment extends PreferenceFragmentCompat {
                         }
                         // Finally, check if styles are exposed
                         if (repository.getStyles() != null) {
-                            FileDownloader.init(settingsFragment.mContext, repository.getStyles(),
-                                    tempPackageName + ".styles.xml", VALIDATOR_CACHE);
                             List<String> styles = ReadResourcesFile.read(
                                     settingsFragment.mContext
                                             .getCacheDir().getAbsolutePath() +
-                                            VALIDATOR_CACHE_DIR + tempPackageName + ".styles.xml",
+                                            VALIDATOR_CACHE_DIR + packageName + ".styles.xml",
                                     "style");
                             for (int j = 0; j < styles.size(); j++) {
                                 boolean validated = Packages.validateResource(
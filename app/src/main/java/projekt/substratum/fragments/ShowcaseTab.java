@@ -97,8 +97,9 @@ public class ShowcaseTab extends Fragment {
         RecyclerView.Adapter empty_adapter = new WallpaperAdapter(empty_array);
         mRecyclerView.setAdapter(empty_adapter);
         if (References.isNetworkAvailable(mContext)) {
+            // Every tab is loaded at once, the serial executor would download them one by one
             downloadResources downloadTask = new downloadResources(this);
-            downloadTask.execute(
+            downloadTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
                     current_tab_address,
                     "showcase_tab_" + current_tab_position + ".xml");
         } else {
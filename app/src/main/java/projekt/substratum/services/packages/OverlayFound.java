@@ -25,8 +25,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.ResolveInfo;
-import android.content.res.AssetManager;
-import android.content.res.Resources;
 import android.graphics.drawable.BitmapDrawable;
 import android.os.AsyncTask;
 import android.preference.PreferenceManager;
@@ -35,7 +33,6 @@ import android.util.Log;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -43,6 +40,7 @@ import projekt.substratum.R;
 import projekt.substratum.common.Broadcasts;
 import projekt.substratum.common.Packages;
 import projekt.substratum.common.References;
+import projekt.substratum.common.ThemeAssetIndex;
 import projekt.substratum.common.Theming;
 import projekt.substratum.common.platform.ThemeManager;
 
@@ -62,6 +60,8 @@ public class OverlayFound extends BroadcastReceiver {
         if (PACKAGE_ADDED.equals(intent.getAction())) {
             package_name = intent.getData().toString().substring(8);
             this.context = context;
+            // The overlay state receiver may not have seen this package yet
+            ThemeManager.invalidateOverlayState();
 
             if (ThemeManager.isOverlay(context, package_name)) {
                 return;
@@ -164,16 +164,11 @@ public class OverlayFound extends BroadcastReceiver {
                 for (int i = 0; i < installed_themes.size(); i++) {
                     String theme_pid = installed_themes.get(i).activityInfo.packageName;
                     Log.d(TAG, "Searching theme for themable overlay: " + theme_pid);
-                    try {
-                        Resources themeResources = overlayFound.context.getPackageManager()
-                                .getResourcesForApplication(theme_pid);
-                        AssetManager themeAssetManager = themeResources.getAssets();
-                        String[] listArray = themeAssetManager.list("overlays");
-                        List<String> list = Arrays.asList(listArray);
-                        if (list.contains(overlayFound.package_name))
-                            matching_criteria.add(theme_pid);
-                    } catch (Exception e) {
-                        // Suppress exception
+                    // Indexed once per theme version, rather than opening every theme's assets
+                    if (ThemeAssetIndex.getOverlayTargets(overlayFound.context,
+                            installed_themes.get(i).activityInfo.applicationInfo)
+                            .contains(overlayFound.package_name)) {
+                        matching_criteria.add(theme_pid);
                     }
                 }
             }
@@ -89,6 +89,8 @@ public class OverlayUpdater extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         if (PACKAGE_ADDED.equals(intent.getAction())) {
             String package_name = intent.getData().toString().substring(8);
+            // The overlay state receiver may not have seen this package yet
+            ThemeManager.invalidateOverlayState();
 
             if (ThemeManager.isOverlay(context, intent.getData().toString().substring(8)) ||
                     (Packages.getOverlayMetadata(
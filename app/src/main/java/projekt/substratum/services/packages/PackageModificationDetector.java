@@ -66,6 +66,8 @@ public class PackageModificationDetector extends BroadcastReceiver {
         } else {
             return;
         }
+        // Whatever happened to the package, its metadata may have changed
+        Packages.invalidateMetadata(package_name);
 
         if (package_name.equals(SST_ADDON_PACKAGE)) {
             Broadcasts.sendKillMessage(context);
@@ -22,8 +22,6 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.preference.PreferenceManager;
@@ -36,9 +34,12 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import projekt.substratum.MainActivity;
+import projekt.substratum.adapters.tabs.overlays.VariantCache;
 import projekt.substratum.common.Broadcasts;
 import projekt.substratum.common.Packages;
 import projekt.substratum.common.References;
+import projekt.substratum.common.ThemeAssetIndex;
+import projekt.substratum.common.commands.AssetMirror;
 import projekt.substratum.common.platform.ThemeManager;
 import projekt.substratum.tabs.BootAnimationsManager;
 import projekt.substratum.tabs.FontsManager;
@@ -50,7 +51,6 @@ import static projekt.substratum.common.Internal.SHUTDOWN_ANIMATION_APPLIED;
 import static projekt.substratum.common.Internal.SOUNDS_APPLIED;
 import static projekt.substratum.common.References.PACKAGE_FULLY_REMOVED;
 import static projekt.substratum.common.References.SST_ADDON_PACKAGE;
-import static projekt.substratum.common.References.metadataOverlayParent;
 
 public class ThemeUninstallDetector extends BroadcastReceiver {
 
@@ -66,6 +66,10 @@ public class ThemeUninstallDetector extends BroadcastReceiver {
             } else {
                 return;
             }
+            Packages.invalidateMetadata(package_name);
+            ThemeAssetIndex.remove(context, package_name);
+            VariantCache.clear(context, package_name);
+            AssetMirror.clear(context, package_name);
 
             if (package_name.equals(SST_ADDON_PACKAGE)) {
                 SharedPreferences prefs =
@@ -83,22 +87,9 @@ public class ThemeUninstallDetector extends BroadcastReceiver {
                     List<String> stateAll = ThemeManager.listAllOverlays(context);
 
                     ArrayList<String> all_overlays = new ArrayList<>();
-                    for (int j = 0; j < stateAll.size(); j++) {
-                        try {
-                            String current = stateAll.get(j);
-                            ApplicationInfo appInfo =
-                                    context.getPackageManager().getApplicationInfo(
-                                            current, PackageManager.GET_META_DATA);
-                            if ((appInfo.metaData != null) &&
-                                    (appInfo.metaData.getString(metadataOverlayParent) != null)) {
-                                String parent =
-                                        appInfo.metaData.getString(metadataOverlayParent);
-                                if ((parent != null) && parent.equals(package_name)) {
-                                    all_overlays.add(current);
-                                }
-                            }
-                        } catch (Exception e) {
-                            // NameNotFound
+                    for (String current : stateAll) {
+                        if (package_name.equals(Packages.getOverlayParent(context, current))) {
+                            all_overlays.add(current);
                         }
                     }
 
@@ -38,7 +38,11 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import projekt.substratum.R;
 import projekt.substratum.Substratum;
@@ -56,6 +60,7 @@ import projekt.substratum.tabs.WallpapersManager;
 
 import static projekt.substratum.common.Systems.isAndromedaDevice;
 import static projekt.substratum.common.Systems.isBinderInterfacer;
+import static projekt.substratum.common.platform.ThemeManager.STATE_ENABLED;
 import static projekt.substratum.common.systems.ProfileManager.DAY_PROFILE;
 import static projekt.substratum.common.systems.ProfileManager.DAY_PROFILE_HOUR;
 import static projekt.substratum.common.systems.ProfileManager.DAY_PROFILE_MINUTE;
@@ -106,6 +111,48 @@ public class ScheduledProfileService extends JobService {
         return false;
     }
 
+    /**
+     * Compare the priority order of the profile's overlays with the one on the device
+     * <p>
+     * Only the order among overlays of the same target matters. Per target, the overlays that are
+     * enabled in the saved order are kept, from the first one that is missing or out of place on
+     * every overlay has to be enabled again.
+     *
+     * @param saved      Overlays of the profile that can be enabled, in the saved order
+     * @param targets    Target package of every overlay of the profile
+     * @param enabledNow Overlays enabled on the device, in their priority order
+     * @return Returns the overlays that have to be enabled, again or for the first time
+     */
+    private static Set<String> getOutOfOrder(List<String> saved,
+                                             Map<String, String> targets,
+                                             List<String> enabledNow) {
+        Map<String, List<String>> savedByTarget = new HashMap<>();
+        for (String packageName : saved) {
+            savedByTarget.computeIfAbsent(targets.get(packageName), k -> new ArrayList<>())
+                    .add(packageName);
+        }
+        Set<String> savedSet = new HashSet<>(saved);
+        Map<String, List<String>> enabledByTarget = new HashMap<>();
+        for (String packageName : enabledNow) {
+            if (!savedSet.contains(packageName)) continue;
+            enabledByTarget.computeIfAbsent(targets.get(packageName), k -> new ArrayList<>())
+                    .add(packageName);
+        }
+        Set<String> outOfOrder = new HashSet<>();
+        for (Map.Entry<String, List<String>> target : savedByTarget.entrySet()) {
+            List<String> order = target.getValue();
+            List<String> current = enabledByTarget.get(target.getKey());
+            int inPlace = 0;
+            while ((current != null) && (inPlace < order.size()) &&
+                    (inPlace < current.size()) &&
+                    order.get(inPlace).equals(current.get(inPlace))) {
+                inPlace++;
+            }
+            outOfOrder.addAll(order.subList(inPlace, order.size()));
+        }
+        return outOfOrder;
+    }
+
     private static class ApplyProfile extends AsyncTask<Void, Void, Void> {
         private WeakReference<ScheduledProfileService> ref;
 
@@ -167,26 +214,47 @@ public class ScheduledProfileService extends JobService {
                 File overlays = new File(Environment.getExternalStorageDirectory()
                         .getAbsolutePath()
                         + "/substratum/profiles/" + processed + "/overlay_state.xml");
-                ArrayList<String> to_be_run = new ArrayList<>();
+                ArrayList<String> to_be_enabled = new ArrayList<>();
+                ArrayList<String> to_be_disabled = new ArrayList<>();
                 List<List<String>> cannot_run_overlays = new ArrayList<>();
-                List<String> system = new ArrayList<>();
                 StringBuilder dialog_message = new StringBuilder();
                 if (overlays.exists()) {
-                    List<List<String>> profile =
-                            ProfileManager.readProfileStatePackageWithTargetPackage(processed, 5);
-                    system = ProfileManager.readProfileStatePackage(processed, 4);
-                    system.addAll(ProfileManager.readProfileStatePackage(processed, 5));
-
-                    // Now process the overlays to be enabled
-                    for (int i = 0, size = profile.size(); i < size; i++) {
-                        String packageName = profile.get(i).get(0);
-                        String targetPackage = profile.get(i).get(1);
-                        if (Packages.isPackageInstalled(context, targetPackage)) {
-                            if (system.contains(packageName)) {
-                                to_be_run.add(packageName);
-                            } else {
-                                cannot_run_overlays.add(profile.get(i));
-                            }
+                    ProfileManager.ProfileState profile = ProfileManager.readProfile(processed);
+                    // A single look at the overlay state, only what differs is sent to the backend
+                    List<String> enabledNow = ThemeManager.listOverlays(context, STATE_ENABLED);
+                    Set<String> enabled = new HashSet<>(enabledNow);
+                    Map<String, Boolean> installedTargets = new HashMap<>();
+
+                    // Now process the overlays to be enabled, in the order they have been saved
+                    List<String> runnable = new ArrayList<>();
+                    for (Map.Entry<String, String> overlay : profile.getEnabled().entrySet()) {
+                        String packageName = overlay.getKey();
+                        String targetPackage = overlay.getValue();
+                        // Most overlays share a handful of targets, ask the PackageManager once
+                        if (!installedTargets.computeIfAbsent(targetPackage,
+                                target -> Packages.isPackageInstalled(context, target))) {
+                            continue;
+                        }
+                        if (!ThemeManager.isOverlay(context, packageName)) {
+                            cannot_run_overlays.add(Arrays.asList(packageName, targetPackage));
+                        } else {
+                            runnable.add(packageName);
+                        }
+                    }
+                    // Enabling an overlay puts it on top of its target, so anything that is out
+                    // of the saved priority order is disabled and enabled again in that order
+                    Set<String> toBeOrdered =
+                            getOutOfOrder(runnable, profile.getEnabled(), enabledNow);
+                    for (String packageName : runnable) {
+                        if (!toBeOrdered.contains(packageName)) continue;
+                        if (enabled.contains(packageName)) to_be_disabled.add(packageName);
+                        to_be_enabled.add(packageName);
+                    }
+
+                    // Then the ones the profile had disabled, if they are enabled right now
+                    for (String packageName : profile.getDisabled().keySet()) {
+                        if (enabled.contains(packageName)) {
+                            to_be_disabled.add(packageName);
                         }
                     }
 
@@ -230,16 +298,22 @@ public class ScheduledProfileService extends JobService {
                         FileOperations.mountRO();
                     }
 
-                    Iterable<String> toBeDisabled = new ArrayList<>(system);
-                    boolean shouldRestartUi = ThemeManager.shouldRestartUI(context,
-                            toBeDisabled)
-                            || ThemeManager.shouldRestartUI(context, to_be_run);
-                    ThemeInterfacerService.applyProfile(
-                            context,
-                            processed,
-                            new ArrayList<>(system),
-                            to_be_run,
-                            shouldRestartUi);
+                    // The backend also restores the saved theme folder, so only skip the call
+                    // when there is neither an overlay to switch nor a folder to restore
+                    if (!to_be_enabled.isEmpty() || !to_be_disabled.isEmpty() || theme.exists()) {
+                        boolean shouldRestartUi =
+                                ThemeManager.shouldRestartUI(context, to_be_disabled)
+                                        || ThemeManager.shouldRestartUI(context, to_be_enabled);
+                        ThemeInterfacerService.applyProfile(
+                                context,
+                                processed,
+                                to_be_disabled,
+                                to_be_enabled,
+                                shouldRestartUi);
+                        ThemeManager.invalidateOverlayState();
+                    }
+                    Log.d(TAG, "Enabled " + to_be_enabled.size() + " and disabled " +
+                            to_be_disabled.size() + " overlays");
 
                     // Restore wallpapers
                     String homeWallPath = Environment.getExternalStorageDirectory()
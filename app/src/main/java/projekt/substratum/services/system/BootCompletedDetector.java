@@ -30,6 +30,7 @@ import android.util.Log;
 import com.bumptech.glide.Glide;
 
 import java.io.File;
+import java.util.Arrays;
 
 import projekt.substratum.common.References;
 import projekt.substratum.common.commands.FileOperations;
@@ -37,6 +38,7 @@ import projekt.substratum.common.systems.ProfileManager;
 
 import static projekt.substratum.common.References.BOOT_COMPLETED;
 import static projekt.substratum.common.References.EXTERNAL_STORAGE_CACHE;
+import static projekt.substratum.common.References.SUBSTRATUM_BUILD_CACHE;
 import static projekt.substratum.common.systems.ProfileManager.SCHEDULED_PROFILE_ENABLED;
 
 public class BootCompletedDetector extends BroadcastReceiver {
@@ -47,8 +49,20 @@ public class BootCompletedDetector extends BroadcastReceiver {
     private static void clearSubstratumCompileFolder(Context context) {
         File deleted = new File(
                 EXTERNAL_STORAGE_CACHE);
-        FileOperations.delete(context, deleted.getAbsolutePath());
-        if (!deleted.exists())
+        // Keep the build cache, it is what makes the next compile fast
+        File buildCache = new File(SUBSTRATUM_BUILD_CACHE);
+        File[] files = deleted.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.equals(buildCache)) {
+                    FileOperations.delete(context, file.getAbsolutePath());
+                }
+            }
+        }
+        String[] remaining = deleted.list();
+        if ((remaining == null) ||
+                Arrays.equals(remaining, new String[]{}) ||
+                Arrays.equals(remaining, new String[]{buildCache.getName()}))
             Log.d(TAG,
                     "Successfully cleared the temporary compilation folder on " +
                             "the external storage.");
@@ -27,7 +27,6 @@ import android.content.SharedPreferences;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
@@ -52,34 +51,21 @@ import android.widget.Spinner;
 import android.widget.SpinnerAdapter;
 import android.widget.TextView;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import projekt.substratum.R;
 import projekt.substratum.common.Systems;
-import projekt.substratum.common.commands.FileOperations;
 import projekt.substratum.util.files.Root;
+import projekt.substratum.util.tabs.BootAnimationPlayer;
 import projekt.substratum.util.tabs.BootAnimationUtils;
 
 import static projekt.substratum.InformationActivity.currentShownLunchBar;
-import static projekt.substratum.common.Internal.BOOTANIMATION_CACHE;
-import static projekt.substratum.common.Internal.BOOTANIMATION_PREVIEW_CACHE;
 import static projekt.substratum.common.Internal.BOOT_ANIMATION_APPLIED;
-import static projekt.substratum.common.Internal.BYTE_ACCESS_RATE;
 import static projekt.substratum.common.Internal.ENCRYPTED_FILE_EXTENSION;
 import static projekt.substratum.common.Internal.SHUTDOWNANIMATION_INTENT;
 import static projekt.substratum.common.Internal.SHUTDOWN_ANIMATION_APPLIED;
@@ -94,7 +80,6 @@ public class BootAnimations extends Fragment {
     private static String bootanimationsDir = "bootanimation";
     private final HandlerThread previewHandlerThread =
             new HandlerThread("BootAnimationPreviewThread");
-    private final BitmapFactory.Options options = new BitmapFactory.Options();
     @BindView(R.id.nestedScrollView)
     NestedScrollView nsv;
     @BindView(R.id.bootAnimationPreview)
@@ -123,8 +108,7 @@ public class BootAnimations extends Fragment {
     private Context mContext;
     private Handler previewHandler;
     private Runnable previewRunnable;
-    private List<String> previewImages;
-    private int previewIndex;
+    private BootAnimationPlayer previewPlayer;
 
     private BootAnimations getInstance() {
         return this;
@@ -197,10 +181,7 @@ public class BootAnimations extends Fragment {
                                                    final long id) {
                             switch (pos) {
                                 case 0:
-                                    if (current != null) current.cancel(true);
-                                    if ((previewHandler != null) && (previewRunnable != null)) {
-                                        previewHandler.removeCallbacks(previewRunnable);
-                                    }
+                                    stopPreview();
                                     bootanimation_placeholder.setVisibility(View.VISIBLE);
                                     defaults.setVisibility(View.GONE);
                                     bootAnimationPreview.setImageDrawable(null);
@@ -209,10 +190,7 @@ public class BootAnimations extends Fragment {
                                     paused = true;
                                     break;
                                 case 1:
-                                    if (current != null) current.cancel(true);
-                                    if ((previewHandler != null) && (previewRunnable != null)) {
-                                        previewHandler.removeCallbacks(previewRunnable);
-                                    }
+                                    stopPreview();
                                     defaults.setVisibility(View.VISIBLE);
                                     bootanimation_placeholder.setVisibility(View.GONE);
                                     progressBar.setVisibility(View.GONE);
@@ -222,14 +200,11 @@ public class BootAnimations extends Fragment {
                                     paused = false;
                                     break;
                                 default:
-                                    if (current != null) current.cancel(true);
+                                    stopPreview();
                                     bootAnimationPreview.setVisibility(View.VISIBLE);
                                     defaults.setVisibility(View.GONE);
                                     bootanimation_placeholder.setVisibility(View.GONE);
                                     final String[] commands = {arg0.getSelectedItem().toString()};
-                                    if ((previewHandler != null) && (previewRunnable != null)) {
-                                        previewHandler.removeCallbacks(previewRunnable);
-                                    }
                                     current = new BootAnimationPreview(getInstance())
                                             .execute(commands);
                             }
@@ -258,6 +233,7 @@ public class BootAnimations extends Fragment {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        stopPreview();
         try {
             localBroadcastManager.unregisterReceiver(jobReceiver);
         } catch (final IllegalArgumentException e) {
@@ -265,6 +241,20 @@ public class BootAnimations extends Fragment {
         }
     }
 
+    /**
+     * Stop the preview that is currently loading or playing
+     */
+    private void stopPreview() {
+        if (current != null) current.cancel(true);
+        if ((previewHandler != null) && (previewRunnable != null)) {
+            previewHandler.removeCallbacks(previewRunnable);
+        }
+        if (previewPlayer != null) {
+            previewPlayer.stop();
+            previewPlayer = null;
+        }
+    }
+
     /**
      * Check if this tab was loaded as a shutdown animation
      *
@@ -390,89 +380,39 @@ public class BootAnimations extends Fragment {
             ref = new WeakReference<>(bootAnimations);
         }
 
-        private static int previewDeterminator(final String file_location) {
-            final File checkFile = new File(file_location);
-            final int file_size = Integer.parseInt(
-                    String.valueOf(checkFile.length() / 1024L / 1024L));
-            Log.d(TAG, "Managing bootanimation with size: " + file_size + "MB");
-
-            if (file_size <= 5) {
-                return 1;
-            } else {
-                if (file_size > 5) {
-                    if (file_size >= 10) {
-                        return 4;
-                    } else {
-                        return 3;
-                    }
-                }
-            }
-            return 1;
-        }
-
-        private static void unzip(final String source, final String destination) {
-            try (ZipInputStream inputStream = new ZipInputStream(
-                    new BufferedInputStream(new FileInputStream(source)))) {
-                ZipEntry zipEntry;
-                final byte[] buffer = new byte[BYTE_ACCESS_RATE];
-                while ((zipEntry = inputStream.getNextEntry()) != null) {
-                    final File file = new File(destination, zipEntry.getName());
-                    final File dir = zipEntry.isDirectory() ? file : file.getParentFile();
-                    if (!dir.isDirectory() && !dir.mkdirs())
-                        throw new FileNotFoundException(
-                                "Failed to ensure directory: " + dir.getAbsolutePath());
-                    if (zipEntry.isDirectory())
-                        continue;
-                    try (FileOutputStream outputStream = new FileOutputStream(file)) {
-                        int count;
-                        while ((count = inputStream.read(buffer)) != -1)
-                            outputStream.write(buffer, 0, count);
-                    }
-                }
-            } catch (final Exception e) {
-                e.printStackTrace();
-                Log.e(TAG, "An issue has occurred while attempting to decompress this archive.");
-            }
-        }
-
-        private static void CopyStream(final InputStream Input, final OutputStream Output) throws
-                IOException {
-            final byte[] buffer = new byte[BYTE_ACCESS_RATE];
-            int length = Input.read(buffer);
-            while (length > 0) {
-                Output.write(buffer, 0, length);
-                length = Input.read(buffer);
-            }
-        }
-
         @Override
         protected void onPreExecute() {
             final BootAnimations bootAnimations = ref.get();
             if (bootAnimations != null) {
-                FileOperations.delete(
-                        bootAnimations.mContext,
-                        bootAnimations.mContext.getCacheDir().getAbsolutePath() +
-                                BOOTANIMATION_PREVIEW_CACHE);
                 bootAnimations.paused = true;
                 bootAnimations.bootAnimationPreview.setImageDrawable(null);
                 bootAnimations.progressBar.setVisibility(View.VISIBLE);
-                bootAnimations.previewImages = new ArrayList<>();
                 bootAnimations.previewHandler = new Handler(
                         bootAnimations.previewHandlerThread.getLooper());
-                bootAnimations.previewIndex = 0;
+                final BootAnimationPlayer player = new BootAnimationPlayer(
+                        bootAnimations.themeAssetManager,
+                        bootanimationsDir + '/' + bootAnimations.bootAnimationSelector
+                                .getSelectedItem().toString() +
+                                (encrypted ? ".zip" + ENCRYPTED_FILE_EXTENSION : ".zip"));
+                bootAnimations.previewPlayer = player;
+                // The frame on screen and the one before it may still be drawn, so a frame is
+                // only handed back to the player once two newer ones have been shown
+                final Bitmap[] shown = new Bitmap[2];
                 bootAnimations.previewRunnable = () -> {
+                    // A stopped preview must not keep posting itself next to its successor
+                    if (bootAnimations.previewPlayer != player) return;
                     try {
-                        final Bitmap bmp = BitmapFactory.decodeFile(
-                                bootAnimations.previewImages.get(bootAnimations.previewIndex),
-                                bootAnimations.options);
-
-                        assert bootAnimations.getActivity() != null;
-                        bootAnimations.getActivity().runOnUiThread(() -> {
-                            bootAnimations.bootAnimationPreview.setImageBitmap(bmp);
-                            bootAnimations.previewIndex++;
-                            if (bootAnimations.previewIndex == bootAnimations.previewImages.size())
-                                bootAnimations.previewIndex = 0;
-                        });
+                        final Bitmap bmp = player.nextFrame();
+                        if (bmp != null) {
+                            final Bitmap expired = shown[0];
+                            shown[0] = shown[1];
+                            shown[1] = bmp;
+                            assert bootAnimations.getActivity() != null;
+                            bootAnimations.getActivity().runOnUiThread(() -> {
+                                bootAnimations.bootAnimationPreview.setImageBitmap(bmp);
+                                player.release(expired);
+                            });
+                        }
                         bootAnimations.previewHandler.postDelayed(
                                 bootAnimations.previewRunnable, (long) ANIMATION_FRAME_DURATION);
                     } catch (final Exception e) {
@@ -487,11 +427,8 @@ public class BootAnimations extends Fragment {
             final BootAnimations bootAnimations = ref.get();
             if (bootAnimations != null) {
                 try {
-                    Log.d(TAG, "Loaded boot animation contains " +
-                            bootAnimations.previewImages.size() + " frames.");
-
                     if (bootAnimations.bootAnimationSelector.getSelectedItemPosition() > 1) {
-                        Log.d(TAG, "Displaying bootanimation after render task complete!");
+                        Log.d(TAG, "Displaying bootanimation after the first frame is ready!");
                         bootAnimations.previewHandler.post(bootAnimations.previewRunnable);
                     }
                     bootAnimations.progressBar.setVisibility(View.GONE);
@@ -506,87 +443,18 @@ public class BootAnimations extends Fragment {
         protected String doInBackground(final String... sUrl) {
             final BootAnimations bootAnimations = ref.get();
             if (bootAnimations != null) {
+                final BootAnimationPlayer player = bootAnimations.previewPlayer;
+                if (player == null) return null;
                 try {
-                    final File cacheDirectory = new File(
-                            bootAnimations.mContext.getCacheDir(), BOOTANIMATION_CACHE);
-
-                    if (!cacheDirectory.exists() && cacheDirectory.mkdirs()) {
-                        Log.d(TAG, "Bootanimation folder created");
+                    // Frames are streamed from the theme's assets, only wait for the first one
+                    player.start();
+                    if (!player.awaitFirstFrame()) {
+                        Log.e(TAG,
+                                "There is no bootanimation.zip found within the assets of " +
+                                        "this theme!");
                     }
-                    final File cacheDirectory2 = new File(bootAnimations.mContext.getCacheDir(),
-                            BOOTANIMATION_PREVIEW_CACHE);
-                    if (!cacheDirectory2.exists() && cacheDirectory2.mkdirs()) {
-                        Log.d(TAG, "Bootanimation work folder created");
-                    } else {
-                        FileOperations.delete(bootAnimations.mContext,
-                                bootAnimations.mContext.getCacheDir().getAbsolutePath() +
-                                        BOOTANIMATION_PREVIEW_CACHE);
-                        final boolean created = cacheDirectory2.mkdirs();
-                        if (created) Log.d(TAG, "Bootanimation folder recreated");
-                    }
-
-                    // Copy the bootanimation.zip from assets/bootanimation of the theme's assets
-                    final String source = sUrl[0] + ".zip";
-
-                    if (encrypted) {
-                        FileOperations.copyFileOrDir(
-                                bootAnimations.themeAssetManager,
-                                bootanimationsDir + '/' + source + ENCRYPTED_FILE_EXTENSION,
-                                bootAnimations.mContext.getCacheDir().getAbsolutePath() +
-                                        BOOTANIMATION_CACHE + source,
-                                bootanimationsDir + '/' + source + ENCRYPTED_FILE_EXTENSION,
-                                null);
-                    } else {
-                        try (InputStream inputStream = bootAnimations.themeAssetManager.open(
-                                bootanimationsDir + '/' + source);
-                             OutputStream outputStream =
-                                     new FileOutputStream(bootAnimations.mContext.getCacheDir()
-                                             .getAbsolutePath() +
-                                             BOOTANIMATION_CACHE + source)) {
-                            BootAnimationPreview.CopyStream(inputStream, outputStream);
-                        } catch (final Exception e) {
-                            Log.e(TAG,
-                                    "There is no bootanimation.zip found within the assets of " +
-                                            "this theme!");
-                        }
-                    }
-
-                    // Unzip the boot animation to get it prepared for the preview
-                    BootAnimationPreview.unzip(bootAnimations.mContext.getCacheDir()
-                                    .getAbsolutePath() +
-                                    BOOTANIMATION_CACHE + source,
-                            bootAnimations.mContext.getCacheDir().getAbsolutePath() +
-                                    BOOTANIMATION_PREVIEW_CACHE);
-
-                    bootAnimations.options.inPreferredConfig = Bitmap.Config.RGB_565;
-                    bootAnimations.options.inSampleSize = BootAnimationPreview.previewDeterminator(
-                            bootAnimations.mContext.getCacheDir().getAbsolutePath() +
-                                    BOOTANIMATION_CACHE + source);
-
-                    // List images files in directory
-                    final File previewDirectory = new File(bootAnimations.mContext.getCacheDir(),
-                            BOOTANIMATION_PREVIEW_CACHE);
-                    final String[] dirs = previewDirectory.list();
-                    final String[] supportedFile = {"jpg", "png", "jpeg"};
-                    for (final String content : dirs) {
-                        final File current = new File(previewDirectory, content);
-                        if (current.isDirectory()) {
-                            final String[] currentDirs = current.list();
-                            for (final String currentDirContent : currentDirs) {
-                                final File probablyImage = new File(current, currentDirContent);
-                                for (final String ext : supportedFile) {
-                                    if (probablyImage.getName().toLowerCase().endsWith(ext)) {
-                                        bootAnimations.previewImages.add(
-                                                probablyImage.getAbsolutePath());
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                } catch (final Exception e) {
-                    e.printStackTrace();
-                    Log.e(TAG, "Unexpectedly lost connection to the application host");
+                } catch (final InterruptedException e) {
+                    // Another boot animation has been selected in the meantime
                 }
             }
             return null;
@@ -37,6 +37,7 @@ import projekt.substratum.common.commands.FileOperations;
 import projekt.substratum.common.platform.SubstratumService;
 import projekt.substratum.common.platform.ThemeInterfacerService;
 import projekt.substratum.common.platform.ThemeManager;
+import projekt.substratum.util.files.Root;
 
 import static projekt.substratum.common.Internal.BYTE_ACCESS_RATE;
 import static projekt.substratum.common.Internal.FONTS_SYSTEM_DIRECTORY;
@@ -148,56 +149,75 @@ public enum FontsManager {
                                     e.getMessage());
                 }
 
-                // Copy all the system fonts to /data/system/theme/fonts
-                File dataSystemThemeDir = new File(THEME_DIRECTORY);
-                if (!dataSystemThemeDir.exists()) {
-                    if (!checkThemeInterfacer(context)) FileOperations.mountRWData();
-                    FileOperations.createNewFolder(context, THEME_DIRECTORY);
-                }
-                File dataSystemThemeFontsDir = new File(FONTS_THEME_DIRECTORY);
-                if (!dataSystemThemeFontsDir.exists()) {
-                    if (!checkThemeInterfacer(context)) FileOperations.mountRWData();
-                    FileOperations.createNewFolder(context, FONTS_THEME_DIRECTORY);
-                } else {
-                    FileOperations.delete(context, FONTS_THEME_DIRECTORY);
-                    if (!checkThemeInterfacer(context)) FileOperations.mountRWData();
-                    FileOperations.createNewFolder(context, FONTS_THEME_DIRECTORY);
-                }
+                // Every root command of the copy runs on the same su session, one after another
+                try (Root.Session ignored = Root.openSession()) {
+                    // Copy all the system fonts to /data/system/theme/fonts
+                    boolean mountData = !checkThemeInterfacer(context);
+                    if (mountData) FileOperations.mountRWData();
+                    // Closed whatever happens, a section left open would keep /data RW for
+                    // every section that nests inside of it later on
+                    try {
+                        File dataSystemThemeDir = new File(THEME_DIRECTORY);
+                        if (!dataSystemThemeDir.exists()) {
+                            FileOperations.createNewFolder(context, THEME_DIRECTORY);
+                        }
+                        File dataSystemThemeFontsDir = new File(FONTS_THEME_DIRECTORY);
+                        if (!dataSystemThemeFontsDir.exists()) {
+                            FileOperations.createNewFolder(context, FONTS_THEME_DIRECTORY);
+                        } else {
+                            FileOperations.delete(context, FONTS_THEME_DIRECTORY);
+                            FileOperations.createNewFolder(context, FONTS_THEME_DIRECTORY);
+                        }
 
-                // Copy font configuration file (fonts.xml) to the working directory
-                File fontsConfig = new File(context.getCacheDir().getAbsolutePath() +
-                        FONT_CREATION_CACHE + "fonts.xml");
-                if (!fontsConfig.exists()) {
-                    AssetManager assetManager = context.getAssets();
-                    String filename = "fonts.xml";
-                    try (InputStream in = assetManager.open(filename);
-                         OutputStream out = new FileOutputStream(context.getCacheDir()
-                                 .getAbsolutePath() + FONT_CREATION_CACHE + filename)) {
-                        byte[] buffer = new byte[BYTE_ACCESS_RATE];
-                        int read;
-                        while ((read = in.read(buffer)) != -1) {
-                            out.write(buffer, 0, read);
+                        // Copy font configuration file (fonts.xml) to the working directory
+                        File fontsConfig = new File(context.getCacheDir().getAbsolutePath() +
+                                FONT_CREATION_CACHE + "fonts.xml");
+                        if (!fontsConfig.exists()) {
+                            AssetManager assetManager = context.getAssets();
+                            String filename = "fonts.xml";
+                            try (InputStream in = assetManager.open(filename);
+                                 OutputStream out = new FileOutputStream(context.getCacheDir()
+                                         .getAbsolutePath() + FONT_CREATION_CACHE + filename)) {
+                                byte[] buffer = new byte[BYTE_ACCESS_RATE];
+                                int read;
+                                while ((read = in.read(buffer)) != -1) {
+                                    out.write(buffer, 0, read);
+                                }
+                            } catch (IOException e) {
+                                Log.e(TAG, "Failed to move font configuration file to working " +
+                                        "directory! " + e.getMessage());
+                            }
                         }
-                    } catch (IOException e) {
-                        Log.e(TAG, "Failed to move font configuration file to working directory! " +
-                                e.getMessage());
+
+                        FileOperations.copy(context, FONTS_SYSTEM_DIRECTORY + "*",
+                                FONTS_THEME_DIRECTORY);
+
+                        // Copy all the files from work directory to /data/system/theme/fonts
+                        FileOperations.copy(context, context.getCacheDir().getAbsolutePath() +
+                                FONT_CREATION_CACHE + "*", FONTS_THEME_DIRECTORY);
+
+                        // Check for correct permissions and system file context integrity, the
+                        // batch's own RW section nests inside the one opened above, if there is one
+                        Root.Batch batch = Root.batch();
+                        FileOperations.mountRWData(batch);
+                        FileOperations.setPermissions(batch, THEME_755, THEME_DIRECTORY);
+                        FileOperations.setPermissionsRecursively(batch, THEME_747,
+                                FONTS_THEME_DIRECTORY);
+                        FileOperations.setPermissions(batch, THEME_775, FONTS_THEME_DIRECTORY);
+                        FileOperations.mountROData(batch);
+                        FileOperations.setContext(batch, THEME_DIRECTORY);
+                        FileOperations.setProp(batch, REFRESH_PROP,
+                                String.valueOf(REFRESH_PROP_ACTIVATED));
+                        for (Root.Result result : batch.run()) {
+                            if (!result.succeeded()) {
+                                Log.e(TAG, '"' + result.command + "\" has exited with " +
+                                        result.exitCode + ": " + result.output);
+                            }
+                        }
+                    } finally {
+                        if (mountData) FileOperations.mountROData();
                     }
                 }
-
-                FileOperations.copy(context, FONTS_SYSTEM_DIRECTORY + "*", FONTS_THEME_DIRECTORY);
-
-                // Copy all the files from work directory to /data/system/theme/fonts
-                FileOperations.copy(context, context.getCacheDir().getAbsolutePath() +
-                        FONT_CREATION_CACHE + "*", FONTS_THEME_DIRECTORY);
-
-                // Check for correct permissions and system file context integrity.
-                FileOperations.mountRWData();
-                FileOperations.setPermissions(THEME_755, THEME_DIRECTORY);
-                FileOperations.setPermissionsRecursively(THEME_747, FONTS_THEME_DIRECTORY);
-                FileOperations.setPermissions(THEME_775, FONTS_THEME_DIRECTORY);
-                FileOperations.mountROData();
-                FileOperations.setContext(THEME_DIRECTORY);
-                FileOperations.setProp(REFRESH_PROP, String.valueOf(REFRESH_PROP_ACTIVATED));
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -69,6 +69,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.ref.WeakReference;
+import java.security.GeneralSecurityException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -78,6 +79,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
@@ -92,13 +97,13 @@ import projekt.substratum.R;
 import projekt.substratum.adapters.tabs.overlays.OverlaysAdapter;
 import projekt.substratum.adapters.tabs.overlays.OverlaysItem;
 import projekt.substratum.adapters.tabs.overlays.VariantAdapter;
+import projekt.substratum.adapters.tabs.overlays.VariantCache;
 import projekt.substratum.adapters.tabs.overlays.VariantItem;
 import projekt.substratum.common.Packages;
 import projekt.substratum.common.References;
 import projekt.substratum.common.Systems;
 import projekt.substratum.common.commands.FileOperations;
 import projekt.substratum.common.platform.ThemeManager;
-import projekt.substratum.util.compilers.SubstratumBuilder;
 import projekt.substratum.util.files.Root;
 import projekt.substratum.util.views.SheetDialog;
 
@@ -165,10 +170,11 @@ public class Overlays extends Fragment {
     public String theme_pid;
     public String theme_version;
     public Cipher theme_cipher;
+    public SecretKeySpec theme_key;
+    public IvParameterSpec theme_iv;
     public Boolean encrypted = false;
     public Boolean mixAndMatchMode = false;
     public OverlaysInstance currentInstance = OverlaysInstance.getInstance();
-    public SubstratumBuilder compileInstance;
     public List<OverlaysItem> overlayItemList;
     public List<String> currentInstanceOverlays;
     // Begin functional variables with no theme-related information
@@ -203,6 +209,9 @@ public class Overlays extends Fragment {
     private LocalBroadcastManager localBroadcastManager;
     private RefreshReceiver refreshReceiver;
     private Boolean first_start = true;
+    // Base variants shown in the spinner, and the cached variants they were read from if any
+    private List<VariantItem> baseVariants = new ArrayList<>();
+    private VariantCache.Snapshot cachedVariants;
 
     /**
      * Get the activity's view through a fragment for LunchBar invokes
@@ -305,12 +314,9 @@ public class Overlays extends Fragment {
                 byte[] encryption_key = getArguments().getByteArray(ENCRYPTION_KEY_EXTRA);
                 byte[] iv_encrypt_key = getArguments().getByteArray(IV_ENCRYPTION_KEY_EXTRA);
                 try {
-                    theme_cipher = Cipher.getInstance(CIPHER_ALGORITHM);
-                    theme_cipher.init(
-                            Cipher.DECRYPT_MODE,
-                            new SecretKeySpec(encryption_key, SECRET_KEY_SPEC),
-                            new IvParameterSpec(iv_encrypt_key)
-                    );
+                    theme_key = new SecretKeySpec(encryption_key, SECRET_KEY_SPEC);
+                    theme_iv = new IvParameterSpec(iv_encrypt_key);
+                    theme_cipher = createThemeCipher();
                     Log.d(SUBSTRATUM_BUILDER, "Loading substratum theme in encrypted assets mode.");
                     encrypted = true;
                 } catch (Exception e) {
@@ -415,69 +421,24 @@ public class Overlays extends Fragment {
                     .getResourcesForApplication(theme_pid);
             themeAssetManager = themeResources.getAssets();
 
-            List<String> stringArray = new ArrayList<>();
-
-            String[] listArray = themeAssetManager.list("overlays/android");
-            Collections.addAll(stringArray, listArray);
-
-            ArrayList<VariantItem> type3 = new ArrayList<>();
-            if (stringArray.contains("type3") ||
-                    stringArray.contains("type3" + ENCRYPTED_FILE_EXTENSION)) {
-                InputStream inputStream;
-                if (encrypted) {
-                    inputStream = FileOperations.getInputStream(
-                            themeAssetManager,
-                            "overlays/android/type3" + ENCRYPTED_FILE_EXTENSION,
-                            theme_cipher);
-                } else {
-                    inputStream = themeAssetManager.open("overlays/android/type3");
-                }
-
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(inputStream))) {
-                    String formatter = String.format(
-                            getString(R.string.overlays_variant_substitute), reader.readLine
-                                    ());
-                    type3.add(new VariantItem(formatter, null));
-                } catch (IOException e) {
-                    Log.e(SUBSTRATUM_BUILDER, "There was an error parsing asset file!");
-                    type3.add(new VariantItem(getString(R.string
-                            .overlays_variant_default_3), null));
-                }
-                inputStream.close();
-            } else {
-                type3.add(new VariantItem(getString(R.string.overlays_variant_default_3), null));
-            }
+            // The base variants of the last visit are cached along with the other variants
+            cachedVariants = VariantCache.load(mContext, theme_pid);
+            baseVariants = (cachedVariants != null) ? cachedVariants.type3 : readBaseVariants();
 
-            if (stringArray.size() > 1) {
-                for (int i = 0; i < stringArray.size(); i++) {
-                    String current = stringArray.get(i);
-                    if (!"res".equals(current) &&
-                            !current.contains(".") &&
-                            (current.length() >= 6) &&
-                            "type3_".equals(current.substring(0, 6))) {
-                        type3.add(new VariantItem(current.substring(6), null));
-                    }
-                }
-                SpinnerAdapter adapter1 = new VariantAdapter(getActivity(), type3);
-                if (type3.size() > 1) {
-                    toggle_all_overlays_text.setVisibility(View.GONE);
-                    base_spinner.setVisibility(View.VISIBLE);
-                    base_spinner.setAdapter(adapter1);
-                    try {
-                        Log.d(SUBSTRATUM_BUILDER,
-                                "Assigning the spinner position: " + prefs2.getInt(theme_pid, 0));
-                        base_spinner.setSelection(prefs2.getInt(theme_pid, 0));
-                    } catch (Exception e) {
-                        // Should be OutOfBounds, but let's catch everything
-                        Log.d(SUBSTRATUM_BUILDER, "Falling back to default spinner position due to an error...");
-                        prefs2.edit().putInt(theme_pid, 0).apply();
-                        base_spinner.setSelection(0);
-                    }
-                } else {
-                    toggle_all_overlays_text.setVisibility(View.VISIBLE);
-                    base_spinner.setVisibility(View.INVISIBLE);
-                    refreshList();
+            if (baseVariants.size() > 1) {
+                SpinnerAdapter adapter1 = new VariantAdapter(getActivity(), baseVariants);
+                toggle_all_overlays_text.setVisibility(View.GONE);
+                base_spinner.setVisibility(View.VISIBLE);
+                base_spinner.setAdapter(adapter1);
+                try {
+                    Log.d(SUBSTRATUM_BUILDER,
+                            "Assigning the spinner position: " + prefs2.getInt(theme_pid, 0));
+                    base_spinner.setSelection(prefs2.getInt(theme_pid, 0));
+                } catch (Exception e) {
+                    // Should be OutOfBounds, but let's catch everything
+                    Log.d(SUBSTRATUM_BUILDER, "Falling back to default spinner position due to an error...");
+                    prefs2.edit().putInt(theme_pid, 0).apply();
+                    base_spinner.setSelection(0);
                 }
             } else {
                 toggle_all_overlays_text.setVisibility(View.VISIBLE);
@@ -509,6 +470,61 @@ public class Overlays extends Fragment {
         return view;
     }
 
+    /**
+     * Parse the base variants of the theme, the type3 folders of the framework overlay
+     *
+     * @return Returns the base variants, the default option first
+     * @throws IOException If the overlays of the theme could not be listed
+     */
+    private List<VariantItem> readBaseVariants() throws IOException {
+        List<String> stringArray = new ArrayList<>();
+
+        String[] listArray = themeAssetManager.list("overlays/android");
+        Collections.addAll(stringArray, listArray);
+
+        List<VariantItem> type3 = new ArrayList<>();
+        if (stringArray.contains("type3") ||
+                stringArray.contains("type3" + ENCRYPTED_FILE_EXTENSION)) {
+            InputStream inputStream;
+            if (encrypted) {
+                inputStream = FileOperations.getInputStream(
+                        themeAssetManager,
+                        "overlays/android/type3" + ENCRYPTED_FILE_EXTENSION,
+                        theme_cipher);
+            } else {
+                inputStream = themeAssetManager.open("overlays/android/type3");
+            }
+
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(inputStream))) {
+                String formatter = String.format(
+                        getString(R.string.overlays_variant_substitute), reader.readLine
+                                ());
+                type3.add(new VariantItem(formatter, null));
+            } catch (IOException e) {
+                Log.e(SUBSTRATUM_BUILDER, "There was an error parsing asset file!");
+                type3.add(new VariantItem(getString(R.string
+                        .overlays_variant_default_3), null));
+            }
+            inputStream.close();
+        } else {
+            type3.add(new VariantItem(getString(R.string.overlays_variant_default_3), null));
+        }
+
+        if (stringArray.size() > 1) {
+            for (int i = 0; i < stringArray.size(); i++) {
+                String current = stringArray.get(i);
+                if (!"res".equals(current) &&
+                        !current.contains(".") &&
+                        (current.length() >= 6) &&
+                        "type3_".equals(current.substring(0, 6))) {
+                    type3.add(new VariantItem(current.substring(6), null));
+                }
+            }
+        }
+        return type3;
+    }
+
     /**
      * Updates the current instance's list of enabled overlays
      */
@@ -517,6 +533,19 @@ public class Overlays extends Fragment {
                 new ArrayList<>(ThemeManager.listOverlays(mContext, ThemeManager.STATE_ENABLED));
     }
 
+    /**
+     * Ciphers are stateful, so every thread decrypting the theme's assets needs its own instance
+     *
+     * @return Returns a new cipher initialized with the theme's key, or null if not encrypted
+     * @throws GeneralSecurityException If the cipher could not be initialized
+     */
+    Cipher createThemeCipher() throws GeneralSecurityException {
+        if ((theme_key == null) || (theme_iv == null)) return null;
+        Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, theme_key, theme_iv);
+        return cipher;
+    }
+
     /**
      * We need to be able to check the active notifications before throwing a new one
      *
@@ -658,10 +687,12 @@ public class Overlays extends Fragment {
      *
      * @param packageName Package name of the target overlay
      * @param variantName Variant name of the type1 file
+     * @param cipher      Cipher of the calling thread, if the theme is encrypted
      * @return Returns the VariantItem object used to populate the RecyclerView
      */
     private VariantItem setTypeOneSpinners(String packageName,
-                                           String variantName) {
+                                           String variantName,
+                                           Cipher cipher) {
         InputStream inputStream = null;
         try {
             if (encrypted) {
@@ -669,7 +700,7 @@ public class Overlays extends Fragment {
                         themeAssetManager,
                         OVERLAYS_DIR + '/' + packageName + "/type1" + variantName +
                                 ENCRYPTED_FILE_EXTENSION,
-                        theme_cipher);
+                        cipher);
             } else {
                 inputStream = themeAssetManager.open(
                         OVERLAYS_DIR + '/' + packageName + "/type1" + variantName);
@@ -706,7 +737,7 @@ public class Overlays extends Fragment {
                         OVERLAYS_DIR + '/' + packageName + suffix +
                                 "/values/type1" + variantName + ".xml" +
                                 ENCRYPTED_FILE_EXTENSION,
-                        theme_cipher)) {
+                        cipher)) {
                     hex = Packages.getOverlayResource(name);
                 } catch (IOException e) {
                     // Suppress warning
@@ -731,7 +762,7 @@ public class Overlays extends Fragment {
                         OVERLAYS_DIR + '/' + packageName +
                                 suffix + "/values/type1" + variantName + ".xml" +
                                 ENCRYPTED_FILE_EXTENSION,
-                        theme_cipher)) {
+                        cipher)) {
                     hex = Packages.getOverlayResource(input);
                 } catch (IOException ioe) {
                     // Suppress warning
@@ -797,14 +828,16 @@ public class Overlays extends Fragment {
      *
      * @param currentTypeOneObject Name of the currently processing type1 object
      * @param packageName          Package name of the target overlay
+     * @param cipher               Cipher of the calling thread, if the theme is encrypted
      * @return Returns the VariantItem object used to populate the RecyclerView
      */
     private VariantItem setTypeOneHexAndSpinner(
             String currentTypeOneObject,
-            String packageName) {
+            String packageName,
+            Cipher cipher) {
         if (encrypted) {
             try (InputStream inputStream = FileOperations.getInputStream(themeAssetManager,
-                    OVERLAYS_DIR + "/" + packageName + '/' + currentTypeOneObject, theme_cipher)) {
+                    OVERLAYS_DIR + "/" + packageName + '/' + currentTypeOneObject, cipher)) {
                 String hex = Packages.getOverlayResource(inputStream);
 
                 return new VariantItem(
@@ -1034,9 +1067,15 @@ public class Overlays extends Fragment {
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     private static class LoadOverlays extends AsyncTask<String, Integer, String> {
         private WeakReference<Overlays> ref;
+        // Items parsed by the workers that have not been handed to the adapter yet
+        private final List<OverlaysItem> pendingList = new ArrayList<>();
         private String parsed_theme_name;
-        private ArrayList<OverlaysItem> adapterList;
+        private ArrayList<OverlaysItem> adapterList = new ArrayList<>();
         private List<String> current_overlays;
+        private boolean shown;
+        // Variants of the theme, either from the previous visit or filled in while parsing
+        private VariantCache.Snapshot variants;
+        private boolean variantsChanged;
 
         LoadOverlays(Overlays fragment) {
             super();
@@ -1070,6 +1109,18 @@ public class Overlays extends Fragment {
                 loadOverlays.parsed_theme_name = initial_parse.replaceAll("[^a-zA-Z0-9]+", "");
                 overlays.getCurrentOverlays();
                 loadOverlays.current_overlays = overlays.currentInstanceOverlays;
+                // The first pass reuses the variants that were loaded for the base spinner
+                loadOverlays.variants = overlays.cachedVariants;
+                overlays.cachedVariants = null;
+                if (loadOverlays.variants == null) {
+                    loadOverlays.variants =
+                            VariantCache.load(overlays.mContext, overlays.theme_pid);
+                }
+                if (loadOverlays.variants == null) {
+                    loadOverlays.variants = new VariantCache.Snapshot();
+                    loadOverlays.variants.type3.addAll(overlays.baseVariants);
+                    loadOverlays.variantsChanged = true;
+                }
                 return true;
             } catch (Exception e) {
                 e.printStackTrace();
@@ -1082,23 +1133,26 @@ public class Overlays extends Fragment {
          * Create a buffered list of strings that provide the function with overlays that are
          * parsable by {@link #obtainUnsortedMap(Overlays, List)}
          *
-         * @param overlays Overlays
+         * @param overlays     Overlays
+         * @param loadOverlays LoadOverlays
          * @return Returns a list of strings to be mapped
          */
-        private static List<String> buffer(Overlays overlays) {
+        private static List<String> buffer(Overlays overlays, LoadOverlays loadOverlays) {
             Context context = overlays.mContext;
-            Collection<String> overlaysFolder = new ArrayList<>();
+            Collection<String> overlaysFolder = loadOverlays.variants.overlayFolders;
 
-            try {
-                // First, we list the overlays available in the theme, then add them all to workList
-                String[] overlayList = overlays.themeAssetManager.list(OVERLAYS_DIR);
-                Collections.addAll(
-                        overlaysFolder,
-                        overlayList
-                );
-            } catch (IOException ioe) {
-                ioe.printStackTrace();
-                return null;
+            if (loadOverlays.variantsChanged) {
+                try {
+                    // First, we list the overlays available in the theme, then add them all
+                    String[] overlayList = overlays.themeAssetManager.list(OVERLAYS_DIR);
+                    Collections.addAll(
+                            overlaysFolder,
+                            overlayList
+                    );
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                    return null;
+                }
             }
 
             // This is for Samsung internal use only!
@@ -1137,7 +1191,7 @@ public class Overlays extends Fragment {
          * Obtain a map in the format of {package_name,package_identifier} for the asset overlays
          *
          * @param overlays Overlays
-         * @param values   {@link #buffer(Overlays)}
+         * @param values   {@link #buffer(Overlays, LoadOverlays)}
          * @return Returns a Map, for sorting
          */
         private static Map<String, String> obtainUnsortedMap(Overlays overlays,
@@ -1209,219 +1263,307 @@ public class Overlays extends Fragment {
         /**
          * Step 4
          * Completely iron out everything as there is no way we need to fail at this point
+         * <p>
+         * Every overlay is parsed on its own, so this runs on the workers of
+         * {@link #parseDirectoryStructure}.
          *
          * @param overlays     Overlays
          * @param loadOverlays LoadOverlays
-         * @param sortedMap    Sorted map
+         * @param entry        Entry of the sorted map
          * @param argument     Argument fed into the AsynchronousTask
+         * @return Returns the overlay's item, or null if it could not be parsed
          */
-        private static void parseDirectoryStructure(Overlays overlays,
-                                                    LoadOverlays loadOverlays,
-                                                    List<Pair<String, String>> sortedMap,
-                                                    String argument) {
-            for (Pair<String, String> entry : sortedMap) {
-                String package_name = entry.second;
-                String package_identifier = entry.first;
+        private static OverlaysItem parseOverlay(Overlays overlays,
+                                                 LoadOverlays loadOverlays,
+                                                 Pair<String, String> entry,
+                                                 String argument) {
+            String package_name = entry.second;
+            String package_identifier = entry.first;
 
-                try {
-                    List<String> typeArray = new ArrayList<>();
-                    Object typeArrayRaw = overlays.themeAssetManager.list(
-                            OVERLAYS_DIR + '/' + package_identifier);
-
-                    // Sort the typeArray so that the types are asciibetical
-                    Collections.addAll(typeArray, (String[]) typeArrayRaw);
-                    Collections.sort(typeArray);
-
-                    // Let's start adding the type xmls to be parsed into the spinners
-                    ArrayList<VariantItem> type1a = new ArrayList<>();
-                    ArrayList<VariantItem> type1b = new ArrayList<>();
-                    ArrayList<VariantItem> type1c = new ArrayList<>();
-                    ArrayList<VariantItem> type2 = new ArrayList<>();
-                    ArrayList<VariantItem> type4 = new ArrayList<>();
-
-                    // Load up type1a's
-                    if (typeArray.contains("type1a") ||
-                            typeArray.contains("type1a" + ENCRYPTED_FILE_EXTENSION)) {
-                        type1a.add(overlays.setTypeOneSpinners(package_identifier, "a"));
+            try {
+                VariantCache.Variants variants;
+                synchronized (loadOverlays.variants) {
+                    variants = loadOverlays.variants.variants.get(package_identifier);
+                }
+                if (variants == null) {
+                    // Ciphers are stateful, every overlay parsed in parallel needs its own
+                    Cipher cipher = overlays.encrypted ? overlays.createThemeCipher() : null;
+                    variants = parseVariants(overlays, package_identifier, cipher);
+                    synchronized (loadOverlays.variants) {
+                        loadOverlays.variants.variants.put(package_identifier, variants);
+                        loadOverlays.variantsChanged = true;
                     }
+                }
 
-                    // Load up type1b's
-                    if (typeArray.contains("type1b") ||
-                            typeArray.contains("type1b" + ENCRYPTED_FILE_EXTENSION)) {
-                        type1b.add(overlays.setTypeOneSpinners(package_identifier, "b"));
-                    }
+                if (variants.hasVariants) {
+                    VariantAdapter[] adapters = new VariantAdapter[]{
+                            new VariantAdapter(overlays.mContext, variants.type1a),
+                            new VariantAdapter(overlays.mContext, variants.type1b),
+                            new VariantAdapter(overlays.mContext, variants.type1c),
+                            new VariantAdapter(overlays.mContext, variants.type2),
+                            new VariantAdapter(overlays.mContext, variants.type4)
+                    };
+                    Boolean[] checker = new Boolean[]{
+                            !variants.type1a.isEmpty(),
+                            !variants.type1b.isEmpty(),
+                            !variants.type1c.isEmpty(),
+                            !variants.type2.isEmpty(),
+                            !variants.type4.isEmpty()
+                    };
+                    return createOverlaysItem(
+                            overlays,
+                            loadOverlays,
+                            package_name,
+                            package_identifier,
+                            checker,
+                            adapters,
+                            variants.attention,
+                            argument);
+                } else {
+                    // At this point, there is no spinner adapter, so it should be null
+                    return createOverlaysItem(
+                            overlays,
+                            loadOverlays,
+                            package_name,
+                            package_identifier,
+                            null,
+                            null,
+                            variants.attention,
+                            argument);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return null;
+        }
 
-                    // Load up type1c's
-                    if (typeArray.contains("type1c") ||
-                            typeArray.contains("type1c" + ENCRYPTED_FILE_EXTENSION)) {
-                        type1c.add(overlays.setTypeOneSpinners(package_identifier, "c"));
-                    }
+        /**
+         * Step 4.25
+         * Read the variants of an overlay from the theme's assets
+         *
+         * @param overlays           Overlays
+         * @param package_identifier Package name
+         * @param cipher             Cipher of the calling thread, if the theme is encrypted
+         * @return Returns the variants of the overlay
+         * @throws IOException If the overlay folder could not be listed
+         */
+        private static VariantCache.Variants parseVariants(Overlays overlays,
+                                                           String package_identifier,
+                                                           Cipher cipher) throws IOException {
+            List<String> typeArray = new ArrayList<>();
+            Object typeArrayRaw = overlays.themeAssetManager.list(
+                    OVERLAYS_DIR + '/' + package_identifier);
+
+            // Sort the typeArray so that the types are asciibetical
+            Collections.addAll(typeArray, (String[]) typeArrayRaw);
+            Collections.sort(typeArray);
+
+            // Let's start adding the type xmls to be parsed into the spinners
+            ArrayList<VariantItem> type1a = new ArrayList<>();
+            ArrayList<VariantItem> type1b = new ArrayList<>();
+            ArrayList<VariantItem> type1c = new ArrayList<>();
+            ArrayList<VariantItem> type2 = new ArrayList<>();
+            ArrayList<VariantItem> type4 = new ArrayList<>();
+
+            // Load up type1a's
+            if (typeArray.contains("type1a") ||
+                    typeArray.contains("type1a" + ENCRYPTED_FILE_EXTENSION)) {
+                type1a.add(overlays.setTypeOneSpinners(package_identifier, "a", cipher));
+            }
 
-                    // Are there any type2's in the overlay folder?
-                    boolean type2checker = false;
-                    for (int i = 0; i < typeArray.size(); i++) {
-                        String type = typeArray.get(i);
-                        if (type != null && type.startsWith("type2_")) {
-                            type2checker = true;
-                            break;
-                        }
-                    }
+            // Load up type1b's
+            if (typeArray.contains("type1b") ||
+                    typeArray.contains("type1b" + ENCRYPTED_FILE_EXTENSION)) {
+                type1b.add(overlays.setTypeOneSpinners(package_identifier, "b", cipher));
+            }
 
-                    // Type2's are present, let's parse the name of the type2 spinner if present
-                    if (type2checker) {
-                        InputStreamReader inputStreamReader = null;
-                        try {
-                            inputStreamReader = new InputStreamReader(
-                                    FileOperations.getInputStream(
-                                            overlays.themeAssetManager,
-                                            OVERLAYS_DIR + '/' + package_identifier +
-                                                    (overlays.encrypted ?
-                                                            "/type2" + ENCRYPTED_FILE_EXTENSION :
-                                                            "/type2"
-                                                    ),
-                                            (overlays.encrypted ? overlays.theme_cipher : null)));
-                        } catch (Exception e) {
-                            // Suppress warning
-                        }
-                        type2.add(overlays.setTypeTwoFourSpinners(inputStreamReader, 2));
-                    }
+            // Load up type1c's
+            if (typeArray.contains("type1c") ||
+                    typeArray.contains("type1c" + ENCRYPTED_FILE_EXTENSION)) {
+                type1c.add(overlays.setTypeOneSpinners(package_identifier, "c", cipher));
+            }
 
-                    // Are there any type4's in the overlay folder?
-                    boolean type4checker = false;
-                    for (int i = 0; i < typeArray.size(); i++) {
-                        String type = typeArray.get(i);
-                        if (type != null && type.startsWith("type4_")) {
-                            type4checker = true;
-                            break;
-                        }
-                    }
+            // Are there any type2's in the overlay folder?
+            boolean type2checker = false;
+            for (int i = 0; i < typeArray.size(); i++) {
+                String type = typeArray.get(i);
+                if (type != null && type.startsWith("type2_")) {
+                    type2checker = true;
+                    break;
+                }
+            }
 
-                    // Type4's are present, let's parse the name of the type2 spinner if present
-                    if (type4checker) {
-                        InputStreamReader inputStreamReader = null;
-                        try {
-                            inputStreamReader = new InputStreamReader(
-                                    FileOperations.getInputStream(
-                                            overlays.themeAssetManager,
-                                            OVERLAYS_DIR + '/' + package_identifier +
-                                                    (overlays.encrypted ?
-                                                            "/type4" + ENCRYPTED_FILE_EXTENSION :
-                                                            "/type4"
-                                                    ),
-                                            (overlays.encrypted ? overlays.theme_cipher : null)));
-                        } catch (Exception e) {
-                            // Suppress warning
-                        }
-                        type4.add(overlays.setTypeTwoFourSpinners(inputStreamReader, 4));
-                    }
+            // Type2's are present, let's parse the name of the type2 spinner if present
+            if (type2checker) {
+                InputStreamReader inputStreamReader = null;
+                try {
+                    inputStreamReader = new InputStreamReader(
+                            FileOperations.getInputStream(
+                                    overlays.themeAssetManager,
+                                    OVERLAYS_DIR + '/' + package_identifier +
+                                            (overlays.encrypted ?
+                                                    "/type2" + ENCRYPTED_FILE_EXTENSION :
+                                                    "/type2"
+                                            ),
+                                    cipher));
+                } catch (Exception e) {
+                    // Suppress warning
+                }
+                type2.add(overlays.setTypeTwoFourSpinners(inputStreamReader, 2));
+            }
+
+            // Are there any type4's in the overlay folder?
+            boolean type4checker = false;
+            for (int i = 0; i < typeArray.size(); i++) {
+                String type = typeArray.get(i);
+                if (type != null && type.startsWith("type4_")) {
+                    type4checker = true;
+                    break;
+                }
+            }
+
+            // Type4's are present, let's parse the name of the type2 spinner if present
+            if (type4checker) {
+                InputStreamReader inputStreamReader = null;
+                try {
+                    inputStreamReader = new InputStreamReader(
+                            FileOperations.getInputStream(
+                                    overlays.themeAssetManager,
+                                    OVERLAYS_DIR + '/' + package_identifier +
+                                            (overlays.encrypted ?
+                                                    "/type4" + ENCRYPTED_FILE_EXTENSION :
+                                                    "/type4"
+                                            ),
+                                    cipher));
+                } catch (Exception e) {
+                    // Suppress warning
+                }
+                type4.add(overlays.setTypeTwoFourSpinners(inputStreamReader, 4));
+            }
+
+            // Are there any attention files in the overlay folder?
+            boolean attentionPresent = false;
+            for (int i = 0; i < typeArray.size(); i++) {
+                String type = typeArray.get(i);
+                if (type != null && (type.equals("attention") ||
+                        type.equals("attention" + ENCRYPTED_FILE_EXTENSION))) {
+                    attentionPresent = true;
+                    break;
+                }
+            }
+            // attention file present, let's parse the name of the type2 spinner if present
+            StringBuilder attentionFile = new StringBuilder();
+            if (attentionPresent) {
+                InputStreamReader inputStreamReader;
+                try {
+                    inputStreamReader = new InputStreamReader(
+                            FileOperations.getInputStream(
+                                    overlays.themeAssetManager,
+                                    OVERLAYS_DIR + '/' + package_identifier +
+                                            (overlays.encrypted ?
+                                                    "/attention" +
+                                                            ENCRYPTED_FILE_EXTENSION :
+                                                    "/attention"
+                                            ),
+                                    cipher));
+                    BufferedReader reader = new BufferedReader(inputStreamReader);
+                    attentionFile.append(reader.readLine());
+                } catch (Exception e) {
+                    // Suppress warning
+                }
+            }
 
-                    // Are there any attention files in the overlay folder?
-                    boolean attentionPresent = false;
-                    for (int i = 0; i < typeArray.size(); i++) {
-                        String type = typeArray.get(i);
-                        if (type != null && (type.equals("attention") ||
-                                type.equals("attention" + ENCRYPTED_FILE_EXTENSION))) {
-                            attentionPresent = true;
-                            break;
+            // Finally, check if the assets/overlays folder actually has anything inside
+            if (typeArray.size() > 1) {
+                for (int i = 0; i < typeArray.size(); i++) {
+                    String current = typeArray.get(i);
+
+                    // Filter out the assets/overlays/overlay_name/res
+                    if (current.contains(XML_EXTENSION)) {
+                        // We need to find out whether the themer decided to add
+                        // injection-based type1 variants, and if so, add to the
+                        // variants
+                        switch (current.substring(0, 7)) {
+                            case TYPE1A_PREFIX:
+                                type1a.add(overlays.setTypeOneHexAndSpinner(
+                                        current, package_identifier, cipher));
+                                break;
+                            case TYPE1B_PREFIX:
+                                type1b.add(overlays.setTypeOneHexAndSpinner(
+                                        current, package_identifier, cipher));
+                                break;
+                            case TYPE1C_PREFIX:
+                                type1c.add(overlays.setTypeOneHexAndSpinner(
+                                        current, package_identifier, cipher));
+                                break;
                         }
-                    }
-                    // attention file present, let's parse the name of the type2 spinner if present
-                    StringBuilder attentionFile = new StringBuilder();
-                    if (attentionPresent) {
-                        InputStreamReader inputStreamReader;
-                        try {
-                            inputStreamReader = new InputStreamReader(
-                                    FileOperations.getInputStream(
-                                            overlays.themeAssetManager,
-                                            OVERLAYS_DIR + '/' + package_identifier +
-                                                    (overlays.encrypted ?
-                                                            "/attention" +
-                                                                    ENCRYPTED_FILE_EXTENSION :
-                                                            "/attention"
-                                                    ),
-                                            (overlays.encrypted ? overlays.theme_cipher : null)));
-                            BufferedReader reader = new BufferedReader(inputStreamReader);
-                            attentionFile.append(reader.readLine());
-                        } catch (Exception e) {
-                            // Suppress warning
+                    } else if (current.length() >= 6) {
+                        // Now we filter out directories that we specifically whitelisted
+                        String starting = current.substring(0, 6);
+                        switch (starting) {
+                            case TYPE2_PREFIX:
+                                type2.add(new VariantItem(current.substring(6), null));
+                                break;
+                            case TYPE4_PREFIX:
+                                type4.add(new VariantItem(current.substring(6), null));
+                                break;
                         }
                     }
+                }
+            }
+            return new VariantCache.Variants(
+                    type1a,
+                    type1b,
+                    type1c,
+                    type2,
+                    type4,
+                    attentionFile.toString(),
+                    typeArray.size() > 1);
+        }
 
-                    // Finally, check if the assets/overlays folder actually has anything inside
-                    if (typeArray.size() > 1) {
-                        for (int i = 0; i < typeArray.size(); i++) {
-                            String current = typeArray.get(i);
-
-                            // Filter out the assets/overlays/overlay_name/res
-                            if (current.contains(XML_EXTENSION)) {
-                                // We need to find out whether the themer decided to add
-                                // injection-based type1 variants, and if so, add to the
-                                // variants
-                                switch (current.substring(0, 7)) {
-                                    case TYPE1A_PREFIX:
-                                        type1a.add(overlays.setTypeOneHexAndSpinner(
-                                                current, package_identifier));
-                                        break;
-                                    case TYPE1B_PREFIX:
-                                        type1b.add(overlays.setTypeOneHexAndSpinner(
-                                                current, package_identifier));
-                                        break;
-                                    case TYPE1C_PREFIX:
-                                        type1c.add(overlays.setTypeOneHexAndSpinner(
-                                                current, package_identifier));
-                                        break;
-                                }
-                            } else if (current.length() >= 6) {
-                                // Now we filter out directories that we specifically whitelisted
-                                String starting = current.substring(0, 6);
-                                switch (starting) {
-                                    case TYPE2_PREFIX:
-                                        type2.add(new VariantItem(current.substring(6), null));
-                                        break;
-                                    case TYPE4_PREFIX:
-                                        type4.add(new VariantItem(current.substring(6), null));
-                                        break;
-                                }
-                            }
+        /**
+         * Step 4, in parallel
+         * Parse every overlay on a worker pool and hand the items to the adapter as soon as they
+         * are ready, in the order of the sorted map
+         *
+         * @param overlays     Overlays
+         * @param loadOverlays LoadOverlays
+         * @param sortedMap    Sorted map
+         * @param argument     Argument fed into the AsynchronousTask
+         */
+        private static void parseDirectoryStructure(Overlays overlays,
+                                                    LoadOverlays loadOverlays,
+                                                    List<Pair<String, String>> sortedMap,
+                                                    String argument) {
+            int workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            try {
+                List<Future<OverlaysItem>> parsed = new ArrayList<>();
+                for (Pair<String, String> entry : sortedMap) {
+                    parsed.add(executor.submit(() ->
+                            parseOverlay(overlays, loadOverlays, entry, argument)));
+                }
+                // Waiting in submission order keeps the list sorted while it is being streamed
+                for (Future<OverlaysItem> future : parsed) {
+                    if (loadOverlays.isCancelled()) break;
+                    OverlaysItem overlaysItem;
+                    try {
+                        overlaysItem = future.get();
+                    } catch (ExecutionException e) {
+                        e.printStackTrace();
+                        continue;
+                    }
+                    if (overlaysItem != null) {
+                        synchronized (loadOverlays.pendingList) {
+                            loadOverlays.pendingList.add(overlaysItem);
                         }
-                        VariantAdapter[] adapters = new VariantAdapter[]{
-                                new VariantAdapter(overlays.mContext, type1a),
-                                new VariantAdapter(overlays.mContext, type1b),
-                                new VariantAdapter(overlays.mContext, type1c),
-                                new VariantAdapter(overlays.mContext, type2),
-                                new VariantAdapter(overlays.mContext, type4)
-                        };
-                        Boolean[] checker = new Boolean[]{
-                                !type1a.isEmpty(),
-                                !type1b.isEmpty(),
-                                !type1c.isEmpty(),
-                                !type2.isEmpty(),
-                                !type4.isEmpty()
-                        };
-                        createOverlaysItem(
-                                overlays,
-                                loadOverlays,
-                                package_name,
-                                package_identifier,
-                                checker,
-                                adapters,
-                                attentionFile.toString(),
-                                argument);
-                    } else {
-                        // At this point, there is no spinner adapter, so it should be null
-                        createOverlaysItem(
-                                overlays,
-                                loadOverlays,
-                                package_name,
-                                package_identifier,
-                                null,
-                                null,
-                                attentionFile.toString(),
-                                argument);
+                        loadOverlays.publishProgress();
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
             }
         }
 
@@ -1436,15 +1578,16 @@ public class Overlays extends Fragment {
          * @param checker            Array of booleans denoting whether each type is available
          * @param adapters           Array of VariantAdapters denoting the data
          * @param argument           Argument of the AsynchronousTask
+         * @return Returns the overlay's item, or null if it could not be created
          */
-        private static void createOverlaysItem(Overlays overlays,
-                                               LoadOverlays loadOverlays,
-                                               String package_name,
-                                               String package_identifier,
-                                               Boolean[] checker,
-                                               VariantAdapter[] adapters,
-                                               String attention,
-                                               String argument) {
+        private static OverlaysItem createOverlaysItem(Overlays overlays,
+                                                       LoadOverlays loadOverlays,
+                                                       String package_name,
+                                                       String package_identifier,
+                                                       Boolean[] checker,
+                                                       VariantAdapter[] adapters,
+                                                       String attention,
+                                                       String argument) {
             try {
                 OverlaysItem overlaysItem =
                         new OverlaysItem(
@@ -1464,10 +1607,11 @@ public class Overlays extends Fragment {
                                 Systems.checkOMS(overlays.mContext),
                                 attention,
                                 overlays.getActivityView());
-                loadOverlays.adapterList.add(overlaysItem);
+                return overlaysItem;
             } catch (Exception e) {
                 e.printStackTrace();
             }
+            return null;
         }
 
         @Override
@@ -1476,16 +1620,21 @@ public class Overlays extends Fragment {
             if (fragment != null) setViews(fragment, false);
         }
 
-        @Override
-        protected void onPostExecute(String result) {
-            super.onPostExecute(result);
-            Overlays fragment = ref.get();
-            if (fragment != null) {
-                setViews(fragment, true);
+        /**
+         * Hand the overlays parsed so far to the adapter, showing the list with the first batch
+         *
+         * @param fragment Overlays
+         */
+        private void showParsedOverlays(Overlays fragment) {
+            int start = adapterList.size();
+            synchronized (pendingList) {
+                adapterList.addAll(pendingList);
+                pendingList.clear();
+            }
+            if (!shown) {
+                shown = true;
                 fragment.mAdapter = new OverlaysAdapter(adapterList);
                 fragment.mRecyclerView.setAdapter(fragment.mAdapter);
-                fragment.mRecyclerView.getLayoutManager().scrollToPosition(
-                        fragment.recyclerViewPosition);
                 fragment.mAdapter.notifyDataSetChanged();
                 if (!fragment.mRecyclerView.isShown())
                     fragment.mRecyclerView.setVisibility(View.VISIBLE);
@@ -1496,6 +1645,26 @@ public class Overlays extends Fragment {
                         MainActivity.themeCardProgressBar.setVisibility(View.GONE);
                     }
                 }
+            } else if (adapterList.size() > start) {
+                fragment.mAdapter.notifyItemRangeInserted(start, adapterList.size() - start);
+            }
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            Overlays fragment = ref.get();
+            if (fragment != null) showParsedOverlays(fragment);
+        }
+
+        @Override
+        protected void onPostExecute(String result) {
+            super.onPostExecute(result);
+            Overlays fragment = ref.get();
+            if (fragment != null) {
+                showParsedOverlays(fragment);
+                setViews(fragment, true);
+                fragment.mRecyclerView.getLayoutManager().scrollToPosition(
+                        fragment.recyclerViewPosition);
             }
         }
 
@@ -1506,13 +1675,18 @@ public class Overlays extends Fragment {
                 // Modularizing the compile process to make it easier to track errors
                 Boolean assigned = assignVariables(fragment, this);
                 if (assigned) {
-                    List<String> values = buffer(fragment);
+                    List<String> values = buffer(fragment, this);
                     if (values != null) {
                         Map<String, String> unsortedMap = obtainUnsortedMap(fragment, values);
                         if (unsortedMap != null) {
                             List<Pair<String, String>> sortedMap = sortMapByValues(unsortedMap);
                             if (sortedMap != null) {
                                 parseDirectoryStructure(fragment, this, sortedMap, sUrl[0]);
+                                // Only a complete pass is worth remembering for the next visit
+                                if (variantsChanged && !isCancelled()) {
+                                    VariantCache.store(
+                                            fragment.mContext, fragment.theme_pid, variants);
+                                }
                             }
                         }
                     }
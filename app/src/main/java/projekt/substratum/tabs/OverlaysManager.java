@@ -57,9 +57,12 @@ import projekt.substratum.common.Broadcasts;
 import projekt.substratum.common.Packages;
 import projekt.substratum.common.References;
 import projekt.substratum.common.Systems;
+import projekt.substratum.common.commands.AssetMirror;
+import projekt.substratum.common.commands.DirectAssets;
 import projekt.substratum.common.commands.ElevatedCommands;
 import projekt.substratum.common.commands.FileOperations;
 import projekt.substratum.common.platform.ThemeManager;
+import projekt.substratum.util.compilers.CompilePipeline;
 import projekt.substratum.util.compilers.SubstratumBuilder;
 import projekt.substratum.util.files.Root;
 
@@ -230,13 +233,14 @@ enum OverlaysManager {
                     }
                 }
             } else {
+                FileOperations.mountRW();
                 for (int i = 0; i < overlays.currentInstance.checkedOverlays.size(); i++) {
-                    FileOperations.mountRW();
                     FileOperations.delete(overlays.mContext, current_directory +
                             overlays.currentInstance.checkedOverlays.get(i)
                                     .getFullOverlayParameters() + ".apk");
                     overlays.mAdapter.notifyDataSetChanged();
                 }
+                FileOperations.mountRO();
                 // Untick all options in the adapter after compiling
                 overlays.toggle_all.setChecked(false);
                 overlays.overlayItemList = overlays.mAdapter.getOverlayList();
@@ -321,9 +325,10 @@ enum OverlaysManager {
      */
     static class compileFunction extends AsyncTask<String, Integer, String> {
 
+        private final Object progressLock = new Object();
         private WeakReference<Overlays> ref;
-        private String currentPackageName = "";
-        private String current_dialog_overlay;
+        private volatile String currentPackageName = "";
+        private volatile String current_dialog_overlay;
         private String state;
 
         compileFunction(Overlays overlays, String state) {
@@ -536,14 +541,11 @@ enum OverlaysManager {
         }
 
 
-        @SuppressWarnings("ConstantConditions")
         @Override
         protected String doInBackground(String... sUrl) {
             Overlays overlays = ref.get();
             if (overlays != null) {
                 Context context = overlays.getActivity();
-                String parsedVariant = sUrl[0].replaceAll("\\s+", "");
-                String unparsedVariant = sUrl[0];
                 if (overlays.mixAndMatchMode && !Systems.checkOMS(context)) {
                     String current_directory;
                     if (inNexusFilter()) {
@@ -555,6 +557,7 @@ enum OverlaysManager {
                     if (file.exists()) {
                         FileOperations.mountRW();
                         FileOperations.delete(context, current_directory);
+                        FileOperations.mountRO();
                     }
                 }
 
@@ -564,461 +567,499 @@ enum OverlaysManager {
                     Substratum.getInstance().registerFinishReceiver();
                 }
 
-                overlays.currentInstance.total_amount =
-                        (double) overlays.currentInstance.checkedOverlays.size();
-                for (int i = 0; i < overlays.currentInstance.checkedOverlays.size(); i++) {
-                    String type1a = "";
-                    String type1b = "";
-                    String type1c = "";
-                    String type2 = "";
-                    String type3;
-                    String type4 = "";
-
-                    OverlaysItem checked = overlays.currentInstance.checkedOverlays.get(i);
-
-                    overlays.currentInstance.current_amount = (double) (i + 1);
-                    String theme_name_parsed =
-                            overlays.theme_name.replaceAll("\\s+", "")
-                                    .replaceAll("[^a-zA-Z0-9]+", "");
-
-                    String current_overlay = checked.getPackageName();
-                    current_dialog_overlay =
-                            '\'' + Packages.getPackageName(context, current_overlay) + '\'';
-                    currentPackageName = current_overlay;
-
-                    if (state.equals(COMPILE_UPDATE) || state.equals(COMPILE_ENABLE)) {
-                        publishProgress((int) overlays.currentInstance.current_amount);
-                        if (state.equals(COMPILE_ENABLE)) {
-                            if (overlays.currentInstance.final_runner == null) {
-                                overlays.currentInstance.final_runner = new ArrayList<>();
-                            }
-                            String package_name = checked.getFullOverlayParameters();
-                            if (Packages.isPackageInstalled(context, package_name) ||
-                                    state.equals(COMPILE_ENABLE)) {
-                                overlays.currentInstance.final_runner.add(package_name);
-                            }
+                List<OverlaysItem> checkedOverlays = overlays.currentInstance.checkedOverlays;
+                overlays.currentInstance.total_amount = (double) checkedOverlays.size();
+                if (state.equals(COMPILE_UPDATE) || state.equals(COMPILE_ENABLE)) {
+                    if (state.equals(COMPILE_ENABLE)) {
+                        // Keep the enabling order the same as the user's selection
+                        for (OverlaysItem checked : checkedOverlays) {
+                            overlays.currentInstance.final_runner.add(
+                                    checked.getFullOverlayParameters());
                         }
-                        try {
-                            String packageTitle = "";
-                            if (projekt.substratum.common.Resources.allowedSystemUIOverlay
-                                    (current_overlay)) {
-                                switch (current_overlay) {
-                                    case SYSTEMUI_HEADERS:
-                                        packageTitle = context.getString(R.string.systemui_headers);
-                                        break;
-                                    case SYSTEMUI_NAVBARS:
-                                        packageTitle = context.getString(R.string
-                                                .systemui_navigation);
-                                        break;
-                                    case SYSTEMUI_STATUSBARS:
-                                        packageTitle = context.getString(R.string
-                                                .systemui_statusbar);
-                                        break;
-                                    case SYSTEMUI_QSTILES:
-                                        packageTitle = context.getString(R.string
-                                                .systemui_qs_tiles);
-                                        break;
-                                }
-                            } else if (projekt.substratum.common.Resources.allowedSettingsOverlay
-                                    (current_overlay)) {
-                                switch (current_overlay) {
-                                    case SETTINGS_ICONS:
-                                        packageTitle = context.getString(R.string.settings_icons);
-                                        break;
-                                }
-                            } else if (projekt.substratum.common.Resources.allowedFrameworkOverlay
-                                    (current_overlay)) {
-                                switch (current_overlay) {
-                                    case SAMSUNG_FRAMEWORK:
-                                        packageTitle = context.getString(
-                                                R.string.samsung_framework);
-                                        break;
-                                    case LG_FRAMEWORK:
-                                        packageTitle = context.getString(R.string.lg_framework);
-                                        break;
-                                }
-                            } else {
-                                ApplicationInfo applicationInfo = null;
-                                try {
-                                    applicationInfo = context.getPackageManager()
-                                            .getApplicationInfo(current_overlay, 0);
-                                } catch (PackageManager.NameNotFoundException e) {
-                                    e.printStackTrace();
-                                }
-                                packageTitle = context.getPackageManager()
-                                        .getApplicationLabel(applicationInfo).toString();
-                            }
+                    }
 
-                            // Initialize working notification
-                            if (overlays.checkActiveNotifications()) {
-                                overlays.mBuilder.setProgress(100, (int) (((double) (i + 1) /
-                                        (double) overlays.currentInstance.checkedOverlays.size())
-                                        * 100.0), false);
-                                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                                    overlays.mBuilder.setContentText('"' + packageTitle + '"');
-                                } else {
-                                    overlays.mBuilder.setContentText(
-                                            context.getString(R.string.notification_processing) +
-                                                    '"' + packageTitle + '"');
-                                }
-                                overlays.mNotifyManager.notify(References.notification_id_compiler,
-                                        overlays.mBuilder.build());
-                            }
+                    // Each overlay gets its own work area, so the pipeline can work on a few
+                    // of them at once, one per stage
+                    // Legacy installs push to the system, keep it RW for the whole run instead of
+                    // flipping it back and forth for every overlay
+                    boolean legacyPush = !Systems.checkOMS(context) &&
+                            !Systems.isSamsungDevice(context);
+                    if (legacyPush) {
+                        FileOperations.mountRW();
+                        if (inNexusFilter()) FileOperations.mountRWVendor();
+                    }
+                    CompilePipeline pipeline = new CompilePipeline(context, compileInstance -> {
+                        collectResult(overlays, context, compileInstance);
+                        completeOverlay(overlays);
+                    }).start();
+                    try {
+                        for (int i = 0; i < checkedOverlays.size(); i++) {
+                            OverlaysItem checked = checkedOverlays.get(i);
+                            int index = i;
+                            pipeline.submit(() ->
+                                    prepareOverlay(overlays, context, checked, index, sUrl[0],
+                                            needToWait));
+                        }
+                        pipeline.awaitCompletion();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        if (legacyPush) {
+                            if (inNexusFilter()) FileOperations.mountROVendor();
+                            FileOperations.mountRO();
+                        }
+                    }
+                } else {
+                    for (OverlaysItem checked : checkedOverlays) {
+                        String package_name = checked.getFullOverlayParameters();
+                        if (Packages.isPackageInstalled(context, package_name)) {
+                            overlays.currentInstance.final_runner.add(package_name);
+                        }
+                    }
+                }
+            }
+            return null;
+        }
 
-                            String unparsedSuffix;
-                            boolean useType3CommonDir = false;
-                            if (!sUrl[0].isEmpty()) {
-                                useType3CommonDir = overlays.themeAssetManager
-                                        .list(OVERLAYS_DIR + '/' + current_overlay +
-                                                "/type3-common").length > 0;
-                                if (useType3CommonDir) {
-                                    unparsedSuffix = "/type3-common";
-                                } else {
-                                    unparsedSuffix = "/type3_" + unparsedVariant;
-                                }
-                            } else {
-                                unparsedSuffix = "/res";
-                            }
+        /**
+         * Extract a single overlay and write its manifest, run on the pipeline's extract stage
+         *
+         * @param overlays    Overlays fragment
+         * @param context     Context
+         * @param checked     Overlay to be compiled
+         * @param index       Position of the overlay in the checked list
+         * @param baseVariant Selected type3 variant, empty if none
+         * @param needToWait  Whether the install must finish before the next one can start
+         * @return Returns the prepared builder, errored out if the extraction has failed
+         */
+        @SuppressWarnings("ConstantConditions")
+        private SubstratumBuilder prepareOverlay(Overlays overlays,
+                                                 Context context,
+                                                 OverlaysItem checked,
+                                                 int index,
+                                                 String baseVariant,
+                                                 boolean needToWait) {
+            String type1a = "";
+            String type1b = "";
+            String type1c = "";
+            String type2 = "";
+            String type3;
+            String type4 = "";
+
+            String parsedVariant = baseVariant.replaceAll("\\s+", "");
+            String theme_name_parsed =
+                    overlays.theme_name.replaceAll("\\s+", "")
+                            .replaceAll("[^a-zA-Z0-9]+", "");
+
+            String current_overlay = checked.getPackageName();
+            current_dialog_overlay =
+                    '\'' + Packages.getPackageName(context, current_overlay) + '\'';
+            currentPackageName = current_overlay;
+            publishProgress((int) overlays.currentInstance.current_amount);
+            String workingDirectory = context.getCacheDir().getAbsolutePath() +
+                    References.SUBSTRATUM_BUILDER_CACHE + index + '_' + current_overlay;
+
+            try {
+                String packageTitle = "";
+                if (projekt.substratum.common.Resources.allowedSystemUIOverlay
+                        (current_overlay)) {
+                    switch (current_overlay) {
+                        case SYSTEMUI_HEADERS:
+                            packageTitle = context.getString(R.string.systemui_headers);
+                            break;
+                        case SYSTEMUI_NAVBARS:
+                            packageTitle = context.getString(R.string
+                                    .systemui_navigation);
+                            break;
+                        case SYSTEMUI_STATUSBARS:
+                            packageTitle = context.getString(R.string
+                                    .systemui_statusbar);
+                            break;
+                        case SYSTEMUI_QSTILES:
+                            packageTitle = context.getString(R.string
+                                    .systemui_qs_tiles);
+                            break;
+                    }
+                } else if (projekt.substratum.common.Resources.allowedSettingsOverlay
+                        (current_overlay)) {
+                    switch (current_overlay) {
+                        case SETTINGS_ICONS:
+                            packageTitle = context.getString(R.string.settings_icons);
+                            break;
+                    }
+                } else if (projekt.substratum.common.Resources.allowedFrameworkOverlay
+                        (current_overlay)) {
+                    switch (current_overlay) {
+                        case SAMSUNG_FRAMEWORK:
+                            packageTitle = context.getString(
+                                    R.string.samsung_framework);
+                            break;
+                        case LG_FRAMEWORK:
+                            packageTitle = context.getString(R.string.lg_framework);
+                            break;
+                    }
+                } else {
+                    ApplicationInfo applicationInfo = null;
+                    try {
+                        applicationInfo = context.getPackageManager()
+                                .getApplicationInfo(current_overlay, 0);
+                    } catch (PackageManager.NameNotFoundException e) {
+                        e.printStackTrace();
+                    }
+                    packageTitle = context.getPackageManager()
+                            .getApplicationLabel(applicationInfo).toString();
+                }
 
-                            String parsedSuffix = ((!sUrl[0].isEmpty()) ?
-                                    ("/type3_" + parsedVariant) : "/res");
-                            type3 = parsedVariant;
+                // Initialize working notification
+                synchronized (progressLock) {
+                    if (overlays.checkActiveNotifications()) {
+                        overlays.mBuilder.setProgress(100, (int) ((
+                                overlays.currentInstance.current_amount /
+                                        overlays.currentInstance.total_amount) * 100.0), false);
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                            overlays.mBuilder.setContentText('"' + packageTitle + '"');
+                        } else {
+                            overlays.mBuilder.setContentText(
+                                    context.getString(R.string.notification_processing) +
+                                            '"' + packageTitle + '"');
+                        }
+                        overlays.mNotifyManager.notify(References.notification_id_compiler,
+                                overlays.mBuilder.build());
+                    }
+                }
 
-                            String workingDirectory = context.getCacheDir().getAbsolutePath() +
-                                    References.SUBSTRATUM_BUILDER_CACHE.substring(0,
-                                            References.SUBSTRATUM_BUILDER_CACHE.length() - 1);
+                // Ciphers are stateful, so every encrypted file gets its own one on the pool
+                DirectAssets.CipherFactory ciphers =
+                        overlays.encrypted ? overlays::createThemeCipher : null;
+                // Everything extracted for this overlay, across all of its variant folders
+                DirectAssets.Stats extracted = new DirectAssets.Stats();
+
+                String unparsedSuffix;
+                boolean useType3CommonDir = false;
+                if (!baseVariant.isEmpty()) {
+                    useType3CommonDir = overlays.themeAssetManager
+                            .list(OVERLAYS_DIR + '/' + current_overlay +
+                                    "/type3-common").length > 0;
+                    if (useType3CommonDir) {
+                        unparsedSuffix = "/type3-common";
+                    } else {
+                        unparsedSuffix = "/type3_" + baseVariant;
+                    }
+                } else {
+                    unparsedSuffix = "/res";
+                }
 
-                            File created = new File(workingDirectory);
-                            if (created.exists()) {
-                                FileOperations.delete(context, created.getAbsolutePath());
-                            }
-                            FileOperations.createNewFolder(context, created
-                                    .getAbsolutePath());
-                            String listDir = OVERLAYS_DIR + '/' + current_overlay +
-                                    unparsedSuffix;
-
-                            FileOperations.copyFileOrDir(
-                                    overlays.themeAssetManager,
-                                    listDir,
-                                    workingDirectory + parsedSuffix,
-                                    listDir,
-                                    overlays.theme_cipher
-                            );
-
-                            if (useType3CommonDir) {
-                                String type3Dir = OVERLAYS_DIR + '/' +
-                                        current_overlay +
-                                        "/type3_" + unparsedVariant;
-                                FileOperations.copyFileOrDir(
-                                        overlays.themeAssetManager,
-                                        type3Dir,
-                                        workingDirectory + parsedSuffix,
-                                        type3Dir,
-                                        overlays.theme_cipher
-                                );
-                            }
+                String parsedSuffix = ((!baseVariant.isEmpty()) ?
+                        ("/type3_" + parsedVariant) : "/res");
+                type3 = parsedVariant;
 
-                            if (checked.is_variant_chosen || !sUrl[0].isEmpty()) {
-                                // Type 1a
-                                if (checked.is_variant_chosen1) {
-                                    type1a = checked.getSelectedVariantName();
-                                    Log.d(SUBSTRATUM_BUILDER, "You have selected variant file \"" +
-                                            checked.getSelectedVariantName() + '"');
-                                    Log.d(SUBSTRATUM_BUILDER, "Moving variant file to: " +
-                                            workingDirectory + parsedSuffix + "/values/type1a.xml");
-
-                                    String to_copy =
-                                            OVERLAYS_DIR + '/' + current_overlay +
-                                                    "/type1a_" +
-                                                    checked.getSelectedVariantName() +
-                                                    (overlays.encrypted ? ".xml" +
-                                                            ENCRYPTED_FILE_EXTENSION : ".xml");
-
-                                    FileOperations.copyFileOrDir(
-                                            overlays.themeAssetManager,
-                                            to_copy,
-                                            workingDirectory + parsedSuffix + (
-                                                    overlays.encrypted ?
-                                                            "/values/type1a.xml" +
-                                                                    ENCRYPTED_FILE_EXTENSION :
-                                                            "/values/type1a.xml"),
-                                            to_copy,
-                                            overlays.theme_cipher);
-                                }
+                File created = new File(workingDirectory);
+                if (created.exists()) {
+                    FileOperations.delete(context, created.getAbsolutePath());
+                }
+                FileOperations.createNewFolder(context, created
+                        .getAbsolutePath());
+                String listDir = OVERLAYS_DIR + '/' + current_overlay +
+                        unparsedSuffix;
+
+                AssetMirror.link(
+                        context,
+                        overlays.theme_pid,
+                        overlays.themeAssetManager,
+                        listDir,
+                        workingDirectory + parsedSuffix,
+                        ciphers,
+                        extracted
+                );
+
+                if (useType3CommonDir) {
+                    String type3Dir = OVERLAYS_DIR + '/' +
+                            current_overlay +
+                            "/type3_" + baseVariant;
+                    AssetMirror.link(
+                            context,
+                            overlays.theme_pid,
+                            overlays.themeAssetManager,
+                            type3Dir,
+                            workingDirectory + parsedSuffix,
+                            ciphers,
+                            extracted
+                    );
+                }
 
-                                // Type 1b
-                                if (checked.is_variant_chosen2) {
-                                    type1b = checked.getSelectedVariantName2();
-                                    Log.d(SUBSTRATUM_BUILDER, "You have selected variant file \"" +
-                                            checked.getSelectedVariantName2() + '"');
-                                    Log.d(SUBSTRATUM_BUILDER, "Moving variant file to: " +
-                                            workingDirectory + parsedSuffix + "/values/type1b.xml");
-
-                                    String to_copy =
-                                            OVERLAYS_DIR + '/' + current_overlay +
-                                                    "/type1b_" +
-                                                    checked.getSelectedVariantName2() +
-                                                    (overlays.encrypted ? ".xml" +
-                                                            ENCRYPTED_FILE_EXTENSION : ".xml");
-
-                                    FileOperations.copyFileOrDir(
-                                            overlays.themeAssetManager,
-                                            to_copy,
-                                            workingDirectory + parsedSuffix + (
-                                                    overlays.encrypted ?
-                                                            "/values/type1b.xml" +
-                                                                    ENCRYPTED_FILE_EXTENSION :
-                                                            "/values/type1b.xml"),
-                                            to_copy,
-                                            overlays.theme_cipher);
-                                }
-                                // Type 1c
-                                if (checked.is_variant_chosen3) {
-                                    type1c = checked.getSelectedVariantName3();
-                                    Log.d(SUBSTRATUM_BUILDER, "You have selected variant file \"" +
-                                            checked.getSelectedVariantName3() + '"');
-                                    Log.d(SUBSTRATUM_BUILDER, "Moving variant file to: " +
-                                            workingDirectory + parsedSuffix + "/values/type1c.xml");
-
-                                    String to_copy =
-                                            OVERLAYS_DIR + '/' + current_overlay +
-                                                    "/type1c_" +
-                                                    checked.getSelectedVariantName3() +
-                                                    (overlays.encrypted ? ".xml" +
-                                                            ENCRYPTED_FILE_EXTENSION : ".xml");
-
-                                    FileOperations.copyFileOrDir(
-                                            overlays.themeAssetManager,
-                                            to_copy,
-                                            workingDirectory + parsedSuffix + (
-                                                    overlays.encrypted ?
-                                                            "/values/type1c.xml" +
-                                                                    ENCRYPTED_FILE_EXTENSION :
-                                                            "/values/type1c.xml"),
-                                            to_copy,
-                                            overlays.theme_cipher);
-                                }
+                SubstratumBuilder compileInstance = new SubstratumBuilder(workingDirectory);
+                compileInstance.wait_for_install = needToWait;
+                if (checked.is_variant_chosen || !baseVariant.isEmpty()) {
+                    // Type 1a
+                    if (checked.is_variant_chosen1) {
+                        type1a = checked.getSelectedVariantName();
+                        Log.d(SUBSTRATUM_BUILDER, "You have selected variant file \"" +
+                                checked.getSelectedVariantName() + '"');
+                        Log.d(SUBSTRATUM_BUILDER, "Moving variant file to: " +
+                                workingDirectory + parsedSuffix + "/values/type1a.xml");
+
+                        String to_copy =
+                                OVERLAYS_DIR + '/' + current_overlay +
+                                        "/type1a_" +
+                                        checked.getSelectedVariantName() +
+                                        (overlays.encrypted ? ".xml" +
+                                                ENCRYPTED_FILE_EXTENSION : ".xml");
+
+                        AssetMirror.link(
+                                context,
+                                overlays.theme_pid,
+                                overlays.themeAssetManager,
+                                to_copy,
+                                workingDirectory + parsedSuffix + (
+                                        overlays.encrypted ?
+                                                "/values/type1a.xml" +
+                                                        ENCRYPTED_FILE_EXTENSION :
+                                                "/values/type1a.xml"),
+                                ciphers,
+                                extracted);
+                    }
 
-                                String packageName =
-                                        (checked.is_variant_chosen1 ?
-                                                checked.getSelectedVariantName() : "") +
-                                                (overlays.currentInstance.checkedOverlays
-                                                        .get(i).is_variant_chosen2 ?
-                                                        overlays.currentInstance.checkedOverlays
-                                                                .get(i)
-                                                                .getSelectedVariantName2() : "") +
-                                                (overlays.currentInstance.checkedOverlays
-                                                        .get(i).is_variant_chosen3 ?
-                                                        overlays.currentInstance.checkedOverlays
-                                                                .get(i)
-                                                                .getSelectedVariantName3() : "") +
-                                                (overlays.currentInstance.checkedOverlays
-                                                        .get(i).is_variant_chosen5 ?
-                                                        overlays.currentInstance.checkedOverlays
-                                                                .get(i)
-                                                                .getSelectedVariantName5() : "")
-                                                        .replaceAll("\\s+", "").replaceAll
-                                                        ("[^a-zA-Z0-9]+", "");
-
-                                if (checked.is_variant_chosen5) {
-                                    // Copy over the type4 assets
-                                    type4 = checked.getSelectedVariantName5();
-                                    String type4folder = "/type4_" + type4;
-                                    String type4folderOutput = "/assets";
-                                    String to_copy2 = OVERLAYS_DIR + '/' +
-                                            current_overlay +
-                                            type4folder;
-                                    FileOperations.copyFileOrDir(
-                                            overlays.themeAssetManager,
-                                            to_copy2,
-                                            workingDirectory + type4folderOutput,
-                                            to_copy2,
-                                            overlays.theme_cipher);
-                                }
-                                if (checked.is_variant_chosen4) {
-                                    packageName = (packageName + overlays.currentInstance
-                                            .checkedOverlays.get(i)
-                                            .getSelectedVariantName4()).replaceAll("\\s+", "")
-                                            .replaceAll("[^a-zA-Z0-9]+", "");
-
-                                    // Copy over the type2 assets
-                                    type2 = checked.getSelectedVariantName4();
-                                    String type2folder = "/type2_" + type2;
-                                    String to_copy = OVERLAYS_DIR + '/' +
-                                            current_overlay +
-                                            type2folder;
-                                    FileOperations.copyFileOrDir(
-                                            overlays.themeAssetManager,
-                                            to_copy,
-                                            workingDirectory + type2folder,
-                                            to_copy,
-                                            overlays.theme_cipher);
-
-                                    // Let's get started
-                                    Log.d(SUBSTRATUM_BUILDER, "Currently processing package" +
-                                            " \"" + checked.getFullOverlayParameters() + "\"...");
-
-                                    overlays.compileInstance = new SubstratumBuilder();
-                                    overlays.compileInstance.beginAction(
-                                            context,
-                                            current_overlay,
-                                            overlays.theme_name,
-                                            packageName,
-                                            checked.getSelectedVariantName4(),
-                                            !sUrl[0].isEmpty() ? sUrl[0] : null,
-                                            overlays.theme_version,
-                                            Systems.checkOMS(context),
-                                            overlays.theme_pid,
-                                            parsedSuffix,
-                                            type1a,
-                                            type1b,
-                                            type1c,
-                                            type2,
-                                            type3,
-                                            type4,
-                                            null,
-                                            false
-                                    );
-                                } else {
-                                    Log.d(SUBSTRATUM_BUILDER, "Currently processing package" +
-                                            " \"" + checked.getFullOverlayParameters() + "\"...");
-                                    overlays.compileInstance = new SubstratumBuilder();
-                                    overlays.compileInstance.beginAction(
-                                            context,
-                                            current_overlay,
-                                            overlays.theme_name,
-                                            packageName,
-                                            null,
-                                            !sUrl[0].isEmpty() ? sUrl[0] : null,
-                                            overlays.theme_version,
-                                            Systems.checkOMS(context),
-                                            overlays.theme_pid,
-                                            parsedSuffix,
-                                            type1a,
-                                            type1b,
-                                            type1c,
-                                            type2,
-                                            type3,
-                                            type4,
-                                            null,
-                                            false
-                                    );
-                                }
-                                if (overlays.compileInstance.has_errored_out) {
-                                    if (!overlays.compileInstance.getErrorLogs()
-                                            .contains("type3") ||
-                                            !overlays.compileInstance.getErrorLogs().contains(
-                                                    "does not exist")) {
-                                        overlays.currentInstance.fail_count += 1;
-                                        if (overlays.currentInstance.error_logs.length() == 0) {
-                                            overlays.currentInstance.error_logs.append(
-                                                    overlays.compileInstance.getErrorLogs());
-                                        } else {
-                                            overlays.currentInstance.error_logs.append('\n')
-                                                    .append(overlays.compileInstance
-                                                            .getErrorLogs());
-                                        }
-                                        overlays.currentInstance.failed_packages
-                                                .append(current_overlay);
-                                        overlays.currentInstance.failed_packages.append(" (");
-                                        overlays.currentInstance.failed_packages.append(
-                                                Packages.getAppVersion(context,
-                                                        current_overlay));
-                                        overlays.currentInstance.failed_packages.append(")\n");
-                                        overlays.currentInstance.has_failed = true;
-                                    } else {
-                                        overlays.currentInstance.missingType3 = true;
-                                    }
-                                } else {
-                                    if (overlays.compileInstance.special_snowflake ||
-                                            !overlays.compileInstance.no_install.isEmpty()) {
-                                        overlays.currentInstance.late_install.add(
-                                                overlays.compileInstance.no_install);
-                                    } else if (needToWait) {
-                                        // Thread wait
-                                        Substratum.startWaitingInstall();
-                                        do {
-                                            try {
-                                                Thread.sleep((long) SPECIAL_SNOWFLAKE_DELAY);
-                                            } catch (InterruptedException e) {
-                                                Thread.currentThread().interrupt();
-                                            }
-                                        } while (Substratum.isWaitingInstall());
-                                    }
-                                }
-                            } else {
-                                Log.d(SUBSTRATUM_BUILDER, "Currently processing package" +
-                                        " \"" + current_overlay + '.' + theme_name_parsed +
-                                        "\"...");
-                                overlays.compileInstance = new SubstratumBuilder();
-                                overlays.compileInstance.beginAction(
-                                        context,
-                                        current_overlay,
-                                        overlays.theme_name,
-                                        null,
-                                        null,
-                                        null,
-                                        overlays.theme_version,
-                                        Systems.checkOMS(context),
-                                        overlays.theme_pid,
-                                        parsedSuffix,
-                                        type1a,
-                                        type1b,
-                                        type1c,
-                                        type2,
-                                        type3,
-                                        type4,
-                                        null,
-                                        false
-                                );
-
-                                if (overlays.compileInstance.has_errored_out) {
-                                    overlays.currentInstance.fail_count += 1;
-                                    if (overlays.currentInstance.error_logs.length() == 0) {
-                                        overlays.currentInstance.error_logs.append(
-                                                overlays.compileInstance.getErrorLogs());
-                                    } else {
-                                        overlays.currentInstance.error_logs.append('\n')
-                                                .append(overlays.compileInstance.getErrorLogs());
-                                    }
-                                    overlays.currentInstance.failed_packages
-                                            .append(current_overlay);
-                                    overlays.currentInstance.failed_packages.append(" (");
-                                    overlays.currentInstance.failed_packages.append(
-                                            Packages.getAppVersion(context, current_overlay));
-                                    overlays.currentInstance.failed_packages.append(")\n");
-                                    overlays.currentInstance.has_failed = true;
-                                } else {
-                                    if (overlays.compileInstance.special_snowflake ||
-                                            !overlays.compileInstance.no_install.isEmpty()) {
-                                        overlays.currentInstance.late_install
-                                                .add(overlays.compileInstance.no_install);
-                                    } else if (needToWait) {
-                                        // Thread wait
-                                        Substratum.startWaitingInstall();
-                                        do {
-                                            try {
-                                                Thread.sleep((long) SPECIAL_SNOWFLAKE_DELAY);
-                                            } catch (InterruptedException e) {
-                                                Thread.currentThread().interrupt();
-                                            }
-                                        } while (Substratum.isWaitingInstall());
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            Log.e(SUBSTRATUM_BUILDER, "Main function has unexpectedly stopped!");
-                        }
-                    } else if (!state.equals(COMPILE_UPDATE)) {
-                        String package_name = checked.getFullOverlayParameters();
-                        if (Packages.isPackageInstalled(context, package_name)) {
-                            overlays.currentInstance.final_runner.add(package_name);
+                    // Type 1b
+                    if (checked.is_variant_chosen2) {
+                        type1b = checked.getSelectedVariantName2();
+                        Log.d(SUBSTRATUM_BUILDER, "You have selected variant file \"" +
+                                checked.getSelectedVariantName2() + '"');
+                        Log.d(SUBSTRATUM_BUILDER, "Moving variant file to: " +
+                                workingDirectory + parsedSuffix + "/values/type1b.xml");
+
+                        String to_copy =
+                                OVERLAYS_DIR + '/' + current_overlay +
+                                        "/type1b_" +
+                                        checked.getSelectedVariantName2() +
+                                        (overlays.encrypted ? ".xml" +
+                                                ENCRYPTED_FILE_EXTENSION : ".xml");
+
+                        AssetMirror.link(
+                                context,
+                                overlays.theme_pid,
+                                overlays.themeAssetManager,
+                                to_copy,
+                                workingDirectory + parsedSuffix + (
+                                        overlays.encrypted ?
+                                                "/values/type1b.xml" +
+                                                        ENCRYPTED_FILE_EXTENSION :
+                                                "/values/type1b.xml"),
+                                ciphers,
+                                extracted);
+                    }
+                    // Type 1c
+                    if (checked.is_variant_chosen3) {
+                        type1c = checked.getSelectedVariantName3();
+                        Log.d(SUBSTRATUM_BUILDER, "You have selected variant file \"" +
+                                checked.getSelectedVariantName3() + '"');
+                        Log.d(SUBSTRATUM_BUILDER, "Moving variant file to: " +
+                                workingDirectory + parsedSuffix + "/values/type1c.xml");
+
+                        String to_copy =
+                                OVERLAYS_DIR + '/' + current_overlay +
+                                        "/type1c_" +
+                                        checked.getSelectedVariantName3() +
+                                        (overlays.encrypted ? ".xml" +
+                                                ENCRYPTED_FILE_EXTENSION : ".xml");
+
+                        AssetMirror.link(
+                                context,
+                                overlays.theme_pid,
+                                overlays.themeAssetManager,
+                                to_copy,
+                                workingDirectory + parsedSuffix + (
+                                        overlays.encrypted ?
+                                                "/values/type1c.xml" +
+                                                        ENCRYPTED_FILE_EXTENSION :
+                                                "/values/type1c.xml"),
+                                ciphers,
+                                extracted);
+                    }
+
+                    String packageName =
+                            (checked.is_variant_chosen1 ?
+                                    checked.getSelectedVariantName() : "") +
+                                    (checked.is_variant_chosen2 ?
+                                            checked.getSelectedVariantName2() : "") +
+                                    (checked.is_variant_chosen3 ?
+                                            checked.getSelectedVariantName3() : "") +
+                                    (checked.is_variant_chosen5 ?
+                                            checked.getSelectedVariantName5() : "")
+                                            .replaceAll("\\s+", "").replaceAll
+                                            ("[^a-zA-Z0-9]+", "");
+
+                    if (checked.is_variant_chosen5) {
+                        // Copy over the type4 assets
+                        type4 = checked.getSelectedVariantName5();
+                        String type4folder = "/type4_" + type4;
+                        String type4folderOutput = "/assets";
+                        String to_copy2 = OVERLAYS_DIR + '/' +
+                                current_overlay +
+                                type4folder;
+                        AssetMirror.link(
+                                context,
+                                overlays.theme_pid,
+                                overlays.themeAssetManager,
+                                to_copy2,
+                                workingDirectory + type4folderOutput,
+                                ciphers,
+                                extracted);
+                    }
+                    if (checked.is_variant_chosen4) {
+                        packageName = (packageName + checked.getSelectedVariantName4())
+                                .replaceAll("\\s+", "").replaceAll("[^a-zA-Z0-9]+", "");
+
+                        // Copy over the type2 assets
+                        type2 = checked.getSelectedVariantName4();
+                        String type2folder = "/type2_" + type2;
+                        String to_copy = OVERLAYS_DIR + '/' +
+                                current_overlay +
+                                type2folder;
+                        AssetMirror.link(
+                                context,
+                                overlays.theme_pid,
+                                overlays.themeAssetManager,
+                                to_copy,
+                                workingDirectory + type2folder,
+                                ciphers,
+                                extracted);
+
+                        // Let's get started
+                        Log.d(SUBSTRATUM_BUILDER, "Currently processing package" +
+                                " \"" + checked.getFullOverlayParameters() + "\"...");
+
+                        compileInstance.prepare(
+                                context,
+                                current_overlay,
+                                overlays.theme_name,
+                                packageName,
+                                checked.getSelectedVariantName4(),
+                                !baseVariant.isEmpty() ? baseVariant : null,
+                                overlays.theme_version,
+                                Systems.checkOMS(context),
+                                overlays.theme_pid,
+                                parsedSuffix,
+                                type1a,
+                                type1b,
+                                type1c,
+                                type2,
+                                type3,
+                                type4,
+                                null,
+                                false
+                        );
+                    } else {
+                        Log.d(SUBSTRATUM_BUILDER, "Currently processing package" +
+                                " \"" + checked.getFullOverlayParameters() + "\"...");
+                        compileInstance.prepare(
+                                context,
+                                current_overlay,
+                                overlays.theme_name,
+                                packageName,
+                                null,
+                                !baseVariant.isEmpty() ? baseVariant : null,
+                                overlays.theme_version,
+                                Systems.checkOMS(context),
+                                overlays.theme_pid,
+                                parsedSuffix,
+                                type1a,
+                                type1b,
+                                type1c,
+                                type2,
+                                type3,
+                                type4,
+                                null,
+                                false
+                        );
+                    }
+                } else {
+                    Log.d(SUBSTRATUM_BUILDER, "Currently processing package" +
+                            " \"" + current_overlay + '.' + theme_name_parsed +
+                            "\"...");
+                    compileInstance.prepare(
+                            context,
+                            current_overlay,
+                            overlays.theme_name,
+                            null,
+                            null,
+                            null,
+                            overlays.theme_version,
+                            Systems.checkOMS(context),
+                            overlays.theme_pid,
+                            parsedSuffix,
+                            type1a,
+                            type1b,
+                            type1c,
+                            type2,
+                            type3,
+                            type4,
+                            null,
+                            false
+                    );
+                }
+                Log.d(SUBSTRATUM_BUILDER, "Extracted " + extracted.getFiles() + " files (" +
+                        extracted.getBytes() + " bytes) for \"" + current_overlay + "\"");
+                return compileInstance;
+            } catch (Throwable t) {
+                // Errors such as running out of memory included, the overlay still has to be
+                // counted and reported as failed
+                t.printStackTrace();
+                Log.e(SUBSTRATUM_BUILDER, "Main function has unexpectedly stopped!");
+                SubstratumBuilder failed = new SubstratumBuilder(workingDirectory);
+                failed.fail(current_overlay, "Could not extract the overlay: " + t);
+                return failed;
+            }
+        }
+
+        /**
+         * Count an overlay that has left the pipeline towards the progress
+         *
+         * @param overlays Overlays fragment
+         */
+        private void completeOverlay(Overlays overlays) {
+            synchronized (overlays.currentInstance) {
+                overlays.currentInstance.current_amount += 1.0;
+            }
+            publishProgress((int) overlays.currentInstance.current_amount);
+        }
+
+        /**
+         * Merge the outcome of a single compile into the shared instance
+         *
+         * @param overlays        Overlays fragment
+         * @param context         Context
+         * @param compileInstance Builder that compiled the overlay
+         */
+        private void collectResult(Overlays overlays,
+                                   Context context,
+                                   SubstratumBuilder compileInstance) {
+            String current_overlay = compileInstance.getOverlayPackage();
+            synchronized (overlays.currentInstance) {
+                if (compileInstance.has_errored_out) {
+                    if (!compileInstance.getErrorLogs().contains("type3") ||
+                            !compileInstance.getErrorLogs().contains("does not exist")) {
+                        overlays.currentInstance.fail_count += 1;
+                        if (overlays.currentInstance.error_logs.length() == 0) {
+                            overlays.currentInstance.error_logs.append(
+                                    compileInstance.getErrorLogs());
+                        } else {
+                            overlays.currentInstance.error_logs.append('\n')
+                                    .append(compileInstance.getErrorLogs());
                         }
+                        overlays.currentInstance.failed_packages.append(current_overlay);
+                        overlays.currentInstance.failed_packages.append(" (");
+                        overlays.currentInstance.failed_packages.append(
+                                Packages.getAppVersion(context, current_overlay));
+                        overlays.currentInstance.failed_packages.append(")\n");
+                        overlays.currentInstance.has_failed = true;
+                    } else {
+                        overlays.currentInstance.missingType3 = true;
                     }
+                } else if (compileInstance.special_snowflake ||
+                        !compileInstance.no_install.isEmpty()) {
+                    overlays.currentInstance.late_install.add(compileInstance.no_install);
                 }
             }
-            return null;
         }
     }
 
@@ -46,6 +46,7 @@ import projekt.substratum.common.commands.FileOperations;
 import projekt.substratum.common.platform.SubstratumService;
 import projekt.substratum.common.platform.ThemeInterfacerService;
 import projekt.substratum.common.platform.ThemeManager;
+import projekt.substratum.util.files.Root;
 
 import static projekt.substratum.common.Internal.ALARM_THEME_DIRECTORY;
 import static projekt.substratum.common.Internal.AUDIO_THEME_DIRECTORY;
@@ -182,21 +183,24 @@ public enum SoundsManager {
                         "Moving sounds to theme directory " +
                                 "and setting correct contextual parameters...");
 
-                File themeDirectory = new File(THEME_DIRECTORY);
-                if (!themeDirectory.exists()) {
-                    FileOperations.mountRWData();
-                    FileOperations.createNewFolder(THEME_DIRECTORY);
-                    FileOperations.setPermissions(THEME_755, THEME_DIRECTORY);
-                    FileOperations.mountROData();
-                }
-                File audioDirectory = new File(AUDIO_THEME_DIRECTORY);
-                if (!audioDirectory.exists()) {
-                    FileOperations.mountRWData();
-                    FileOperations.createNewFolder(AUDIO_THEME_DIRECTORY);
-                    FileOperations.setPermissions(THEME_755, AUDIO_THEME_DIRECTORY);
-                    FileOperations.mountROData();
+                // Every root command of the copy runs on the same su session, one after another
+                try (Root.Session ignored = Root.openSession()) {
+                    File themeDirectory = new File(THEME_DIRECTORY);
+                    if (!themeDirectory.exists()) {
+                        FileOperations.mountRWData();
+                        FileOperations.createNewFolder(THEME_DIRECTORY);
+                        FileOperations.setPermissions(THEME_755, THEME_DIRECTORY);
+                        FileOperations.mountROData();
+                    }
+                    File audioDirectory = new File(AUDIO_THEME_DIRECTORY);
+                    if (!audioDirectory.exists()) {
+                        FileOperations.mountRWData();
+                        FileOperations.createNewFolder(AUDIO_THEME_DIRECTORY);
+                        FileOperations.setPermissions(THEME_755, AUDIO_THEME_DIRECTORY);
+                        FileOperations.mountROData();
+                    }
+                    ringtone = perform_action(context);
                 }
-                ringtone = perform_action(context);
             }
         }
         return new boolean[]{has_failed, ringtone};
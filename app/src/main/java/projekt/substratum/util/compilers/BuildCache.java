@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.util.compilers;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import projekt.substratum.BuildConfig;
+import projekt.substratum.common.Packages;
+
+import static projekt.substratum.common.Internal.BYTE_ACCESS_RATE;
+import static projekt.substratum.common.References.SUBSTRATUM_BUILD_CACHE;
+
+/**
+ * Persistent cache of signed overlay APKs, addressed by a hash of everything that goes into
+ * aapt, so that an unchanged overlay does not have to be compiled, aligned and signed again
+ */
+public enum BuildCache {
+    ;
+
+    private static final String TAG = "BuildCache";
+    private static final String FRAMEWORK_RES = "/system/framework/framework-res.apk";
+    private static final int KEY_LENGTH = 64;
+    private static final Object frameworkLock = new Object();
+    // framework-res.apk is large and only changes with a system update, hash it once
+    private static String frameworkHash;
+    private static long frameworkLength;
+    private static long frameworkModified;
+
+    /**
+     * Hash the inputs of an overlay's compilation
+     * <p>
+     * The work area must already contain the extracted assets and the overlay's manifest, which
+     * carries the theme version and the type1a/1b/1c/2/3/4 choices.
+     *
+     * @param context            Context
+     * @param work_area          Work area of the overlay
+     * @param target_package     Package the overlay is compiled against
+     * @param overlay_name       Full package name of the overlay
+     * @param additional_variant Additional variant (type2)
+     * @param asset_replacement  Asset replacement (type4)
+     * @param no_cache_dir       Direct Assets directory
+     * @return Returns the key of the overlay, or null if the inputs could not be read
+     */
+    static String getKey(Context context,
+                         String work_area,
+                         String target_package,
+                         String overlay_name,
+                         String additional_variant,
+                         String asset_replacement,
+                         String no_cache_dir) {
+        try {
+            String framework = getFrameworkHash();
+            if (framework == null) return null;
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, overlay_name);
+            update(digest, String.valueOf(BuildConfig.VERSION_CODE));
+            update(digest, framework);
+            update(digest, target_package);
+            update(digest, String.valueOf(Packages.getAppVersionCode(context, target_package)));
+            update(digest, Packages.getInstalledDirectory(context, target_package));
+            update(digest, additional_variant);
+            update(digest, asset_replacement);
+            update(digest, no_cache_dir);
+            File root = new File(work_area);
+            hashTree(digest, root, root.getAbsolutePath().length() + 1);
+            return toHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.e(TAG, "Unable to hash the work area of " + overlay_name, e);
+        }
+        return null;
+    }
+
+    /**
+     * Find a previously signed APK for the given key
+     *
+     * @param overlay_name Full package name of the overlay
+     * @param key          Key obtained through {@link #getKey}
+     * @return Returns the cached APK, or null if there is none
+     */
+    static File lookup(String overlay_name, String key) {
+        if (key == null) return null;
+        File cached = getEntry(overlay_name, key);
+        return cached.isFile() ? cached : null;
+    }
+
+    /**
+     * Keep a copy of a signed APK, replacing older builds of the same overlay
+     *
+     * @param overlay_name Full package name of the overlay
+     * @param key          Key obtained through {@link #getKey}
+     * @param signed_apk   Freshly signed APK
+     */
+    static void store(String overlay_name, String key, File signed_apk) {
+        if (key == null) return;
+        File directory = new File(SUBSTRATUM_BUILD_CACHE);
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create the build cache folder...");
+            return;
+        }
+        File entry = getEntry(overlay_name, key);
+        File temporary = new File(entry.getAbsolutePath() + ".tmp");
+        try {
+            copy(signed_apk, temporary);
+            if (!temporary.renameTo(entry)) {
+                Log.e(TAG, "Could not move " + overlay_name + " into the build cache");
+                return;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not copy " + overlay_name + " into the build cache", e);
+            return;
+        } finally {
+            if (temporary.exists() && !temporary.delete()) {
+                Log.e(TAG, "Could not delete " + temporary.getAbsolutePath());
+            }
+        }
+
+        // Only the latest build of an overlay is worth keeping around
+        String prefix = overlay_name + '-';
+        File[] entries = directory.listFiles();
+        if (entries == null) return;
+        for (File stale : entries) {
+            String name = stale.getName();
+            if (name.startsWith(prefix) &&
+                    (name.length() == (prefix.length() + KEY_LENGTH + ".apk".length())) &&
+                    !name.equals(entry.getName()) &&
+                    !stale.delete()) {
+                Log.e(TAG, "Could not delete " + name + " from the build cache");
+            }
+        }
+    }
+
+    /**
+     * Copy a cached APK to where the builder would have left its signed APK
+     *
+     * @param cached      Cached APK
+     * @param destination Path of the signed APK
+     * @return True, if the APK has been copied
+     */
+    static boolean restore(File cached, String destination) {
+        try {
+            copy(cached, new File(destination));
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not restore " + cached.getName() + " from the build cache", e);
+        }
+        return false;
+    }
+
+    private static File getEntry(String overlay_name, String key) {
+        return new File(SUBSTRATUM_BUILD_CACHE + overlay_name + '-' + key + ".apk");
+    }
+
+    private static String getFrameworkHash() throws IOException, NoSuchAlgorithmException {
+        File framework = new File(FRAMEWORK_RES);
+        if (!framework.isFile()) {
+            Log.e(TAG, "Unable to find " + FRAMEWORK_RES);
+            return null;
+        }
+        synchronized (frameworkLock) {
+            if ((frameworkHash == null) ||
+                    (frameworkLength != framework.length()) ||
+                    (frameworkModified != framework.lastModified())) {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                hashFile(digest, framework, new byte[BYTE_ACCESS_RATE]);
+                frameworkHash = toHex(digest.digest());
+                frameworkLength = framework.length();
+                frameworkModified = framework.lastModified();
+            }
+            return frameworkHash;
+        }
+    }
+
+    private static void hashTree(MessageDigest digest,
+                                 File file,
+                                 int rootLength) throws IOException {
+        byte[] buffer = new byte[BYTE_ACCESS_RATE];
+        File[] children = file.listFiles();
+        if (children == null) return;
+        // Directory listings have no defined order, the key must not depend on it
+        Arrays.sort(children);
+        for (File child : children) {
+            update(digest, child.getAbsolutePath().substring(rootLength));
+            if (child.isDirectory()) {
+                hashTree(digest, child, rootLength);
+            } else {
+                hashFile(digest, child, buffer);
+            }
+        }
+    }
+
+    private static void hashFile(MessageDigest digest,
+                                 File file,
+                                 byte[] buffer) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        // Separate every value, so that "ab" + "c" and "a" + "bc" do not collide
+        if (value != null) digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static void copy(File source, File destination) throws IOException {
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new FileOutputStream(destination)) {
+            byte[] buffer = new byte[BYTE_ACCESS_RATE];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                out.write(buffer, 0, length);
+            }
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
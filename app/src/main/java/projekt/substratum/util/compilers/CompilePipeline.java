@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.util.compilers;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static projekt.substratum.common.References.SUBSTRATUM_BUILDER;
+
+/**
+ * Runs the stages of {@link SubstratumBuilder} as a producer/consumer pipeline, so that one
+ * overlay can be signed while the next one runs aapt and another one extracts its assets.
+ * <p>
+ * Every stage has its own worker threads and hands its builders to the next stage through a
+ * bounded queue, which keeps the amount of extracted work areas on disk in check.
+ */
+public class CompilePipeline {
+
+    public static final String STAGE_EXTRACT = "extract";
+    public static final String STAGE_AAPT = "aapt";
+    public static final String STAGE_SIGN = "sign";
+    public static final String STAGE_INSTALL = "install";
+    private static final Callable<SubstratumBuilder> END_OF_JOBS = () -> null;
+    private static final SubstratumBuilder END_OF_BUILDS = new SubstratumBuilder();
+    private final Context context;
+    private final OnCompiledListener listener;
+    private final List<Stage<?>> stages = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final Stage<Callable<SubstratumBuilder>> extractStage;
+    private long startTime;
+
+    /**
+     * Create a new compile pipeline, sized to the amount of cores on the device
+     *
+     * @param context  Context
+     * @param listener Listener notified once an overlay leaves the pipeline
+     */
+    public CompilePipeline(Context context, OnCompiledListener listener) {
+        super();
+        this.context = context;
+        this.listener = listener;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int heavyWorkers = Math.max(1, cores / 2);
+
+        // The install stage must stay single threaded, OMS and the root shell do not like company
+        Stage<SubstratumBuilder> installStage = new Stage<>(STAGE_INSTALL, 1,
+                new ArrayBlockingQueue<>(2), END_OF_BUILDS, null,
+                builder -> {
+                    builder.install(this.context);
+                    return builder;
+                });
+        Stage<SubstratumBuilder> signStage = new Stage<>(STAGE_SIGN, 1,
+                new ArrayBlockingQueue<>(2), END_OF_BUILDS, installStage,
+                builder -> {
+                    builder.sign(this.context);
+                    return builder;
+                });
+        Stage<SubstratumBuilder> aaptStage = new Stage<>(STAGE_AAPT, heavyWorkers,
+                new ArrayBlockingQueue<>(heavyWorkers * 2), END_OF_BUILDS, signStage,
+                builder -> {
+                    builder.compile(this.context);
+                    return builder;
+                });
+        // Jobs are tiny closures, so the extraction queue does not need to be bounded
+        extractStage = new Stage<>(STAGE_EXTRACT, heavyWorkers,
+                new LinkedBlockingQueue<>(), END_OF_JOBS, aaptStage, Callable::call);
+
+        stages.add(extractStage);
+        stages.add(aaptStage);
+        stages.add(signStage);
+        stages.add(installStage);
+    }
+
+    /**
+     * Start the worker threads of every stage
+     *
+     * @return Returns this pipeline
+     */
+    public CompilePipeline start() {
+        startTime = System.nanoTime();
+        for (Stage<?> stage : stages) {
+            for (int i = 0; i < stage.workers; i++) {
+                Thread thread = new Thread(stage, SUBSTRATUM_BUILDER + '-' + stage.name + '-' + i);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Queue an overlay to be compiled
+     *
+     * @param job Extracts the overlay's assets and returns a builder that has been prepared
+     *            through {@link SubstratumBuilder#prepare}
+     * @throws InterruptedException If interrupted while queueing
+     */
+    public void submit(Callable<SubstratumBuilder> job) throws InterruptedException {
+        extractStage.queue.put(job);
+    }
+
+    /**
+     * Close the pipeline for new jobs, then wait for every queued overlay to leave it
+     *
+     * @throws InterruptedException If interrupted while waiting, all workers are stopped
+     */
+    public void awaitCompletion() throws InterruptedException {
+        for (int i = 0; i < extractStage.workers; i++) {
+            extractStage.queue.put(END_OF_JOBS);
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw e;
+        }
+        Log.d(SUBSTRATUM_BUILDER, "Compile pipeline finished in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms " +
+                getStageTimes());
+    }
+
+    /**
+     * Obtain the time each stage has spent working, summed up over all of its workers
+     *
+     * @return Returns a map of stage name to busy time in milliseconds, in pipeline order
+     */
+    public Map<String, Long> getStageTimes() {
+        Map<String, Long> times = new LinkedHashMap<>();
+        for (Stage<?> stage : stages) {
+            times.put(stage.name, TimeUnit.NANOSECONDS.toMillis(stage.busyTime.get()));
+        }
+        return times;
+    }
+
+    /**
+     * Hand a builder that has left the pipeline back to the caller
+     *
+     * @param builder Finished builder, either installed or errored out
+     */
+    private void finish(SubstratumBuilder builder) {
+        builder.cleanup(context);
+        if (listener != null) listener.onCompiled(builder);
+    }
+
+    /**
+     * Listener notified for every overlay that has left the pipeline
+     */
+    public interface OnCompiledListener {
+        /**
+         * Called from a pipeline thread once an overlay has finished or errored out
+         *
+         * @param builder Builder of the overlay, check has_errored_out for its state
+         */
+        void onCompiled(SubstratumBuilder builder);
+    }
+
+    /**
+     * Work done by a single stage on a single overlay
+     *
+     * @param <T> Type of the items consumed by the stage
+     */
+    private interface StageAction<T> {
+        SubstratumBuilder run(T item) throws Exception;
+    }
+
+    /**
+     * A single stage of the pipeline, with its own workers and input queue
+     *
+     * @param <T> Type of the items consumed by the stage
+     */
+    private final class Stage<T> implements Runnable {
+        final String name;
+        final int workers;
+        final BlockingQueue<T> queue;
+        final AtomicLong busyTime = new AtomicLong();
+        private final T endOfQueue;
+        private final Stage<SubstratumBuilder> next;
+        private final StageAction<T> action;
+        private final AtomicInteger running;
+
+        Stage(String name,
+              int workers,
+              BlockingQueue<T> queue,
+              T endOfQueue,
+              Stage<SubstratumBuilder> next,
+              StageAction<T> action) {
+            super();
+            this.name = name;
+            this.workers = workers;
+            this.queue = queue;
+            this.endOfQueue = endOfQueue;
+            this.next = next;
+            this.action = action;
+            this.running = new AtomicInteger(workers);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    T item = queue.take();
+                    if (item == endOfQueue) break;
+                    long start = System.nanoTime();
+                    SubstratumBuilder builder = null;
+                    try {
+                        builder = action.run(item);
+                    } catch (Throwable t) {
+                        // Errors such as running out of memory must not take the worker with them
+                        t.printStackTrace();
+                        Log.e(SUBSTRATUM_BUILDER, "The " + name + " stage has unexpectedly " +
+                                "stopped!");
+                        // Builders that blow up still have to leave the pipeline
+                        if (item instanceof SubstratumBuilder) {
+                            builder = (SubstratumBuilder) item;
+                            builder.has_errored_out = true;
+                        }
+                    }
+                    busyTime.addAndGet(System.nanoTime() - start);
+                    if (builder == null) continue;
+                    if (builder.has_errored_out || (next == null)) {
+                        try {
+                            finish(builder);
+                        } catch (Throwable t) {
+                            t.printStackTrace();
+                        }
+                    } else {
+                        next.queue.put(builder);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // The last worker out tells every worker of the next stage that we are done, even
+                // if it is leaving early, or the stages after it would wait forever
+                if ((running.decrementAndGet() == 0) && (next != null)) {
+                    endNextStage();
+                }
+            }
+        }
+
+        private void endNextStage() {
+            for (int i = 0; i < next.workers; i++) {
+                try {
+                    next.queue.put(END_OF_BUILDS);
+                } catch (InterruptedException e) {
+                    // The whole pipeline is being torn down, the next stage is interrupted too
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -25,24 +25,32 @@ import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.android.apksig.ApkSigner;
+import com.android.apksig.util.DataSinks;
+import com.android.apksig.util.DataSources;
+import com.android.apksig.util.ReadableDataSink;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import projekt.substratum.Substratum;
 import projekt.substratum.common.Packages;
 import projekt.substratum.common.References;
 import projekt.substratum.common.Resources;
@@ -50,7 +58,9 @@ import projekt.substratum.common.Systems;
 import projekt.substratum.common.commands.CompilerCommands;
 import projekt.substratum.common.commands.FileOperations;
 import projekt.substratum.common.platform.ThemeManager;
+import projekt.substratum.util.files.Root;
 
+import static projekt.substratum.common.Internal.SPECIAL_SNOWFLAKE_DELAY;
 import static projekt.substratum.common.References.BYPASS_SUBSTRATUM_BUILDER_DELETION;
 import static projekt.substratum.common.References.ENABLE_DIRECT_ASSETS_LOGGING;
 import static projekt.substratum.common.References.EXTERNAL_STORAGE_CACHE;
@@ -65,11 +75,50 @@ import static projekt.substratum.common.commands.FileOperations.DA_LOG;
 
 public class SubstratumBuilder {
 
+    // Only one overlay may be pushed to the system at a time, even with parallel compiles
+    private static final Object installLock = new Object();
+    private static final Object keyLock = new Object();
+    // Overlays up to this size are signed in memory instead of through a temporary file
+    private static final long IN_MEMORY_SIGNING_LIMIT = 16L * 1024L * 1024L;
+    // The signer configuration is immutable, so all builders can share it
+    private static volatile List<ApkSigner.SignerConfig> signerConfigs;
     public Boolean has_errored_out = false;
     public Boolean special_snowflake = false;
+    public Boolean wait_for_install = false;
     public String no_install = "";
     private Boolean debug = false;
     private String error_logs = "";
+    private String work_area;
+    // State carried between the build stages
+    private String overlay_package;
+    private String target_package;
+    private String theme_name_parsed;
+    private String overlay_name;
+    private String additional_variant;
+    private String asset_replacement;
+    private String no_cache_dir;
+    private Boolean theme_oms;
+    private Boolean overlay_updater;
+    private String cache_key;
+    private Boolean cache_hit = false;
+
+    /**
+     * Substratum Builder using the shared compilation cache as its work area
+     */
+    public SubstratumBuilder() {
+        super();
+    }
+
+    /**
+     * Substratum Builder using a dedicated work area, so that multiple overlays can be compiled
+     * at the same time without clobbering each other
+     *
+     * @param work_area Directory for the work area
+     */
+    public SubstratumBuilder(String work_area) {
+        super();
+        this.work_area = work_area;
+    }
 
     /**
      * Process the AAPT/AAPT commands to be used with the compilation binary
@@ -106,10 +155,48 @@ public class SubstratumBuilder {
                 no_cache_dir);
     }
 
+    /**
+     * Obtain the signer configuration of the built-in test key/certificate, the keystore is only
+     * parsed the first time around
+     *
+     * @param context Context
+     * @return Returns the signer configuration, shared between all builders
+     * @throws Exception If the keystore could not be loaded
+     */
+    private static List<ApkSigner.SignerConfig> getSignerConfigs(Context context)
+            throws Exception {
+        List<ApkSigner.SignerConfig> configs = signerConfigs;
+        if (configs != null) return configs;
+        synchronized (keyLock) {
+            if (signerConfigs == null) {
+                File key = new File(context.getDataDir() + "/key");
+                char[] keyPass = "overlay".toCharArray();
+                if (!key.exists()) {
+                    Log.d(SUBSTRATUM_BUILDER, "Loading keystore...");
+                    FileOperations.copyFromAsset(context, "key", key.getAbsolutePath());
+                }
+
+                KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+                try (InputStream in = new FileInputStream(key)) {
+                    keyStore.load(in, keyPass);
+                }
+                PrivateKey privateKey = (PrivateKey) keyStore.getKey("key", keyPass);
+                List<X509Certificate> certs = new ArrayList<>();
+                certs.add((X509Certificate) keyStore.getCertificateChain("key")[0]);
+
+                ApkSigner.SignerConfig signerConfig =
+                        new ApkSigner.SignerConfig.Builder("overlay", privateKey, certs).build();
+                signerConfigs = Collections.singletonList(signerConfig);
+            }
+            return signerConfigs;
+        }
+    }
+
     /**
      * Substratum Builder Build Function
      * <p>
-     * Prior to running this function, you must have copied all the files to the working directory!
+     * Runs every stage of the builder in sequence on the calling thread. Prior to running this
+     * function, you must have copied all the files to the working directory!
      *
      * @param context            self explanatory
      * @param overlay_package    the target package to be overlaid (e.g. com.android.settings).
@@ -133,8 +220,9 @@ public class SubstratumBuilder {
      * @param type4              String location of the type4 file
      * @param override_package   String package to tell whether we should change the package name
      * @param overlay_updater    Boolean flag to tell whether special_snowflake should be skipped
+     * @return True, if the overlay has been compiled successfully
      */
-    @SuppressWarnings({"UnusedReturnValue", "ConstantConditions"})
+    @SuppressWarnings("UnusedReturnValue")
     public boolean beginAction(Context context,
                                String overlay_package,
                                String theme_name,
@@ -153,6 +241,66 @@ public class SubstratumBuilder {
                                String type4,
                                String override_package,
                                Boolean overlay_updater) {
+        if (prepare(context, overlay_package, theme_name, variant, additional_variant,
+                base_variant, versionName, theme_oms, theme_parent, no_cache_dir, type1a, type1b,
+                type1c, type2, type3, type4, override_package, overlay_updater) &&
+                compile(context) &&
+                sign(context)) {
+            install(context);
+        }
+        cleanup(context);
+        return !has_errored_out;
+    }
+
+    /**
+     * First stage of the Substratum Builder, which parses the overlay's names, writes the
+     * manifest to the work area and looks the overlay up in the {@link BuildCache}
+     * <p>
+     * Prior to running this function, you must have copied all the files to the working directory!
+     *
+     * @param context            self explanatory
+     * @param overlay_package    the target package to be overlaid (e.g. com.android.settings).
+     * @param theme_name         the theme's name to be stripped of symbols for the new package.
+     * @param variant            a String flag to tell the compiler to build variant mode. This
+     *                           could be the name of the variant spinner, or a package name for
+     *                           OverlayUpdater (used in conjunction with override_package).
+     * @param additional_variant the additional variant (type2) that gets appended during aapt
+     *                           compilation phase to the main /res folder.
+     * @param base_variant       this is linked to variable base_spinner in Overlays.java, for
+     *                           type3 base /res replacements.
+     * @param versionName        the version to use for compiling the overlay's version.
+     * @param theme_oms          runs the check if the system is running in RRO or OMS
+     * @param theme_parent       the parent theme of the created overlay.
+     * @param no_cache_dir       where the compilation files will be placed.
+     * @param type1a             String location of the type1a file
+     * @param type1b             String location of the type1b file
+     * @param type1c             String location of the type1c file
+     * @param type2              String location of the type2 file
+     * @param type3              String location of the type3 file
+     * @param type4              String location of the type4 file
+     * @param override_package   String package to tell whether we should change the package name
+     * @param overlay_updater    Boolean flag to tell whether special_snowflake should be skipped
+     * @return True, if the manifest has been created
+     */
+    @SuppressWarnings("ConstantConditions")
+    public boolean prepare(Context context,
+                           String overlay_package,
+                           String theme_name,
+                           String variant,
+                           String additional_variant,
+                           String base_variant,
+                           String versionName,
+                           Boolean theme_oms,
+                           String theme_parent,
+                           String no_cache_dir,
+                           String type1a,
+                           String type1b,
+                           String type1c,
+                           String type2,
+                           String type3,
+                           String type4,
+                           String override_package,
+                           Boolean overlay_updater) {
 
         // 1. Initialize the setup
         File checkCompileFolder = new File(EXTERNAL_STORAGE_CACHE);
@@ -164,7 +312,9 @@ public class SubstratumBuilder {
                 .getBoolean("theme_debug", false);
 
         // 2. Set work area to asset chosen based on the parameter passed into this class
-        String work_area = context.getCacheDir().getAbsolutePath() + SUBSTRATUM_BUILDER_CACHE;
+        if (work_area == null) {
+            work_area = context.getCacheDir().getAbsolutePath() + SUBSTRATUM_BUILDER_CACHE;
+        }
 
         // 3. Create a modified Android Manifest for use with aapt
 
@@ -315,16 +465,51 @@ public class SubstratumBuilder {
             }
         }
 
-        // 6. Compile the new theme apk based on new manifest, framework-res.apk and extracted asset
+        this.overlay_package = overlay_package;
+        this.target_package = targetPackage;
+        this.theme_name_parsed = parse2_themeName;
+        this.overlay_name = (variant == null) ?
+                (overlay_package + '.' + parse2_themeName) :
+                (overlay_package + '.' + parse2_themeName + parse2_variantName + parse2_baseName);
+        this.additional_variant = additional_variant;
+        this.asset_replacement = type4;
+        this.no_cache_dir = no_cache_dir;
+        this.theme_oms = theme_oms;
+        this.overlay_updater = overlay_updater;
+
+        // Skip aapt and signing if this exact overlay has been built before
+        cache_hit = false;
         if (!has_errored_out) {
-            String targetPkg = Packages.getInstalledDirectory(context, targetPackage);
+            cache_key = BuildCache.getKey(context, work_area, targetPackage, overlay_name,
+                    additional_variant, type4, no_cache_dir);
+            File cached = BuildCache.lookup(overlay_name, cache_key);
+            if ((cached != null) && BuildCache.restore(cached,
+                    EXTERNAL_STORAGE_CACHE + overlay_name + "-signed.apk")) {
+                Log.d(References.SUBSTRATUM_BUILDER,
+                        "Reusing \"" + overlay_name + "\" from the build cache...");
+                cache_hit = true;
+            }
+        }
+        return !has_errored_out;
+    }
+
+    /**
+     * Compile the new theme apk based on new manifest, framework-res.apk and extracted asset
+     *
+     * @param context Context
+     * @return True, if aapt has created the unsigned APK
+     */
+    public boolean compile(Context context) {
+        // 6. Compile the new theme apk based on new manifest, framework-res.apk and extracted asset
+        if (!has_errored_out && !cache_hit) {
+            String targetPkg = Packages.getInstalledDirectory(context, target_package);
             String commands = SubstratumBuilder.processAAPTCommands(
                     work_area,
                     targetPkg,
-                    parse2_themeName,
+                    theme_name_parsed,
                     overlay_package,
                     additional_variant,
-                    type4,
+                    asset_replacement,
                     false,
                     context,
                     no_cache_dir);
@@ -335,99 +520,67 @@ public class SubstratumBuilder {
                     commands,
                     work_area,
                     targetPkg,
-                    parse2_themeName,
+                    theme_name_parsed,
                     overlay_package,
                     additional_variant,
-                    type4,
+                    asset_replacement,
                     false,
                     context,
                     no_cache_dir);
         }
+        return !has_errored_out;
+    }
 
-        // 7. Zipalign the apk
-        if (!has_errored_out) {
-            String source = work_area + '/' + overlay_package + '.' + parse2_themeName +
-                    "-unsigned.apk";
-            String destination = work_area + '/' + overlay_package + '.' + parse2_themeName +
-                    "-unsigned-aligned.apk";
-            String commands = CompilerCommands.createZipAlignShellCommands(context, source,
-                    destination);
-
-            Process nativeApp = null;
-            try {
-                nativeApp = Runtime.getRuntime().exec(commands);
-
-                // We need this Process to be waited for before moving on to the next function.
-                Log.d(References.SUBSTRATUM_BUILDER, "Aligning APK now...");
-                nativeApp.waitFor();
-                File alignedAPK = new File(destination);
-                if (alignedAPK.isFile()) {
-                    Log.d(References.SUBSTRATUM_BUILDER, "Zipalign successful!");
-                } else {
-                    dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
-                            "Zipalign has failed!");
-                    has_errored_out = true;
-                    dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
-                            "Zipalign of \"" + overlay_package + "\" has failed.");
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
-                        "Unfortunately, there was an exception trying to zipalign a new APK");
-                has_errored_out = true;
-                dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
-                        "Installation of \"" + overlay_package + "\" has failed.");
-            } finally {
-                if (nativeApp != null) {
-                    nativeApp.destroy();
-                }
-            }
-        }
-
-        // 8. Sign the apk
-        String overlayName = (variant == null) ?
-                (overlay_package + '.' + parse2_themeName) :
-                (overlay_package + '.' + parse2_themeName + parse2_variantName + parse2_baseName);
-        if (!has_errored_out) {
+    /**
+     * Align and sign the unsigned APK with the built-in test key/certificate
+     *
+     * @param context Context
+     * @return True, if the signed APK has been written to the external cache
+     */
+    public boolean sign(Context context) {
+        // 7. Align and sign the apk
+        String overlayName = overlay_name;
+        if (!has_errored_out && !cache_hit) {
             try {
                 // Delete the previous APK if it exists in the dashboard folder
                 FileOperations.delete(context,
                         EXTERNAL_STORAGE_CACHE + overlayName + "-signed.apk");
 
-                // Sign with the built-in test key/certificate.
-                String source = work_area + '/' + overlay_package + '.' + parse2_themeName +
-                        "-unsigned-aligned.apk";
-
-                File key = new File(context.getDataDir() + "/key");
-                char[] keyPass = "overlay".toCharArray();
-
-                if (!key.exists()) {
-                    Log.d(SUBSTRATUM_BUILDER, "Loading keystore...");
-                    FileOperations.copyFromAsset(context, "key", key.getAbsolutePath());
-                }
-
-                KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-                keyStore.load(new FileInputStream(key), keyPass);
-                PrivateKey privateKey = (PrivateKey) keyStore.getKey("key", keyPass);
-                List<X509Certificate> certs = new ArrayList<>();
-                certs.add((X509Certificate) keyStore.getCertificateChain("key")[0]);
+                // Sign with the built-in test key/certificate. apksig aligns the stored entries
+                // while it writes the output, so the aapt output needs no zipalign pass.
+                String source = work_area + '/' + overlay_package + '.' + theme_name_parsed +
+                        "-unsigned.apk";
 
-                ApkSigner.SignerConfig signerConfig =
-                        new ApkSigner.SignerConfig.Builder("overlay", privateKey, certs).build();
-                List<ApkSigner.SignerConfig> signerConfigs = new ArrayList<>();
-                signerConfigs.add(signerConfig);
-                ApkSigner.Builder apkSigner = new ApkSigner.Builder(signerConfigs);
-                String destination = EXTERNAL_STORAGE_CACHE + overlayName + "-signed.apk";
-                apkSigner
+                ApkSigner.Builder apkSigner = new ApkSigner.Builder(getSignerConfigs(context))
                         .setV1SigningEnabled(false)
                         .setV2SigningEnabled(true)
-                        .setInputApk(new File(source))
-                        .setOutputApk(new File(destination))
-                        .setMinSdkVersion(Build.VERSION.SDK_INT)
-                        .build()
-                        .sign();
+                        .setMinSdkVersion(Build.VERSION.SDK_INT);
+                File unsigned = new File(source);
+                String destination = EXTERNAL_STORAGE_CACHE + overlayName + "-signed.apk";
+                if (unsigned.length() <= IN_MEMORY_SIGNING_LIMIT) {
+                    // Map the input and sign into memory, so that apksig does not have to read
+                    // its own output back from the disk to compute the APK's digests
+                    try (RandomAccessFile in = new RandomAccessFile(unsigned, "r");
+                         OutputStream out = new FileOutputStream(destination)) {
+                        ReadableDataSink signed = DataSinks.newInMemoryDataSink();
+                        apkSigner
+                                .setInputApk(DataSources.asDataSource(in.getChannel().map(
+                                        FileChannel.MapMode.READ_ONLY, 0L, in.length())))
+                                .setOutputApk(signed)
+                                .build()
+                                .sign();
+                        signed.feed(0L, signed.size(), DataSinks.asDataSink(out));
+                    }
+                } else {
+                    apkSigner
+                            .setInputApk(unsigned)
+                            .setOutputApk(new File(destination))
+                            .build()
+                            .sign();
+                }
 
                 Log.d(References.SUBSTRATUM_BUILDER, "APK successfully signed!");
+                BuildCache.store(overlayName, cache_key, new File(destination));
             } catch (Throwable t) {
                 t.printStackTrace();
                 dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
@@ -438,99 +591,172 @@ public class SubstratumBuilder {
             }
         }
 
-        // 9. Install the APK silently
+        return !has_errored_out;
+    }
+
+    /**
+     * Install the signed APK silently
+     *
+     * @param context Context
+     * @return True, if the overlay has been installed or queued for a later installation
+     */
+    public boolean install(Context context) {
+        // 8. Install the APK silently
         // Superuser needed as this requires elevated privileges to run these commands
         if (!has_errored_out) {
-            if (theme_oms) {
-                special_snowflake = false;
-                if ("android".equals(overlay_package) ||
-                        "projekt.substratum".equals(overlay_package)) {
-                    special_snowflake = ThemeManager.isOverlayEnabled(context, overlayName) ||
-                            (Systems.checkOreo() && !overlay_updater);
-                }
+            synchronized (installLock) {
+                installOverlay(context, overlay_name);
+            }
+        }
+        return !has_errored_out;
+    }
 
-                if (!special_snowflake) {
-                    try {
-                        ThemeManager.installOverlay(context, EXTERNAL_STORAGE_CACHE +
-                                overlayName + "-signed.apk");
-                        Log.d(References.SUBSTRATUM_BUILDER, "Silently installing APK...");
-                    } catch (Exception e) {
-                        dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
-                                "Overlay APK has failed to install! \" (Exception) " +
-                                        "[Error: " + e.getMessage() + ']');
-                        has_errored_out = true;
-                        dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
-                                "Installation of \"" + overlay_package + "\" has failed.");
+    /**
+     * Finally, clean this compilation code's cache
+     *
+     * @param context Context
+     */
+    public void cleanup(Context context) {
+        if (!BYPASS_SUBSTRATUM_BUILDER_DELETION && (work_area != null)) {
+            File deleted = new File(work_area);
+            FileOperations.delete(context, deleted.getAbsolutePath());
+            if (!deleted.exists()) Log.d(References.SUBSTRATUM_BUILDER,
+                    "Successfully cleared compilation cache!");
+        }
+    }
+
+    /**
+     * Meat of {@link #install(Context)}
+     *
+     * @param context     Context
+     * @param overlayName Full package name of the compiled overlay
+     */
+    private void installOverlay(Context context, String overlayName) {
+        if (theme_oms) {
+            special_snowflake = false;
+            if ("android".equals(overlay_package) ||
+                    "projekt.substratum".equals(overlay_package)) {
+                special_snowflake = ThemeManager.isOverlayEnabled(context, overlayName) ||
+                        (Systems.checkOreo() && !overlay_updater);
+            }
+
+            if (!special_snowflake) {
+                try {
+                    ThemeManager.installOverlay(context, EXTERNAL_STORAGE_CACHE +
+                            overlayName + "-signed.apk");
+                    Log.d(References.SUBSTRATUM_BUILDER, "Silently installing APK...");
+                    if (wait_for_install) {
+                        // Thread wait, as the next install must not start before this one ends
+                        Substratum.startWaitingInstall();
+                        do {
+                            try {
+                                Thread.sleep((long) SPECIAL_SNOWFLAKE_DELAY);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        } while (Substratum.isWaitingInstall());
                     }
-                } else {
-                    Log.d(References.SUBSTRATUM_BUILDER,
-                            "Returning compiled APK path for later installation...");
-                    no_install =
-                            EXTERNAL_STORAGE_CACHE + overlayName + "-signed.apk";
+                } catch (Exception e) {
+                    dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
+                            "Overlay APK has failed to install! \" (Exception) " +
+                                    "[Error: " + e.getMessage() + ']');
+                    has_errored_out = true;
+                    dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
+                            "Installation of \"" + overlay_package + "\" has failed.");
                 }
             } else {
-                Boolean isSamsung = Systems.isSamsungDevice(context);
-                if (isSamsung) {
-                    // Take account for Samsung's package manager installation mode
-                    Log.d(References.SUBSTRATUM_BUILDER,
-                            "Requesting PackageManager to launch signed overlay APK for " +
-                                    "Samsung environment...");
-                    no_install = EXTERNAL_STORAGE_CACHE + overlayName + "-signed.apk";
+                Log.d(References.SUBSTRATUM_BUILDER,
+                        "Returning compiled APK path for later installation...");
+                no_install =
+                        EXTERNAL_STORAGE_CACHE + overlayName + "-signed.apk";
+            }
+        } else {
+            Boolean isSamsung = Systems.isSamsungDevice(context);
+            if (isSamsung) {
+                // Take account for Samsung's package manager installation mode
+                Log.d(References.SUBSTRATUM_BUILDER,
+                        "Requesting PackageManager to launch signed overlay APK for " +
+                                "Samsung environment...");
+                no_install = EXTERNAL_STORAGE_CACHE + overlayName + "-signed.apk";
+            } else {
+                // At this point, it is detected to be legacy mode and Substratum will push to
+                // vendor/overlays directly.
+
+                // Queue everything up, so that the whole push costs one trip to the root shell
+                Root.Batch batch = Root.batch();
+                String signed_apk = EXTERNAL_STORAGE_CACHE + overlayName + "-signed.apk";
+                FileOperations.mountRW(batch);
+                // For Non-Nexus devices
+                if (!Resources.inNexusFilter()) {
+                    String vendor_location = LEGACY_NEXUS_DIR;
+                    FileOperations.createNewFolder(batch, vendor_location);
+                    FileOperations.move(batch, signed_apk,
+                            vendor_location + overlayName + ".apk");
+                    FileOperations.setPermissionsRecursively(batch, 644, vendor_location);
+                    FileOperations.setPermissions(batch, 755, vendor_location);
+                    FileOperations.setContext(batch, vendor_location);
                 } else {
-                    // At this point, it is detected to be legacy mode and Substratum will push to
-                    // vendor/overlays directly.
-
-                    FileOperations.mountRW();
-                    // For Non-Nexus devices
-                    if (!Resources.inNexusFilter()) {
-                        String vendor_location = LEGACY_NEXUS_DIR;
-                        FileOperations.createNewFolder(vendor_location);
-                        FileOperations.move(context, EXTERNAL_STORAGE_CACHE + overlayName +
-                                "-signed.apk", vendor_location + overlayName + ".apk");
-                        FileOperations.setPermissionsRecursively(644, vendor_location);
-                        FileOperations.setPermissions(755, vendor_location);
-                        FileOperations.setContext(vendor_location);
+                    // For Nexus devices
+                    FileOperations.mountRWVendor(batch);
+                    String vendor_symlink = PIXEL_NEXUS_DIR;
+                    FileOperations.createNewFolder(batch, vendor_symlink);
+                    String vendor_partition = VENDOR_DIR;
+                    FileOperations.createNewFolder(batch, vendor_partition);
+                    // On nexus devices, put framework overlay to /vendor/overlay/
+                    if ("android".equals(overlay_package)) {
+                        String android_overlay = vendor_partition + overlayName + ".apk";
+                        FileOperations.move(batch, signed_apk, android_overlay);
                     } else {
-                        // For Nexus devices
-                        FileOperations.mountRWVendor();
-                        String vendor_symlink = PIXEL_NEXUS_DIR;
-                        FileOperations.createNewFolder(vendor_symlink);
-                        String vendor_partition = VENDOR_DIR;
-                        FileOperations.createNewFolder(vendor_partition);
-                        // On nexus devices, put framework overlay to /vendor/overlay/
-                        if ("android".equals(overlay_package)) {
-                            String android_overlay = vendor_partition + overlayName + ".apk";
-                            FileOperations.move(context, EXTERNAL_STORAGE_CACHE + overlayName +
-                                    "-signed.apk", android_overlay);
-                        } else {
-                            String overlay = vendor_symlink + overlayName + ".apk";
-                            FileOperations.move(context, EXTERNAL_STORAGE_CACHE + overlayName +
-                                    "-signed.apk", overlay);
-                            FileOperations.symlink(overlay, vendor_partition);
-                        }
-                        FileOperations.setPermissionsRecursively(644, vendor_symlink);
-                        FileOperations.setPermissionsRecursively(644, vendor_partition);
-                        FileOperations.setPermissions(755, vendor_symlink);
-                        FileOperations.setPermissions(755, vendor_partition);
-                        FileOperations.setContext(vendor_symlink);
-                        FileOperations.setContext(vendor_partition);
-                        FileOperations.mountROVendor();
+                        String overlay = vendor_symlink + overlayName + ".apk";
+                        FileOperations.move(batch, signed_apk, overlay);
+                        FileOperations.symlink(batch, overlay, vendor_partition);
+                    }
+                    FileOperations.setPermissionsRecursively(batch, 644, vendor_symlink);
+                    FileOperations.setPermissionsRecursively(batch, 644, vendor_partition);
+                    FileOperations.setPermissions(batch, 755, vendor_symlink);
+                    FileOperations.setPermissions(batch, 755, vendor_partition);
+                    FileOperations.setContext(batch, vendor_symlink);
+                    FileOperations.setContext(batch, vendor_partition);
+                    FileOperations.mountROVendor(batch);
+                }
+                FileOperations.mountRO(batch);
+
+                for (Root.Result result : batch.run()) {
+                    if (result.succeeded()) continue;
+                    Log.e(References.SUBSTRATUM_BUILDER, '"' + result.command +
+                            "\" has exited with " + result.exitCode + ": " + result.output);
+                    if (result.command.startsWith("mv ")) {
+                        dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
+                                "Could not push the overlay to the system: " + result.output);
+                        has_errored_out = true;
+                        dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package,
+                                "Installation of \"" + overlay_package + "\" has failed.");
                     }
-                    FileOperations.mountRO();
                 }
             }
         }
+    }
 
-        // Finally, clean this compilation code's cache
-        if (!BYPASS_SUBSTRATUM_BUILDER_DELETION) {
-            String workingDirectory =
-                    context.getCacheDir().getAbsolutePath() + SUBSTRATUM_BUILDER_CACHE;
-            File deleted = new File(workingDirectory);
-            FileOperations.delete(context, deleted.getAbsolutePath());
-            if (!deleted.exists()) Log.d(References.SUBSTRATUM_BUILDER,
-                    "Successfully cleared compilation cache!");
-        }
-        return !has_errored_out;
+    /**
+     * Mark an overlay as failed before it could be prepared, so that it is reported along with
+     * the overlays that failed to compile
+     *
+     * @param overlay_package Target package of the overlay
+     * @param message         What went wrong
+     */
+    public void fail(String overlay_package, String message) {
+        this.overlay_package = overlay_package;
+        has_errored_out = true;
+        dumpErrorLogs(References.SUBSTRATUM_BUILDER, overlay_package, message);
+    }
+
+    /**
+     * Returns the target package this builder is compiling an overlay for
+     *
+     * @return Returns the target package name
+     */
+    public String getOverlayPackage() {
+        return overlay_package;
     }
 
     /**
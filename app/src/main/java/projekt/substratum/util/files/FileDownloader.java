@@ -19,6 +19,7 @@
 package projekt.substratum.util.files;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.NetworkOnMainThreadException;
 import android.util.Log;
 
@@ -29,15 +30,48 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import projekt.substratum.common.References;
 
 import static projekt.substratum.common.Internal.BYTE_ACCESS_RATE;
 
+/**
+ * Downloads files into the cache, revalidating what has been downloaded before with ETag and
+ * If-Modified-Since so that an unchanged file is not transferred again
+ * <p>
+ * A download is written to a temporary file first and only replaces the existing file once it is
+ * complete, a failed or interrupted download leaves the last good copy in place.
+ */
 public enum FileDownloader {
     ;
 
+    private static final String TAG = "FileDownloader";
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 30000;
+    private static final int PARALLEL_DOWNLOADS = 4;
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String METADATA_PREFERENCES = "download_metadata";
+    private static final String URL_SUFFIX = "_url";
+    private static final String ETAG_SUFFIX = "_etag";
+    private static final String MODIFIED_SUFFIX = "_modified";
+    private static final ExecutorService executor =
+            Executors.newFixedThreadPool(PARALLEL_DOWNLOADS);
+    // Two downloads into the same file would share the same temporary file
+    private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
     /**
+     * Download a single file and wait for it, the download itself runs on the shared queue so that
+     * callers on different threads never have more than {@value #PARALLEL_DOWNLOADS} downloads
+     * running at a time
+     *
      * @param context                 getContext() or getApplicationContext()
      * @param fileUrl                 direct link to the XML file, could use PasteBin or a
      *                                server XML file
@@ -51,81 +85,229 @@ public enum FileDownloader {
                             String outputFile,
                             String destinationFileOrFolder) throws
             NetworkOnMainThreadException {
-
         try {
+            enqueue(context, fileUrl, prepare(context, outputFile, destinationFileOrFolder))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-            // First create the cache folder
-            File directory = new File(context.getCacheDir().getAbsolutePath() + '/' +
-                    destinationFileOrFolder);
-            if (!destinationFileOrFolder.endsWith(".png") &&
-                    !destinationFileOrFolder.endsWith(".jpg") &&
-                    !destinationFileOrFolder.endsWith(".xml") &&
-                    !directory.exists()) {
-                Boolean made = directory.mkdir();
-                if (!made)
-                    Log.e(References.SUBSTRATUM_LOG,
-                            "Could not make " + directory.getAbsolutePath() + " directory...");
-            } else if (destinationFileOrFolder.endsWith(".xml") &&
-                    !directory.isDirectory() &&
-                    directory.exists()) {
-                if (!directory.delete()) {
-                    Log.e(References.SUBSTRATUM_LOG, "Could not delete file: " +
-                            directory.getAbsolutePath());
-                }
-            }
-
-            // Once the cache folder is created, start downloading the file
-            HttpURLConnection connection = null;
-            OutputStream output = null;
-            InputStream input = null;
+    /**
+     * Same as {@link #init(Context, String, String, String)} for several files at once, which are
+     * downloaded in parallel
+     *
+     * @param context                 getContext() or getApplicationContext()
+     * @param downloads               filenames mapped to the direct links they are downloaded
+     *                                from
+     * @param destinationFileOrFolder the folder that encompasses this download cache
+     */
+    public static void initAll(Context context,
+                               Map<String, String> downloads,
+                               String destinationFileOrFolder) throws
+            NetworkOnMainThreadException {
+        List<Future<Result>> pending = new ArrayList<>();
+        for (Map.Entry<String, String> download : downloads.entrySet()) {
+            File target = prepare(context, download.getKey(), destinationFileOrFolder);
+            pending.add(enqueue(context, download.getValue(), target));
+        }
+        for (Future<Result> future : pending) {
             try {
-                URL url = new URL(fileUrl);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.connect();
-
-                // Expect HTTP 200 OK, so we don't mistakenly save error report
-                // instead of the file
-                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                    Log.e("Server returned HTTP", connection.getResponseCode()
-                            + " " + connection.getResponseMessage());
-                }
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
-                // Download the file
-                input = connection.getInputStream();
+    /**
+     * Queue a download, at most {@value #PARALLEL_DOWNLOADS} files are downloaded at a time
+     *
+     * @param context Context
+     * @param fileUrl Direct link to the file
+     * @param target  File to be written
+     * @return Returns the pending result of the download
+     */
+    public static Future<Result> enqueue(Context context,
+                                         String fileUrl,
+                                         File target) {
+        Context appContext = context.getApplicationContext();
+        return executor.submit(() -> download(appContext, fileUrl, target));
+    }
 
-                String outputDir = context.getCacheDir().getAbsolutePath() + '/' +
-                        destinationFileOrFolder +
-                        (outputFile != null && !outputFile.isEmpty() ? '/' + outputFile : "");
+    /**
+     * Download a file, or confirm with the server that the copy we have is still current
+     *
+     * @param context Context
+     * @param fileUrl Direct link to the file
+     * @param target  File to be written
+     * @return Returns whether the file was downloaded, was still current, or could not be fetched
+     */
+    public static Result download(Context context,
+                                  String fileUrl,
+                                  File target) throws NetworkOnMainThreadException {
+        String key = target.getAbsolutePath();
+        Object lock = locks.computeIfAbsent(key, k -> new Object());
+        synchronized (lock) {
+            Result result = fetch(
+                    context.getSharedPreferences(METADATA_PREFERENCES, Context.MODE_PRIVATE),
+                    fileUrl,
+                    target);
+            Log.d(TAG, "File download function has concluded for '" + fileUrl + "': " + result);
+            return result;
+        }
+    }
 
-                Log.d(References.SUBSTRATUM_LOG, "Placing file in: " + outputDir);
+    /**
+     * Download a file unless the server confirms the cached copy is still current
+     * <p>
+     * The connection is not disconnected afterwards, every response is read to the end and closed
+     * instead, which lets HttpURLConnection reuse the connection for the next file from the same
+     * server.
+     *
+     * @param prefs   Where the URL, ETag and modification time of each download are kept
+     * @param fileUrl Direct link to the file
+     * @param target  File to be written
+     * @return Returns whether the file was downloaded, was still current, or could not be fetched
+     */
+    static Result fetch(SharedPreferences prefs,
+                        String fileUrl,
+                        File target) {
+        String key = target.getAbsolutePath();
+        // Only revalidate a file that is still there and was downloaded from the same link
+        boolean cached = target.exists() && fileUrl.equals(prefs.getString(key + URL_SUFFIX, null));
+        File partial = new File(target.getParentFile(), target.getName() + PARTIAL_SUFFIX);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(fileUrl).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            if (cached) {
+                String etag = prefs.getString(key + ETAG_SUFFIX, null);
+                if (etag != null) connection.setRequestProperty("If-None-Match", etag);
+                long modified = prefs.getLong(key + MODIFIED_SUFFIX, 0L);
+                if (modified > 0L) connection.setIfModifiedSince(modified);
+            }
+            connection.connect();
 
-                output = new FileOutputStream(outputDir);
+            int code = connection.getResponseCode();
+            if (cached && (code == HttpURLConnection.HTTP_NOT_MODIFIED)) {
+                discard(connection);
+                return Result.NOT_MODIFIED;
+            }
+            // Expect HTTP 200 OK, so we don't mistakenly save error report instead of the file
+            if (code != HttpURLConnection.HTTP_OK) {
+                Log.e(TAG, "Server returned HTTP " + code + ' ' +
+                        connection.getResponseMessage() + " for '" + fileUrl + "'.");
+                discard(connection);
+                return Result.FAILED;
+            }
 
-                // Begin writing the data into the file
+            Log.d(References.SUBSTRATUM_LOG, "Placing file in: " + key);
+            try (InputStream input = connection.getInputStream();
+                 OutputStream output = new FileOutputStream(partial)) {
                 byte[] data = new byte[BYTE_ACCESS_RATE];
+                long total = 0L;
                 int count;
                 while ((count = input.read(data)) != -1) {
                     output.write(data, 0, count);
+                    total += count;
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                try {
-                    if (output != null)
-                        output.close();
-                    if (input != null)
-                        input.close();
-                } catch (IOException ioe) {
-                    // Suppress warning
+                // Some connections report a body cut short as its regular end
+                long expected = connection.getContentLengthLong();
+                if ((expected >= 0L) && (total != expected)) {
+                    throw new IOException("Received " + total + " of " + expected + " bytes");
                 }
+            }
+            if (!partial.renameTo(target)) {
+                throw new IOException("Could not replace " + key);
+            }
 
-                if (connection != null)
-                    connection.disconnect();
-                Log.d("FileDownloader",
-                        "File download function has concluded for '" + fileUrl + "'.");
+            String etag = connection.getHeaderField("ETag");
+            long modified = connection.getLastModified();
+            SharedPreferences.Editor editor = prefs.edit().putString(key + URL_SUFFIX, fileUrl);
+            if (etag != null) {
+                editor.putString(key + ETAG_SUFFIX, etag);
+            } else {
+                editor.remove(key + ETAG_SUFFIX);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (modified > 0L) {
+                editor.putLong(key + MODIFIED_SUFFIX, modified);
+            } else {
+                editor.remove(key + MODIFIED_SUFFIX);
+            }
+            editor.apply();
+            return Result.DOWNLOADED;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not download '" + fileUrl + "': " + e.getMessage());
+            if (partial.exists() && !partial.delete()) {
+                Log.e(TAG, "Could not delete file: " + partial.getAbsolutePath());
+            }
+        }
+        return Result.FAILED;
+    }
+
+    /**
+     * Read the rest of a response that is not saved and close it
+     *
+     * @param connection Connection of the response
+     */
+    private static void discard(HttpURLConnection connection) {
+        try {
+            // Error responses have their body on the error stream, null if there is none
+            InputStream error = connection.getErrorStream();
+            try (InputStream body = (error != null) ? error : connection.getInputStream()) {
+                byte[] data = new byte[BYTE_ACCESS_RATE];
+                int count;
+                do {
+                    count = body.read(data);
+                } while (count != -1);
+            }
+        } catch (IOException e) {
+            // The connection is just not reused
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Create the cache folder of a download and work out the file it is saved as
+     *
+     * @param context                 Context
+     * @param outputFile              the filename of the file, or empty if the destination is
+     *                                the file itself
+     * @param destinationFileOrFolder the folder that encompasses this download cache
+     * @return Returns the file to be written
+     */
+    private static File prepare(Context context,
+                                String outputFile,
+                                String destinationFileOrFolder) {
+        File directory = new File(context.getCacheDir().getAbsolutePath() + '/' +
+                destinationFileOrFolder);
+        if (!destinationFileOrFolder.endsWith(".png") &&
+                !destinationFileOrFolder.endsWith(".jpg") &&
+                !destinationFileOrFolder.endsWith(".xml") &&
+                !directory.exists()) {
+            Boolean made = directory.mkdir();
+            if (!made)
+                Log.e(References.SUBSTRATUM_LOG,
+                        "Could not make " + directory.getAbsolutePath() + " directory...");
+        }
+        // An existing file is no longer deleted up front, it is kept for revalidation and only
+        // replaced once a newer copy has been downloaded completely
+        return new File(context.getCacheDir().getAbsolutePath() + '/' +
+                destinationFileOrFolder +
+                (((outputFile != null) && !outputFile.isEmpty()) ? '/' + outputFile : ""));
+    }
+
+    /**
+     * Outcome of a download
+     */
+    public enum Result {
+        DOWNLOADED,
+        NOT_MODIFIED,
+        FAILED
+    }
+}
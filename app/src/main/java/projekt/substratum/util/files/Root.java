@@ -23,13 +23,30 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import projekt.substratum.common.References;
 
 public enum Root {
     ;
 
-    private static SU su;
+    private static final String RESULT_MARKER = "/shellResult/";
+    // Sessions are only spawned once they are needed, so a quiet app keeps a single su around
+    private static final int POOL_SIZE = 3;
+    private static final Slot[] pool = new Slot[POOL_SIZE];
+    private static final AtomicInteger nextSlot = new AtomicInteger();
+
+    static {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool[i] = new Slot();
+        }
+    }
 
     /**
      * Checks whether there is root access on the device
@@ -47,29 +64,270 @@ public enum Root {
      * @return True, if su is granted
      */
     public static boolean requestRootAccess() {
-        SU su = getSU();
-        su.runCommand("echo /testRoot/");
-        return !su.denied;
+        Slot slot = acquire();
+        try {
+            SU su = slot.getSU();
+            su.runCommand("echo /testRoot/");
+            return !su.denied;
+        } finally {
+            slot.lock.unlock();
+        }
     }
 
     /**
-     * Run a series of commands as su
+     * Run a series of commands as su, on whichever session of the pool is free
      *
      * @return String output
      */
     public static String runCommand(String command) {
-        return getSU().runCommand(command);
+        Slot slot = acquire();
+        try {
+            return slot.getSU().runCommand(command);
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    /**
+     * Start a batch of commands that will be sent to su as a single script
+     *
+     * @return Empty batch
+     */
+    public static Batch batch() {
+        return new Batch();
     }
 
     /**
-     * Obtain a process of SU
+     * Hold on to a single su session, for sequences of commands that must share shell state
+     * such as the working directory or exported variables
+     * <p>
+     * Other callers will not get to use the session until it has been closed, while every root
+     * call of the calling thread runs on it, including {@link #runCommand} and {@link Batch#run}.
      *
-     * @return Instance of SU
+     * @return Session that is exclusive to the caller
+     */
+    public static Session openSession() {
+        return new Session(acquire());
+    }
+
+    /**
+     * Lock a session of the pool, preferring the one the calling thread already holds, then one
+     * that is idle
+     * <p>
+     * Sticking to the held session keeps the shell state of a {@link Session} for every root call
+     * made while it is open, and keeps the thread from waiting on a second session.
+     *
+     * @return Locked slot, must be unlocked by the caller
+     */
+    static Slot acquire() {
+        for (Slot slot : pool) {
+            if (slot.lock.isHeldByCurrentThread()) {
+                slot.lock.lock();
+                return slot;
+            }
+        }
+        for (Slot slot : pool) {
+            if (slot.lock.tryLock()) return slot;
+        }
+        // Everything is busy, queue up behind one of them
+        Slot slot = pool[(nextSlot.getAndIncrement() & Integer.MAX_VALUE) % POOL_SIZE];
+        slot.lock.lock();
+        return slot;
+    }
+
+    /**
+     * A place in the pool, its su process is respawned once it has died
+     */
+    static final class Slot {
+        final ReentrantLock lock = new ReentrantLock();
+        private SU su;
+
+        Slot() {
+            super();
+        }
+
+        /**
+         * Obtain a process of SU, only to be called while holding the lock
+         *
+         * @return Instance of SU
+         */
+        SU getSU() {
+            if ((su == null) || su.closed || su.denied || !su.isAlive())
+                su = new SU();
+            return su;
+        }
+    }
+
+    /**
+     * A su session that is held exclusively until it is closed, by the same thread that has
+     * opened it
+     */
+    public static final class Session implements AutoCloseable {
+        private final Slot slot;
+        private boolean closed;
+
+        Session(Slot slot) {
+            super();
+            this.slot = slot;
+        }
+
+        /**
+         * Run a command on this session
+         *
+         * @param command Command to be run
+         * @return String output
+         */
+        public String runCommand(String command) {
+            if (closed) throw new IllegalStateException("The session has already been closed");
+            return slot.getSU().runCommand(command);
+        }
+
+        /**
+         * Hand the session back to the pool
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                slot.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A queue of commands that only costs a single round trip to the su session
      */
-    private static SU getSU() {
-        if ((su == null) || su.closed || su.denied)
-            su = new SU();
-        return su;
+    public static final class Batch {
+        private final List<Supplier<String>> commands = new ArrayList<>();
+        private final List<Consumer<Result>> listeners = new ArrayList<>();
+
+        Batch() {
+            super();
+        }
+
+        /**
+         * Queue a command, it will not run until {@link #run()} is called
+         *
+         * @param command Command to be queued
+         * @return Returns this batch
+         */
+        public Batch add(String command) {
+            return add(() -> command, null);
+        }
+
+        /**
+         * Queue a command that is only worked out once the batch runs, for commands that depend
+         * on state which must not change unless the batch actually runs
+         *
+         * @param command  Returns the command to be run, or null to skip it
+         * @param onResult Called with the result of the command after the batch has run, may be
+         *                 null
+         * @return Returns this batch
+         */
+        public Batch add(Supplier<String> command, Consumer<Result> onResult) {
+            commands.add(command);
+            listeners.add(onResult);
+            return this;
+        }
+
+        /**
+         * Run all queued commands in order, a failing command does not stop the ones after it
+         *
+         * @return Returns the result of every command that has been run, in the order they were
+         * added
+         */
+        public List<Result> run() {
+            List<String> script = new ArrayList<>(commands.size());
+            List<Consumer<Result>> scriptListeners = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                String command = commands.get(i).get();
+                if (command == null) continue;
+                script.add(command);
+                scriptListeners.add(listeners.get(i));
+            }
+            if (script.isEmpty()) return Collections.emptyList();
+            List<Result> results = parse(script, runCommand(script(script)));
+            for (int i = 0; i < results.size(); i++) {
+                if (scriptListeners.get(i) != null) scriptListeners.get(i).accept(results.get(i));
+            }
+            return results;
+        }
+
+        /**
+         * Join the commands into a single script, each followed by a marker with its exit code
+         * <p>
+         * Every command has its stderr folded into stdout, so that its error message ends up in
+         * its result and a long lived session never fills up an unread pipe.
+         *
+         * @param commands Commands to be run
+         * @return Returns the script
+         */
+        static String script(List<String> commands) {
+            StringBuilder script = new StringBuilder();
+            for (int i = 0; i < commands.size(); i++) {
+                // A group keeps the redirection on all of a command, chains included
+                script.append("{ ").append(commands.get(i)).append("\n} 2>&1\n");
+                script.append("echo ").append(RESULT_MARKER).append(i).append("/$?/\n");
+            }
+            return script.toString().trim();
+        }
+
+        /**
+         * Split the output of a script built by {@link #script(List)} into per command results
+         *
+         * @param commands Commands that have been run
+         * @param output   Output of the whole script
+         * @return Returns the result of every command, in the order they were added
+         */
+        static List<Result> parse(List<String> commands, String output) {
+            List<Result> results = new ArrayList<>(commands.size());
+            int position = 0;
+            for (int i = 0; i < commands.size(); i++) {
+                String marker = RESULT_MARKER + i + '/';
+                int start = (output != null) ? output.indexOf(marker, position) : -1;
+                int end = (start > -1) ? output.indexOf('/', start + marker.length()) : -1;
+                if (end < 0) {
+                    // The session died halfway through, nothing after this has run
+                    results.add(new Result(commands.get(i), -1, ""));
+                    continue;
+                }
+                int exitCode;
+                try {
+                    exitCode = Integer.parseInt(output.substring(start + marker.length(), end));
+                } catch (NumberFormatException e) {
+                    exitCode = -1;
+                }
+                results.add(new Result(commands.get(i), exitCode,
+                        output.substring(position, start).trim()));
+                position = end + 1;
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Outcome of a single command that has been run as part of a {@link Batch}
+     */
+    public static final class Result {
+        public final String command;
+        public final int exitCode;
+        public final String output;
+
+        Result(String command, int exitCode, String output) {
+            super();
+            this.command = command;
+            this.exitCode = exitCode;
+            this.output = output;
+        }
+
+        /**
+         * Check whether the command has exited cleanly
+         *
+         * @return True, if the exit code is 0
+         */
+        public boolean succeeded() {
+            return exitCode == 0;
+        }
     }
 
     /**
@@ -98,6 +356,21 @@ public enum Root {
             }
         }
 
+        /**
+         * Check whether the su process is still around, without blocking on it
+         *
+         * @return True, if the process has not exited yet
+         */
+        boolean isAlive() {
+            if (process == null) return false;
+            try {
+                process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+
         synchronized String runCommand(String command) {
             try {
                 StringBuilder sb = new StringBuilder();
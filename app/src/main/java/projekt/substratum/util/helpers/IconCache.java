@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.util.helpers;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import projekt.substratum.common.Packages;
+
+/**
+ * Shared cache of app icons, loaded off the UI thread so that binding a list row never has to
+ * wait for the PackageManager
+ */
+public enum IconCache {
+    ;
+
+    private static final int MAX_ICONS = 128;
+    // The constant state is what the icons of a package share, every view gets its own drawable
+    private static final LruCache<String, Drawable.ConstantState> icons =
+            new LruCache<>(MAX_ICONS);
+    // Loads that have not finished yet, only touched on the UI thread
+    private static final Map<String, IconLoader> pending = new HashMap<>();
+
+    /**
+     * Show the icon of a package, loading it in the background if it has not been cached yet
+     * <p>
+     * Rows that ask for an icon which is already being loaded wait for that load, so a package
+     * is only ever looked up once. Must be called on the UI thread.
+     *
+     * @param context      Context
+     * @param package_name Package name, null shows the default overlay icon
+     * @param view         View to show the icon in
+     */
+    public static void load(Context context,
+                            String package_name,
+                            ImageView view) {
+        String key = String.valueOf(package_name);
+        // Recycled views may still be waiting for the icon of their previous row
+        view.setTag(key);
+        Drawable.ConstantState cached = icons.get(key);
+        if (cached != null) {
+            view.setImageDrawable(cached.newDrawable(context.getResources()));
+            return;
+        }
+        view.setImageDrawable(null);
+        IconLoader loader = pending.get(key);
+        if (loader == null) {
+            loader = new IconLoader(context, package_name, key);
+            pending.put(key, loader);
+            loader.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+        loader.views.add(new WeakReference<>(view));
+    }
+
+    /**
+     * Loads a single icon from the PackageManager, for every view that is waiting for it
+     */
+    private static class IconLoader extends AsyncTask<Void, Void, Drawable> {
+        private final Context context;
+        private final String package_name;
+        private final String key;
+        private final List<WeakReference<ImageView>> views = new ArrayList<>();
+
+        IconLoader(Context context,
+                   String package_name,
+                   String key) {
+            super();
+            this.context = context.getApplicationContext();
+            this.package_name = package_name;
+            this.key = key;
+        }
+
+        @Override
+        protected Drawable doInBackground(Void... voids) {
+            Drawable icon = Packages.getAppIcon(context, package_name);
+            if ((icon != null) && (icon.getConstantState() != null)) {
+                icons.put(key, icon.getConstantState());
+            }
+            return icon;
+        }
+
+        @Override
+        protected void onPostExecute(Drawable icon) {
+            pending.remove(key);
+            Drawable.ConstantState state = (icon != null) ? icon.getConstantState() : null;
+            boolean shown = false;
+            for (WeakReference<ImageView> ref : views) {
+                ImageView view = ref.get();
+                // Views that have been recycled for another row since are left alone
+                if ((view == null) || !key.equals(view.getTag())) continue;
+                // A drawable belongs to a single view, the others get their own copy
+                view.setImageDrawable((shown && (state != null)) ?
+                        state.newDrawable(context.getResources()) : icon);
+                shown = true;
+            }
+        }
+    }
+}
@@ -34,14 +34,13 @@ public enum BinaryInstaller {
     ;
 
     /**
-     * Install the AAPT/AAPT and ZipAlign binaries to the working files of Substratum
+     * Install the AAPT/AAPT binaries to the working files of Substratum
      *
      * @param context Self explanatory, bud.
      * @param forced  Ignore the dynamic check and just install no matter what
      */
     public static void install(Context context, Boolean forced) {
         injectAAPT(context, forced);
-        injectZipAlign(context, forced);
     }
 
     /**
@@ -105,45 +104,4 @@ public enum BinaryInstaller {
                 Log.e("BinaryInstaller", "Could not set executable...");
         }
     }
-
-    /**
-     * Inject ZipAlign binaries into the device
-     *
-     * @param context Self explanatory, bud.
-     * @param forced  Ignore the dynamic check and just install no matter what
-     */
-    private static void injectZipAlign(Context context, Boolean forced) {
-        String zipalignPath = context.getFilesDir().getAbsolutePath() + "/zipalign";
-        File f = new File(zipalignPath);
-
-        // Check if ZipAlign is already installed
-        if (f.exists() && !forced)
-            return;
-
-        if (!Arrays.toString(Build.SUPPORTED_ABIS).contains("86")) {
-            String architecture =
-                    !Arrays.asList(Build.SUPPORTED_64_BIT_ABIS).isEmpty() ? "ARM64" : "ARM";
-            FileOperations.copyFromAsset(context, "zipalign" + ("ARM64".equals(architecture) ?
-                    "64" :
-                    ""), zipalignPath);
-            Log.d(References.SUBSTRATUM_LOG,
-                    "ZipAlign (" + architecture + ") " +
-                            "has been added into the compiler directory.");
-        } else {
-            // Take account for x86 devices
-            try {
-                FileOperations.copyFromAsset(context, "zipalign86", zipalignPath);
-                Log.d(References.SUBSTRATUM_LOG,
-                        "ZipAlign (x86) " +
-                                "has been added into the compiler directory.");
-            } catch (Exception e) {
-                // Suppress warning
-            }
-        }
-
-        if (f.isFile()) {
-            if (!f.setExecutable(true, true))
-                Log.e("BinaryInstaller", "Could not set executable...");
-        }
-    }
 }
\ No newline at end of file
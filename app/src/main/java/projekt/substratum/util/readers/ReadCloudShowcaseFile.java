@@ -18,18 +18,9 @@
 
 package projekt.substratum.util.readers;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import java.io.File;
 import java.util.Map;
 import java.util.TreeMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 public enum ReadCloudShowcaseFile {
     ;
 
@@ -40,83 +31,48 @@ public enum ReadCloudShowcaseFile {
      * @return Return a map for the showcase entries
      */
     public static Map read(String location) {
+        Map<String, String> map = new TreeMap<>();
         try {
-            File fXmlFile = new File(location);
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(fXmlFile);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName("theme");
-
-            Map<String, String> map = new TreeMap<>();
-            for (int temp = 0; temp < nList.getLength(); temp++) {
-                Node nNode = nList.item(temp);
-                if ((int) nNode.getNodeType() == (int) Node.ELEMENT_NODE) {
-                    Element eElement = (Element) nNode;
-
-                    String addon_download_name = eElement.getAttribute("id");
-                    String addon_download_link =
-                            eElement.getElementsByTagName("link").item(0).getTextContent();
-                    String addon_author = eElement.getElementsByTagName("author").item(0).
-                            getTextContent();
-                    String addon_image = "";
-                    try {
-                        // Try to see if the entry has an image override tag <image>
-                        addon_image = eElement.getElementsByTagName("image")
-                                .item(0).getTextContent();
-                    } catch (Exception e) {
-                        // There is no image override tag
-                    }
-
-                    String addon_backgroundimage = "";
-                    try {
-                        // Try to see if the entry has an image override tag <backgroundimage>
-                        addon_backgroundimage = eElement.getElementsByTagName("backgroundimage")
-                                .item(0).getTextContent();
-                    } catch (Exception e) {
-                        // There is no image override tag
-                    }
-
-                    String addon_package_name = "";
-                    try {
-                        // Try to see if the entry has an image override tag <backgroundimage>
-                        addon_package_name = eElement.getElementsByTagName("package")
-                                .item(0).getTextContent();
-                    } catch (Exception e) {
-                        // There is no image override tag
-                    }
-
-                    String addon_pricing = eElement.getElementsByTagName("pricing").item(0).
-                            getTextContent();
-                    String addon_support = eElement.getElementsByTagName("support").item(0).
-                            getTextContent();
+            XmlElementReader.read(location, "theme", eElement -> {
+                String addon_download_name = eElement.getAttribute("id");
+                String addon_download_link = eElement.getChild("link");
+                String addon_author = eElement.getChild("author");
+                String addon_pricing = eElement.getChild("pricing");
+                String addon_support = eElement.getChild("support");
+                if ((addon_download_link == null) || (addon_author == null) ||
+                        (addon_pricing == null) || (addon_support == null)) {
+                    // Incomplete entries cannot be shown
+                    return;
+                }
+                // Optional image override tags <image> and <backgroundimage>
+                String addon_image = eElement.getChild("image", "");
+                String addon_backgroundimage = eElement.getChild("backgroundimage", "");
+                String addon_package_name = eElement.getChild("package", "");
 
-                    if (addon_image.isEmpty() && addon_backgroundimage.isEmpty()) {
-                        String[] finalArray = {addon_download_name, addon_download_link,
-                                addon_author, addon_pricing, addon_package_name, addon_support};
-                        map.put(finalArray[0], finalArray[1]);
-                        map.put(finalArray[0] + "-author", finalArray[2]);
-                        map.put(finalArray[0] + "-pricing", finalArray[3]);
-                        map.put(finalArray[0] + "-package-name", finalArray[4]);
-                        map.put(finalArray[0] + "-support", finalArray[5]);
-                    } else {
-                        String[] finalArray = {addon_download_name, addon_download_link,
-                                addon_author, addon_pricing, addon_image, addon_backgroundimage,
-                                addon_package_name, addon_support};
-                        map.put(finalArray[0], finalArray[1]);
-                        map.put(finalArray[0] + "-author", finalArray[2]);
-                        map.put(finalArray[0] + "-pricing", finalArray[3]);
-                        map.put(finalArray[0] + "-image-override", finalArray[4]);
-                        map.put(finalArray[0] + "-feature-image", finalArray[5]);
-                        map.put(finalArray[0] + "-package-name", finalArray[6]);
-                        map.put(finalArray[0] + "-support", finalArray[7]);
-                    }
+                if (addon_image.isEmpty() && addon_backgroundimage.isEmpty()) {
+                    String[] finalArray = {addon_download_name, addon_download_link,
+                            addon_author, addon_pricing, addon_package_name, addon_support};
+                    map.put(finalArray[0], finalArray[1]);
+                    map.put(finalArray[0] + "-author", finalArray[2]);
+                    map.put(finalArray[0] + "-pricing", finalArray[3]);
+                    map.put(finalArray[0] + "-package-name", finalArray[4]);
+                    map.put(finalArray[0] + "-support", finalArray[5]);
+                } else {
+                    String[] finalArray = {addon_download_name, addon_download_link,
+                            addon_author, addon_pricing, addon_image, addon_backgroundimage,
+                            addon_package_name, addon_support};
+                    map.put(finalArray[0], finalArray[1]);
+                    map.put(finalArray[0] + "-author", finalArray[2]);
+                    map.put(finalArray[0] + "-pricing", finalArray[3]);
+                    map.put(finalArray[0] + "-image-override", finalArray[4]);
+                    map.put(finalArray[0] + "-feature-image", finalArray[5]);
+                    map.put(finalArray[0] + "-package-name", finalArray[6]);
+                    map.put(finalArray[0] + "-support", finalArray[7]);
                 }
-            }
+            });
             return map;
         } catch (Exception e) {
             return new TreeMap<String, String>();
         }
     }
-}
\ No newline at end of file
+}
@@ -18,18 +18,9 @@
 
 package projekt.substratum.util.readers;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import java.io.File;
 import java.util.Map;
 import java.util.TreeMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 public enum ReadCloudWallpaperFile {
     ;
 
@@ -40,43 +31,29 @@ public enum ReadCloudWallpaperFile {
      * @return Return a map for the wallpaper entries
      */
     public static Map read(String location) {
+        Map<String, String> map = new TreeMap<>();
         try {
-            File fXmlFile = new File(location);
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(fXmlFile);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName("wallpaper");
-
-            Map<String, String> map = new TreeMap<>();
-            for (int temp = 0; temp < nList.getLength(); temp++) {
-                Node nNode = nList.item(temp);
-                if ((int) nNode.getNodeType() == (int) Node.ELEMENT_NODE) {
-                    Element eElement = (Element) nNode;
-
-                    // Replace all spaces with a tilde first, as tilde "~" is lower priority than
-                    // "-", we have to put this first.
-                    String addon_download_name = eElement.getAttribute("id")
-                            .replaceAll("\\s+", "~");
-                    String addon_download_link =
-                            eElement.getElementsByTagName("link").item(0).getTextContent();
-                    String addon_preview_link =
-                            eElement.getElementsByTagName("preview").item(0).getTextContent();
-
-                    String[] finalArray = {
-                            addon_download_name,
-                            addon_download_link,
-                            addon_preview_link
-                    };
-
-                    map.put(finalArray[0], finalArray[1]);
-                    map.put(finalArray[0] + "-preview", finalArray[2]);
-                }
-            }
+            XmlElementReader.read(location, "wallpaper", eElement -> {
+                // Replace all spaces with a tilde first, as tilde "~" is lower priority than
+                // "-", we have to put this first.
+                String addon_download_name = eElement.getAttribute("id")
+                        .replaceAll("\\s+", "~");
+                String addon_download_link = eElement.getChild("link");
+                String addon_preview_link = eElement.getChild("preview");
+                if ((addon_download_link == null) || (addon_preview_link == null)) return;
+
+                String[] finalArray = {
+                        addon_download_name,
+                        addon_download_link,
+                        addon_preview_link
+                };
+
+                map.put(finalArray[0], finalArray[1]);
+                map.put(finalArray[0] + "-preview", finalArray[2]);
+            });
             return map;
         } catch (Exception e) {
             return new TreeMap<String, String>();
         }
     }
-}
\ No newline at end of file
+}
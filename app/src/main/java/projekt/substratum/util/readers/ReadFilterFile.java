@@ -18,18 +18,9 @@
 
 package projekt.substratum.util.readers;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import projekt.substratum.adapters.fragments.settings.ValidatorFilter;
 
 public enum ReadFilterFile {
@@ -42,44 +33,25 @@ public enum ReadFilterFile {
      * @return Return a map for the validator filter entries
      */
     public static List<ValidatorFilter> read(String location) {
+        List<ValidatorFilter> list = new ArrayList<>();
         try {
-            File fXmlFile = new File(location);
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(fXmlFile);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName("repo");
-
-            List<ValidatorFilter> list = new ArrayList<>();
-            for (int temp = 0; temp < nList.getLength(); temp++) {
-                Node nNode = nList.item(temp);
-                if ((int) nNode.getNodeType() == (int) Node.ELEMENT_NODE) {
-                    Element eElement = (Element) nNode;
-                    ValidatorFilter current = new ValidatorFilter(
-                            eElement.getAttribute("name"));
-                    List<String> filtered = new ArrayList<>();
-                    boolean unknown = false;
-                    int counter = 1;
-                    while (!unknown) {
-                        try {
-                            String filterObject =
-                                    eElement.getElementsByTagName(
-                                            "filter" + counter).item(0).getTextContent();
-                            filtered.add(filterObject);
-                            counter++;
-                        } catch (Exception e) {
-                            unknown = true;
-                        }
-                    }
-                    current.setFilter(filtered);
-                    list.add(current);
+            XmlElementReader.read(location, "repo", eElement -> {
+                ValidatorFilter current = new ValidatorFilter(eElement.getAttribute("name"));
+                // Filters are numbered from filter1 onwards, the first gap ends the list
+                List<String> filtered = new ArrayList<>();
+                String filterObject;
+                int counter = 1;
+                while ((filterObject = eElement.getChild("filter" + counter)) != null) {
+                    filtered.add(filterObject);
+                    counter++;
                 }
-            }
+                current.setFilter(filtered);
+                list.add(current);
+            });
             return list;
         } catch (Exception e) {
             e.printStackTrace();
             return new ArrayList<>();
         }
     }
-}
\ No newline at end of file
+}
@@ -20,18 +20,9 @@ package projekt.substratum.util.readers;
 
 import android.util.Log;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import projekt.substratum.adapters.fragments.settings.Repository;
 import projekt.substratum.common.References;
 
@@ -45,58 +36,26 @@ public enum ReadRepositoriesFile {
      * @return Return a map for the repository entries
      */
     public static List<Repository> read(String location) {
+        List<Repository> list = new ArrayList<>();
         try {
-            File fXmlFile = new File(location);
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(fXmlFile);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName("repo");
-
-            List<Repository> list = new ArrayList<>();
-            for (int temp = 0; temp < nList.getLength(); temp++) {
-                Node nNode = nList.item(temp);
-                if ((int) nNode.getNodeType() == (int) Node.ELEMENT_NODE) {
-                    Element eElement = (Element) nNode;
-                    Repository current = new Repository(eElement.getAttribute("name"));
-                    Log.d(References.SUBSTRATUM_VALIDATOR,
-                            "Pulling live resources from '" + current.getPackageName() + "'!");
-                    try {
-                        String bools =
-                                eElement.getElementsByTagName("bools").item(0).getTextContent();
-                        current.setBools(bools);
-                    } catch (Exception e) {
-                        // Suppress warning
-                    }
-                    try {
-                        String colors =
-                                eElement.getElementsByTagName("colors").item(0).getTextContent();
-                        current.setColors(colors);
-                    } catch (Exception e) {
-                        // Suppress warning
-                    }
-                    try {
-                        String dimens =
-                                eElement.getElementsByTagName("dimens").item(0).getTextContent();
-                        current.setDimens(dimens);
-                    } catch (Exception e) {
-                        // Suppress warning
-                    }
-                    try {
-                        String styles =
-                                eElement.getElementsByTagName("styles").item(0).getTextContent();
-                        current.setStyles(styles);
-                    } catch (Exception e) {
-                        // Suppress warning
-                    }
-                    list.add(current);
-                }
-            }
+            XmlElementReader.read(location, "repo", eElement -> {
+                Repository current = new Repository(eElement.getAttribute("name"));
+                Log.d(References.SUBSTRATUM_VALIDATOR,
+                        "Pulling live resources from '" + current.getPackageName() + "'!");
+                String bools = eElement.getChild("bools");
+                if (bools != null) current.setBools(bools);
+                String colors = eElement.getChild("colors");
+                if (colors != null) current.setColors(colors);
+                String dimens = eElement.getChild("dimens");
+                if (dimens != null) current.setDimens(dimens);
+                String styles = eElement.getChild("styles");
+                if (styles != null) current.setStyles(styles);
+                list.add(current);
+            });
             return list;
         } catch (Exception e) {
             e.printStackTrace();
             return new ArrayList<>();
         }
     }
-}
\ No newline at end of file
+}
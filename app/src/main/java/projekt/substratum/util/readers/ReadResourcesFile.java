@@ -18,18 +18,9 @@
 
 package projekt.substratum.util.readers;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 public enum ReadResourcesFile {
     ;
 
@@ -41,27 +32,14 @@ public enum ReadResourcesFile {
      * @return Return a map for the wallpaper entries
      */
     public static List<String> read(String location, String tag) {
+        List<String> list = new ArrayList<>();
         try {
-            File fXmlFile = new File(location);
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(fXmlFile);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName(tag);
-
-            List<String> list = new ArrayList<>();
-            for (int temp = 0; temp < nList.getLength(); temp++) {
-                Node nNode = nList.item(temp);
-                if ((int) nNode.getNodeType() == (int) Node.ELEMENT_NODE) {
-                    Element eElement = (Element) nNode;
-                    list.add(eElement.getAttribute("name"));
-                }
-            }
+            XmlElementReader.read(location, tag,
+                    eElement -> list.add(eElement.getAttribute("name")));
             return list;
         } catch (Exception e) {
             e.printStackTrace();
             return new ArrayList<>();
         }
     }
-}
\ No newline at end of file
+}
@@ -18,18 +18,9 @@
 
 package projekt.substratum.util.readers;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import java.io.File;
 import java.util.Map;
 import java.util.TreeMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 public enum ReadShowcaseTabsFile {
     ;
 
@@ -40,37 +31,24 @@ public enum ReadShowcaseTabsFile {
      * @return Return a map for the showcase tab entries
      */
     public static Map<String, String> read(String location) {
+        Map<String, String> map = new TreeMap<>();
         try {
-            File fXmlFile = new File(location);
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(fXmlFile);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName("tab");
-
-            Map<String, String> map = new TreeMap<>();
-            for (int temp = 0; temp < nList.getLength(); temp++) {
-                Node nNode = nList.item(temp);
-                if ((int) nNode.getNodeType() == (int) Node.ELEMENT_NODE) {
-                    Element eElement = (Element) nNode;
-
-                    String addon_download_name = eElement.getAttribute("id");
-                    String addon_download_link =
-                            eElement.getElementsByTagName("link").item(0).getTextContent();
-
-                    String[] finalArray = {
-                            addon_download_name,
-                            addon_download_link
-                    };
-
-                    map.put(finalArray[0], finalArray[1]);
-                }
-            }
+            XmlElementReader.read(location, "tab", eElement -> {
+                String addon_download_name = eElement.getAttribute("id");
+                String addon_download_link = eElement.getChild("link");
+                if (addon_download_link == null) return;
+
+                String[] finalArray = {
+                        addon_download_name,
+                        addon_download_link
+                };
+
+                map.put(finalArray[0], finalArray[1]);
+            });
             return map;
         } catch (Exception e) {
             e.printStackTrace();
             return new TreeMap<>();
         }
     }
-}
\ No newline at end of file
+}
@@ -18,18 +18,9 @@
 
 package projekt.substratum.util.readers;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 public enum ReadSupportedROMsFile {
     ;
 
@@ -40,31 +31,18 @@ public enum ReadSupportedROMsFile {
      * @return Return a map for the supported ROMs list
      */
     public static Map<String, String> read(String location) {
+        Map<String, String> hashMap = new HashMap<>();
         try {
-            File fXmlFile = new File(location);
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(fXmlFile);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName("rom");
-
-            Map<String, String> hashMap = new HashMap<>();
-            for (int temp = 0; temp < nList.getLength(); temp++) {
-                Node nNode = nList.item(temp);
-                if ((int) nNode.getNodeType() == (int) Node.ELEMENT_NODE) {
-                    Element eElement = (Element) nNode;
-
-                    String name = eElement.getAttribute("name");
-                    String id = eElement.getAttribute("id");
+            XmlElementReader.read(location, "rom", eElement -> {
+                String name = eElement.getAttribute("name");
+                String id = eElement.getAttribute("id");
 
-                    hashMap.put(id, name);
-                }
-            }
+                hashMap.put(id, name);
+            });
             return hashMap;
         } catch (Exception e) {
             e.printStackTrace();
             return new HashMap<>();
         }
     }
-}
\ No newline at end of file
+}
@@ -18,32 +18,52 @@
 
 package projekt.substratum.util.readers;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import android.support.v4.util.Pair;
+import android.util.Xml;
 
-import java.io.InputStream;
+import org.xmlpull.v1.XmlPullParser;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
 
 public class ReadVariantPrioritizedColor {
 
+    private static final String COLOR_TAG = "color";
+    private static final String NAME_ATTRIBUTE = "name";
+
     /**
      * Function to read the variant's prioritized (themer's FIRST in file) color
+     * <p>
+     * The file is pulled in a single pass, which stops at the first color, so it can be fed an
+     * encrypted asset's stream directly without buffering it first.
+     *
+     * @param inputStream Stream of the XML file
+     * @return Returns the name and the value of the first color, or null if there is none
+     */
+    public static Pair<String, String> read(InputStream inputStream) {
+        return read(inputStream, Xml.newPullParser());
+    }
+
+    /**
+     * Same as {@link #read(InputStream)}, with the parser to be used
      *
-     * @param fileName File name
-     * @return Returns the first line of the XML file for the color
+     * @param inputStream Stream of the XML file
+     * @param parser      Fresh parser
+     * @return Returns the name and the value of the first color, or null if there is none
      */
-    public static String read(InputStream fileName) {
+    static Pair<String, String> read(InputStream inputStream, XmlPullParser parser) {
         try {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(fileName);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName("color");
-            Node eElement = nList.item(0);
-            return eElement.getAttributes().item(0).getNodeValue();
+            parser.setInput(inputStream, null);
+            int event = parser.getEventType();
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if ((event == XmlPullParser.START_TAG) && COLOR_TAG.equals(parser.getName())) {
+                    String name = parser.getAttributeValue(null, NAME_ATTRIBUTE);
+                    if ((name == null) && (parser.getAttributeCount() > 0)) {
+                        name = parser.getAttributeValue(0);
+                    }
+                    return new Pair<>(name, parser.nextText().trim());
+                }
+                event = parser.next();
+            }
         } catch (Exception e) {
             // At this point, the file does not exist!
         }
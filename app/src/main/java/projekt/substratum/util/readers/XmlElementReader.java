@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.util.readers;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming XML reader shared by the readers of this package
+ * <p>
+ * Every element with the requested tag is handed over as soon as it has been pulled, with its
+ * attributes and the text of the elements inside of it, so no document tree is ever built.
+ */
+enum XmlElementReader {
+    ;
+
+    /**
+     * Pull every element with the given tag out of an XML file
+     *
+     * @param location File location
+     * @param tag      Tag of the elements to be read
+     * @param handler  Handler receiving every element in document order
+     * @throws IOException            If the file could not be read
+     * @throws XmlPullParserException If the file is not valid XML
+     */
+    static void read(String location,
+                     String tag,
+                     ElementHandler handler) throws IOException, XmlPullParserException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(location))) {
+            read(inputStream, Xml.newPullParser(), tag, handler);
+        }
+    }
+
+    /**
+     * Pull every element with the given tag out of an XML stream
+     *
+     * @param inputStream Stream of the XML file
+     * @param parser      Fresh parser
+     * @param tag         Tag of the elements to be read
+     * @param handler     Handler receiving every element in document order
+     * @throws IOException            If the stream could not be read
+     * @throws XmlPullParserException If the stream is not valid XML
+     */
+    static void read(InputStream inputStream,
+                     XmlPullParser parser,
+                     String tag,
+                     ElementHandler handler) throws IOException, XmlPullParserException {
+        parser.setInput(inputStream, null);
+        int event = parser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            if ((event == XmlPullParser.START_TAG) && tag.equals(parser.getName())) {
+                handler.onElement(readElement(parser));
+            }
+            event = parser.next();
+        }
+    }
+
+    /**
+     * Read the element the parser is positioned on, leaving the parser on its end tag
+     *
+     * @param parser Parser on a start tag
+     * @return Returns the element
+     */
+    private static Element readElement(XmlPullParser parser)
+            throws IOException, XmlPullParserException {
+        Element element = new Element();
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            element.attributes.put(parser.getAttributeName(i), parser.getAttributeValue(i));
+        }
+        int depth = parser.getDepth();
+        int event = parser.next();
+        while ((event != XmlPullParser.END_TAG) || (parser.getDepth() > depth)) {
+            if (event == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+                String text = readText(parser);
+                // Only the first occurrence of a child counts, just like the old DOM lookups
+                if (!element.children.containsKey(name)) element.children.put(name, text);
+            } else if (event == XmlPullParser.END_DOCUMENT) {
+                break;
+            }
+            event = parser.next();
+        }
+        return element;
+    }
+
+    /**
+     * Read all text inside of the element the parser is positioned on, nested elements included,
+     * leaving the parser on its end tag
+     *
+     * @param parser Parser on a start tag
+     * @return Returns the text content of the element
+     */
+    private static String readText(XmlPullParser parser)
+            throws IOException, XmlPullParserException {
+        StringBuilder text = new StringBuilder();
+        int depth = parser.getDepth();
+        int event = parser.next();
+        while ((event != XmlPullParser.END_TAG) || (parser.getDepth() > depth)) {
+            if (event == XmlPullParser.TEXT) {
+                text.append(parser.getText());
+            } else if (event == XmlPullParser.END_DOCUMENT) {
+                break;
+            }
+            event = parser.next();
+        }
+        return text.toString();
+    }
+
+    interface ElementHandler {
+        void onElement(Element element);
+    }
+
+    /**
+     * A single element, with its attributes and the text of its children by tag
+     */
+    static final class Element {
+        private final Map<String, String> attributes = new HashMap<>();
+        private final Map<String, String> children = new HashMap<>();
+
+        private Element() {
+            super();
+        }
+
+        /**
+         * Same as the DOM's getAttribute, an empty string if the attribute is missing
+         */
+        String getAttribute(String name) {
+            String value = attributes.get(name);
+            return (value != null) ? value : "";
+        }
+
+        /**
+         * Text of the first child with the given tag
+         *
+         * @param tag Tag of the child
+         * @return Returns the text of the child, or null if there is none
+         */
+        String getChild(String tag) {
+            return children.get(tag);
+        }
+
+        /**
+         * Text of the first child with the given tag
+         *
+         * @param tag      Tag of the child
+         * @param fallback Value if the child is missing
+         * @return Returns the text of the child, or the fallback if there is none
+         */
+        String getChild(String tag, String fallback) {
+            String value = children.get(tag);
+            return (value != null) ? value : fallback;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2016-2017 Projekt Substratum
+ * This file is part of Substratum.
+ *
+ * Substratum is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Substratum is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Substratum.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package projekt.substratum.util.tabs;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streaming player for boot animation previews
+ * <p>
+ * Frames are decoded straight from the entries of the animation's archive, a few frames ahead of
+ * playback, into a small ring of bitmaps that are reused through inBitmap. Nothing is extracted
+ * to the disk and playback can start as soon as the first frame has been decoded.
+ */
+public class BootAnimationPlayer {
+
+    private static final String TAG = "BootAnimationPlayer";
+    // Frames decoded ahead of the one on screen
+    private static final int BUFFERED_FRAMES = 3;
+    private static final String[] SUPPORTED_FRAMES = {"jpg", "png", "jpeg"};
+    private final AssetManager assetManager;
+    private final String asset;
+    private final BitmapFactory.Options options = new BitmapFactory.Options();
+    private final BlockingQueue<Bitmap> decoded = new ArrayBlockingQueue<>(BUFFERED_FRAMES);
+    private final BlockingQueue<Bitmap> recycled = new LinkedBlockingQueue<>();
+    private final CountDownLatch firstFrame = new CountDownLatch(1);
+    private volatile boolean stopped;
+    private Thread decoder;
+    private byte[] frameBuffer = new byte[64 * 1024];
+
+    /**
+     * Create a player for a boot animation archive
+     *
+     * @param assetManager Asset manager of the theme
+     * @param asset        Path of the archive inside of the theme's assets
+     */
+    public BootAnimationPlayer(AssetManager assetManager,
+                               String asset) {
+        super();
+        this.assetManager = assetManager;
+        this.asset = asset;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+    }
+
+    /**
+     * Scale the preview down for larger animations, they tend to have larger frames as well
+     *
+     * @param size Size of the archive in bytes
+     * @return Returns the sample size used for decoding
+     */
+    private static int previewDeterminator(long size) {
+        long file_size = size / 1024L / 1024L;
+        Log.d(TAG, "Managing bootanimation with size: " + file_size + "MB");
+        if (file_size >= 10L) return 4;
+        if (file_size > 5L) return 3;
+        return 1;
+    }
+
+    /**
+     * Frames live inside of the part folders of the archive
+     *
+     * @param entry Archive entry
+     * @return True, if the entry is a frame
+     */
+    private static boolean isFrame(ZipEntry entry) {
+        String name = entry.getName();
+        int slash = name.indexOf('/');
+        if (entry.isDirectory() || (slash <= 0) || (slash != name.lastIndexOf('/'))) return false;
+        String lowerCase = name.toLowerCase(Locale.US);
+        for (String extension : SUPPORTED_FRAMES) {
+            if (lowerCase.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Start decoding frames in the background
+     */
+    public void start() {
+        decoder = new Thread(this::decode, TAG);
+        decoder.start();
+    }
+
+    /**
+     * Wait until the first frame is ready to be shown
+     *
+     * @return True, if the animation has frames to be played
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitFirstFrame() throws InterruptedException {
+        firstFrame.await();
+        return !decoded.isEmpty();
+    }
+
+    /**
+     * Obtain the next frame to be shown, if it has been decoded in time
+     *
+     * @return Returns the next frame, or null if the current one should stay on screen
+     */
+    public Bitmap nextFrame() {
+        return decoded.poll();
+    }
+
+    /**
+     * Hand a frame back once it is no longer on screen, so its memory can be decoded into again
+     *
+     * @param frame Frame obtained from {@link #nextFrame()}
+     */
+    public void release(Bitmap frame) {
+        if ((frame != null) && !stopped) recycled.offer(frame);
+    }
+
+    /**
+     * Stop decoding, the player cannot be started again
+     */
+    public void stop() {
+        stopped = true;
+        if (decoder != null) decoder.interrupt();
+        firstFrame.countDown();
+        decoded.clear();
+        recycled.clear();
+    }
+
+    /**
+     * Decoder loop, plays the archive from the start again once it has reached the end
+     */
+    private void decode() {
+        try {
+            while (!stopped) {
+                int frames = 0;
+                try (InputStream inputStream = assetManager.open(asset)) {
+                    if (options.inSampleSize == 0) {
+                        // Assets report their full remaining length, compressed or not
+                        options.inSampleSize = previewDeterminator(inputStream.available());
+                    }
+                    ZipInputStream zip = new ZipInputStream(new BufferedInputStream(inputStream));
+                    ZipEntry entry;
+                    while (!stopped && ((entry = zip.getNextEntry()) != null)) {
+                        if (!isFrame(entry)) continue;
+                        Bitmap frame = decodeFrame(zip);
+                        if (frame == null) continue;
+                        decoded.put(frame);
+                        firstFrame.countDown();
+                        frames++;
+                    }
+                }
+                if (frames == 0) {
+                    Log.e(TAG, "There are no frames in " + asset);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped while waiting for playback to catch up
+        } catch (IOException e) {
+            Log.e(TAG, "An issue has occurred while attempting to read " + asset);
+        } finally {
+            firstFrame.countDown();
+        }
+    }
+
+    /**
+     * Decode the current entry of the archive into a recycled bitmap where possible
+     *
+     * @param zip Archive positioned on a frame
+     * @return Returns the frame, or null if it could not be decoded
+     * @throws IOException If the archive could not be read
+     */
+    private Bitmap decodeFrame(ZipInputStream zip) throws IOException {
+        int length = 0;
+        int read;
+        while ((read = zip.read(frameBuffer, length, frameBuffer.length - length)) > 0) {
+            length += read;
+            if (length == frameBuffer.length) {
+                byte[] grown = new byte[frameBuffer.length * 2];
+                System.arraycopy(frameBuffer, 0, grown, 0, length);
+                frameBuffer = grown;
+            }
+        }
+        Bitmap reusable = recycled.poll();
+        options.inBitmap = reusable;
+        try {
+            Bitmap frame = BitmapFactory.decodeByteArray(frameBuffer, 0, length, options);
+            if ((frame == null) && (reusable != null)) recycled.offer(reusable);
+            return frame;
+        } catch (IllegalArgumentException e) {
+            // The frame does not fit into the recycled bitmap, let it go and allocate a new one
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(frameBuffer, 0, length, options);
+        } finally {
+            options.inBitmap = null;
+        }
+    }
+}
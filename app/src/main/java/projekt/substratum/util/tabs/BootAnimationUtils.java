@@ -22,7 +22,6 @@ import android.annotation.SuppressLint;
 import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
 import android.content.res.AssetManager;
 import android.os.AsyncTask;
 import android.preference.PreferenceManager;
@@ -32,21 +31,17 @@ import android.util.Log;
 import android.view.View;
 import android.view.WindowManager;
 
-import org.zeroturnaround.zip.FileSource;
-import org.zeroturnaround.zip.ZipEntrySource;
-import org.zeroturnaround.zip.ZipUtil;
-
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
 import java.util.Locale;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
@@ -124,6 +119,9 @@ public class BootAnimationUtils {
         private Boolean shutdownAnimation;
         private ProgressDialog progress;
         private Boolean has_failed;
+        // RW sections opened while applying, closed again once done
+        private boolean mountedData;
+        private boolean mountedSystem;
 
         BootAnimationHandlerAsync(View view,
                                   Context context,
@@ -141,14 +139,135 @@ public class BootAnimationUtils {
             this.shutdownAnimation = shutdownAnimation;
         }
 
-        private static void CopyStream(InputStream Input, OutputStream Output) throws
-                IOException {
-            byte[] buffer = new byte[BYTE_ACCESS_RATE];
-            int length = Input.read(buffer);
-            while (length > 0) {
-                Output.write(buffer, 0, length);
-                length = Input.read(buffer);
+        /**
+         * Rescale a boot animation to the display in a single pass, straight from the theme's
+         * assets into a STORED archive
+         *
+         * @param context     Context
+         * @param inputStream Stream of the (decrypted) boot animation archive
+         * @param output      Scaled archive to be written
+         * @return True, if the archive contained a descriptor that has been rescaled
+         * @throws IOException If the archive could not be read or written
+         */
+        private static boolean rescale(Context context,
+                                       InputStream inputStream,
+                                       File output) throws IOException {
+            boolean descriptorFound = false;
+            try (ZipInputStream bootAni = new ZipInputStream(
+                    new BufferedInputStream(inputStream));
+                 ZipOutputStream zos = new ZipOutputStream(
+                         new BufferedOutputStream(new FileOutputStream(output)))) {
+                zos.setMethod(ZipOutputStream.STORED);
+                byte[] bytes = new byte[BYTE_ACCESS_RATE];
+                ZipEntry ze;
+                while ((ze = bootAni.getNextEntry()) != null) {
+                    ZipEntry entry = new ZipEntry(ze.getName());
+                    entry.setMethod(ZipEntry.STORED);
+                    if (ze.getName().equals(BOOTANIMATION_DESCRIPTOR)) {
+                        descriptorFound = true;
+                        putStoredEntry(zos, entry,
+                                scaleDescriptor(context, readEntry(bootAni, bytes)));
+                    } else if ((ze.getSize() >= 0L) && (ze.getCrc() >= 0L)) {
+                        // The local header already tells us everything a STORED entry needs
+                        entry.setCrc(ze.getCrc());
+                        entry.setSize(ze.getSize());
+                        entry.setCompressedSize(ze.getSize());
+                        zos.putNextEntry(entry);
+                        int len;
+                        while ((len = bootAni.read(bytes)) > 0) {
+                            zos.write(bytes, 0, len);
+                        }
+                        zos.closeEntry();
+                    } else {
+                        // Sizes trail the data, so the entry has to be held until it is known
+                        putStoredEntry(zos, entry, readEntry(bootAni, bytes));
+                    }
+                }
             }
+            return descriptorFound;
+        }
+
+        private static byte[] readEntry(InputStream inputStream,
+                                        byte[] bytes) throws IOException {
+            ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            int len;
+            while ((len = inputStream.read(bytes)) > 0) {
+                entry.write(bytes, 0, len);
+            }
+            return entry.toByteArray();
+        }
+
+        private static void putStoredEntry(ZipOutputStream zos,
+                                           ZipEntry entry,
+                                           byte[] data) throws IOException {
+            CRC32 crc32 = new CRC32();
+            crc32.update(data);
+            entry.setCrc(crc32.getValue());
+            entry.setSize((long) data.length);
+            entry.setCompressedSize((long) data.length);
+            zos.putNextEntry(entry);
+            zos.write(data);
+            zos.closeEntry();
+        }
+
+        /**
+         * Rewrite the first line of the descriptor (desc.txt) to the resolution of the display
+         *
+         * @param context    Context
+         * @param descriptor Original descriptor
+         * @return Returns the scaled descriptor
+         * @throws IOException If the descriptor could not be parsed
+         */
+        private static byte[] scaleDescriptor(Context context,
+                                              byte[] descriptor) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(descriptor)));
+            String firstLine = reader.readLine();
+            if (firstLine == null) throw new IOException("The descriptor is empty");
+            String[] info = firstLine.split(" ");
+
+            WindowManager wm = (WindowManager) context.getSystemService
+                    (Context.WINDOW_SERVICE);
+            DisplayMetrics dm = new DisplayMetrics();
+            if (wm != null) {
+                wm.getDefaultDisplay().getRealMetrics(dm);
+            }
+            // just in case the device is in landscape orientation we will
+            // swap the values since most (if not all) animations are portrait
+            int prevent_lint_w = dm.widthPixels;
+            int prevent_lint_h = dm.heightPixels;
+            int scaledHeight;
+            int scaledWidth;
+            if (dm.widthPixels > dm.heightPixels) {
+                scaledWidth = prevent_lint_h;
+                scaledHeight = prevent_lint_w;
+            } else {
+                scaledWidth = dm.widthPixels;
+                scaledHeight = dm.heightPixels;
+            }
+
+            int width = Integer.parseInt(info[0]);
+            int height = Integer.parseInt(info[1]);
+
+            if (width == height) {
+                //noinspection SuspiciousNameCombination
+                scaledHeight = scaledWidth;
+            } else {
+                // adjust scaledHeight to retain original aspect ratio
+                float scale = (float) scaledWidth / (float) width;
+                int newHeight = (int) ((float) height * scale);
+                if (newHeight < scaledHeight)
+                    scaledHeight = newHeight;
+            }
+
+            StringBuilder scaled = new StringBuilder(descriptor.length + 16);
+            scaled.append(String.format(Locale.US,
+                    "%d %d %s\n", scaledWidth, scaledHeight, info[2]));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                scaled.append(line).append('\n');
+            }
+            return scaled.toString().getBytes();
         }
 
         @Override
@@ -179,18 +298,16 @@ public class BootAnimationUtils {
                         Lunchbar.LENGTH_LONG)
                         .show();
             }
-            if (!Systems.checkThemeInterfacer(mContext)) {
-                FileOperations.mountROData();
-                FileOperations.mountRO();
-            }
+            if (mountedData) FileOperations.mountROData();
+            if (mountedSystem) FileOperations.mountRO();
         }
 
         @Override
         protected String doInBackground(String... sUrl) {
             has_failed = false;
 
-            // Move the file from assets folder to a new working area
-            Log.d(TAG, "Copying over the selected boot animation to working directory...");
+            // Prepare the working area for the scaled boot animation
+            Log.d(TAG, "Preparing the working directory for the selected boot animation...");
 
             File cacheDirectory = new File(mContext.getCacheDir(), BOOTANIMATION_CACHE);
             if (!cacheDirectory.exists() && cacheDirectory.mkdirs())
@@ -215,174 +332,34 @@ public class BootAnimationUtils {
                     "shutdownanimation" :
                     "bootanimation");
 
-            // Now let's take out desc.txt from the theme's assets (bootanimation.zip) and parse it
-            if (!has_failed) {
-                Log.d(TAG, "Analyzing integrity of boot animation descriptor file...");
-                if (cipher != null) {
-                    try {
-                        Context otherContext = mContext.createPackageContext(this
-                                .theme_pid, 0);
-                        AssetManager themeAssetManager = otherContext.getAssets();
-                        FileOperations.copyFileOrDir(
-                                themeAssetManager,
-                                directory + '/' + bootanimation +
-                                        (encrypted ?
-                                                ".zip" + ENCRYPTED_FILE_EXTENSION : ".zip"),
-                                mContext.getCacheDir().getAbsolutePath() +
-                                        BOOTANIMATION_CREATION_CACHE +
-                                        bootanimation + ".zip",
-                                directory + '/' + bootanimation +
-                                        (encrypted ?
-                                                ".zip" + ENCRYPTED_FILE_EXTENSION : ".zip"),
-                                cipher);
-                    } catch (PackageManager.NameNotFoundException e) {
-                        e.printStackTrace();
-                    }
-                } else {
-                    try {
-                        Context otherContext = mContext.createPackageContext(this
-                                .theme_pid, 0);
-                        AssetManager am = otherContext.getAssets();
-                        try (InputStream inputStream = am.open(
-                                directory + '/' + bootanimation + ".zip");
-                             OutputStream outputStream = new FileOutputStream(
-                                     mContext.getCacheDir().getAbsolutePath() +
-                                             BOOTANIMATION_CREATION_CACHE +
-                                             bootanimation + ".zip")) {
-                            BootAnimationHandlerAsync.CopyStream(inputStream, outputStream);
-                        }
-                    } catch (Exception e) {
-                        has_failed = true;
-                        Log.e(TAG,
-                                "There is no animation.zip found within the assets " +
-                                        "of this theme!");
-
-                    }
-                }
-
-                // Rename the file
-                File workingDirectory = new File(
-                        mContext.getCacheDir().getAbsolutePath() +
-                                BOOTANIMATION_CREATION_CACHE);
-                File from = new File(workingDirectory, bootanimation + ".zip");
-                bootanimation =
-                        bootanimation.replaceAll("\\s+", "").replaceAll("[^a-zA-Z0-9]+", "");
-                File to = new File(workingDirectory, bootanimation + ".zip");
-                boolean rename = from.renameTo(to);
-                if (rename)
-                    Log.d(TAG, "Boot Animation successfully moved to new directory");
-            }
-
-            if (!has_failed) {
-                boolean exists = ZipUtil.containsEntry(
-                        new File(mContext.getCacheDir().getAbsolutePath() +
-                                BOOTANIMATION_CREATION_CACHE +
-                                bootanimation + ".zip"), BOOTANIMATION_DESCRIPTOR);
-                if (exists) {
-                    ZipUtil.unpackEntry(
-                            new File(mContext.getCacheDir().getAbsolutePath() +
-                                    BOOTANIMATION_CREATION_CACHE +
-                                    bootanimation + ".zip"),
-                            BOOTANIMATION_DESCRIPTOR,
-                            new File(mContext.getCacheDir().getAbsolutePath() +
-                                    BOOTANIMATION_CREATION_CACHE + BOOTANIMATION_DESCRIPTOR));
-                } else {
-                    Log.e(TAG,
-                            "Could not find specified boot animation descriptor file (desc.txt)!");
-                    has_failed = true;
-                }
+            // Stream the archive out of the theme's assets and rescale its descriptor (desc.txt)
+            // on the way, the asset is never copied, unpacked or rewritten in between
+            Log.d(TAG, "Calculating hardware display density metrics " +
+                    "and resizing the bootanimation...");
+            String asset = directory + '/' + bootanimation +
+                    (encrypted ? ".zip" + ENCRYPTED_FILE_EXTENSION : ".zip");
+            bootanimation =
+                    bootanimation.replaceAll("\\s+", "").replaceAll("[^a-zA-Z0-9]+", "");
+            File scaledBootAnimation = new File(mContext.getCacheDir().getAbsolutePath() +
+                    BOOTANIMATION_CREATION_CACHE + "scaled-" + bootanimation + ".zip");
+            InputStream inputStream = null;
+            try {
+                Context otherContext = mContext.createPackageContext(this.theme_pid, 0);
+                inputStream = FileOperations.getInputStream(
+                        otherContext.getAssets(), asset, cipher);
+            } catch (Exception e) {
+                has_failed = true;
+                Log.e(TAG,
+                        "There is no animation.zip found within the assets " +
+                                "of this theme!");
             }
-
-            // Begin parsing of the file (desc.txt) and parse the first line
             if (!has_failed) {
-                Log.d(TAG, "Calculating hardware display density metrics " +
-                        "and resizing the bootanimation...");
-                BufferedReader reader = null;
-                try (OutputStream os = new FileOutputStream(
-                        mContext.getCacheDir().getAbsolutePath() +
-                                BOOTANIMATION_CREATION_CACHE + "scaled-" + bootanimation + ".zip");
-                     ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(os));
-                     ZipInputStream bootAni = new ZipInputStream(new BufferedInputStream(new
-                             FileInputStream(
-                             mContext.getCacheDir().getAbsolutePath() +
-                                     BOOTANIMATION_CREATION_CACHE + bootanimation + ".zip")))) {
-
-                    zos.setMethod(ZipOutputStream.STORED);
-                    byte[] bytes = new byte[BYTE_ACCESS_RATE];
-                    ZipEntry ze;
-                    while ((ze = bootAni.getNextEntry()) != null) {
-                        ZipEntry entry = new ZipEntry(ze.getName());
-                        entry.setMethod(ZipEntry.STORED);
-                        entry.setCrc(ze.getCrc());
-                        entry.setSize(ze.getSize());
-                        entry.setCompressedSize(ze.getSize());
-                        if (!ze.getName().equals(BOOTANIMATION_DESCRIPTOR)) {
-                            // just copy this entry straight over into the output zip
-                            zos.putNextEntry(entry);
-                            int len;
-                            while ((len = bootAni.read(bytes)) > 0) {
-                                zos.write(bytes, 0, len);
-                            }
-                        } else {
-                            reader = new BufferedReader(new InputStreamReader
-                                    (bootAni));
-                            String[] info = reader.readLine().split(" ");
-
-                            WindowManager wm = (WindowManager) mContext.getSystemService
-                                    (Context.WINDOW_SERVICE);
-                            DisplayMetrics dm = new DisplayMetrics();
-                            if (wm != null) {
-                                wm.getDefaultDisplay().getRealMetrics(dm);
-                            }
-                            // just in case the device is in landscape orientation we will
-                            // swap the values since most (if not all) animations are portrait
-                            int prevent_lint_w = dm.widthPixels;
-                            int prevent_lint_h = dm.heightPixels;
-                            int scaledHeight;
-                            int scaledWidth;
-                            if (dm.widthPixels > dm.heightPixels) {
-                                scaledWidth = prevent_lint_h;
-                                scaledHeight = prevent_lint_w;
-                            } else {
-                                scaledWidth = dm.widthPixels;
-                                scaledHeight = dm.heightPixels;
-                            }
-
-                            int width = Integer.parseInt(info[0]);
-                            int height = Integer.parseInt(info[1]);
-
-                            if (width == height) {
-                                //noinspection SuspiciousNameCombination
-                                scaledHeight = scaledWidth;
-                            } else {
-                                // adjust scaledHeight to retain original aspect ratio
-                                float scale = (float) scaledWidth / (float) width;
-                                int newHeight = (int) ((float) height * scale);
-                                if (newHeight < scaledHeight)
-                                    scaledHeight = newHeight;
-                            }
-
-                            CRC32 crc32 = new CRC32();
-                            ByteBuffer buffer = ByteBuffer.wrap(bytes);
-                            String line = String.format(Locale.US,
-                                    "%d %d %s\n", scaledWidth, scaledHeight, info[2]);
-                            buffer.put(line.getBytes());
-                            int size = 0;
-                            size += line.getBytes().length;
-                            crc32.update(line.getBytes());
-                            while ((line = reader.readLine()) != null) {
-                                line = String.format("%s\n", line);
-                                buffer.put(line.getBytes());
-                                size += line.getBytes().length;
-                                crc32.update(line.getBytes());
-                            }
-                            entry.setCrc(crc32.getValue());
-                            entry.setSize((long) size);
-                            entry.setCompressedSize((long) size);
-
-                            zos.putNextEntry(entry);
-                            zos.write(buffer.array(), 0, size);
-                        }
+                try {
+                    if (!rescale(mContext, inputStream, scaledBootAnimation)) {
+                        Log.e(TAG,
+                                "Could not find specified boot animation descriptor file " +
+                                        "(desc.txt)!");
+                        has_failed = true;
                     }
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -390,33 +367,9 @@ public class BootAnimationUtils {
                             "(" + BOOTANIMATION_DESCRIPTOR + ") " +
                             "could not be parsed properly!");
                     has_failed = true;
-                } finally {
-                    if (reader != null) {
-                        try {
-                            reader.close();
-                        } catch (IOException e) {
-                            // Suppress warning
-                        }
-                    }
                 }
             }
 
-            if (!has_failed) {
-                Log.d(TAG,
-                        "Finalizing the boot animation descriptor file and " +
-                                "committing changes to the archive...");
-
-                ZipEntrySource[] addedEntries = {
-                        new FileSource(BOOTANIMATION_DESCRIPTOR, new File(
-                                mContext.getCacheDir().getAbsolutePath() +
-                                        BOOTANIMATION_CREATION_CACHE + BOOTANIMATION_DESCRIPTOR))
-                };
-                ZipUtil.addOrReplaceEntries(new File(
-                        mContext.getCacheDir().getAbsolutePath() +
-                                BOOTANIMATION_CREATION_CACHE +
-                                bootanimation + ".zip"), addedEntries);
-            }
-
             if (!has_failed) {
                 Log.d(TAG, "Moving boot animation to theme directory " +
                         "and setting correct contextual parameters...");
@@ -431,6 +384,7 @@ public class BootAnimationUtils {
                         if (!themeDirectory.exists()) {
                             if (!Systems.checkThemeInterfacer(mContext)) {
                                 FileOperations.mountRWData();
+                                mountedData = true;
                             }
                             FileOperations.createNewFolder(mContext, DATA_SYSTEM);
                         }
@@ -446,10 +400,7 @@ public class BootAnimationUtils {
                     themeDirectory = new File(SYSTEM_MEDIA);
                 }
 
-                File scaledBootAnimCheck = new File(mContext.getCacheDir()
-                        .getAbsolutePath() + BOOTANIMATION_CREATION_CACHE +
-                        "scaled-" + bootanimation + ".zip");
-                if (scaledBootAnimCheck.exists()) {
+                if (scaledBootAnimation.exists()) {
                     Log.d(TAG, "Scaled boot animation created by Substratum verified!");
                 } else {
                     has_failed = true;
@@ -458,7 +409,7 @@ public class BootAnimationUtils {
 
                 // Move created boot animation to working directory
                 FileOperations.move(mContext,
-                        scaledBootAnimCheck.getAbsolutePath(),
+                        scaledBootAnimation.getAbsolutePath(),
                         EXTERNAL_STORAGE_CACHE +
                                 (shutdownAnimation ?
                                         SHUTDOWNANIMATION : BOOTANIMATION));
@@ -467,6 +418,7 @@ public class BootAnimationUtils {
                 if (!has_failed && (is_encrypted || !Systems.checkOMS(mContext)) &&
                         !shutdownAnimation) {
                     FileOperations.mountRW();
+                    mountedSystem = true;
                     File backupScript = new File(SYSTEM_ADDON_DIR + BACKUP_SCRIPT);
 
                     if (Systems.checkSubstratumFeature(mContext)) {
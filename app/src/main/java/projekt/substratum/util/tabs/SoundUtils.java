@@ -105,11 +105,6 @@ public class SoundUtils {
                     .show();
         }
 
-        if (!Systems.checkThemeInterfacer(mContext)) {
-            FileOperations.mountROData();
-            FileOperations.mountRO();
-        }
-
         if (ringtone) {
             ringtone = false;
             if (!Systems.checkThemeInterfacer(mContext) &&
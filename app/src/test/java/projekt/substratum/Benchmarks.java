@@ -0,0 +1,79 @@
+package projekt.substratum;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import projekt.substratum.common.systems.ProfileIndexTest;
+import projekt.substratum.fragments.OverlayStateLookupTest;
+import projekt.substratum.util.readers.ReadVariantPrioritizedColorTest;
+import projekt.substratum.util.readers.XmlElementReaderTest;
+
+/**
+ * Times the old and the current way of the paths that have been reworked for speed, the unit
+ * test of every path checks that both ways give the same result
+ * <p>
+ * Only the in-process work is measured, so a path that used to be a round trip to the overlay
+ * backend or the disk per item is a lot slower on a device than shown here. They only print
+ * their numbers and take a while, drop the {@link Ignore} to run them.
+ */
+@Ignore("Opt-in benchmarks, they print timings instead of testing anything")
+public class Benchmarks {
+
+    /**
+     * Run every workload once to warm it up, then print how long a round of each took
+     *
+     * @param label     What has been measured
+     * @param workloads Workloads to be timed, by name
+     * @param rounds    Number of rounds to average over
+     */
+    private static void time(String label,
+                             Map<String, Callable<?>> workloads,
+                             int rounds) throws Exception {
+        for (Callable<?> workload : workloads.values()) workload.call();
+
+        StringBuilder line = new StringBuilder(label).append(':');
+        String separator = " ";
+        for (Map.Entry<String, Callable<?>> workload : workloads.entrySet()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) workload.getValue().call();
+            long took = (System.nanoTime() - start) / rounds;
+            line.append(separator).append(String.format(Locale.US, "%s %8.3f ms",
+                    workload.getKey(), took / 1e6));
+            separator = ", ";
+        }
+        System.out.println(line);
+    }
+
+    @Test
+    public void overlayStateLookup() throws Exception {
+        for (int overlays : new int[]{50, 150, 500, 1500}) {
+            time(String.format(Locale.US, "%5d overlays", overlays),
+                    OverlayStateLookupTest.workloads(overlays), 20);
+        }
+    }
+
+    @Test
+    public void readVariantPrioritizedColor() throws Exception {
+        for (int colors : new int[]{1, 50, 500, 5000}) {
+            time(String.format(Locale.US, "%5d colors", colors),
+                    ReadVariantPrioritizedColorTest.workloads(colors), 50);
+        }
+    }
+
+    @Test
+    public void xmlElementReader() throws Exception {
+        for (int themes : new int[]{100, 1000, 10000}) {
+            time(String.format(Locale.US, "%5d showcase entries", themes),
+                    XmlElementReaderTest.workloads(themes), 10);
+        }
+    }
+
+    @Test
+    public void profileIndex() throws Exception {
+        time("500 overlays", ProfileIndexTest.workloads(500), 50);
+    }
+}
@@ -0,0 +1,103 @@
+package projekt.substratum.adapters.tabs.overlays;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VariantCacheTest {
+
+    private static final String KEY = "2:1000:42:1500000000000:en-US";
+
+    private static byte[] write(VariantCache.Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            VariantCache.write(out, KEY, snapshot);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static VariantCache.Snapshot read(byte[] bytes, String key) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return VariantCache.read(in, key);
+        }
+    }
+
+    private static void assertItems(List<VariantItem> expected, List<VariantItem> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.get(i) == null) {
+                assertNull(actual.get(i));
+                continue;
+            }
+            assertEquals(expected.get(i).getVariantName(), actual.get(i).getVariantName());
+            assertEquals(expected.get(i).getVariantHex(), actual.get(i).getVariantHex());
+            assertEquals(expected.get(i).isDefaultOption(), actual.get(i).isDefaultOption());
+        }
+    }
+
+    private static VariantCache.Snapshot snapshot() {
+        VariantCache.Snapshot snapshot = new VariantCache.Snapshot();
+        snapshot.overlayFolders.addAll(Arrays.asList("android", "com.android.systemui"));
+        snapshot.type3.add(new VariantItem("Dark (default)", null));
+        snapshot.type3.add(new VariantItem("light", null));
+        snapshot.variants.put("android", new VariantCache.Variants(
+                Arrays.asList(new VariantItem("Accent", null), new VariantItem("red", "#ff0000")),
+                new ArrayList<>(),
+                Collections.singletonList(null),
+                Collections.singletonList(new VariantItem("Stock", null)),
+                new ArrayList<>(),
+                "Requires a reboot",
+                true));
+        snapshot.variants.put("com.android.systemui", new VariantCache.Variants(
+                new ArrayList<>(),
+                new ArrayList<>(),
+                new ArrayList<>(),
+                new ArrayList<>(),
+                Collections.singletonList(new VariantItem("Round", null)),
+                "",
+                false));
+        return snapshot;
+    }
+
+    @Test
+    public void write_thenRead_keepsEveryVariant() throws IOException {
+        VariantCache.Snapshot expected = snapshot();
+        VariantCache.Snapshot actual = read(write(expected), KEY);
+
+        assertEquals(expected.overlayFolders, actual.overlayFolders);
+        assertItems(expected.type3, actual.type3);
+        assertEquals(expected.variants.keySet(), actual.variants.keySet());
+        for (String target : expected.variants.keySet()) {
+            VariantCache.Variants before = expected.variants.get(target);
+            VariantCache.Variants after = actual.variants.get(target);
+            assertItems(before.type1a, after.type1a);
+            assertItems(before.type1b, after.type1b);
+            assertItems(before.type1c, after.type1c);
+            assertItems(before.type2, after.type2);
+            assertItems(before.type4, after.type4);
+            assertEquals(before.attention, after.attention);
+            assertEquals(before.hasVariants, after.hasVariants);
+        }
+        assertTrue(actual.variants.get("android").hasVariants);
+        assertFalse(actual.variants.get("com.android.systemui").hasVariants);
+    }
+
+    @Test
+    public void read_ignoresAnotherKey() throws IOException {
+        // Another theme version, Substratum build or language makes the cached labels stale
+        assertNull(read(write(snapshot()), "2:1000:43:1500000000000:en-US"));
+    }
+}
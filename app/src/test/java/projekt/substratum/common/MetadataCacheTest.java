@@ -0,0 +1,90 @@
+package projekt.substratum.common;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetadataCacheTest {
+
+    private static final String PACKAGE = "projekt.substratum.test.overlay";
+
+    private File apk;
+    private int lookups;
+
+    private MetadataCache.Entry get(String package_name) {
+        return MetadataCache.get(package_name, name -> {
+            lookups++;
+            if (!PACKAGE.equals(name)) throw new PackageManager.NameNotFoundException(name);
+            ApplicationInfo appInfo = new ApplicationInfo();
+            appInfo.sourceDir = apk.getAbsolutePath();
+            return appInfo;
+        });
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        apk = Files.createTempFile("overlay", ".apk").toFile();
+        // Whatever an earlier test left behind
+        MetadataCache.invalidate(PACKAGE);
+    }
+
+    @After
+    public void tearDown() {
+        MetadataCache.invalidate(PACKAGE);
+        if (!apk.delete()) apk.deleteOnExit();
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        long hits = Packages.getMetadataCacheHits();
+        long misses = Packages.getMetadataCacheMisses();
+
+        MetadataCache.Entry first = get(PACKAGE);
+        assertNotNull(first);
+        assertEquals(hits, Packages.getMetadataCacheHits());
+        assertEquals(misses + 1, Packages.getMetadataCacheMisses());
+
+        assertSame(first, get(PACKAGE));
+        assertEquals(hits + 1, Packages.getMetadataCacheHits());
+        assertEquals(misses + 1, Packages.getMetadataCacheMisses());
+
+        Packages.invalidateMetadata(PACKAGE);
+        assertNotNull(get(PACKAGE));
+        assertEquals(hits + 1, Packages.getMetadataCacheHits());
+        assertEquals(misses + 2, Packages.getMetadataCacheMisses());
+        assertEquals(2, lookups);
+    }
+
+    @Test
+    public void get_reloadsAReplacedApk() {
+        MetadataCache.Entry first = get(PACKAGE);
+        assertNotNull(first);
+        // An update writes a new APK, which has a different modification time
+        assertTrue(apk.setLastModified(apk.lastModified() - 60000L));
+        MetadataCache.Entry second = get(PACKAGE);
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertEquals(2, lookups);
+    }
+
+    @Test
+    public void get_returnsNullForMissingPackages() {
+        assertNull(get("projekt.substratum.test.missing"));
+        assertNull(get(null));
+        assertEquals(1, lookups);
+    }
+}
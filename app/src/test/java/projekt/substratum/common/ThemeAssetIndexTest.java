@@ -0,0 +1,71 @@
+package projekt.substratum.common;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThemeAssetIndexTest {
+
+    private File apk;
+
+    private void write(String... entries) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(apk))) {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.closeEntry();
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        apk = Files.createTempFile("theme", ".apk").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        if (!apk.delete()) apk.deleteOnExit();
+    }
+
+    @Test
+    public void index_recordsFoldersAndTargetsInOneWalk() throws IOException {
+        write("AndroidManifest.xml",
+                "assets/readme.txt",
+                "assets/fonts/fonts.zip",
+                "assets/overlays/android/res/values/colors.xml",
+                "assets/overlays/android/type1a_Dark.xml",
+                "assets/overlays/com.android.systemui/res/values/colors.xml",
+                "assets/overlays/loose.txt",
+                "res/drawable/icon.png");
+        Set<String> folders = new HashSet<>();
+        Set<String> targets = new HashSet<>();
+        assertTrue(ThemeAssetIndex.index(apk.getAbsolutePath(), folders, targets));
+        assertEquals(new HashSet<>(Arrays.asList("fonts", "overlays")), folders);
+        assertEquals(new HashSet<>(Arrays.asList("android", "com.android.systemui")), targets);
+    }
+
+    @Test
+    public void index_failsOnAnUnreadableApk() throws IOException {
+        Files.write(apk.toPath(), "not a zip".getBytes(StandardCharsets.UTF_8));
+        Set<String> folders = new HashSet<>();
+        Set<String> targets = new HashSet<>();
+        assertFalse(ThemeAssetIndex.index(apk.getAbsolutePath(), folders, targets));
+        assertTrue(folders.isEmpty());
+        assertTrue(targets.isEmpty());
+    }
+}
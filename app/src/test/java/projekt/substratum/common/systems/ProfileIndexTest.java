@@ -0,0 +1,248 @@
+package projekt.substratum.common.systems;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileIndexTest {
+
+    private static final int OVERLAYS = 500;
+    private static final int TARGETS = 50;
+    private static final String TARGET = "com.android.target7";
+
+    private static ProfileItem item(int i) {
+        String target = "com.android.target" + (i % TARGETS);
+        ProfileItem item = new ProfileItem(target + ".theme" + (i % 3) + '.' + i);
+        item.setTargetPackage(target);
+        item.setParentTheme("Theme " + (i % 3));
+        item.setType1a("type1a_" + (i % 4) + ".xml");
+        item.setType1b("null");
+        item.setType1c("type1c_" + (i % 2) + ".xml");
+        item.setType2("type2_dark");
+        item.setType3("");
+        item.setType4("null");
+        return item;
+    }
+
+    /**
+     * A profile like the ones saved from the manager, every third overlay disabled
+     */
+    private static List<Map<String, ProfileItem>> profile(int overlays) {
+        List<Map<String, ProfileItem>> states = ProfileIndex.newStates();
+        for (int i = 0; i < overlays; i++) {
+            ProfileItem item = item(i);
+            states.get(((i % 3) == 2) ? ProfileIndex.DISABLED : ProfileIndex.ENABLED)
+                    .put(item.getPackageName(), item);
+        }
+        return states;
+    }
+
+    /**
+     * The overlay_state.xml ProfileManager.writeProfileState saves next to the index
+     */
+    private static byte[] xml(List<Map<String, ProfileItem>> states) {
+        StringBuilder xml =
+                new StringBuilder("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n");
+        xml.append("<overlays>\n");
+        String[] tags = {"enabled", "disabled"};
+        for (int state = 0; state < tags.length; state++) {
+            if (states.get(state).isEmpty()) continue;
+            xml.append("  <").append(tags[state]).append(">\n");
+            for (ProfileItem item : states.get(state).values()) {
+                xml.append("    <item packageName=\"").append(item.getPackageName())
+                        .append("\" target=\"").append(item.getTargetPackage())
+                        .append("\" parent=\"").append(item.getParentTheme())
+                        .append("\" type1a=\"").append(item.getType1a())
+                        .append("\" type1b=\"").append(item.getType1b())
+                        .append("\" type1c=\"").append(item.getType1c())
+                        .append("\" type2=\"").append(item.getType2())
+                        .append("\" type3=\"").append(item.getType3())
+                        .append("\" type4=\"").append(item.getType4())
+                        .append("\" />\n");
+            }
+            xml.append("  </").append(tags[state]).append(">\n");
+        }
+        xml.append("</overlays>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * What the profile readers used to do, a normalized DOM of the whole file for every read
+     */
+    private static Map<String, ProfileItem> readWithDom(byte[] xml,
+                                                        String tag) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml));
+        doc.getDocumentElement().normalize();
+        Map<String, ProfileItem> items = new LinkedHashMap<>();
+        NodeList states = doc.getElementsByTagName(tag);
+        if (states.getLength() == 0) return items;
+        NodeList nodes = ((Element) states.item(0)).getElementsByTagName("item");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            Element element = (Element) node;
+            ProfileItem item = new ProfileItem(element.getAttribute("packageName"));
+            item.setTargetPackage(element.getAttribute("target"));
+            item.setParentTheme(element.getAttribute("parent"));
+            item.setType1a(element.getAttribute("type1a"));
+            item.setType1b(element.getAttribute("type1b"));
+            item.setType1c(element.getAttribute("type1c"));
+            item.setType2(element.getAttribute("type2"));
+            item.setType3(element.getAttribute("type3"));
+            item.setType4(element.getAttribute("type4"));
+            items.put(item.getPackageName(), item);
+        }
+        return items;
+    }
+
+    private static Map<String, ProfileItem> ofTarget(Map<String, ProfileItem> items,
+                                                     String target) {
+        Map<String, ProfileItem> filtered = new LinkedHashMap<>();
+        for (ProfileItem item : items.values()) {
+            if (target.equals(item.getTargetPackage())) filtered.put(item.getPackageName(), item);
+        }
+        return filtered;
+    }
+
+    private static void assertItems(Map<String, ProfileItem> expected,
+                                    Map<String, ProfileItem> actual) {
+        // Same overlays in the same order, the order is the priority they get restored with
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        for (String packageName : expected.keySet()) {
+            ProfileItem before = expected.get(packageName);
+            ProfileItem after = actual.get(packageName);
+            assertEquals(before.getTargetPackage(), after.getTargetPackage());
+            assertEquals(before.getParentTheme(), after.getParentTheme());
+            assertEquals(before.getType1a(), after.getType1a());
+            assertEquals(before.getType1b(), after.getType1b());
+            assertEquals(before.getType1c(), after.getType1c());
+            assertEquals(before.getType2(), after.getType2());
+            assertEquals(before.getType3(), after.getType3());
+            assertEquals(before.getType4(), after.getType4());
+        }
+    }
+
+    private static ProfileIndex.Reader encode(List<Map<String, ProfileItem>> states)
+            throws IOException {
+        return new ProfileIndex.Reader(ProfileIndex.encode(0L, 0L, states));
+    }
+
+    /**
+     * The old reads of a profile and the reads of its index, for the benchmarks
+     *
+     * @param overlays Number of overlays in the profile
+     * @return Returns the workloads by name
+     */
+    public static Map<String, Callable<?>> workloads(int overlays) throws IOException {
+        List<Map<String, ProfileItem>> states = profile(overlays);
+        byte[] xml = xml(states);
+        byte[] data = ProfileIndex.encode(0L, 0L, states);
+        Map<String, Callable<?>> workloads = new LinkedHashMap<>();
+        workloads.put("DOM", () -> readWithDom(xml, "enabled"));
+        workloads.put("pull parser", () ->
+                ProfileIndex.importXml(new ByteArrayInputStream(xml), new KXmlParser()));
+        workloads.put("index", () -> new ProfileIndex.Reader(data).read(ProfileIndex.ENABLED));
+        workloads.put("index of one target", () ->
+                new ProfileIndex.Reader(data).read(ProfileIndex.ENABLED, TARGET));
+        return workloads;
+    }
+
+    @Test
+    public void encode_thenRead_keepsEveryOverlay() throws IOException {
+        List<Map<String, ProfileItem>> states = profile(OVERLAYS);
+        ProfileIndex.Reader index = encode(states);
+        assertItems(states.get(ProfileIndex.ENABLED), index.read(ProfileIndex.ENABLED));
+        assertItems(states.get(ProfileIndex.DISABLED), index.read(ProfileIndex.DISABLED));
+    }
+
+    @Test
+    public void read_ofTarget_onlyReturnsItsOverlays() throws IOException {
+        List<Map<String, ProfileItem>> states = profile(OVERLAYS);
+        ProfileIndex.Reader index = encode(states);
+        for (int state : new int[]{ProfileIndex.ENABLED, ProfileIndex.DISABLED}) {
+            Map<String, ProfileItem> expected = ofTarget(states.get(state), TARGET);
+            assertFalse(expected.isEmpty());
+            assertItems(expected, index.read(state, TARGET));
+        }
+        assertTrue(index.read(ProfileIndex.ENABLED, "com.android.unknown").isEmpty());
+    }
+
+    @Test
+    public void getTargets_listsEveryTargetOnce() throws IOException {
+        ProfileIndex.Reader index = encode(profile(OVERLAYS));
+        assertEquals(TARGETS, index.getTargets().size());
+        assertEquals("com.android.target0", index.getTargets().get(0));
+    }
+
+    @Test
+    public void encode_readsMissingValuesAsEmpty() throws IOException {
+        List<Map<String, ProfileItem>> states = ProfileIndex.newStates();
+        ProfileItem item = new ProfileItem("android.theme");
+        item.setTargetPackage("android");
+        states.get(ProfileIndex.DISABLED).put(item.getPackageName(), item);
+
+        ProfileIndex.Reader index = encode(states);
+        assertTrue(index.read(ProfileIndex.ENABLED).isEmpty());
+        ProfileItem read = index.read(ProfileIndex.DISABLED, "android").get("android.theme");
+        assertNotNull(read);
+        assertEquals("", read.getParentTheme());
+        assertEquals("", read.getType1a());
+        assertEquals("", read.getType4());
+    }
+
+    @Test
+    public void importXml_readsWhatTheDomDid() throws Exception {
+        byte[] xml = xml(profile(OVERLAYS));
+        List<Map<String, ProfileItem>> states =
+                ProfileIndex.importXml(new ByteArrayInputStream(xml), new KXmlParser());
+        assertItems(readWithDom(xml, "enabled"), states.get(ProfileIndex.ENABLED));
+        assertItems(readWithDom(xml, "disabled"), states.get(ProfileIndex.DISABLED));
+    }
+
+    @Test
+    public void open_usesTheIndexOfTheSavedXml() throws IOException {
+        File profileDir = Files.createTempDirectory("profile").toFile();
+        File xml = new File(profileDir, "overlay_state.xml");
+        File index = new File(profileDir, "overlay_state.idx");
+        try {
+            List<Map<String, ProfileItem>> states = profile(OVERLAYS);
+            try (FileOutputStream out = new FileOutputStream(xml)) {
+                out.write(xml(states));
+            }
+            ProfileIndex.write(profileDir, states);
+            assertTrue(index.exists());
+
+            ProfileIndex.Reader reader = ProfileIndex.open(profileDir);
+            assertNotNull(reader);
+            assertItems(ofTarget(states.get(ProfileIndex.ENABLED), TARGET),
+                    reader.read(ProfileIndex.ENABLED, TARGET));
+        } finally {
+            for (File file : Arrays.asList(xml, index, profileDir)) {
+                if (file.exists() && !file.delete()) file.deleteOnExit();
+            }
+        }
+    }
+}
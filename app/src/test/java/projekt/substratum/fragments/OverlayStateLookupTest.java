@@ -0,0 +1,100 @@
+package projekt.substratum.fragments;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares how the ManagerFragment actions pick the overlays to switch, before and after they
+ * started asking for the overlay state once per action
+ */
+public class OverlayStateLookupTest {
+
+    private static String overlay(int i) {
+        return "com.android.target" + i + ".theme";
+    }
+
+    /**
+     * What the backend lists in a single state, every other overlay of the device
+     */
+    private static List<String> listing(int overlays, boolean even) {
+        List<String> listed = new ArrayList<>();
+        for (int i = even ? 0 : 1; i < overlays; i += 2) listed.add(overlay(i));
+        return listed;
+    }
+
+    private static List<String> selectAll(int overlays) {
+        List<String> selected = new ArrayList<>();
+        for (int i = 0; i < overlays; i++) selected.add(overlay(i));
+        return selected;
+    }
+
+    /**
+     * Old behaviour, every selected overlay got its own copy of the listing to search through
+     */
+    private static List<String> perItemListing(Collection<String> listed,
+                                               List<String> selected) {
+        List<String> data = new ArrayList<>();
+        for (String overlay : selected) {
+            if (new ArrayList<>(listed).contains(overlay)) data.add(overlay);
+        }
+        return data;
+    }
+
+    private static List<String> oncePerAction(Collection<String> listed, List<String> selected) {
+        List<String> data = new ArrayList<>();
+        ManagerFragment.splitByState(listed, selected, data, null);
+        return data;
+    }
+
+    /**
+     * The old and the current selection of every overlay of the device, for the benchmarks
+     *
+     * @param overlays Number of overlays on the device
+     * @return Returns the workloads by name
+     */
+    public static Map<String, Callable<?>> workloads(int overlays) {
+        List<String> listed = listing(overlays, false);
+        List<String> selected = selectAll(overlays);
+        Map<String, Callable<?>> workloads = new LinkedHashMap<>();
+        workloads.put("per item", () -> perItemListing(listed, selected));
+        workloads.put("once per action", () -> oncePerAction(listed, selected));
+        return workloads;
+    }
+
+    @Test
+    public void splitByState_selectsTheSameOverlays() {
+        List<String> listed = listing(150, false);
+        List<String> selected = selectAll(150);
+        List<String> expected = perItemListing(listed, selected);
+        assertEquals(75, expected.size());
+        assertEquals(expected, oncePerAction(listed, selected));
+    }
+
+    @Test
+    public void splitByState_keepsTheOrderOfTheSelection() {
+        List<String> listed = listing(10, true);
+        List<String> selected = Arrays.asList(overlay(8), overlay(3), overlay(0), overlay(4));
+        assertEquals(perItemListing(listed, selected), oncePerAction(listed, selected));
+        assertEquals(Arrays.asList(overlay(8), overlay(0), overlay(4)),
+                oncePerAction(listed, selected));
+    }
+
+    @Test
+    public void splitByState_handsTheRestToOther() {
+        List<String> listed = listing(6, false);
+        List<String> matching = new ArrayList<>();
+        List<String> other = new ArrayList<>();
+        ManagerFragment.splitByState(listed, selectAll(6), matching, other);
+        assertEquals(Arrays.asList(overlay(1), overlay(3), overlay(5)), matching);
+        assertEquals(Arrays.asList(overlay(0), overlay(2), overlay(4)), other);
+    }
+}
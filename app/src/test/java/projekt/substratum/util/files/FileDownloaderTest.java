@@ -0,0 +1,308 @@
+package projekt.substratum.util.files;
+
+import android.content.SharedPreferences;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class FileDownloaderTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Mon, 01 Jan 2018 00:00:00 GMT";
+
+    private final List<HttpExchange> requests = new ArrayList<>();
+    private final SharedPreferences prefs = new MemoryPreferences();
+    private HttpServer server;
+    private HttpHandler handler;
+    private File directory;
+    private File target;
+    private String url;
+
+    private static void respond(HttpExchange exchange,
+                                int code,
+                                String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, (bytes.length > 0) ? bytes.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/repository_names.xml", exchange -> {
+            synchronized (requests) {
+                requests.add(exchange);
+            }
+            handler.handle(exchange);
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/repository_names.xml";
+        directory = Files.createTempDirectory("vcache").toFile();
+        target = new File(directory, "repository_names.xml");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) file.deleteOnExit();
+            }
+        }
+        if (!directory.delete()) directory.deleteOnExit();
+    }
+
+    /**
+     * A first download with the given headers, that later requests revalidate
+     */
+    private void downloadFirst(String etag, String lastModified) throws IOException {
+        handler = exchange -> {
+            if (etag != null) exchange.getResponseHeaders().set("ETag", etag);
+            if (lastModified != null) {
+                exchange.getResponseHeaders().set("Last-Modified", lastModified);
+            }
+            respond(exchange, 200, "<repositories>first</repositories>");
+        };
+        assertEquals(FileDownloader.Result.DOWNLOADED, FileDownloader.fetch(prefs, url, target));
+        assertEquals("<repositories>first</repositories>", read(target));
+    }
+
+    private File partial() {
+        return new File(directory, target.getName() + ".part");
+    }
+
+    @Test
+    public void fetch_savesTheFile() throws IOException {
+        downloadFirst(ETAG, null);
+        assertFalse(partial().exists());
+        // Nothing to revalidate on the first download
+        assertNull(requests.get(0).getRequestHeaders().getFirst("If-None-Match"));
+    }
+
+    @Test
+    public void fetch_revalidatesWithTheETag() throws IOException {
+        downloadFirst(ETAG, null);
+        handler = exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                respond(exchange, 304, "");
+            } else {
+                respond(exchange, 200, "<repositories>second</repositories>");
+            }
+        };
+        assertEquals(FileDownloader.Result.NOT_MODIFIED, FileDownloader.fetch(prefs, url, target));
+        assertEquals("<repositories>first</repositories>", read(target));
+    }
+
+    @Test
+    public void fetch_revalidatesWithIfModifiedSince() throws IOException {
+        downloadFirst(null, LAST_MODIFIED);
+        handler = exchange -> {
+            if (LAST_MODIFIED.equals(
+                    exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                respond(exchange, 304, "");
+            } else {
+                respond(exchange, 200, "<repositories>second</repositories>");
+            }
+        };
+        assertEquals(FileDownloader.Result.NOT_MODIFIED, FileDownloader.fetch(prefs, url, target));
+        assertNull(requests.get(1).getRequestHeaders().getFirst("If-None-Match"));
+        assertEquals("<repositories>first</repositories>", read(target));
+    }
+
+    @Test
+    public void fetch_downloadsAChangedFile() throws IOException {
+        downloadFirst(ETAG, null);
+        handler = exchange -> {
+            exchange.getResponseHeaders().set("ETag", "\"v2\"");
+            respond(exchange, 200, "<repositories>second</repositories>");
+        };
+        assertEquals(FileDownloader.Result.DOWNLOADED, FileDownloader.fetch(prefs, url, target));
+        assertEquals("<repositories>second</repositories>", read(target));
+    }
+
+    @Test
+    public void fetch_keepsTheCachedFileOnAnError() throws IOException {
+        downloadFirst(ETAG, LAST_MODIFIED);
+        handler = exchange -> respond(exchange, 500, "<html>Internal Server Error</html>");
+        assertEquals(FileDownloader.Result.FAILED, FileDownloader.fetch(prefs, url, target));
+        assertEquals("<repositories>first</repositories>", read(target));
+        assertFalse(partial().exists());
+    }
+
+    @Test
+    public void fetch_leavesNoPartialFileWhenInterrupted() throws IOException {
+        downloadFirst(ETAG, null);
+        handler = exchange -> {
+            exchange.getResponseHeaders().set("ETag", "\"v2\"");
+            // Promise more than is sent, then drop the connection
+            exchange.sendResponseHeaders(200, 1 << 16);
+            OutputStream out = exchange.getResponseBody();
+            out.write("<repositories>sec".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            // A failing handler makes the server close the connection
+            throw new IOException("Connection dropped");
+        };
+        assertEquals(FileDownloader.Result.FAILED, FileDownloader.fetch(prefs, url, target));
+        assertEquals("<repositories>first</repositories>", read(target));
+        assertFalse(partial().exists());
+    }
+
+    /**
+     * Just enough of SharedPreferences for the download metadata
+     */
+    private static final class MemoryPreferences implements SharedPreferences {
+        private final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new MemoryEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+        }
+
+        private final class MemoryEditor implements Editor {
+            private final Map<String, Object> changes = new HashMap<>();
+            private final List<String> removals = new ArrayList<>();
+            private boolean clear;
+
+            @Override
+            public Editor putString(String key, String value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                changes.put(key, values);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                removals.add(key);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                clear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                if (clear) values.clear();
+                for (String key : removals) values.remove(key);
+                values.putAll(changes);
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+        }
+    }
+}
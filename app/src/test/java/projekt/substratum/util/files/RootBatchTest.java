@@ -0,0 +1,85 @@
+package projekt.substratum.util.files;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class RootBatchTest {
+
+    private static final List<String> COMMANDS = Arrays.asList(
+            "echo one",
+            "ls /substratum-does-not-exist",
+            "echo three && echo four");
+
+    @Test
+    public void script_foldsStderrIntoEveryCommand() {
+        String script = Root.Batch.script(COMMANDS);
+        for (int i = 0; i < COMMANDS.size(); i++) {
+            assertTrue(script.contains("{ " + COMMANDS.get(i) + "\n} 2>&1\n"));
+            assertTrue(script.contains("echo /shellResult/" + i + "/$?/"));
+        }
+    }
+
+    @Test
+    public void parse_splitsOutputAndExitCodes() {
+        String output = "one\n/shellResult/0/0/\n" +
+                "ls: cannot access\n/shellResult/1/2/\n" +
+                "three\nfour\n/shellResult/2/0/";
+        List<Root.Result> results = Root.Batch.parse(COMMANDS, output);
+        assertEquals(3, results.size());
+        assertEquals("one", results.get(0).output);
+        assertTrue(results.get(0).succeeded());
+        assertEquals("ls: cannot access", results.get(1).output);
+        assertEquals(2, results.get(1).exitCode);
+        assertEquals("three\nfour", results.get(2).output);
+        assertEquals(COMMANDS.get(2), results.get(2).command);
+    }
+
+    @Test
+    public void parse_marksCommandsAfterADeadSessionAsFailed() {
+        List<Root.Result> results = Root.Batch.parse(COMMANDS, "one\n/shellResult/0/0/\nls");
+        assertEquals(0, results.get(0).exitCode);
+        assertEquals(-1, results.get(1).exitCode);
+        assertEquals(-1, results.get(2).exitCode);
+        assertEquals(3, Root.Batch.parse(COMMANDS, null).size());
+    }
+
+    @Test
+    public void script_runsInAShellAndCapturesErrors() throws IOException, InterruptedException {
+        assumeTrue(new File("/bin/sh").canExecute());
+        Process process = new ProcessBuilder("/bin/sh", "-c", Root.Batch.script(COMMANDS))
+                .start();
+        String output;
+        try (InputStream input = process.getInputStream()) {
+            output = new String(readAll(input), StandardCharsets.UTF_8);
+        }
+        process.waitFor();
+
+        List<Root.Result> results = Root.Batch.parse(COMMANDS, output);
+        assertEquals("one", results.get(0).output);
+        assertTrue(results.get(0).succeeded());
+        assertFalse(results.get(1).succeeded());
+        // The error message used to be lost on stderr
+        assertTrue(results.get(1).output.contains("substratum-does-not-exist"));
+        assertEquals("three\nfour", results.get(2).output);
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = input.read(buffer)) != -1) bytes.write(buffer, 0, count);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,54 @@
+package projekt.substratum.util.files;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RootSessionTest {
+
+    @Test
+    public void acquire_returnsTheSlotTheThreadHolds() throws Exception {
+        CountDownLatch heldElsewhere = new CountDownLatch(1);
+        CountDownLatch firstIdle = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Root.Slot first = Root.acquire();
+        try {
+            Future<?> other = executor.submit(() -> {
+                // The first slot is busy, so this thread gets another one
+                Root.Slot held = Root.acquire();
+                try {
+                    assertNotSame(first, held);
+                    heldElsewhere.countDown();
+                    assertTrue(firstIdle.await(10, TimeUnit.SECONDS));
+                    // The first slot is idle again, but the held one keeps the shell state
+                    Root.Slot again = Root.acquire();
+                    try {
+                        assertSame(held, again);
+                        assertEquals(2, held.lock.getHoldCount());
+                    } finally {
+                        again.lock.unlock();
+                    }
+                } finally {
+                    held.lock.unlock();
+                }
+                return null;
+            });
+            assertTrue(heldElsewhere.await(10, TimeUnit.SECONDS));
+            first.lock.unlock();
+            firstIdle.countDown();
+            other.get(10, TimeUnit.SECONDS);
+        } finally {
+            if (first.lock.isHeldByCurrentThread()) first.lock.unlock();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package projekt.substratum.util.readers;
+
+import android.support.v4.util.Pair;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.w3c.dom.Document;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ReadVariantPrioritizedColorTest {
+
+    private static final int[] COLOR_COUNTS = {1, 50, 500};
+
+    private static byte[] variant(int colors) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        xml.append("<resources>\n");
+        for (int i = 0; i < colors; i++) {
+            xml.append("    <color name=\"accent_").append(i).append("\">#ff")
+                    .append(String.format(Locale.US, "%06x", i)).append("</color>\n");
+        }
+        xml.append("</resources>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Pair<String, String> read(String xml) {
+        return ReadVariantPrioritizedColor.read(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), new KXmlParser());
+    }
+
+    /**
+     * The old path of Packages.getOverlayResource, a copy of the stream, a DOM to find the name
+     * of the first color and a second pass over every line to find its value
+     */
+    private static String readWithDom(InputStream overlay) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int count;
+        while ((count = overlay.read(chunk)) != -1) buffer.write(chunk, 0, count);
+        byte[] bytes = buffer.toByteArray();
+
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(bytes));
+        doc.getDocumentElement().normalize();
+        String name = doc.getElementsByTagName("color").item(0)
+                .getAttributes().item(0).getNodeValue();
+        String hex = null;
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(bytes)))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.contains('"' + name + '"')) {
+                    hex = line.substring(line.lastIndexOf("\">") + 2).split("<")[0];
+                }
+            }
+        }
+        return hex;
+    }
+
+    /**
+     * The old and the current read of a variant, for the benchmarks
+     *
+     * @param colors Number of colors of the variant
+     * @return Returns the workloads by name
+     */
+    public static Map<String, Callable<?>> workloads(int colors) {
+        byte[] variant = variant(colors);
+        Map<String, Callable<?>> workloads = new LinkedHashMap<>();
+        workloads.put("DOM and line scan", () -> readWithDom(new ByteArrayInputStream(variant)));
+        workloads.put("pull parser", () -> ReadVariantPrioritizedColor.read(
+                new ByteArrayInputStream(variant), new KXmlParser()));
+        return workloads;
+    }
+
+    @Test
+    public void read_returnsNameAndValueOfTheFirstColor() {
+        Pair<String, String> color = read("<resources>" +
+                "<dimen name=\"padding\">4dp</dimen>" +
+                "<color name=\"accent\">\n  #ff0000  \n</color>" +
+                "<color name=\"second\">#00ff00</color>" +
+                "</resources>");
+        assertEquals("accent", color.first);
+        assertEquals("#ff0000", color.second);
+    }
+
+    @Test
+    public void read_fallsBackToTheFirstAttribute() {
+        Pair<String, String> color = read("<resources>" +
+                "<color type=\"accent\">?android:attr/colorAccent</color>" +
+                "</resources>");
+        assertEquals("accent", color.first);
+        assertEquals("?android:attr/colorAccent", color.second);
+    }
+
+    @Test
+    public void read_returnsNullWithoutAColor() {
+        assertNull(read("<resources><dimen name=\"padding\">4dp</dimen></resources>"));
+        assertNull(read("not xml at all"));
+    }
+
+    @Test
+    public void read_stopsAtTheFirstColor() {
+        // Whatever follows the first color is never pulled, so a cut off file still reads
+        Pair<String, String> color = read("<resources>" +
+                "<color name=\"accent\">#ff000000</color>" +
+                "<color name=");
+        assertEquals("accent", color.first);
+        assertEquals("#ff000000", color.second);
+    }
+
+    @Test
+    public void read_matchesTheDomReader() throws Exception {
+        for (int colors : COLOR_COUNTS) {
+            byte[] variant = variant(colors);
+            assertEquals(readWithDom(new ByteArrayInputStream(variant)),
+                    ReadVariantPrioritizedColor.read(
+                            new ByteArrayInputStream(variant), new KXmlParser()).second);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package projekt.substratum.util.readers;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class XmlElementReaderTest {
+
+    private static final int[] ENTRY_COUNTS = {1, 100, 1000};
+    private static final String[] SHOWCASE_CHILDREN =
+            {"link", "author", "pricing", "support", "image", "backgroundimage", "package"};
+
+    private static List<XmlElementReader.Element> read(String xml, String tag) throws Exception {
+        List<XmlElementReader.Element> elements = new ArrayList<>();
+        XmlElementReader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                new KXmlParser(), tag, elements::add);
+        return elements;
+    }
+
+    /**
+     * A showcase file like the one on the cloud, every third entry with image overrides
+     */
+    private static byte[] showcase(int themes) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        xml.append("<showcase>\n");
+        for (int i = 0; i < themes; i++) {
+            xml.append("  <theme id=\"Theme ").append(i).append("\">\n")
+                    .append("    <link>https://play.google.com/store/apps/details?id=theme.")
+                    .append(i).append("</link>\n")
+                    .append("    <author>Author ").append(i % 37).append("</author>\n")
+                    .append("    <pricing>").append((i % 2 == 0) ? "free" : "paid")
+                    .append("</pricing>\n")
+                    .append("    <support>oms, samsung</support>\n")
+                    .append("    <package>theme.").append(i).append("</package>\n");
+            if ((i % 3) == 0) {
+                xml.append("    <image>https://example.org/").append(i).append(".png</image>\n")
+                        .append("    <backgroundimage>https://example.org/").append(i)
+                        .append("-bg.png</backgroundimage>\n");
+            }
+            xml.append("  </theme>\n");
+        }
+        xml.append("</showcase>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * What the readers used to do, a normalized DOM and one lookup per child, optional ones
+     * inside of a try/catch
+     */
+    private static Map<String, String> readWithDom(byte[] xml) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml));
+        doc.getDocumentElement().normalize();
+        NodeList nList = doc.getElementsByTagName("theme");
+        Map<String, String> map = new TreeMap<>();
+        for (int i = 0; i < nList.getLength(); i++) {
+            Element eElement = (Element) nList.item(i);
+            String id = eElement.getAttribute("id");
+            for (String child : SHOWCASE_CHILDREN) {
+                try {
+                    map.put(id + '-' + child,
+                            eElement.getElementsByTagName(child).item(0).getTextContent());
+                } catch (Exception e) {
+                    // Optional child
+                }
+            }
+        }
+        return map;
+    }
+
+    private static Map<String, String> readWithPullParser(byte[] xml) throws Exception {
+        Map<String, String> map = new TreeMap<>();
+        XmlElementReader.read(new ByteArrayInputStream(xml), new KXmlParser(), "theme",
+                eElement -> {
+                    String id = eElement.getAttribute("id");
+                    for (String child : SHOWCASE_CHILDREN) {
+                        String value = eElement.getChild(child);
+                        if (value != null) map.put(id + '-' + child, value);
+                    }
+                });
+        return map;
+    }
+
+    /**
+     * The old and the current read of a showcase file, for the benchmarks
+     *
+     * @param themes Number of themes in the showcase
+     * @return Returns the workloads by name
+     */
+    public static Map<String, Callable<?>> workloads(int themes) {
+        byte[] xml = showcase(themes);
+        Map<String, Callable<?>> workloads = new LinkedHashMap<>();
+        workloads.put("DOM", () -> readWithDom(xml));
+        workloads.put("pull parser", () -> readWithPullParser(xml));
+        return workloads;
+    }
+
+    @Test
+    public void read_handsOverEveryElementInOrder() throws Exception {
+        List<XmlElementReader.Element> elements = read("<validator>" +
+                "<repo name=\"first\"><filter1>a</filter1></repo>" +
+                "<other name=\"skipped\"/>" +
+                "<repo name=\"second\"/>" +
+                "</validator>", "repo");
+        assertEquals(2, elements.size());
+        assertEquals("first", elements.get(0).getAttribute("name"));
+        assertEquals("second", elements.get(1).getAttribute("name"));
+    }
+
+    @Test
+    public void getAttribute_isEmptyWhenMissing() throws Exception {
+        XmlElementReader.Element element =
+                read("<repo name=\"substratum\"/>", "repo").get(0);
+        assertEquals("substratum", element.getAttribute("name"));
+        assertEquals("", element.getAttribute("id"));
+    }
+
+    @Test
+    public void getChild_returnsTheFirstOccurrence() throws Exception {
+        XmlElementReader.Element element = read("<repo>" +
+                "<filter1>first</filter1>" +
+                "<filter1>second</filter1>" +
+                "</repo>", "repo").get(0);
+        assertEquals("first", element.getChild("filter1"));
+    }
+
+    @Test
+    public void getChild_reportsMissingChildren() throws Exception {
+        XmlElementReader.Element element = read("<theme>" +
+                "<link>https://example.org</link>" +
+                "<image></image>" +
+                "</theme>", "theme").get(0);
+        assertNull(element.getChild("author"));
+        assertEquals("none", element.getChild("author", "none"));
+        // An empty child is there, just without any text
+        assertEquals("", element.getChild("image"));
+        assertEquals("", element.getChild("image", "none"));
+    }
+
+    @Test
+    public void getChild_concatenatesNestedText() throws Exception {
+        XmlElementReader.Element element = read("<theme>" +
+                "<support>oms<b>, legacy</b>, samsung</support>" +
+                "</theme>", "theme").get(0);
+        // Same as the DOM's getTextContent
+        assertEquals("oms, legacy, samsung", element.getChild("support"));
+        // Only the children of the element itself are looked up, not theirs
+        assertNull(element.getChild("b"));
+    }
+
+    @Test
+    public void read_matchesTheDomReader() throws Exception {
+        for (int themes : ENTRY_COUNTS) {
+            byte[] xml = showcase(themes);
+            assertEquals(readWithDom(xml), readWithPullParser(xml));
+        }
+    }
+}